@@ -5,7 +5,13 @@ import com.zse.chat.channel.ChannelUpdateFailedException;
 import com.zse.chat.login.InvalidJWTException;
 import com.zse.chat.login.MessageUpdateFailedException;
 import com.zse.chat.login.MissingJWTException;
+import com.zse.chat.message.InvalidCursorException;
+import com.zse.chat.message.InvalidReactionException;
+import com.zse.chat.message.MessageArchivedException;
 import com.zse.chat.message.MessageNotFoundException;
+import com.zse.chat.message.attachment.AttachmentNotFoundException;
+import com.zse.chat.message.attachment.AttachmentTooLargeException;
+import com.zse.chat.message.channel.BulkLimitExceededException;
 import com.zse.chat.message.channel.ChannelAccessFailedException;
 import com.zse.chat.user.MissingPayloadFieldException;
 import com.zse.chat.user.UserNotFoundException;
@@ -33,7 +39,8 @@ public class GlobalControllerAdvice {
     @ExceptionHandler({
             UserNotFoundException.class,
             MessageNotFoundException.class,
-            ChannelNotFoundException.class
+            ChannelNotFoundException.class,
+            AttachmentNotFoundException.class
     })
     public ExceptionResponse notFoundExceptionHandle(Exception notFoundException) {
         log.warn("Generating not found response due to : {}", notFoundException.getMessage());
@@ -66,6 +73,61 @@ public class GlobalControllerAdvice {
                 .build();
     }
 
+    @ResponseStatus(HttpStatus.BAD_REQUEST)
+    @ExceptionHandler(InvalidCursorException.class)
+    public ExceptionResponse invalidCursor(Exception invalidCursorException){
+        log.warn("Generating invalid cursor response due to: {}", invalidCursorException.getMessage());
+        return ExceptionResponse.builder()
+                .responseCode(HttpStatus.BAD_REQUEST.value())
+                .exceptionMessage(invalidCursorException.getMessage())
+                .timestamp(LocalDateTime.now())
+                .build();
+    }
+
+    @ResponseStatus(HttpStatus.BAD_REQUEST)
+    @ExceptionHandler(InvalidReactionException.class)
+    public ExceptionResponse invalidReaction(Exception invalidReactionException){
+        log.warn("Generating invalid reaction response due to: {}", invalidReactionException.getMessage());
+        return ExceptionResponse.builder()
+                .responseCode(HttpStatus.BAD_REQUEST.value())
+                .exceptionMessage(invalidReactionException.getMessage())
+                .timestamp(LocalDateTime.now())
+                .build();
+    }
+
+    @ResponseStatus(HttpStatus.CONFLICT)
+    @ExceptionHandler(MessageArchivedException.class)
+    public ExceptionResponse messageArchived(Exception messageArchivedException){
+        log.warn("Generating conflict response due to: {}", messageArchivedException.getMessage());
+        return ExceptionResponse.builder()
+                .responseCode(HttpStatus.CONFLICT.value())
+                .exceptionMessage(messageArchivedException.getMessage())
+                .timestamp(LocalDateTime.now())
+                .build();
+    }
+
+    @ResponseStatus(HttpStatus.PAYLOAD_TOO_LARGE)
+    @ExceptionHandler(AttachmentTooLargeException.class)
+    public ExceptionResponse attachmentTooLarge(Exception attachmentTooLargeException){
+        log.warn("Generating payload too large response due to: {}", attachmentTooLargeException.getMessage());
+        return ExceptionResponse.builder()
+                .responseCode(HttpStatus.PAYLOAD_TOO_LARGE.value())
+                .exceptionMessage(attachmentTooLargeException.getMessage())
+                .timestamp(LocalDateTime.now())
+                .build();
+    }
+
+    @ResponseStatus(HttpStatus.PAYLOAD_TOO_LARGE)
+    @ExceptionHandler(BulkLimitExceededException.class)
+    public ExceptionResponse bulkLimitExceeded(Exception bulkLimitExceededException){
+        log.warn("Generating payload too large response due to: {}", bulkLimitExceededException.getMessage());
+        return ExceptionResponse.builder()
+                .responseCode(HttpStatus.PAYLOAD_TOO_LARGE.value())
+                .exceptionMessage(bulkLimitExceededException.getMessage())
+                .timestamp(LocalDateTime.now())
+                .build();
+    }
+
     @ResponseStatus(HttpStatus.UNAUTHORIZED)
     @ExceptionHandler({MissingJWTException.class, InvalidJWTException.class})
     public ExceptionResponse requiredJWT(Exception exception){
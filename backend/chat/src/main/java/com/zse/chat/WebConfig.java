@@ -1,16 +1,32 @@
 package com.zse.chat;
 
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.orm.jpa.support.OpenEntityManagerInViewInterceptor;
 import org.springframework.web.servlet.config.annotation.CorsRegistry;
 import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
+import javax.persistence.EntityManagerFactory;
+
 @Configuration
 @RequiredArgsConstructor
 public class WebConfig implements WebMvcConfigurer {
 
+    /**
+     * Long-lived async requests and streamed attachments,
+     * open session would hold database connection until they complete.
+     */
+    private static final String[] LONG_LIVED_PATHS = {
+            "/messages/channels/*/events",
+            "/messages/channels/*/poll",
+            "/messages/channels/*/*/attachments",
+            "/messages/channels/*/attachments/*"
+    };
+
     private final RequestInterceptor requestInterceptor;
+    private final ObjectProvider<EntityManagerFactory> entityManagerFactory;
 
     @Override
     public void addCorsMappings(CorsRegistry registry) {
@@ -21,5 +37,13 @@ public class WebConfig implements WebMvcConfigurer {
     public void addInterceptors(InterceptorRegistry registry) {
         registry.addInterceptor(requestInterceptor)
                 .addPathPatterns("/**");
+
+        entityManagerFactory.ifAvailable(emf -> {
+            final var openEntityManagerInViewInterceptor = new OpenEntityManagerInViewInterceptor();
+            openEntityManagerInViewInterceptor.setEntityManagerFactory(emf);
+            registry.addWebRequestInterceptor(openEntityManagerInViewInterceptor)
+                    .addPathPatterns("/**")
+                    .excludePathPatterns(LONG_LIVED_PATHS);
+        });
     }
 }
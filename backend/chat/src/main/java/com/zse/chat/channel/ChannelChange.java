@@ -0,0 +1,9 @@
+package com.zse.chat.channel;
+
+/**
+ * Written to outbox as payload of {@link com.zse.chat.outbox.ChangeType#CHANNEL_UPDATED}.
+ *
+ * @param nickname user added to channel or removed from it
+ */
+public record ChannelChange(ChannelUpdateAction action, String nickname) {
+}
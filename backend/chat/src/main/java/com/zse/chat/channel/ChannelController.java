@@ -27,6 +27,7 @@ import java.util.List;
 public class ChannelController {
 
     private final ChannelService channelService;
+    private final ChannelReadStateService channelReadStateService;
     private final UserService userService;
 
 
@@ -41,6 +42,25 @@ public class ChannelController {
                 .map(this::createChannelResponseDTO).toList();
     }
 
+    @Operation(
+            summary = "Get unread messages in available channels",
+            description = "Returns position of the last read message and amount of newer messages " +
+                    "of other users in every channel."
+    )
+    @GetMapping("/unread")
+    @VerifyJWT
+    public List<ChannelUnreadResponseDTO> getUnreadMessages(ChannelRequestDTO channelRequestDTO){
+        final var user = userService.getUserByNick(channelRequestDTO.getNickname());
+
+        return channelReadStateService.getReadStates(user).stream()
+                .map(state -> ChannelUnreadResponseDTO.builder()
+                        .channelId(state.channelId())
+                        .lastReadId(state.lastReadId())
+                        .unread(state.unread())
+                        .build())
+                .toList();
+    }
+
     @Operation(summary = "Create new channel")
     @PostMapping
     @VerifyJWT
@@ -87,6 +107,11 @@ public class ChannelController {
     @Jacksonized
     record ChannelResponseDTO(int id, List<String> owners, List<String> members) {
     }
+
+    @Builder
+    @Jacksonized
+    record ChannelUnreadResponseDTO(int channelId, long lastReadId, int unread) {
+    }
     //endregion
 
     private ChannelResponseDTO createChannelResponseDTO(Channel channel){
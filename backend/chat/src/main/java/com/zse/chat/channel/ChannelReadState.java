@@ -0,0 +1,8 @@
+package com.zse.chat.channel;
+
+/**
+ * @param lastReadId id of the newest message read by user, {@code 0} when nothing was read
+ * @param unread     amount of messages of other users after it
+ */
+public record ChannelReadState(int channelId, long lastReadId, int unread) {
+}
@@ -0,0 +1,326 @@
+package com.zse.chat.channel;
+
+import com.zse.chat.message.MessageEvent;
+import com.zse.chat.message.MessagesIngestedEvent;
+import com.zse.chat.outbox.ChangeType;
+import com.zse.chat.outbox.ClusterChangeEvent;
+import com.zse.chat.outbox.ClusterResyncEvent;
+import com.zse.chat.user.User;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.env.Environment;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+
+/**
+ * Read position and amount of unread messages of users in channels, kept in {@code channel_read_state}.
+ * <p>
+ * New messages are counted in memory per channel and author with {@link LongAdder}, so concurrent writers
+ * do not contend on one counter, and flushed in batches. Every counter is added to all users of channel
+ * except its author by one update, so counters are not multiplied by size of channel in memory.
+ * Marking messages as read subtracts the ones between old and new position, which keeps the count right
+ * also when their increments are flushed later or by other instance.
+ * <p>
+ * Read positions reported by clients are coalesced the same way, only the highest one of every user
+ * in channel waits for the flush. Readers of channel are loaded once with their nicknames and kept
+ * in memory for {@code channel-read-state.readers-max-age}, so asking who read a message does not
+ * query database. Positions marked on other instances show up after they are loaded again, readers
+ * of channel updated by other instance are loaded again right away, all of them after listening
+ * for changes of other instances was resumed.
+ */
+@Service
+@Slf4j
+public class ChannelReadStateService {
+
+    private static final String JOIN = "insert into channel_read_state (user_id, channel_id, last_read_id) " +
+            "select ?, ?, coalesce(max(id), 0) from message where channel_id = ? and deleted = false " +
+            "on conflict do nothing";
+    private static final String LEAVE = "delete from channel_read_state where user_id = ? and channel_id = ?";
+    private static final String ADD_UNREAD = "update channel_read_state set unread_count = unread_count + ? " +
+            "where channel_id = ? and user_id <> ?";
+    private static final String REMOVE_DELETED = "update channel_read_state set unread_count = unread_count - 1 " +
+            "where channel_id = ? and user_id <> ? and last_read_id < ?";
+    // Position is not moved past the newest message, messages created later would not be counted
+    private static final String MARK_READ = "update channel_read_state s " +
+            "set last_read_id = r.id, unread_count = s.unread_count - (" +
+            "select count(*) from message m where m.channel_id = s.channel_id and m.deleted = false " +
+            "and m.id > s.last_read_id and m.id <= r.id and m.nickname <> s.user_id) " +
+            "from (select least(?, coalesce(max(id), 0)) as id from message " +
+            "where channel_id = ? and deleted = false) r " +
+            "where s.user_id = ? and s.channel_id = ? and s.last_read_id < r.id";
+    private static final String SELECT_READ_STATES = "select channel_id, last_read_id, unread_count " +
+            "from channel_read_state where user_id = ? order by channel_id";
+    private static final String SELECT_READERS = "select s.user_id, u.nickname, s.last_read_id " +
+            "from channel_read_state s inner join chat_user u on u.id = s.user_id where s.channel_id = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    /**
+     * Channel id to author id to amount of messages not flushed yet. Entries are kept once created,
+     * there are as many of them as authors writing in channels.
+     */
+    private final Map<Integer, Map<Integer, LongAdder>> pending = new ConcurrentHashMap<>();
+    /**
+     * The highest read position of user in channel not flushed yet.
+     */
+    private final Map<ReadKey, Long> pendingReads = new ConcurrentHashMap<>();
+    /**
+     * Channel id to read positions of its users, removed after {@link #readersMaxAge}.
+     */
+    private final Map<Integer, Readers> readers = new ConcurrentHashMap<>();
+    private final long readersMaxAge;
+
+    public ChannelReadStateService(
+            JdbcTemplate jdbcTemplate,
+            PlatformTransactionManager transactionManager,
+            Environment env
+    ) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.readersMaxAge = env.getProperty(
+                "channel-read-state.readers-max-age",
+                Duration.class,
+                Duration.ofMinutes(1)
+        ).toMillis();
+    }
+
+    /**
+     * Starts counting unread messages of user who became owner or member of channel,
+     * messages sent before are treated as read.
+     */
+    public void join(int channelId, User user) {
+        jdbcTemplate.update(JOIN, user.getId(), channelId, channelId);
+        readers.remove(channelId);
+    }
+
+    public void leave(int channelId, User user) {
+        pendingReads.remove(new ReadKey(channelId, user.getId()));
+        jdbcTemplate.update(LEAVE, user.getId(), channelId);
+        readers.remove(channelId);
+    }
+
+    /**
+     * Counts messages created by author in channel, called after they were committed.
+     * Messages ingested in bulk are counted from {@link MessagesIngestedEvent}.
+     */
+    public void messagesCreated(int channelId, User author, long amount) {
+        pendingOf(channelId, author.getId()).add(amount);
+    }
+
+    /**
+     * Moves read position of user forward, it is written with the next flush.
+     */
+    public void markRead(int channelId, User user, long messageId) {
+        pendingReads.merge(new ReadKey(channelId, user.getId()), messageId, Math::max);
+        readers.computeIfPresent(channelId, (id, channelReaders) -> {
+            channelReaders.read(user.getId(), user.getNickname(), messageId);
+            return channelReaders;
+        });
+    }
+
+    /**
+     * @return nicknames of users whose read position is at message or after it
+     */
+    public List<String> getReaders(int channelId, long messageId) {
+        var channelReaders = readers.get(channelId);
+        if (channelReaders == null) {
+            channelReaders = loadReaders(channelId);
+            readers.put(channelId, channelReaders);
+        }
+        return channelReaders.readersOf(messageId);
+    }
+
+    /**
+     * @return read states of all channels of user including messages not flushed yet
+     */
+    public List<ChannelReadState> getReadStates(User user) {
+        // Unread count of position marked moments ago is known only after it is written
+        flushReads(key -> key.userId() == user.getId());
+        return jdbcTemplate.query(
+                SELECT_READ_STATES,
+                (rs, rowNum) -> {
+                    final int channelId = rs.getInt(1);
+                    final long unread = rs.getLong(3) + countPending(channelId, user.getId());
+                    return new ChannelReadState(channelId, rs.getLong(2), (int) Math.max(unread, 0));
+                },
+                user.getId()
+        );
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onMessageEvent(MessageEvent event) {
+        final var channelId = event.channelId();
+        if (event.type() != MessageEvent.Type.DELETED || channelId == null) {
+            return;
+        }
+        final var message = event.message();
+        jdbcTemplate.update(REMOVE_DELETED, channelId, message.getAuthor().getId(), message.getId());
+    }
+
+    /**
+     * Every message marking as read subtracts has to be counted, ingested ones included.
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onMessagesIngested(MessagesIngestedEvent event) {
+        pendingOf(event.channelId(), event.authorId()).add(event.count());
+    }
+
+    @EventListener
+    public void onClusterChange(ClusterChangeEvent event) {
+        final var change = event.change();
+        if (change.type() == ChangeType.CHANNEL_UPDATED && change.channelId() != null) {
+            readers.remove(change.channelId());
+        }
+    }
+
+    @EventListener
+    public void onClusterResync(ClusterResyncEvent event) {
+        readers.clear();
+    }
+
+    @Scheduled(fixedDelayString = "${channel-read-state.flush-interval:PT1S}")
+    @PreDestroy
+    public void flush() {
+        flushUnread();
+        flushReads(key -> true);
+    }
+
+    @Scheduled(fixedDelayString = "${channel-read-state.flush-interval:PT1S}")
+    public void evictReaders() {
+        final long loadedBefore = System.currentTimeMillis() - readersMaxAge;
+        readers.values().removeIf(channelReaders -> channelReaders.loadedAt < loadedBefore);
+    }
+
+    private void flushUnread() {
+        final List<Object[]> increments = new ArrayList<>();
+        pending.forEach((channelId, authors) -> authors.forEach((authorId, counter) -> {
+            final long amount = counter.sumThenReset();
+            if (amount != 0) {
+                increments.add(new Object[]{amount, channelId, authorId});
+            }
+        }));
+        if (increments.isEmpty()) {
+            return;
+        }
+
+        try {
+            transactionTemplate.executeWithoutResult(status -> jdbcTemplate.batchUpdate(ADD_UNREAD, increments));
+        } catch (DataAccessException e) {
+            // Written with the next flush
+            increments.forEach(increment ->
+                    pendingOf((int) increment[1], (int) increment[2]).add((long) increment[0]));
+            log.warn("Flush of {} unread counters failed", increments.size(), e);
+        }
+    }
+
+    private void flushReads(Predicate<ReadKey> filter) {
+        final List<Object[]> positions = new ArrayList<>();
+        for (ReadKey key : pendingReads.keySet()) {
+            if (!filter.test(key)) {
+                continue;
+            }
+            final Long messageId = pendingReads.remove(key);
+            if (messageId != null) {
+                positions.add(new Object[]{messageId, key.channelId(), key.userId(), key.channelId()});
+            }
+        }
+        if (positions.isEmpty()) {
+            return;
+        }
+
+        try {
+            transactionTemplate.executeWithoutResult(status -> jdbcTemplate.batchUpdate(MARK_READ, positions));
+        } catch (DataAccessException e) {
+            positions.forEach(position -> pendingReads.merge(
+                    new ReadKey((int) position[1], (int) position[2]),
+                    (long) position[0],
+                    Math::max
+            ));
+            log.warn("Flush of {} read positions failed", positions.size(), e);
+        }
+    }
+
+    private Readers loadReaders(int channelId) {
+        // Taken before query, positions flushed in between are in one of them
+        final Map<Integer, Long> notFlushed = new HashMap<>();
+        pendingReads.forEach((key, messageId) -> {
+            if (key.channelId() == channelId) {
+                notFlushed.put(key.userId(), messageId);
+            }
+        });
+
+        final var channelReaders = new Readers();
+        jdbcTemplate.query(SELECT_READERS, rs -> {
+            final int userId = rs.getInt(1);
+            final long lastReadId = Math.max(rs.getLong(3), notFlushed.getOrDefault(userId, 0L));
+            channelReaders.read(userId, rs.getString(2), lastReadId);
+        }, channelId);
+        return channelReaders;
+    }
+
+    private LongAdder pendingOf(int channelId, int authorId) {
+        return pending.computeIfAbsent(channelId, id -> new ConcurrentHashMap<>())
+                .computeIfAbsent(authorId, id -> new LongAdder());
+    }
+
+    private long countPending(int channelId, int userId) {
+        final var authors = pending.get(channelId);
+        if (authors == null) {
+            return 0;
+        }
+        long count = 0;
+        for (var author : authors.entrySet()) {
+            if (author.getKey() != userId) {
+                count += author.getValue().sum();
+            }
+        }
+        return count;
+    }
+
+    private record ReadKey(int channelId, int userId) {
+    }
+
+    private record Reader(String nickname, long lastReadId) {
+    }
+
+    private static class Readers {
+
+        private final Map<Integer, Reader> byUser = new ConcurrentHashMap<>();
+        private final long loadedAt = System.currentTimeMillis();
+
+        void read(int userId, String nickname, long messageId) {
+            byUser.merge(
+                    userId,
+                    new Reader(nickname, messageId),
+                    (current, read) -> read.lastReadId() > current.lastReadId() ? read : current
+            );
+        }
+
+        List<String> readersOf(long messageId) {
+            return byUser.values().stream()
+                    .filter(reader -> reader.lastReadId() >= messageId)
+                    .map(Reader::nickname)
+                    .sorted(Comparator.naturalOrder())
+                    .toList();
+        }
+
+    }
+
+}
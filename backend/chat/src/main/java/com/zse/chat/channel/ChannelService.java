@@ -1,8 +1,11 @@
 package com.zse.chat.channel;
 
+import com.zse.chat.outbox.ChangeType;
+import com.zse.chat.outbox.Outbox;
 import com.zse.chat.user.User;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
 import java.util.Optional;
@@ -12,6 +15,8 @@ import java.util.Optional;
 public class ChannelService {
 
     private final ChannelRepository channelRepository;
+    private final ChannelReadStateService channelReadStateService;
+    private final Outbox outbox;
 
     public List<Channel> getChannels(User user) {
         return channelRepository.getChannelsByOwnersInOrMembersIn(List.of(user), List.of(user));
@@ -27,7 +32,9 @@ public class ChannelService {
                 .members(List.of())
                 .build();
 
-        return channelRepository.save(channel);
+        final var savedChannel = channelRepository.save(channel);
+        channelReadStateService.join(savedChannel.getId(), user);
+        return savedChannel;
     }
 
     public boolean userHasPermissionToUpdateChannel(Channel channel, String nickname){
@@ -38,6 +45,7 @@ public class ChannelService {
         return resultOwner.isPresent();
     }
 
+    @Transactional
     public Channel updateChannel(Channel channel, ChannelUpdateAction action, User manipulateUser){
         final List<User> owners = channel.getOwners();
         final List<User> members = channel.getMembers();
@@ -72,7 +80,18 @@ public class ChannelService {
                 .members(members)
                 .build();
 
-        return channelRepository.save(updatedChannel);
+        final var savedChannel = channelRepository.save(updatedChannel);
+        if (action == ChannelUpdateAction.REMOVE_MEMBER) {
+            channelReadStateService.leave(channel.getId(), manipulateUser);
+        } else {
+            channelReadStateService.join(channel.getId(), manipulateUser);
+        }
+        outbox.append(
+                ChangeType.CHANNEL_UPDATED,
+                channel.getId(),
+                new ChannelChange(action, manipulateUser.getNickname())
+        );
+        return savedChannel;
     }
 
     public boolean userHasPermissionToSeeChannel(Channel channel, String nickname){
@@ -89,4 +108,9 @@ public class ChannelService {
         return resultOwner.isPresent() || resultMember.isPresent();
     }
 
+    @Transactional(readOnly = true)
+    public boolean userHasPermissionToSeeChannel(int channelId, String nickname){
+        return userHasPermissionToSeeChannel(getChannelById(channelId), nickname);
+    }
+
 }
@@ -0,0 +1,198 @@
+package com.zse.chat.fanout;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.env.Environment;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Delivers items to connected subscribers on {@code fanout.delivery-threads} threads of its own,
+ * so producers only queue items and never wait for any connection.
+ * <p>
+ * Every subscriber has queue of {@code fanout.queue-capacity} items, slow subscriber fills only its own
+ * queue and {@code fanout.policy} decides what happens then. Delivery to one subscriber takes at most
+ * {@code fanout.delivery-batch} items before letting others go first. Subscriber whose delivery is stuck
+ * for {@code fanout.stall-timeout} is disconnected. Its thread cannot be taken back until the write returns,
+ * so the pool gets one more thread meanwhile and stalled connections do not hold back the others.
+ * Connections are closed on threads of their own, as closing may wait for the stuck write.
+ */
+@Component
+@Slf4j
+public class FanOutEngine {
+
+    private final int queueCapacity;
+    private final int deliveryBatch;
+    private final SlowConsumerPolicy policy;
+    private final long stallTimeout;
+
+    private final Set<FanOutSubscriber> subscribers = ConcurrentHashMap.newKeySet();
+    private final ThreadPoolExecutor executor;
+    private final ExecutorService disconnectExecutor;
+
+    private final Timer deliveryLag;
+    private final Counter dropped;
+    private final Counter disconnected;
+
+    public FanOutEngine(MeterRegistry meterRegistry, Environment env) {
+        this.queueCapacity = env.getProperty("fanout.queue-capacity", Integer.class, 256);
+        this.deliveryBatch = env.getProperty("fanout.delivery-batch", Integer.class, 32);
+        this.policy = env.getProperty("fanout.policy", SlowConsumerPolicy.class, SlowConsumerPolicy.COALESCE);
+        this.stallTimeout = env.getProperty("fanout.stall-timeout", Duration.class, Duration.ofSeconds(10)).toNanos();
+
+        final var threadNumber = new AtomicInteger();
+        final int deliveryThreads = env.getProperty("fanout.delivery-threads", Integer.class, 4);
+        this.executor = new ThreadPoolExecutor(
+                deliveryThreads,
+                deliveryThreads,
+                0,
+                TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(),
+                runnable -> {
+                    final var thread = new Thread(runnable, "fanout-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+        );
+        final var disconnectThreadNumber = new AtomicInteger();
+        this.disconnectExecutor = Executors.newCachedThreadPool(runnable -> {
+            final var thread = new Thread(runnable, "fanout-disconnect-" + disconnectThreadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        Gauge.builder("fanout.subscribers", subscribers, Set::size)
+                .register(meterRegistry);
+        Gauge.builder("fanout.queue.depth", subscribers, FanOutEngine::queueDepth)
+                .description("Items waiting for delivery to all subscribers")
+                .register(meterRegistry);
+        this.deliveryLag = Timer.builder("fanout.delivery.lag")
+                .description("Time from queueing item to sending it")
+                .register(meterRegistry);
+        this.dropped = Counter.builder("fanout.dropped")
+                .tag("policy", policy.name())
+                .register(meterRegistry);
+        this.disconnected = meterRegistry.counter("fanout.disconnected");
+    }
+
+    public FanOutSubscriber subscribe(FanOutSink sink) {
+        final var subscriber = new FanOutSubscriber(this, sink);
+        subscribers.add(subscriber);
+        return subscriber;
+    }
+
+    @Scheduled(fixedDelayString = "${fanout.stall-check:PT5S}")
+    public void disconnectStalled() {
+        final var now = System.nanoTime();
+        for (FanOutSubscriber subscriber : subscribers) {
+            final var since = subscriber.deliveringSince();
+            if (since == 0 || since == FanOutSubscriber.STALLED || now - since <= stallTimeout) {
+                continue;
+            }
+            log.debug("Disconnecting subscriber stalled for {} ms", TimeUnit.NANOSECONDS.toMillis(now - since));
+            // Added first, the stuck delivery may return and give it back right after it is marked
+            resizeDelivery(1);
+            if (!subscriber.markStalled(since)) {
+                resizeDelivery(-1);
+            }
+            disconnect(subscriber);
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        executor.shutdownNow();
+        disconnectExecutor.shutdownNow();
+    }
+
+    int queueCapacity() {
+        return queueCapacity;
+    }
+
+    SlowConsumerPolicy policy() {
+        return policy;
+    }
+
+    void schedule(FanOutSubscriber subscriber) {
+        if (!subscriber.markScheduled()) {
+            return;
+        }
+        try {
+            executor.execute(() -> {
+                if (subscriber.deliver(deliveryBatch)) {
+                    schedule(subscriber);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Shutting down, connections are closed anyway
+        }
+    }
+
+    void disconnect(FanOutSubscriber subscriber) {
+        if (!subscriber.unregister()) {
+            return;
+        }
+        disconnected.increment();
+        try {
+            disconnectExecutor.execute(() -> {
+                try {
+                    subscriber.sink().disconnect();
+                } catch (RuntimeException e) {
+                    log.debug("Disconnecting subscriber failed", e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Shutting down, connections are closed anyway
+        }
+    }
+
+    /**
+     * Called when delivery gets stuck and when the stuck delivery returns.
+     */
+    synchronized void resizeDelivery(int delta) {
+        final int size = executor.getCorePoolSize() + delta;
+        if (delta > 0) {
+            executor.setMaximumPoolSize(size);
+            executor.setCorePoolSize(size);
+        } else {
+            executor.setCorePoolSize(size);
+            executor.setMaximumPoolSize(size);
+        }
+    }
+
+    int deliveryThreads() {
+        return executor.getCorePoolSize();
+    }
+
+    void unregister(FanOutSubscriber subscriber) {
+        subscribers.remove(subscriber);
+    }
+
+    void dropped(int amount) {
+        dropped.increment(amount);
+    }
+
+    void delivered(long enqueuedAt) {
+        deliveryLag.record(System.nanoTime() - enqueuedAt, TimeUnit.NANOSECONDS);
+    }
+
+    private static double queueDepth(Set<FanOutSubscriber> subscribers) {
+        return subscribers.stream().mapToInt(FanOutSubscriber::size).sum();
+    }
+
+}
@@ -0,0 +1,27 @@
+package com.zse.chat.fanout;
+
+import java.io.IOException;
+
+/**
+ * Connection of one subscriber. {@link #send(Object)} and {@link #resync()} are called from delivery thread
+ * of {@link FanOutEngine}, never concurrently for the same subscriber.
+ */
+public interface FanOutSink {
+
+    /**
+     * @throws IOException when connection is broken, subscriber is disconnected then
+     */
+    void send(Object item) throws IOException;
+
+    /**
+     * Tells subscriber that items were coalesced and it should reload state.
+     */
+    void resync() throws IOException;
+
+    /**
+     * Closes connection, called once when subscriber is disconnected by the engine, on thread of its own.
+     * It may run while stalled {@link #send(Object)} is still writing.
+     */
+    void disconnect();
+
+}
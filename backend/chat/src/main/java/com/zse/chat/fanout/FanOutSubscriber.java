@@ -0,0 +1,165 @@
+package com.zse.chat.fanout;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Subscriber registered in {@link FanOutEngine}, with queue of items waiting for delivery.
+ * <p>
+ * Queue is lock-free and bounded by counting its items, so offering never waits for delivery
+ * or for other producers. Only one delivery thread drains the queue at a time.
+ */
+public final class FanOutSubscriber {
+
+    /**
+     * Value of {@link #deliveringSince()} after engine gave up on the running delivery.
+     */
+    static final long STALLED = Long.MIN_VALUE;
+
+    private final FanOutEngine engine;
+    private final FanOutSink sink;
+
+    private final Queue<Pending> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger size = new AtomicInteger();
+    private final AtomicBoolean resync = new AtomicBoolean();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private final AtomicBoolean closed = new AtomicBoolean();
+    /**
+     * {@link System#nanoTime()} when running delivery started, {@code 0} while idle.
+     */
+    private final AtomicLong deliveringSince = new AtomicLong();
+
+    FanOutSubscriber(FanOutEngine engine, FanOutSink sink) {
+        this.engine = engine;
+        this.sink = sink;
+    }
+
+    /**
+     * Queues item for delivery, applying slow consumer policy when queue is full.
+     *
+     * @return {@code false} when subscriber is closed or was disconnected by the item
+     */
+    public boolean offer(Object item) {
+        if (closed.get()) {
+            return false;
+        }
+        while (size.incrementAndGet() > engine.queueCapacity()) {
+            size.decrementAndGet();
+            switch (engine.policy()) {
+                case DROP_OLDEST -> {
+                    if (poll() != null) {
+                        engine.dropped(1);
+                    }
+                }
+                case COALESCE -> {
+                    int dropped = 1;
+                    while (poll() != null) {
+                        dropped++;
+                    }
+                    resync.set(true);
+                    engine.dropped(dropped);
+                    engine.schedule(this);
+                    return true;
+                }
+                case DISCONNECT -> {
+                    engine.disconnect(this);
+                    return false;
+                }
+            }
+        }
+        queue.add(new Pending(item, System.nanoTime()));
+        engine.schedule(this);
+        return true;
+    }
+
+    /**
+     * @return amount of items waiting for delivery
+     */
+    public int size() {
+        return size.get();
+    }
+
+    /**
+     * Unregisters subscriber without calling {@link FanOutSink#disconnect()}, for connections closed by client.
+     */
+    public void close() {
+        unregister();
+    }
+
+    /**
+     * @return {@code false} when subscriber was closed already
+     */
+    boolean unregister() {
+        if (!closed.compareAndSet(false, true)) {
+            return false;
+        }
+        engine.unregister(this);
+        queue.clear();
+        return true;
+    }
+
+    FanOutSink sink() {
+        return sink;
+    }
+
+    boolean markScheduled() {
+        return scheduled.compareAndSet(false, true);
+    }
+
+    long deliveringSince() {
+        return deliveringSince.get();
+    }
+
+    /**
+     * @param since start of delivery found stuck
+     * @return {@code false} when that delivery returned meanwhile
+     */
+    boolean markStalled(long since) {
+        return deliveringSince.compareAndSet(since, STALLED);
+    }
+
+    /**
+     * Delivers up to {@code limit} items, so busy subscribers take turns with the others.
+     *
+     * @return {@code true} when there is more to deliver
+     */
+    boolean deliver(int limit) {
+        deliveringSince.set(System.nanoTime());
+        try {
+            for (int i = 0; i < limit && !closed.get(); i++) {
+                if (resync.getAndSet(false)) {
+                    sink.resync();
+                }
+                final var pending = poll();
+                if (pending == null) {
+                    break;
+                }
+                sink.send(pending.item());
+                engine.delivered(pending.enqueuedAt());
+            }
+        } catch (Exception e) {
+            engine.disconnect(this);
+        } finally {
+            if (deliveringSince.getAndSet(0) == STALLED) {
+                engine.resizeDelivery(-1);
+            }
+            scheduled.set(false);
+        }
+        return !closed.get() && (!queue.isEmpty() || resync.get());
+    }
+
+    private Pending poll() {
+        final var pending = queue.poll();
+        if (pending != null) {
+            size.decrementAndGet();
+        }
+        return pending;
+    }
+
+    private record Pending(Object item, long enqueuedAt) {
+    }
+
+}
@@ -0,0 +1,20 @@
+package com.zse.chat.fanout;
+
+/**
+ * What {@link FanOutEngine} does with subscriber whose queue is full.
+ */
+public enum SlowConsumerPolicy {
+    /**
+     * Oldest queued item is dropped to make room for the new one.
+     */
+    DROP_OLDEST,
+    /**
+     * Queued items and the new one are replaced by single {@link FanOutSink#resync()},
+     * subscriber reloads what it missed on its own.
+     */
+    COALESCE,
+    /**
+     * Subscriber is disconnected, it reconnects and catches up like after any other disconnect.
+     */
+    DISCONNECT
+}
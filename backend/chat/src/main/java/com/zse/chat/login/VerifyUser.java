@@ -52,9 +52,7 @@ public class VerifyUser {
         final String token = header.replace("Bearer ", "");
 
         try {
-            final DecodedJWT decodedJWT = verifier.verify(token);
-            final Claim decodedClaims = decodedJWT.getClaims().get("nickname");
-            final String nickname = decodedClaims.asString();
+            final String nickname = getNickname(token);
 
             if (withoutArgs.withoutArgs()) {
                 return pjp.proceed(pjp.getArgs());
@@ -72,4 +70,10 @@ public class VerifyUser {
         }
     }
 
+    public String getNickname(String token) throws JWTVerificationException {
+        final DecodedJWT decodedJWT = verifier.verify(token);
+        final Claim decodedClaims = decodedJWT.getClaims().get("nickname");
+        return decodedClaims.asString();
+    }
+
 }
@@ -0,0 +1,13 @@
+package com.zse.chat.message;
+
+public class InvalidCursorException extends RuntimeException {
+
+    public InvalidCursorException() {
+        super("Parameters \"before\" and \"after\" can not be used together");
+    }
+
+    public InvalidCursorException(String cursor) {
+        super("Invalid cursor: " + cursor);
+    }
+
+}
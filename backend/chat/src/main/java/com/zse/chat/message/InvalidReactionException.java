@@ -0,0 +1,9 @@
+package com.zse.chat.message;
+
+public class InvalidReactionException extends RuntimeException {
+
+    public InvalidReactionException(String emoji) {
+        super("Invalid reaction: " + emoji);
+    }
+
+}
@@ -22,14 +22,14 @@ public class Message {
     @GeneratedValue(generator = "sequence-generator-message")
     @GenericGenerator(
             name = "sequence-generator-message",
-            strategy = "org.hibernate.id.enhanced.SequenceStyleGenerator",
+            strategy = "com.zse.chat.message.MessageIdGenerator",
             parameters = {
                     @Parameter(name = "sequence_name", value = "message_sequence"),
                     @Parameter(name = "initial_value", value = "1"),
                     @Parameter(name = "increment_size", value = "1")
             }
     )
-    int id;
+    long id;
 
     @ManyToOne
     @JoinColumn(name = "nickname", nullable = false)
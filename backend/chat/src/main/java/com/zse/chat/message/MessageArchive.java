@@ -0,0 +1,151 @@
+package com.zse.chat.message;
+
+import com.zse.chat.message.MessageController.MessageResponseDTO;
+import com.zse.chat.message.MessageRepository.HistoryRow;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Reads history past the hot window from {@code message_archive}.
+ * <p>
+ * History is paged by id while partitions split messages by {@code created_at}. Archived partitions
+ * do not change, so range of ids of every one of them is read once when archive changes and turned
+ * into {@code created_at} bounds of queries, which lets Postgres skip partitions without requested ids.
+ * Archive is not queried at all when hot page is full and archive has no ids between its rows.
+ */
+@Component
+public class MessageArchive {
+
+    /**
+     * Bounds of queries which do not skip any partition, there are no messages outside of them.
+     */
+    static final LocalDateTime NO_LOWER_BOUND = LocalDateTime.of(1970, 1, 1, 0, 0);
+    static final LocalDateTime NO_UPPER_BOUND = LocalDateTime.of(9999, 12, 31, 0, 0);
+
+    private final MessageRepository messageRepository;
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Ordered from the oldest, only partitions holding messages.
+     */
+    private volatile List<ArchivedPartition> partitions = List.of();
+
+    public MessageArchive(MessageRepository messageRepository, JdbcTemplate jdbcTemplate) {
+        this.messageRepository = messageRepository;
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Reads range of ids of archived partitions, called by {@link MessagePartitionMaintenance} after archive changed.
+     */
+    public void refresh() {
+        final List<ArchivedPartition> refreshed = new ArrayList<>();
+        for (MessagePartition partition : MessagePartition.list(jdbcTemplate, MessagePartition.ARCHIVE_TABLE)) {
+            jdbcTemplate.query(
+                    "select min(id), max(id) from " + partition.name() + " having count(*) > 0",
+                    rs -> {
+                        refreshed.add(new ArchivedPartition(partition, rs.getLong(1), rs.getLong(2)));
+                    }
+            );
+        }
+        partitions = List.copyOf(refreshed);
+    }
+
+    /**
+     * Completes page of the newest messages below cursor with archived ones.
+     *
+     * @param channelId id of channel or {@code null} for global channel
+     * @param before    cursor or {@code null} for the latest page
+     * @param newest    up to {@code amount} hot messages by id descending
+     * @return up to {@code amount} messages by id descending
+     */
+    public List<MessageResponseDTO> withOlder(
+            Integer channelId,
+            Long before,
+            List<MessageResponseDTO> newest,
+            int amount
+    ) {
+        final var archived = partitions;
+        final long below = before == null ? Long.MAX_VALUE : before;
+        if (newest.size() >= amount && maxId(archived) < newest.get(newest.size() - 1).getId()) {
+            return newest;
+        }
+
+        // Newer partitions without smaller ids are skipped
+        LocalDateTime until = NO_UPPER_BOUND;
+        int index = archived.size() - 1;
+        while (index >= 0 && archived.get(index).minId() >= below) {
+            until = archived.get(index).partition().from();
+            index--;
+        }
+        if (index < 0) {
+            return newest;
+        }
+
+        final List<HistoryRow> rows = channelId == null ?
+                messageRepository.findArchivedGlobalChannelPageBefore(below, until, amount) :
+                messageRepository.findArchivedChannelPageBefore(channelId, below, until, amount);
+        return merge(newest, rows, amount, Comparator.comparingLong(MessageResponseDTO::getId).reversed());
+    }
+
+    /**
+     * Completes page of the oldest messages above cursor with archived ones.
+     *
+     * @param channelId id of channel or {@code null} for global channel
+     * @param oldest    up to {@code amount} hot messages by id ascending
+     * @return up to {@code amount} messages by id ascending
+     */
+    public List<MessageResponseDTO> withNewer(
+            Integer channelId,
+            long after,
+            List<MessageResponseDTO> oldest,
+            int amount
+    ) {
+        final var archived = partitions;
+        if (maxId(archived) <= after) {
+            return oldest;
+        }
+
+        // Older partitions without bigger ids are skipped
+        LocalDateTime from = NO_LOWER_BOUND;
+        int index = 0;
+        while (archived.get(index).maxId() <= after) {
+            from = archived.get(index).partition().to();
+            index++;
+        }
+
+        final List<HistoryRow> rows = channelId == null ?
+                messageRepository.findArchivedGlobalChannelPageAfter(after, from, amount) :
+                messageRepository.findArchivedChannelPageAfter(channelId, after, from, amount);
+        return merge(oldest, rows, amount, Comparator.comparingLong(MessageResponseDTO::getId));
+    }
+
+    private static long maxId(List<ArchivedPartition> archived) {
+        return archived.stream().mapToLong(ArchivedPartition::maxId).max().orElse(Long.MIN_VALUE);
+    }
+
+    private static List<MessageResponseDTO> merge(
+            List<MessageResponseDTO> hot,
+            List<HistoryRow> archived,
+            int amount,
+            Comparator<MessageResponseDTO> order
+    ) {
+        if (archived.isEmpty()) {
+            return hot;
+        }
+        final List<MessageResponseDTO> merged = new ArrayList<>(hot.size() + archived.size());
+        merged.addAll(hot);
+        archived.forEach(row -> merged.add(row.toResponse()));
+        merged.sort(order);
+        return merged.size() > amount ? merged.subList(0, amount) : merged;
+    }
+
+    record ArchivedPartition(MessagePartition partition, long minId, long maxId) {
+    }
+
+}
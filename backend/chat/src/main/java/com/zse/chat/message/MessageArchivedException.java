@@ -0,0 +1,7 @@
+package com.zse.chat.message;
+
+public class MessageArchivedException extends RuntimeException {
+    public MessageArchivedException(long id){
+        super("Message is archived and cannot be changed. Id: " + id);
+    }
+}
@@ -1,23 +1,30 @@
 package com.zse.chat.message;
 
 import com.zse.chat.login.VerifyJWT;
+import com.zse.chat.message.attachment.Attachment;
 import com.zse.chat.user.UserNickname;
 import com.zse.chat.user.UserService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.security.SecurityRequirement;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.RequiredArgsConstructor;
 import lombok.Setter;
 import lombok.Value;
+import lombok.With;
 import lombok.experimental.NonFinal;
 import lombok.extern.jackson.Jacksonized;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Map;
 
 @Tag(name = "Messages global", description = "Endpoints to messages in global channel")
 @RequestMapping("/messages")
@@ -28,15 +35,69 @@ import java.util.List;
 public class MessageController {
 
     private final MessageService messageService;
+    private final MessageExportService messageExportService;
+    private final MessageReactionService messageReactionService;
     private final UserService userService;
 
-    @Operation(summary = "Get all messages in global channel")
+    @Operation(
+            summary = "Get page of messages in global channel",
+            description = "Without cursor returns the latest messages. " +
+                    "Pass previousCursor as \"before\" to get older messages " +
+                    "or nextCursor as \"after\" to get newer messages.",
+            parameters = {
+                    @Parameter(name = "before", description = "Return messages with Id lower than this one"),
+                    @Parameter(name = "after", description = "Return messages with Id greater than this one"),
+                    @Parameter(name = "limit", description = "Max amount of messages, up to " + MessagePage.MAX_LIMIT)
+            }
+    )
     @GetMapping
     @VerifyJWT(withoutArgs = true)
-    public List<MessageResponseDTO> getMessages(){
-        return messageService.getAllMessagesInGlobalChannel().stream()
-                .map(this::createMessageResponseDTO)
-                .toList();
+    public MessagePageResponseDTO getMessages(
+            @RequestParam(required = false) Long before,
+            @RequestParam(required = false) Long after,
+            @RequestParam(required = false) Integer limit
+    ){
+        final var page = messageService.getMessagesInGlobalChannel(
+                before,
+                after,
+                MessagePage.normalizeLimit(limit)
+        );
+
+        return createMessagePageResponseDTO(page);
+    }
+
+    @Operation(
+            summary = "Search messages in global channel",
+            description = "Returns messages matching the query, best matching first. " +
+                    "Pass nextCursor as \"cursor\" to get the next page.",
+            parameters = {
+                    @Parameter(name = "q", description = "Words to search, supports quoted phrases, \"or\" and \"-\""),
+                    @Parameter(name = "cursor", description = "Return matches ranked below this one"),
+                    @Parameter(name = "limit", description = "Max amount of messages, up to " + MessagePage.MAX_LIMIT)
+            }
+    )
+    @GetMapping("/search")
+    @VerifyJWT(withoutArgs = true)
+    public MessageSearchPageResponseDTO searchMessages(
+            @RequestParam String q,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer limit
+    ){
+        final var page = messageService.searchGlobalChannel(q, cursor, MessagePage.normalizeLimit(limit));
+
+        return MessageSearchPageResponseDTO.builder()
+                .messages(messageReactionService.withReactions(page.getMessages()))
+                .nextCursor(page.getNextCursor())
+                .build();
+    }
+
+    @Operation(summary = "Export all messages in global channel as NDJSON")
+    @GetMapping(value = "/export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    @VerifyJWT(withoutArgs = true)
+    public ResponseEntity<StreamingResponseBody> exportMessages(){
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(messageExportService::exportGlobalChannel);
     }
 
     @Deprecated
@@ -46,10 +107,10 @@ public class MessageController {
     )
     @GetMapping("/{id}")
     @VerifyJWT(withoutArgs = true)
-    public MessageResponseDTO getMessageById(@PathVariable int id){
+    public MessageResponseDTO getMessageById(@PathVariable long id){
         final var message = messageService.getMessageById(id);
 
-        return createMessageResponseDTO(message);
+        return messageReactionService.withReactions(List.of(MessageResponseDTO.of(message))).get(0);
     }
 
     @Operation(summary = "Create new message in global channel")
@@ -59,7 +120,7 @@ public class MessageController {
         final var author = userService.getUserByNick(messageRequestDTO.getNickname());
         final var savedMessage = messageService.saveMessage(messageRequestDTO, author);
 
-        return  createMessageResponseDTO(savedMessage);
+        return  MessageResponseDTO.of(savedMessage);
     }
 
     @Operation(
@@ -70,11 +131,11 @@ public class MessageController {
     @VerifyJWT
     public MessageResponseDTO updateMessage(
             @RequestBody MessageRequestDTO messageRequestDTO,
-            @PathVariable int id
+            @PathVariable long id
     ){
         final var updatedMessage = messageService.updateMessageById(id, messageRequestDTO);
 
-        return createMessageResponseDTO(updatedMessage);
+        return MessageResponseDTO.of(updatedMessage);
     }
 
 
@@ -86,12 +147,42 @@ public class MessageController {
     @VerifyJWT
     public void deleteMessage(
             @RequestBody MessageRequestDTO messageRequestDTO,
-            @PathVariable int id
+            @PathVariable long id
     ){
         messageService.updateMessageById(id, messageRequestDTO, true);
         log.info("Message with id: {} has been deleted", id);
     }
 
+    @Operation(
+            summary = "Add reaction to message in global channel",
+            description = "User reacts with every emoji once. Reactions are written in batches, " +
+                    "amounts of reactions returned with messages include ones not written yet.",
+            parameters = {@Parameter(name = "id", description = "Message Id")}
+    )
+    @PostMapping("/{id}/reactions")
+    @VerifyJWT
+    public void addReaction(
+            @RequestBody MessageReactionRequestDTO messageReactionRequestDTO,
+            @PathVariable long id
+    ){
+        final var user = userService.getUserByNick(messageReactionRequestDTO.getNickname());
+        messageReactionService.react(null, id, user, messageReactionRequestDTO.getEmoji(), true);
+    }
+
+    @Operation(
+            summary = "Remove reaction from message in global channel",
+            parameters = {@Parameter(name = "id", description = "Message Id")}
+    )
+    @DeleteMapping("/{id}/reactions")
+    @VerifyJWT
+    public void removeReaction(
+            @RequestBody MessageReactionRequestDTO messageReactionRequestDTO,
+            @PathVariable long id
+    ){
+        final var user = userService.getUserByNick(messageReactionRequestDTO.getNickname());
+        messageReactionService.react(null, id, user, messageReactionRequestDTO.getEmoji(), false);
+    }
+
     //region DTOs
     @Value
     @Builder
@@ -105,21 +196,120 @@ public class MessageController {
 
     @Value
     @Builder
+    @AllArgsConstructor
     @Jacksonized
     public static class MessageResponseDTO {
-        int id;
+        long id;
         String authorNick;
         String content;
         LocalDateTime createdAt;
+        /**
+         * Emoji to amount of reactions, filled by {@link MessageReactionService}.
+         */
+        @With
+        @Builder.Default
+        Map<String, Long> reactions = Map.of();
+        /**
+         * Filled by {@link com.zse.chat.message.attachment.AttachmentService}.
+         */
+        @With
+        @Builder.Default
+        List<AttachmentResponseDTO> attachments = List.of();
+
+        /**
+         * Used by queries, which do not read reactions and attachments.
+         */
+        public MessageResponseDTO(long id, String authorNick, String content, LocalDateTime createdAt) {
+            this(id, authorNick, content, createdAt, Map.of(), List.of());
+        }
+
+        public static MessageResponseDTO of(Message message) {
+            return new MessageResponseDTO(
+                    message.getId(),
+                    message.getAuthor().getNickname(),
+                    message.getContent(),
+                    message.getCreatedAt()
+            );
+        }
+    }
+
+    @Builder
+    @Jacksonized
+    public record AttachmentResponseDTO(int id, String fileName, String contentType, long size) {
+
+        public static AttachmentResponseDTO of(Attachment attachment) {
+            return new AttachmentResponseDTO(
+                    attachment.getId(),
+                    attachment.getFileName(),
+                    attachment.getContentType(),
+                    attachment.getSize()
+            );
+        }
+    }
+
+    @Value
+    @Builder
+    @Jacksonized
+    public static class MessageBulkRequestDTO implements UserNickname {
+        @Setter
+        @NonFinal
+        String nickname;
+        List<String> contents;
+    }
+
+    @Builder
+    @Jacksonized
+    public record MessageBulkResponseDTO(int created) {
+    }
+
+    @Value
+    @Builder
+    @Jacksonized
+    public static class MessageReadRequestDTO implements UserNickname {
+        @Setter
+        @NonFinal
+        String nickname;
+        long messageId;
+    }
+
+    @Value
+    @Builder
+    @Jacksonized
+    public static class MessageReactionRequestDTO implements UserNickname {
+        @Setter
+        @NonFinal
+        String nickname;
+        String emoji;
+    }
+
+    @Builder
+    @Jacksonized
+    public record MessageReadersResponseDTO(long messageId, List<String> readers) {
+    }
+
+    @Value
+    @Builder
+    @Jacksonized
+    public static class MessagePageResponseDTO {
+        List<MessageResponseDTO> messages;
+        Long previousCursor;
+        Long nextCursor;
+    }
+
+    @Value
+    @Builder
+    @Jacksonized
+    public static class MessageSearchPageResponseDTO {
+        List<MessageResponseDTO> messages;
+        String nextCursor;
     }
     //endregion
 
-    private MessageResponseDTO createMessageResponseDTO(Message message){
-        return MessageResponseDTO.builder()
-                .id(message.getId())
-                .authorNick(message.getAuthor().getNickname())
-                .content(message.getContent())
-                .createdAt(message.getCreatedAt())
+    private MessagePageResponseDTO createMessagePageResponseDTO(MessagePage page){
+        return MessagePageResponseDTO.builder()
+                .messages(messageReactionService.withReactions(page.getMessages()))
+                .previousCursor(page.getPreviousCursor())
+                .nextCursor(page.getNextCursor())
                 .build();
     }
 
@@ -0,0 +1,16 @@
+package com.zse.chat.message;
+
+/**
+ * Published by message services after message in global channel or in any channel changed.
+ */
+public record MessageEvent(Type type, Message message) {
+
+    public enum Type {
+        CREATED, UPDATED, DELETED
+    }
+
+    public Integer channelId() {
+        return message.getChannel() == null ? null : message.getChannel().getId();
+    }
+
+}
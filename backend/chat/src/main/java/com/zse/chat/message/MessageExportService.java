@@ -0,0 +1,55 @@
+package com.zse.chat.message;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.zse.chat.message.MessageController.MessageResponseDTO;
+import com.zse.chat.message.MessageRepository.HistoryRow;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+/**
+ * Writes whole history as NDJSON straight from database cursor,
+ * rows are projected to DTOs so heap usage does not depend on history length.
+ * History is read from archive and hot partitions together in id order.
+ */
+@Service
+@RequiredArgsConstructor
+public class MessageExportService {
+
+    private final MessageRepository messageRepository;
+    private final ObjectMapper objectMapper;
+
+    @Transactional(readOnly = true)
+    public void exportGlobalChannel(OutputStream outputStream) throws IOException {
+        try (Stream<HistoryRow> messages = messageRepository.streamGlobalChannelHistory()) {
+            write(messages.map(HistoryRow::toResponse), outputStream);
+        }
+    }
+
+    @Transactional(readOnly = true)
+    public void exportChannel(int channelId, OutputStream outputStream) throws IOException {
+        try (Stream<HistoryRow> messages = messageRepository.streamChannelHistory(channelId)) {
+            write(messages.map(HistoryRow::toResponse), outputStream);
+        }
+    }
+
+    private void write(Stream<MessageResponseDTO> messages, OutputStream outputStream) throws IOException {
+        try (JsonGenerator generator = objectMapper.createGenerator(outputStream)) {
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            generator.setRootValueSeparator(null);
+
+            final Iterator<MessageResponseDTO> iterator = messages.iterator();
+            while (iterator.hasNext()) {
+                generator.writeObject(iterator.next());
+                generator.writeRaw('\n');
+            }
+        }
+    }
+
+}
@@ -0,0 +1,35 @@
+package com.zse.chat.message;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+/**
+ * Message ids are taken from {@code message_sequence} unless {@code message-ids.generator} is {@code snowflake}.
+ * Snowflake ids are higher than any id from sequence, so switching to them keeps order of messages by id.
+ * Switching back is not possible without moving the sequence past them. Every node writing messages
+ * needs its own {@code message-ids.node-id}.
+ */
+@Configuration
+public class MessageIdConfig {
+
+    @Bean
+    @ConditionalOnProperty(name = "message-ids.generator", havingValue = "snowflake")
+    public SnowflakeIdAllocator messageIdAllocator(Environment env) {
+        return new SnowflakeIdAllocator(env.getProperty("message-ids.node-id", Integer.class, 0));
+    }
+
+    /**
+     * Hibernate creates {@link MessageIdGenerator} itself, allocator is handed to it through its settings.
+     */
+    @Bean
+    public HibernatePropertiesCustomizer messageIdAllocatorCustomizer(ObjectProvider<SnowflakeIdAllocator> allocator) {
+        return properties -> allocator.ifAvailable(
+                snowflakeIdAllocator -> properties.put(MessageIdGenerator.ALLOCATOR_SETTING, snowflakeIdAllocator)
+        );
+    }
+
+}
@@ -0,0 +1,46 @@
+package com.zse.chat.message;
+
+import org.hibernate.MappingException;
+import org.hibernate.engine.config.spi.ConfigurationService;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
+import org.hibernate.service.ServiceRegistry;
+import org.hibernate.type.Type;
+
+import java.io.Serializable;
+import java.util.Properties;
+
+/**
+ * Takes message ids from {@link SnowflakeIdAllocator} when {@link MessageIdConfig} provides one,
+ * otherwise from {@code message_sequence} as before.
+ * <p>
+ * Every message takes its own sequence value. Blocks reserved per instance would give message written
+ * later on one instance lower id than messages other instances already delivered, and readers going by id
+ * would skip it.
+ */
+public class MessageIdGenerator extends SequenceStyleGenerator {
+
+    static final String ALLOCATOR_SETTING = "com.zse.chat.message.id-allocator";
+
+    private SnowflakeIdAllocator allocator;
+
+    @Override
+    public void configure(Type type, Properties params, ServiceRegistry serviceRegistry) throws MappingException {
+        super.configure(type, params, serviceRegistry);
+        final var setting = serviceRegistry.getService(ConfigurationService.class)
+                .getSettings()
+                .get(ALLOCATOR_SETTING);
+        if (setting instanceof SnowflakeIdAllocator snowflakeIdAllocator) {
+            allocator = snowflakeIdAllocator;
+        }
+    }
+
+    @Override
+    public Serializable generate(SharedSessionContractImplementor session, Object object) {
+        if (allocator != null) {
+            return allocator.nextId();
+        }
+        return super.generate(session, object);
+    }
+
+}
@@ -1,7 +1,7 @@
 package com.zse.chat.message;
 
 public class MessageNotFoundException extends RuntimeException {
-    public MessageNotFoundException(int id){
+    public MessageNotFoundException(long id){
         super("Message not found. No Id: " + id);
     }
 }
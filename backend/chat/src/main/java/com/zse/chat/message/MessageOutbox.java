@@ -0,0 +1,106 @@
+package com.zse.chat.message;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.zse.chat.message.MessageController.MessageResponseDTO;
+import com.zse.chat.outbox.ChangeEvent;
+import com.zse.chat.outbox.ChangeType;
+import com.zse.chat.outbox.Outbox;
+import lombok.Builder;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.jackson.Jacksonized;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.Collections;
+
+/**
+ * Writes changes of messages to {@link Outbox} as {@link MessageResponseDTO}, in transaction of the change,
+ * and reads them back for subscribers of relayed changes. Messages ingested in bulk are written
+ * as one change, {@link MessagesIngestedDTO}, which tells only range of their ids.
+ */
+@Component
+@RequiredArgsConstructor
+public class MessageOutbox {
+
+    private final Outbox outbox;
+    private final ObjectMapper objectMapper;
+
+    public void append(MessageEvent event) {
+        outbox.append(changeTypeOf(event.type()), event.channelId(), MessageResponseDTO.of(event.message()));
+    }
+
+    public void append(MessagesIngestedEvent event) {
+        outbox.append(ChangeType.MESSAGES_INGESTED, event.channelId(), createMessagesIngestedDTO(event));
+    }
+
+    /**
+     * @return type of message event or {@code null} for changes of other than messages
+     */
+    public static MessageEvent.Type eventTypeOf(ChangeType type) {
+        return switch (type) {
+            case MESSAGE_CREATED -> MessageEvent.Type.CREATED;
+            case MESSAGE_UPDATED -> MessageEvent.Type.UPDATED;
+            case MESSAGE_DELETED -> MessageEvent.Type.DELETED;
+            default -> null;
+        };
+    }
+
+    /**
+     * @param change change of message, see {@link #eventTypeOf(ChangeType)}
+     */
+    public MessageResponseDTO readMessage(ChangeEvent change) {
+        try {
+            return objectMapper.readValue(change.payload(), MessageResponseDTO.class);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Payload of change " + change.id() + " is not a message", e);
+        }
+    }
+
+    /**
+     * @param change change of type {@link ChangeType#MESSAGES_INGESTED}
+     */
+    public MessagesIngestedDTO readIngested(ChangeEvent change) {
+        try {
+            return objectMapper.readValue(change.payload(), MessagesIngestedDTO.class);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Payload of change " + change.id() + " is not ingested messages", e);
+        }
+    }
+
+    //region DTOs
+    /**
+     * Messages of bulk have ids from {@code firstId} to {@code lastId}, messages written meanwhile
+     * may have ids in between too.
+     */
+    @Builder
+    @Jacksonized
+    public record MessagesIngestedDTO(
+            String authorNick,
+            LocalDateTime createdAt,
+            int count,
+            long firstId,
+            long lastId
+    ) {
+    }
+    //endregion
+
+    private static ChangeType changeTypeOf(MessageEvent.Type type) {
+        return switch (type) {
+            case CREATED -> ChangeType.MESSAGE_CREATED;
+            case UPDATED -> ChangeType.MESSAGE_UPDATED;
+            case DELETED -> ChangeType.MESSAGE_DELETED;
+        };
+    }
+
+    private static MessagesIngestedDTO createMessagesIngestedDTO(MessagesIngestedEvent event) {
+        return MessagesIngestedDTO.builder()
+                .authorNick(event.authorNick())
+                .createdAt(event.createdAt())
+                .count(event.count())
+                .firstId(Collections.min(event.ids()))
+                .lastId(Collections.max(event.ids()))
+                .build();
+    }
+
+}
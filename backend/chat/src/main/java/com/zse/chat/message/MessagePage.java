@@ -0,0 +1,66 @@
+package com.zse.chat.message;
+
+import com.zse.chat.message.MessageController.MessageResponseDTO;
+import lombok.Builder;
+import lombok.Value;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+@Value
+@Builder
+public class MessagePage {
+
+    public static final int DEFAULT_LIMIT = 50;
+    public static final int MAX_LIMIT = 100;
+
+    List<MessageResponseDTO> messages;
+    Long previousCursor;
+    Long nextCursor;
+
+    public static int normalizeLimit(Integer limit) {
+        if (limit == null) {
+            return DEFAULT_LIMIT;
+        }
+        return Math.max(1, Math.min(limit, MAX_LIMIT));
+    }
+
+    /**
+     * Builds page from rows fetched by {@code id DESC} with {@code limit + 1} rows,
+     * the extra row only tells whether older messages exist.
+     */
+    public static MessagePage fromOlder(List<MessageResponseDTO> rows, int limit) {
+        final var hasOlder = rows.size() > limit;
+        final List<MessageResponseDTO> messages = new ArrayList<>(hasOlder ? rows.subList(0, limit) : rows);
+        Collections.reverse(messages);
+
+        if (messages.isEmpty()) {
+            return MessagePage.builder().messages(messages).build();
+        }
+
+        return MessagePage.builder()
+                .messages(messages)
+                .previousCursor(hasOlder ? messages.get(0).getId() : null)
+                .nextCursor(messages.get(messages.size() - 1).getId())
+                .build();
+    }
+
+    /**
+     * Builds page from rows fetched by {@code id ASC} after given cursor with {@code limit + 1} rows.
+     */
+    public static MessagePage fromNewer(List<MessageResponseDTO> rows, int limit, long after) {
+        final List<MessageResponseDTO> messages = rows.size() > limit ? rows.subList(0, limit) : rows;
+
+        if (messages.isEmpty()) {
+            return MessagePage.builder().messages(messages).nextCursor(after).build();
+        }
+
+        return MessagePage.builder()
+                .messages(messages)
+                .previousCursor(messages.get(0).getId())
+                .nextCursor(messages.get(messages.size() - 1).getId())
+                .build();
+    }
+
+}
@@ -0,0 +1,55 @@
+package com.zse.chat.message;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Comparator;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Monthly partition of {@code message} or {@code message_archive} by {@code created_at}.
+ *
+ * @param from inclusive lower bound or {@code null} for partition without one
+ * @param to   exclusive upper bound
+ */
+record MessagePartition(String name, LocalDateTime from, LocalDateTime to) {
+
+    static final String HOT_TABLE = "message";
+    static final String ARCHIVE_TABLE = "message_archive";
+
+    private static final String SELECT_PARTITIONS = "select c.relname, pg_get_expr(c.relpartbound, c.oid) " +
+            "from pg_inherits i join pg_class c on c.oid = i.inhrelid where i.inhparent = cast(? as regclass)";
+    private static final Pattern BOUND = Pattern.compile("FOR VALUES FROM \\((.+)\\) TO \\((.+)\\)");
+    private static final DateTimeFormatter TIMESTAMP = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    /**
+     * @return partitions of given table ordered from the oldest
+     */
+    static List<MessagePartition> list(JdbcTemplate jdbcTemplate, String table) {
+        return jdbcTemplate.query(
+                        SELECT_PARTITIONS,
+                        (rs, rowNum) -> parse(rs.getString(1), rs.getString(2)),
+                        table
+                ).stream()
+                .sorted(Comparator.comparing(MessagePartition::to))
+                .toList();
+    }
+
+    static MessagePartition parse(String name, String bound) {
+        final var matcher = BOUND.matcher(bound);
+        if (!matcher.matches()) {
+            throw new IllegalStateException("Unexpected bound of message partition " + name + ": " + bound);
+        }
+        return new MessagePartition(name, parseBound(matcher.group(1)), parseBound(matcher.group(2)));
+    }
+
+    private static LocalDateTime parseBound(String value) {
+        if (value.equals("MINVALUE")) {
+            return null;
+        }
+        return LocalDateTime.parse(value.substring(1, value.length() - 1), TIMESTAMP);
+    }
+
+}
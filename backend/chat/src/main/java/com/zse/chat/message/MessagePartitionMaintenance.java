@@ -0,0 +1,146 @@
+package com.zse.chat.message;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.time.Period;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+
+/**
+ * Keeps monthly partitions of {@code message} created ahead and moves the ones older than
+ * {@code message-partitions.archive-after} to {@code message_archive}.
+ * <p>
+ * Partition is moved by detaching and attaching it, rows are not copied. Check constraint matching
+ * its bound is validated first, so attaching does not scan it and lock of {@code message} is held
+ * only for the switch. Every change takes advisory lock, so instances do not run them concurrently.
+ */
+@Component
+@Slf4j
+public class MessagePartitionMaintenance {
+
+    private static final String LOCK = "select pg_advisory_xact_lock(hashtext('message_partitions'))";
+    private static final DateTimeFormatter PARTITION_NAME = DateTimeFormatter.ofPattern("'message_'yyyy_MM");
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final MessageArchive messageArchive;
+    private final int monthsAhead;
+    private final Period archiveAfter;
+
+    public MessagePartitionMaintenance(
+            JdbcTemplate jdbcTemplate,
+            PlatformTransactionManager transactionManager,
+            MessageArchive messageArchive,
+            Environment env
+    ) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.messageArchive = messageArchive;
+        this.monthsAhead = env.getProperty("message-partitions.months-ahead", Integer.class, 2);
+        this.archiveAfter = env.getProperty("message-partitions.archive-after", Period.class, Period.ofMonths(6));
+    }
+
+    @Scheduled(fixedDelayString = "${message-partitions.maintenance-interval:PT1H}")
+    public void maintain() {
+        maintain(LocalDateTime.now());
+    }
+
+    void maintain(LocalDateTime now) {
+        final List<MessagePartition> hot = MessagePartition.list(jdbcTemplate, MessagePartition.HOT_TABLE);
+
+        var month = hot.isEmpty() ? YearMonth.from(now) : YearMonth.from(hot.get(hot.size() - 1).to());
+        final var last = YearMonth.from(now).plusMonths(monthsAhead);
+        for (; !month.isAfter(last); month = month.plusMonths(1)) {
+            createPartition(month);
+        }
+
+        final var cutoff = now.minus(archiveAfter);
+        for (MessagePartition partition : hot) {
+            if (!partition.to().isAfter(cutoff)) {
+                archive(partition);
+            }
+        }
+
+        messageArchive.refresh();
+    }
+
+    /**
+     * Partition is created with its indexes as separate table and attached afterwards,
+     * which unlike {@code create table ... partition of} does not block reads of {@code message}.
+     */
+    private void createPartition(YearMonth month) {
+        final var name = month.format(PARTITION_NAME);
+        final var from = month.atDay(1).atStartOfDay();
+        final var to = month.plusMonths(1).atDay(1).atStartOfDay();
+
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.execute(LOCK);
+            if (jdbcTemplate.queryForObject("select to_regclass(?) is not null", Boolean.class, name)) {
+                return;
+            }
+            jdbcTemplate.execute("create table " + name +
+                    " (like message including defaults including generated including constraints)");
+            jdbcTemplate.execute("alter table " + name + " add primary key (id, created_at)");
+            jdbcTemplate.execute("create index " + name + "_channel_history_idx on " + name +
+                    " (channel_id, id) where deleted = false");
+            jdbcTemplate.execute("create index " + name + "_global_history_idx on " + name +
+                    " (id) where deleted = false and channel_id is null");
+            jdbcTemplate.execute("create index " + name + "_content_search_idx on " + name +
+                    " using gin (content_tsv) where deleted = false");
+            jdbcTemplate.execute("alter table message attach partition " + name +
+                    " for values from ('" + from + "') to ('" + to + "')");
+            log.info("Created message partition {}", name);
+        });
+    }
+
+    private void archive(MessagePartition partition) {
+        final var name = partition.name();
+        final var bound = name + "_bound";
+        final var check = partition.from() == null ?
+                "created_at < '" + partition.to() + "'" :
+                "created_at >= '" + partition.from() + "' and created_at < '" + partition.to() + "'";
+        final var values = partition.from() == null ?
+                "from (minvalue) to ('" + partition.to() + "')" :
+                "from ('" + partition.from() + "') to ('" + partition.to() + "')";
+
+        final Boolean hot = transactionTemplate.execute(status -> {
+            jdbcTemplate.execute(LOCK);
+            final var stillHot = jdbcTemplate.queryForObject(
+                    "select exists (select 1 from pg_inherits where inhrelid = cast(? as regclass) " +
+                            "and inhparent = cast(? as regclass))",
+                    Boolean.class,
+                    name,
+                    MessagePartition.HOT_TABLE
+            );
+            if (stillHot) {
+                jdbcTemplate.execute("alter table " + name + " drop constraint if exists " + bound);
+                jdbcTemplate.execute("alter table " + name + " add constraint " + bound +
+                        " check (" + check + ") not valid");
+            }
+            return stillHot;
+        });
+        if (!Boolean.TRUE.equals(hot)) {
+            return;
+        }
+        // Validated in own transaction, scan of partition does not block its readers
+        transactionTemplate.executeWithoutResult(status ->
+                jdbcTemplate.execute("alter table " + name + " validate constraint " + bound));
+
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.execute(LOCK);
+            jdbcTemplate.execute("alter table message detach partition " + name);
+            jdbcTemplate.execute("alter table message_archive attach partition " + name + " for values " + values);
+            jdbcTemplate.execute("alter table " + name + " drop constraint " + bound);
+        });
+        log.info("Moved message partition {} to archive", name);
+    }
+
+}
@@ -0,0 +1,216 @@
+package com.zse.chat.message;
+
+import com.zse.chat.message.MessageController.MessageResponseDTO;
+import com.zse.chat.user.User;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Emoji reactions on messages, kept in {@code message_reaction_user} and counted in {@code message_reaction}.
+ * <p>
+ * Reactions are not written one by one. The last reaction or its removal of every user waits for the flush,
+ * which writes all of them with single statement. Users are deduplicated by their rows and every counter
+ * row is changed once per flush by sum of reactions written, so popular message does not lock its counter
+ * for every reaction. Until then reactions are counted in memory with {@link LongAdder} per message
+ * and emoji, so concurrent reactions do not contend on one counter.
+ */
+@Service
+@Slf4j
+public class MessageReactionService {
+
+    public static final int MAX_EMOJI_LENGTH = 32;
+
+    // Only reactions which really changed rows of users are counted
+    private static final String FLUSH = "with reaction (message_id, emoji, user_id, added) as (" +
+            "select * from unnest(?::int8[], ?::varchar[], ?::int4[], ?::bool[])" +
+            "), added as (" +
+            "insert into message_reaction_user (message_id, emoji, user_id) " +
+            "select message_id, emoji, user_id from reaction where added " +
+            "on conflict do nothing returning message_id, emoji" +
+            "), removed as (" +
+            "delete from message_reaction_user u using reaction r where not r.added " +
+            "and u.message_id = r.message_id and u.emoji = r.emoji and u.user_id = r.user_id " +
+            "returning u.message_id, u.emoji" +
+            "), delta as (" +
+            "select message_id, emoji, sum(amount) as amount from (" +
+            "select message_id, emoji, 1 as amount from added " +
+            "union all select message_id, emoji, -1 from removed" +
+            ") changed group by message_id, emoji" +
+            ") " +
+            "insert into message_reaction (message_id, emoji, count) " +
+            "select message_id, emoji, amount from delta where amount <> 0 " +
+            "on conflict (message_id, emoji) do update set count = message_reaction.count + excluded.count";
+    private static final String SELECT_COUNTS = "select message_id, emoji, count from message_reaction " +
+            "where message_id = any(?) and count > 0";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final MessageRepository messageRepository;
+
+    /**
+     * The last reaction or its removal of user not flushed yet.
+     */
+    private final Map<ReactionKey, Reaction> pending = new ConcurrentHashMap<>();
+    /**
+     * Message id to emoji to amount of reactions not flushed yet, removed once all of them are flushed.
+     */
+    private final Map<Long, Map<String, LongAdder>> counts = new ConcurrentHashMap<>();
+
+    public MessageReactionService(JdbcTemplate jdbcTemplate, MessageRepository messageRepository) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.messageRepository = messageRepository;
+    }
+
+    /**
+     * Adds or removes reaction of user, it is written with the next flush.
+     *
+     * @param channelId channel of message, {@code null} for global channel
+     */
+    public void react(Integer channelId, long messageId, User user, String emoji, boolean add) {
+        if (emoji == null || emoji.isBlank() || emoji.codePointCount(0, emoji.length()) > MAX_EMOJI_LENGTH) {
+            throw new InvalidReactionException(emoji);
+        }
+        final var exists = channelId == null ?
+                messageRepository.existsByIdAndDeletedFalseAndChannelIsNull(messageId) :
+                messageRepository.existsByIdAndDeletedFalseAndChannelId(messageId, channelId);
+        if (!exists) {
+            throw new MessageNotFoundException(messageId);
+        }
+
+        final var counter = counterOf(messageId, emoji);
+        final int amount = add ? 1 : -1;
+        // Repeated reaction is counted once, reaction removed before flush is not counted at all
+        pending.compute(new ReactionKey(messageId, emoji, user.getId()), (key, reaction) -> {
+            if (reaction == null) {
+                counter.add(amount);
+                return new Reaction(add, add, counter);
+            }
+            if (reaction.last() == add) {
+                return reaction;
+            }
+            reaction.counter().add(amount);
+            return new Reaction(reaction.first(), add, reaction.counter());
+        });
+    }
+
+    /**
+     * @return messages with amounts of their reactions including ones not flushed yet
+     */
+    public List<MessageResponseDTO> withReactions(List<MessageResponseDTO> messages) {
+        if (messages.isEmpty()) {
+            return messages;
+        }
+        final var ids = messages.stream().map(MessageResponseDTO::getId).toArray(Long[]::new);
+
+        final Map<Long, Map<String, Long>> reactions = new HashMap<>();
+        jdbcTemplate.query(
+                SELECT_COUNTS,
+                ps -> ps.setArray(1, ps.getConnection().createArrayOf("int8", ids)),
+                (RowCallbackHandler) rs -> reactions.computeIfAbsent(rs.getLong(1), id -> new TreeMap<>())
+                        .put(rs.getString(2), rs.getLong(3))
+        );
+
+        return messages.stream()
+                .map(message -> {
+                    final var messageReactions = reactions.computeIfAbsent(message.getId(), id -> new TreeMap<>());
+                    counts.getOrDefault(message.getId(), Map.of()).forEach((emoji, counter) ->
+                            messageReactions.merge(emoji, counter.sum(), Long::sum));
+                    // Removal of reaction which was not there is counted until flush finds it out
+                    messageReactions.values().removeIf(count -> count <= 0);
+                    return messageReactions.isEmpty() ? message : message.withReactions(messageReactions);
+                })
+                .toList();
+    }
+
+    @Scheduled(fixedDelayString = "${message-reactions.flush-interval:PT1S}")
+    @PreDestroy
+    public void flush() {
+        final Map<ReactionKey, Reaction> reactions = new HashMap<>();
+        for (ReactionKey key : pending.keySet()) {
+            final var reaction = pending.remove(key);
+            if (reaction != null) {
+                reactions.put(key, reaction);
+            }
+        }
+        if (reactions.isEmpty()) {
+            return;
+        }
+
+        final List<Long> messageIds = new ArrayList<>(reactions.size());
+        final List<String> emojis = new ArrayList<>(reactions.size());
+        final List<Integer> userIds = new ArrayList<>(reactions.size());
+        final List<Boolean> added = new ArrayList<>(reactions.size());
+        reactions.forEach((key, reaction) -> {
+            messageIds.add(key.messageId());
+            emojis.add(key.emoji());
+            userIds.add(key.userId());
+            added.add(reaction.last());
+        });
+
+        try {
+            jdbcTemplate.update(FLUSH, ps -> {
+                final var connection = ps.getConnection();
+                ps.setArray(1, connection.createArrayOf("int8", messageIds.toArray()));
+                ps.setArray(2, connection.createArrayOf("varchar", emojis.toArray()));
+                ps.setArray(3, connection.createArrayOf("int4", userIds.toArray()));
+                ps.setArray(4, connection.createArrayOf("bool", added.toArray()));
+            });
+        } catch (DataAccessException e) {
+            // Written with the next flush, unless user reacted again in meantime and their reaction wins
+            reactions.forEach((key, reaction) -> {
+                if (pending.putIfAbsent(key, reaction) != null) {
+                    reaction.counter().add(-reaction.counted());
+                }
+            });
+            log.warn("Flush of {} reactions failed", reactions.size(), e);
+            return;
+        }
+
+        // Written counts are read from database from now on
+        reactions.values().forEach(reaction -> reaction.counter().add(-reaction.counted()));
+        reactions.keySet().forEach(key -> counts.computeIfPresent(key.messageId(), (id, emojiCounts) -> {
+            emojiCounts.values().removeIf(counter -> counter.sum() == 0);
+            return emojiCounts.isEmpty() ? null : emojiCounts;
+        }));
+    }
+
+    private LongAdder counterOf(long messageId, String emoji) {
+        return counts.computeIfAbsent(messageId, id -> new ConcurrentHashMap<>())
+                .computeIfAbsent(emoji, key -> new LongAdder());
+    }
+
+    private record ReactionKey(long messageId, String emoji, int userId) {
+    }
+
+    /**
+     * @param first   whether the first reaction not flushed yet added it
+     * @param last    whether the last one added it, this one is written
+     * @param counter counter the reaction is counted in, removed counter is still the one to subtract from
+     */
+    private record Reaction(boolean first, boolean last, LongAdder counter) {
+
+        /**
+         * Added and removed again is not counted, every other change is counted by the first one.
+         */
+        long counted() {
+            if (first != last) {
+                return 0;
+            }
+            return last ? 1 : -1;
+        }
+
+    }
+
+}
@@ -1,15 +1,276 @@
 package com.zse.chat.message;
 
 import com.zse.chat.channel.Channel;
+import com.zse.chat.message.MessageController.MessageResponseDTO;
+import com.zse.chat.message.search.IndexedMessage;
+import com.zse.chat.user.User;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import javax.persistence.QueryHint;
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
 
 @Repository
-public interface MessageRepository extends CrudRepository<Message, Integer>{
+public interface MessageRepository extends CrudRepository<Message, Long>{
+
+    String EXPORT_FETCH_SIZE = "500";
+
+    /**
+     * History is read straight into response DTO with single join to author,
+     * so no entity is hydrated and persistence context stays empty.
+     */
+    String SELECT_MESSAGE_RESPONSE = "select new com.zse.chat.message.MessageController$MessageResponseDTO(" +
+            "m.id, a.nickname, m.content, m.createdAt) from Message m join m.author a ";
+    String GLOBAL_CHANNEL = "where m.deleted = false and m.channel is null ";
+    String CHANNEL = "where m.deleted = false and m.channel.id = :channelId ";
+
+    /**
+     * Archive is not mapped as entity, it is read natively and only for pages past the hot window.
+     * Bounds of {@code created_at} come from {@link MessageArchive}, so only partitions which can
+     * hold requested ids are scanned.
+     */
+    String SELECT_HISTORY_ROW = "select m.id as id, a.nickname as \"authorNick\", m.content as content, " +
+            "m.created_at as \"createdAt\" ";
+    String FROM_ARCHIVE = "from message_archive m join chat_user a on a.id = m.nickname where m.deleted = false ";
+    String BEFORE_IN_ARCHIVE = "and m.id < :before and m.created_at < :until order by m.id desc limit :limit";
+    String AFTER_IN_ARCHIVE = "and m.id > :after and m.created_at >= :from order by m.id limit :limit";
+    String FROM_WHOLE_HISTORY = "from (select id, nickname, content, created_at, deleted, channel_id " +
+            "from message_archive union all select id, nickname, content, created_at, deleted, channel_id " +
+            "from message) m join chat_user a on a.id = m.nickname where m.deleted = false ";
+
+    /**
+     * Search matches generated {@code content_tsv} column against GIN index and pages by (rank, id),
+     * so next page continues below the last hit instead of skipping rows with offset.
+     */
+    String SEARCH_QUERY = "websearch_to_tsquery('simple', :query)";
+    String SEARCH_RANK = "ts_rank(m.content_tsv, " + SEARCH_QUERY + ")";
+    String SELECT_SEARCH_HIT = "select m.id as id, a.nickname as \"authorNick\", m.content as content, " +
+            "m.created_at as \"createdAt\", " + SEARCH_RANK + " as rank " +
+            "from message m join chat_user a on a.id = m.nickname " +
+            "where m.deleted = false and m.content_tsv @@ " + SEARCH_QUERY + " ";
+    String BELOW_SEARCH_CURSOR = "and (" + SEARCH_RANK + ", m.id) < (:rank, :id) ";
+    String ORDER_BY_RANK = "order by rank desc, m.id desc limit :limit";
+
+    /**
+     * Edit and delete check ownership and state in the same statement that changes the row,
+     * returning what response and events need, so successful call is single round trip.
+     */
+    String EDIT_MESSAGE = "update message m set content = :content ";
+    String DELETE_MESSAGE = "update message m set deleted = true ";
+    String OWN_ACTIVE_MESSAGE = "from chat_user a where a.id = m.nickname and m.id = :id " +
+            "and a.nickname = :nickname and m.deleted = false ";
+    String IN_GLOBAL_CHANNEL = "and m.channel_id is null ";
+    String IN_CHANNEL = "and m.channel_id = :channelId ";
+    String RETURNING_UPDATED_MESSAGE = "returning m.id as id, a.id as \"authorId\", a.nickname as nickname, " +
+            "m.content as content, m.created_at as \"createdAt\", m.deleted as deleted";
+    String EXISTS_IN_ARCHIVE = "select exists(select 1 from message_archive m where m.id = :id and m.deleted = false ";
+
+    @Query(SELECT_MESSAGE_RESPONSE + CHANNEL + "order by m.id desc")
+    List<MessageResponseDTO> findChannelPage(@Param("channelId") int channelId, Pageable pageable);
+
+    @Query(SELECT_MESSAGE_RESPONSE + CHANNEL + "and m.id < :before order by m.id desc")
+    List<MessageResponseDTO> findChannelPageBefore(
+            @Param("channelId") int channelId,
+            @Param("before") long before,
+            Pageable pageable
+    );
+
+    @Query(SELECT_MESSAGE_RESPONSE + CHANNEL + "and m.id > :after order by m.id asc")
+    List<MessageResponseDTO> findChannelPageAfter(
+            @Param("channelId") int channelId,
+            @Param("after") long after,
+            Pageable pageable
+    );
+
+    @Query(SELECT_MESSAGE_RESPONSE + GLOBAL_CHANNEL + "order by m.id desc")
+    List<MessageResponseDTO> findGlobalChannelPage(Pageable pageable);
+
+    @Query(SELECT_MESSAGE_RESPONSE + GLOBAL_CHANNEL + "and m.id < :before order by m.id desc")
+    List<MessageResponseDTO> findGlobalChannelPageBefore(@Param("before") long before, Pageable pageable);
+
+    @Query(SELECT_MESSAGE_RESPONSE + GLOBAL_CHANNEL + "and m.id > :after order by m.id asc")
+    List<MessageResponseDTO> findGlobalChannelPageAfter(@Param("after") long after, Pageable pageable);
+
+    @Query(value = SELECT_HISTORY_ROW + FROM_ARCHIVE + IN_GLOBAL_CHANNEL + BEFORE_IN_ARCHIVE, nativeQuery = true)
+    List<HistoryRow> findArchivedGlobalChannelPageBefore(
+            @Param("before") long before,
+            @Param("until") LocalDateTime until,
+            @Param("limit") int limit
+    );
+
+    @Query(value = SELECT_HISTORY_ROW + FROM_ARCHIVE + IN_GLOBAL_CHANNEL + AFTER_IN_ARCHIVE, nativeQuery = true)
+    List<HistoryRow> findArchivedGlobalChannelPageAfter(
+            @Param("after") long after,
+            @Param("from") LocalDateTime from,
+            @Param("limit") int limit
+    );
+
+    @Query(value = SELECT_HISTORY_ROW + FROM_ARCHIVE + IN_CHANNEL + BEFORE_IN_ARCHIVE, nativeQuery = true)
+    List<HistoryRow> findArchivedChannelPageBefore(
+            @Param("channelId") int channelId,
+            @Param("before") long before,
+            @Param("until") LocalDateTime until,
+            @Param("limit") int limit
+    );
+
+    @Query(value = SELECT_HISTORY_ROW + FROM_ARCHIVE + IN_CHANNEL + AFTER_IN_ARCHIVE, nativeQuery = true)
+    List<HistoryRow> findArchivedChannelPageAfter(
+            @Param("channelId") int channelId,
+            @Param("after") long after,
+            @Param("from") LocalDateTime from,
+            @Param("limit") int limit
+    );
+
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = EXPORT_FETCH_SIZE))
+    @Query(value = SELECT_HISTORY_ROW + FROM_WHOLE_HISTORY + IN_GLOBAL_CHANNEL + "order by m.id", nativeQuery = true)
+    Stream<HistoryRow> streamGlobalChannelHistory();
+
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = EXPORT_FETCH_SIZE))
+    @Query(value = SELECT_HISTORY_ROW + FROM_WHOLE_HISTORY + IN_CHANNEL + "order by m.id", nativeQuery = true)
+    Stream<HistoryRow> streamChannelHistory(@Param("channelId") int channelId);
+
+    @Query(SELECT_MESSAGE_RESPONSE + "where m.deleted = false and m.id in :ids")
+    List<MessageResponseDTO> findResponsesByIds(@Param("ids") Collection<Long> ids);
+
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = EXPORT_FETCH_SIZE))
+    @Query("select new com.zse.chat.message.search.IndexedMessage(m.id, c.id, m.content) " +
+            "from Message m left join m.channel c where m.deleted = false and m.id > :after order by m.id")
+    Stream<IndexedMessage> streamForIndexAfter(@Param("after") long after);
+
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = EXPORT_FETCH_SIZE))
+    @Query("select new com.zse.chat.message.search.IndexedMessage(m.id, c.id, m.content) " +
+            "from Message m join m.channel c join m.author a where m.deleted = false and c.id = :channelId " +
+            "and a.nickname = :authorNick and m.id between :firstId and :lastId order by m.id")
+    Stream<IndexedMessage> streamIngestedForIndex(
+            @Param("channelId") int channelId,
+            @Param("authorNick") String authorNick,
+            @Param("firstId") long firstId,
+            @Param("lastId") long lastId
+    );
+
+    @Query(value = SELECT_SEARCH_HIT + IN_GLOBAL_CHANNEL + ORDER_BY_RANK, nativeQuery = true)
+    List<SearchHit> searchGlobalChannel(@Param("query") String query, @Param("limit") int limit);
+
+    @Query(value = SELECT_SEARCH_HIT + IN_GLOBAL_CHANNEL + BELOW_SEARCH_CURSOR + ORDER_BY_RANK, nativeQuery = true)
+    List<SearchHit> searchGlobalChannelBelow(
+            @Param("query") String query,
+            @Param("rank") float rank,
+            @Param("id") long id,
+            @Param("limit") int limit
+    );
+
+    @Query(value = SELECT_SEARCH_HIT + IN_CHANNEL + ORDER_BY_RANK, nativeQuery = true)
+    List<SearchHit> searchChannel(
+            @Param("channelId") int channelId,
+            @Param("query") String query,
+            @Param("limit") int limit
+    );
+
+    @Query(value = SELECT_SEARCH_HIT + IN_CHANNEL + BELOW_SEARCH_CURSOR + ORDER_BY_RANK, nativeQuery = true)
+    List<SearchHit> searchChannelBelow(
+            @Param("channelId") int channelId,
+            @Param("query") String query,
+            @Param("rank") float rank,
+            @Param("id") long id,
+            @Param("limit") int limit
+    );
+
+    @Transactional
+    @Query(value = EDIT_MESSAGE + OWN_ACTIVE_MESSAGE + IN_GLOBAL_CHANNEL + RETURNING_UPDATED_MESSAGE, nativeQuery = true)
+    Optional<UpdatedMessage> editGlobalChannelMessage(
+            @Param("id") long id,
+            @Param("nickname") String nickname,
+            @Param("content") String content
+    );
+
+    @Transactional
+    @Query(value = EDIT_MESSAGE + OWN_ACTIVE_MESSAGE + IN_CHANNEL + RETURNING_UPDATED_MESSAGE, nativeQuery = true)
+    Optional<UpdatedMessage> editChannelMessage(
+            @Param("id") long id,
+            @Param("channelId") int channelId,
+            @Param("nickname") String nickname,
+            @Param("content") String content
+    );
+
+    @Transactional
+    @Query(value = DELETE_MESSAGE + OWN_ACTIVE_MESSAGE + IN_GLOBAL_CHANNEL + RETURNING_UPDATED_MESSAGE, nativeQuery = true)
+    Optional<UpdatedMessage> deleteGlobalChannelMessage(@Param("id") long id, @Param("nickname") String nickname);
+
+    @Transactional
+    @Query(value = DELETE_MESSAGE + OWN_ACTIVE_MESSAGE + IN_CHANNEL + RETURNING_UPDATED_MESSAGE, nativeQuery = true)
+    Optional<UpdatedMessage> deleteChannelMessage(
+            @Param("id") long id,
+            @Param("channelId") int channelId,
+            @Param("nickname") String nickname
+    );
+
+    /**
+     * Only asked after edit or delete changed nothing, to tell missing message from someone else's.
+     */
+    boolean existsByIdAndDeletedFalseAndChannelIsNull(long id);
+
+    boolean existsByIdAndDeletedFalseAndChannelId(long id, int channelId);
+
+    /**
+     * Archive never changes, archived message is still read but cannot be edited nor deleted.
+     */
+    @Query(value = EXISTS_IN_ARCHIVE + IN_GLOBAL_CHANNEL + ")", nativeQuery = true)
+    boolean existsInArchiveOfGlobalChannel(@Param("id") long id);
+
+    @Query(value = EXISTS_IN_ARCHIVE + IN_CHANNEL + ")", nativeQuery = true)
+    boolean existsInArchiveOfChannel(@Param("id") long id, @Param("channelId") int channelId);
+
+    interface HistoryRow {
+        long getId();
+        String getAuthorNick();
+        String getContent();
+        LocalDateTime getCreatedAt();
+
+        default MessageResponseDTO toResponse() {
+            return new MessageResponseDTO(getId(), getAuthorNick(), getContent(), getCreatedAt());
+        }
+    }
+
+    interface SearchHit {
+        long getId();
+        String getAuthorNick();
+        String getContent();
+        LocalDateTime getCreatedAt();
+        float getRank();
+
+        default MessageResponseDTO toResponse() {
+            return new MessageResponseDTO(getId(), getAuthorNick(), getContent(), getCreatedAt());
+        }
+    }
 
-    List<Message> findAllByDeletedFalseAndChannelIsOrderByIdAsc(Channel channel);
+    interface UpdatedMessage {
+        long getId();
+        int getAuthorId();
+        String getNickname();
+        String getContent();
+        LocalDateTime getCreatedAt();
+        boolean isDeleted();
 
-    List<Message> findAllByDeletedFalseAndChannelIsNullOrderByIdAsc();
+        default Message toMessage(Channel channel) {
+            return Message.builder()
+                    .id(getId())
+                    .author(User.builder().id(getAuthorId()).nickname(getNickname()).build())
+                    .content(getContent())
+                    .createdAt(getCreatedAt())
+                    .channel(channel)
+                    .deleted(isDeleted())
+                    .build();
+        }
+    }
 }
@@ -0,0 +1,60 @@
+package com.zse.chat.message;
+
+import com.zse.chat.message.MessageController.MessageResponseDTO;
+import com.zse.chat.message.MessageRepository.SearchHit;
+import lombok.Builder;
+import lombok.Value;
+
+import java.util.List;
+
+@Value
+@Builder
+public class MessageSearchPage {
+
+    private static final String CURSOR_SEPARATOR = "_";
+
+    List<MessageResponseDTO> messages;
+    String nextCursor;
+
+    /**
+     * Builds page from hits ordered by rank with {@code limit + 1} rows,
+     * the extra row only tells whether more hits exist.
+     */
+    public static MessageSearchPage fromHits(List<SearchHit> hits, int limit) {
+        final var hasMore = hits.size() > limit;
+        final List<SearchHit> page = hasMore ? hits.subList(0, limit) : hits;
+
+        return MessageSearchPage.builder()
+                .messages(page.stream().map(SearchHit::toResponse).toList())
+                .nextCursor(hasMore ? formatCursor(page.get(page.size() - 1)) : null)
+                .build();
+    }
+
+    public static MessageSearchPage empty() {
+        return MessageSearchPage.builder().messages(List.of()).build();
+    }
+
+    /**
+     * Rank is written as shortest float literal, which parses back to the same value
+     * database compares against.
+     */
+    static String formatCursor(SearchHit hit) {
+        return hit.getRank() + CURSOR_SEPARATOR + hit.getId();
+    }
+
+    public static Cursor parseCursor(String cursor) {
+        final var separator = cursor.indexOf(CURSOR_SEPARATOR);
+        try {
+            return new Cursor(
+                    Float.parseFloat(cursor.substring(0, separator)),
+                    Long.parseLong(cursor.substring(separator + 1))
+            );
+        } catch (RuntimeException e) {
+            throw new InvalidCursorException(cursor);
+        }
+    }
+
+    public record Cursor(float rank, long id) {
+    }
+
+}
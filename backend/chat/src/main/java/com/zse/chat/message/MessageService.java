@@ -1,9 +1,15 @@
 package com.zse.chat.message;
 
 import com.zse.chat.login.MessageUpdateFailedException;
+import com.zse.chat.message.MessageController.MessageResponseDTO;
+import com.zse.chat.message.search.MessageSearchIndex;
 import com.zse.chat.user.User;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
 import java.util.List;
@@ -13,12 +19,49 @@ import java.util.List;
 public class MessageService {
 
     private final MessageRepository messageRepository;
+    private final ApplicationEventPublisher eventPublisher;
+    private final MessageOutbox messageOutbox;
+    private final MessageTailCache messageTailCache;
+    private final MessageWriteBatcher messageWriteBatcher;
+    private final MessageArchive messageArchive;
+    private final ObjectProvider<MessageSearchIndex> messageSearchIndex;
 
-    public List<Message> getAllMessagesInGlobalChannel() {
-        return messageRepository.findAllByDeletedFalseAndChannelIsNullOrderByIdAsc();
+    public MessagePage getMessagesInGlobalChannel(Long before, Long after, int limit) {
+        if (before != null && after != null) {
+            throw new InvalidCursorException();
+        }
+        if (before == null && after == null) {
+            return messageTailCache.getLatestPage(null, limit);
+        }
+        final var pageable = PageRequest.of(0, limit + 1);
+
+        if (after != null) {
+            final List<MessageResponseDTO> newer = messageRepository.findGlobalChannelPageAfter(after, pageable);
+            return MessagePage.fromNewer(messageArchive.withNewer(null, after, newer, limit + 1), limit, after);
+        }
+
+        final List<MessageResponseDTO> older = messageRepository.findGlobalChannelPageBefore(before, pageable);
+        return MessagePage.fromOlder(messageArchive.withOlder(null, before, older, limit + 1), limit);
+    }
+
+    public MessageSearchPage searchGlobalChannel(String query, String cursor, int limit) {
+        if (query == null || query.isBlank()) {
+            return MessageSearchPage.empty();
+        }
+        final var index = messageSearchIndex.getIfAvailable();
+        if (index != null) {
+            return index.search(null, query, cursor, limit);
+        }
+        if (cursor == null) {
+            return MessageSearchPage.fromHits(messageRepository.searchGlobalChannel(query, limit + 1), limit);
+        }
+
+        final var below = MessageSearchPage.parseCursor(cursor);
+        final var hits = messageRepository.searchGlobalChannelBelow(query, below.rank(), below.id(), limit + 1);
+        return MessageSearchPage.fromHits(hits, limit);
     }
 
-    public Message getMessageById(int id) {
+    public Message getMessageById(long id) {
         return messageRepository.findById(id).orElseThrow(() -> new MessageNotFoundException(id));
     }
 
@@ -28,33 +71,39 @@ public class MessageService {
                  .author(user)
                  .createdAt(LocalDateTime.now())
                  .build();
-         return messageRepository.save(newMessage);
+         final var savedMessage = messageWriteBatcher.save(newMessage);
+
+         eventPublisher.publishEvent(new MessageEvent(MessageEvent.Type.CREATED, savedMessage));
+         return savedMessage;
     }
 
-    public Message updateMessageById(int id, MessageController.MessageRequestDTO messageRequestDTO){
+    @Transactional
+    public Message updateMessageById(long id, MessageController.MessageRequestDTO messageRequestDTO){
         return updateMessageById(id, messageRequestDTO, false);
     }
 
-    public Message updateMessageById(int id, MessageController.MessageRequestDTO messageRequestDTO, boolean delete) {
-        final var previousMessage = getMessageById(id);
-
-        if(previousMessage.isDeleted()){
-            throw new MessageNotFoundException(previousMessage.getId());
-        }
-
-        if (!messageRequestDTO.getNickname().equals(previousMessage.getAuthor().getNickname())){
-            throw new MessageUpdateFailedException();
-        }
+    @Transactional
+    public Message updateMessageById(long id, MessageController.MessageRequestDTO messageRequestDTO, boolean delete) {
+        final var updated = delete ?
+                messageRepository.deleteGlobalChannelMessage(id, messageRequestDTO.getNickname()) :
+                messageRepository.editGlobalChannelMessage(
+                        id,
+                        messageRequestDTO.getNickname(),
+                        messageRequestDTO.getContent()
+                );
 
-        final var updatedMessage = Message.builder()
-                .id(previousMessage.getId())
-                .author(previousMessage.getAuthor())
-                .content(messageRequestDTO.getContent())
-                .createdAt(previousMessage.getCreatedAt())
-                .deleted(delete)
-                .build();
+        final var savedMessage = updated
+                .map(message -> message.toMessage(null))
+                .orElseThrow(() -> messageRepository.existsByIdAndDeletedFalseAndChannelIsNull(id) ?
+                        new MessageUpdateFailedException() :
+                        messageRepository.existsInArchiveOfGlobalChannel(id) ?
+                                new MessageArchivedException(id) :
+                                new MessageNotFoundException(id));
 
-        return messageRepository.save(updatedMessage);
+        final var event = new MessageEvent(delete ? MessageEvent.Type.DELETED : MessageEvent.Type.UPDATED, savedMessage);
+        messageOutbox.append(event);
+        eventPublisher.publishEvent(event);
+        return savedMessage;
     }
 
 }
@@ -0,0 +1,291 @@
+package com.zse.chat.message;
+
+import com.zse.chat.message.MessageController.MessageResponseDTO;
+import com.zse.chat.outbox.ChangeType;
+import com.zse.chat.outbox.ClusterChangeEvent;
+import com.zse.chat.outbox.ClusterResyncEvent;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.env.Environment;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps the latest messages of recently read channels, so reads of the latest page do not hit database.
+ * Tail is loaded on first read and later kept up to date by {@link MessageEvent} after commit
+ * and by {@link ClusterChangeEvent} for messages written by other instances. Tail of channel is dropped
+ * when messages are ingested into it in bulk, on any instance. All tails are dropped
+ * on {@link ClusterResyncEvent}, as changes of other instances may have been missed.
+ * Memory is bounded by {@code message-cache.max-channels} tails of {@link #CAPACITY} messages each.
+ */
+@Component
+public class MessageTailCache {
+
+    /**
+     * Enough to build the largest page together with the row telling whether older messages exist.
+     */
+    static final int CAPACITY = MessagePage.MAX_LIMIT + 1;
+
+    /**
+     * Key of global channel, channel ids from sequence start with 1.
+     */
+    private static final int GLOBAL_CHANNEL = 0;
+
+    private final MessageRepository messageRepository;
+    private final MessageArchive messageArchive;
+    private final MessageOutbox messageOutbox;
+    private final int maxChannels;
+    private final long idleTimeout;
+    private final Counter hits;
+    private final Counter misses;
+
+    private final Map<Integer, Tail> tails = new ConcurrentHashMap<>();
+
+    public MessageTailCache(
+            MessageRepository messageRepository,
+            MessageArchive messageArchive,
+            MessageOutbox messageOutbox,
+            MeterRegistry meterRegistry,
+            Environment env
+    ) {
+        this.messageRepository = messageRepository;
+        this.messageArchive = messageArchive;
+        this.messageOutbox = messageOutbox;
+        this.maxChannels = env.getProperty("message-cache.max-channels", Integer.class, 1000);
+        this.idleTimeout = env.getProperty("message-cache.idle-timeout", Duration.class, Duration.ofMinutes(30)).toMillis();
+        this.hits = meterRegistry.counter("message.cache.requests", "result", "hit");
+        this.misses = meterRegistry.counter("message.cache.requests", "result", "miss");
+        meterRegistry.gaugeMapSize("message.cache.channels", List.of(), tails);
+    }
+
+    /**
+     * @param channelId id of channel or {@code null} for global channel
+     */
+    public MessagePage getLatestPage(Integer channelId, int limit) {
+        final int key = channelId == null ? GLOBAL_CHANNEL : channelId;
+        final var tail = tails.computeIfAbsent(key, k -> new Tail());
+
+        final long version;
+        synchronized (tail) {
+            tail.lastAccess = System.currentTimeMillis();
+            final List<MessageResponseDTO> rows = tail.latest(limit + 1);
+            if (rows != null) {
+                hits.increment();
+                return MessagePage.fromOlder(rows, limit);
+            }
+            version = tail.version;
+        }
+        misses.increment();
+
+        final List<MessageResponseDTO> hotRows = channelId == null ?
+                messageRepository.findGlobalChannelPage(PageRequest.of(0, CAPACITY)) :
+                messageRepository.findChannelPage(channelId, PageRequest.of(0, CAPACITY));
+        // Channel quiet for longer than hot window has its latest messages in archive
+        final List<MessageResponseDTO> rows = messageArchive.withOlder(channelId, null, hotRows, CAPACITY);
+
+        synchronized (tail) {
+            // Messages changed while loading, next read will load them again
+            if (tail.version == version) {
+                tail.fill(rows);
+            }
+        }
+        evictOverLimit();
+
+        return MessagePage.fromOlder(rows.size() > limit + 1 ? rows.subList(0, limit + 1) : rows, limit);
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onMessageEvent(MessageEvent event) {
+        apply(event.channelId(), event.type(), MessageResponseDTO.of(event.message()));
+    }
+
+    @EventListener
+    public void onClusterChange(ClusterChangeEvent event) {
+        final var change = event.change();
+        if (change.type() == ChangeType.MESSAGES_INGESTED) {
+            tails.remove(change.channelId());
+            return;
+        }
+        final var type = MessageOutbox.eventTypeOf(change.type());
+        if (type != null) {
+            apply(change.channelId(), type, messageOutbox.readMessage(change));
+        }
+    }
+
+    @EventListener
+    public void onClusterResync(ClusterResyncEvent event) {
+        tails.clear();
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onMessagesIngested(MessagesIngestedEvent event) {
+        tails.remove(event.channelId());
+    }
+
+    @Scheduled(fixedDelayString = "${message-cache.eviction-interval:PT1M}")
+    public void evictIdleChannels() {
+        final long idleSince = System.currentTimeMillis() - idleTimeout;
+        tails.values().removeIf(tail -> tail.lastAccess < idleSince);
+    }
+
+    int countCachedChannels() {
+        return tails.size();
+    }
+
+    private void apply(Integer channelId, MessageEvent.Type type, MessageResponseDTO message) {
+        final var tail = tails.get(channelId == null ? GLOBAL_CHANNEL : channelId);
+        if (tail == null) {
+            return;
+        }
+
+        synchronized (tail) {
+            tail.version++;
+            if (!tail.loaded) {
+                return;
+            }
+            switch (type) {
+                case CREATED -> tail.insert(message);
+                case UPDATED -> tail.replace(message);
+                case DELETED -> tail.remove(message.getId());
+            }
+        }
+    }
+
+    private void evictOverLimit() {
+        while (tails.size() > maxChannels) {
+            tails.entrySet().stream()
+                    .min(Comparator.comparingLong(entry -> entry.getValue().lastAccess))
+                    .ifPresent(entry -> tails.remove(entry.getKey(), entry.getValue()));
+        }
+    }
+
+    /**
+     * Ring buffer of the latest not deleted messages of channel ordered by id.
+     * Guarded by its own monitor.
+     */
+    private static class Tail {
+
+        private final MessageResponseDTO[] buffer = new MessageResponseDTO[CAPACITY];
+        private int head;
+        private int size;
+        /**
+         * There are no older messages than the ones in buffer.
+         */
+        private boolean complete;
+        private boolean loaded;
+        private long version;
+        private volatile long lastAccess = System.currentTimeMillis();
+
+        /**
+         * @return up to {@code amount} latest messages by id descending or {@code null} if tail can not serve them
+         */
+        List<MessageResponseDTO> latest(int amount) {
+            if (!loaded || (size < amount && !complete)) {
+                return null;
+            }
+            final int count = Math.min(amount, size);
+            final List<MessageResponseDTO> rows = new ArrayList<>(count);
+            for (int i = size - 1; i >= size - count; i--) {
+                rows.add(get(i));
+            }
+            return rows;
+        }
+
+        /**
+         * @param rows the latest messages by id descending
+         */
+        void fill(List<MessageResponseDTO> rows) {
+            Arrays.fill(buffer, null);
+            head = 0;
+            size = 0;
+            for (int i = Math.min(rows.size(), CAPACITY) - 1; i >= 0; i--) {
+                buffer[size++] = rows.get(i);
+            }
+            complete = rows.size() < CAPACITY;
+            loaded = true;
+        }
+
+        void insert(MessageResponseDTO message) {
+            // Concurrent transactions may commit out of id order
+            int position = size;
+            while (position > 0 && get(position - 1).getId() > message.getId()) {
+                position--;
+            }
+            if (position > 0 && get(position - 1).getId() == message.getId()) {
+                // Already loaded together with tail
+                set(position - 1, message);
+                return;
+            }
+            if (size == CAPACITY) {
+                if (position == 0) {
+                    return;
+                }
+                head = (head + 1) % CAPACITY;
+                size--;
+                position--;
+                complete = false;
+            }
+            for (int i = size; i > position; i--) {
+                set(i, get(i - 1));
+            }
+            set(position, message);
+            size++;
+        }
+
+        void replace(MessageResponseDTO message) {
+            final int index = indexOf(message.getId());
+            if (index >= 0) {
+                set(index, message);
+            }
+        }
+
+        void remove(long id) {
+            final int index = indexOf(id);
+            if (index < 0) {
+                return;
+            }
+            for (int i = index; i < size - 1; i++) {
+                set(i, get(i + 1));
+            }
+            set(size - 1, null);
+            size--;
+        }
+
+        private int indexOf(long id) {
+            int low = 0;
+            int high = size - 1;
+            while (low <= high) {
+                final int middle = (low + high) >>> 1;
+                final long middleId = get(middle).getId();
+                if (middleId < id) {
+                    low = middle + 1;
+                } else if (middleId > id) {
+                    high = middle - 1;
+                } else {
+                    return middle;
+                }
+            }
+            return -1;
+        }
+
+        private MessageResponseDTO get(int index) {
+            return buffer[(head + index) % CAPACITY];
+        }
+
+        private void set(int index, MessageResponseDTO message) {
+            buffer[(head + index) % CAPACITY] = message;
+        }
+    }
+
+}
@@ -0,0 +1,143 @@
+package com.zse.chat.message;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Groups new messages arriving within {@code message-batch.window} and inserts them
+ * in one transaction, so Hibernate sends them as one JDBC batch.
+ * <p>
+ * The first waiting caller becomes leader and writes the whole batch with its own connection,
+ * the others wait until it is committed. There is no writer thread, which would need connection
+ * of its own while callers keep theirs. Creation of messages is written to {@link MessageOutbox}
+ * in the transaction of the batch.
+ */
+@Component
+@Slf4j
+public class MessageWriteBatcher {
+
+    private final MessageRepository messageRepository;
+    private final MessageOutbox messageOutbox;
+    private final TransactionTemplate transactionTemplate;
+    private final long windowNanos;
+    private final int maxSize;
+
+    private final ConcurrentLinkedQueue<PendingMessage> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean writing = new AtomicBoolean();
+
+    public MessageWriteBatcher(
+            MessageRepository messageRepository,
+            MessageOutbox messageOutbox,
+            PlatformTransactionManager transactionManager,
+            Environment env
+    ) {
+        this.messageRepository = messageRepository;
+        this.messageOutbox = messageOutbox;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.windowNanos = env.getProperty("message-batch.window", Duration.class, Duration.ofMillis(5)).toNanos();
+        this.maxSize = env.getProperty("message-batch.max-size", Integer.class, 50);
+    }
+
+    public Message save(Message message) {
+        final var pending = new PendingMessage(message, new CompletableFuture<>());
+        queue.add(pending);
+
+        while (!pending.result().isDone()) {
+            if (writing.compareAndSet(false, true)) {
+                try {
+                    writeBatch();
+                } finally {
+                    writing.set(false);
+                }
+            } else {
+                awaitLeader(pending);
+            }
+        }
+        try {
+            return pending.result().join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    private void writeBatch() {
+        // Give concurrent callers the window to join the batch
+        final long deadline = System.nanoTime() + windowNanos;
+        while (queue.size() < maxSize && System.nanoTime() < deadline) {
+            LockSupport.parkNanos(Math.min(deadline - System.nanoTime(), TimeUnit.MILLISECONDS.toNanos(1)));
+        }
+
+        final List<PendingMessage> batch = new ArrayList<>(maxSize);
+        PendingMessage next;
+        while (batch.size() < maxSize && (next = queue.poll()) != null) {
+            batch.add(next);
+        }
+        if (!batch.isEmpty()) {
+            write(batch);
+        }
+    }
+
+    private void awaitLeader(PendingMessage pending) {
+        try {
+            // Leader may have taken full batch without this message, so wake up to lead next one
+            pending.result().get(windowNanos * 2, TimeUnit.NANOSECONDS);
+        } catch (TimeoutException | ExecutionException e) {
+            // Checked again by caller
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for message write", e);
+        }
+    }
+
+    private void write(List<PendingMessage> batch) {
+        try {
+            final Iterable<Message> saved = transactionTemplate.execute(status -> {
+                final var messages = messageRepository.saveAll(batch.stream().map(PendingMessage::message).toList());
+                messages.forEach(message -> messageOutbox.append(new MessageEvent(MessageEvent.Type.CREATED, message)));
+                return messages;
+            });
+            final Iterator<Message> iterator = saved.iterator();
+            for (PendingMessage pending : batch) {
+                pending.result().complete(iterator.next());
+            }
+        } catch (RuntimeException e) {
+            log.warn("Failed to write batch of {} messages, writing them one by one", batch.size(), e);
+            batch.forEach(this::writeOne);
+        }
+    }
+
+    private void writeOne(PendingMessage pending) {
+        try {
+            pending.result().complete(transactionTemplate.execute(status -> {
+                final var message = messageRepository.save(pending.message());
+                messageOutbox.append(new MessageEvent(MessageEvent.Type.CREATED, message));
+                return message;
+            }));
+        } catch (RuntimeException e) {
+            pending.result().completeExceptionally(e);
+        }
+    }
+
+    private record PendingMessage(Message message, CompletableFuture<Message> result) {
+    }
+
+}
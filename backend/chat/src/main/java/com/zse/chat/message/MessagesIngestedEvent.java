@@ -0,0 +1,23 @@
+package com.zse.chat.message;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Published after many messages were inserted into channel at once,
+ * they are not published one by one as {@link MessageEvent}.
+ */
+public record MessagesIngestedEvent(
+        int channelId,
+        int authorId,
+        String authorNick,
+        LocalDateTime createdAt,
+        List<Long> ids,
+        List<String> contents
+) {
+
+    public int count() {
+        return ids.size();
+    }
+
+}
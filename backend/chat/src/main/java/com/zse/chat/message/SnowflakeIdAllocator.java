@@ -0,0 +1,51 @@
+package com.zse.chat.message;
+
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Time-ordered 64-bit ids made in process, without asking database.
+ * <p>
+ * Id is made of milliseconds since {@link #EPOCH} in the highest 41 bits, id of node in next 10 bits
+ * and counter of ids made by node within the millisecond in the lowest 12 bits. Nodes with different ids
+ * never make the same id, ids of one node always grow. Time and counter are kept in one {@link AtomicLong}
+ * and moved by compare and set. When counter of millisecond runs out, the next millisecond is borrowed
+ * instead of waiting for it, the same way clock moved back does not move ids back.
+ */
+public class SnowflakeIdAllocator {
+
+    public static final long EPOCH = Instant.parse("2024-01-01T00:00:00Z").toEpochMilli();
+    public static final int NODE_BITS = 10;
+    public static final int COUNTER_BITS = 12;
+    public static final int MAX_NODE_ID = (1 << NODE_BITS) - 1;
+
+    private final long node;
+    private final LongSupplier clock;
+    /**
+     * The last id without node, milliseconds shifted left by {@link #COUNTER_BITS} plus counter.
+     */
+    private final AtomicLong last = new AtomicLong();
+
+    public SnowflakeIdAllocator(int nodeId) {
+        this(nodeId, System::currentTimeMillis);
+    }
+
+    SnowflakeIdAllocator(int nodeId, LongSupplier clock) {
+        if (nodeId < 0 || nodeId > MAX_NODE_ID) {
+            throw new IllegalArgumentException("Node id has to be between 0 and " + MAX_NODE_ID + ": " + nodeId);
+        }
+        this.node = (long) nodeId << COUNTER_BITS;
+        this.clock = clock;
+    }
+
+    public long nextId() {
+        final long now = (clock.getAsLong() - EPOCH) << COUNTER_BITS;
+        final long next = last.accumulateAndGet(now, (previous, time) -> Math.max(previous + 1, time));
+
+        final long millis = next >>> COUNTER_BITS;
+        final long counter = next & ((1L << COUNTER_BITS) - 1);
+        return millis << (NODE_BITS + COUNTER_BITS) | node | counter;
+    }
+
+}
@@ -0,0 +1,55 @@
+package com.zse.chat.message.attachment;
+
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.Id;
+import java.time.LocalDateTime;
+
+@Entity
+@RequiredArgsConstructor
+@Getter
+@Builder(toBuilder = true)
+@FieldDefaults(makeFinal = true, level = AccessLevel.PRIVATE)
+public class Attachment {
+
+    @Id
+    @GeneratedValue(generator = "sequence-generator-attachment")
+    @GenericGenerator(
+            name = "sequence-generator-attachment",
+            strategy = "org.hibernate.id.enhanced.SequenceStyleGenerator",
+            parameters = {
+                    @Parameter(name = "sequence_name", value = "attachment_sequence"),
+                    @Parameter(name = "initial_value", value = "1"),
+                    @Parameter(name = "increment_size", value = "50"),
+                    @Parameter(name = "optimizer", value = "pooled-lo")
+            }
+    )
+    int id;
+
+    long messageId;
+    int channelId;
+    String fileName;
+    String contentType;
+    long size;
+    /**
+     * SHA-256 of content, name of blob in {@link AttachmentStore}.
+     */
+    String contentHash;
+    LocalDateTime createdAt;
+
+    protected Attachment(){
+        this.id = 0;
+        this.messageId = 0;
+        this.channelId = 0;
+        this.fileName = "";
+        this.contentType = "";
+        this.size = 0;
+        this.contentHash = "";
+        this.createdAt = null;
+    }
+}
@@ -0,0 +1,9 @@
+package com.zse.chat.message.attachment;
+
+public class AttachmentNotFoundException extends RuntimeException {
+
+    public AttachmentNotFoundException(int id) {
+        super("Attachment not found. No Id: " + id);
+    }
+
+}
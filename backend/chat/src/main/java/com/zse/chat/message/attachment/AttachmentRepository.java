@@ -0,0 +1,17 @@
+package com.zse.chat.message.attachment;
+
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface AttachmentRepository extends CrudRepository<Attachment, Integer> {
+
+    Optional<Attachment> findByIdAndChannelId(int id, int channelId);
+
+    List<Attachment> findByMessageIdInOrderById(Collection<Long> messageIds);
+
+}
@@ -0,0 +1,198 @@
+package com.zse.chat.message.attachment;
+
+import com.zse.chat.login.MessageUpdateFailedException;
+import com.zse.chat.message.MessageController.AttachmentResponseDTO;
+import com.zse.chat.message.MessageController.MessageResponseDTO;
+import com.zse.chat.message.MessageNotFoundException;
+import com.zse.chat.message.MessageRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Attachments of messages in channels, their content is kept in {@link AttachmentStore}.
+ * <p>
+ * Downloads are sent by servlet container with sendfile when it supports it, content then goes
+ * from page cache to socket without passing through heap. Otherwise file is transferred
+ * to response stream by {@link FileChannel#transferTo}. Single byte range is supported.
+ */
+@Service
+@RequiredArgsConstructor
+public class AttachmentService {
+
+    static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    private static final int MAX_NAME_LENGTH = 255;
+
+    private final AttachmentRepository attachmentRepository;
+    private final AttachmentStore attachmentStore;
+    private final MessageRepository messageRepository;
+
+    /**
+     * Attaches file to message, only its author can do that. Content is streamed to store as it is read.
+     */
+    public Attachment upload(
+            int channelId,
+            long messageId,
+            String nickname,
+            String fileName,
+            String contentType,
+            InputStream content
+    ) {
+        final var message = messageRepository.findById(messageId)
+                .filter(found -> !found.isDeleted())
+                .filter(found -> found.getChannel() != null && found.getChannel().getId() == channelId)
+                .orElseThrow(() -> new MessageNotFoundException(messageId));
+        if (!message.getAuthor().getNickname().equals(nickname)) {
+            throw new MessageUpdateFailedException();
+        }
+
+        final var blob = attachmentStore.store(content);
+        return attachmentRepository.save(Attachment.builder()
+                .messageId(messageId)
+                .channelId(channelId)
+                .fileName(normalizeFileName(fileName))
+                .contentType(StringUtils.hasText(contentType) ?
+                        truncate(contentType) :
+                        MediaType.APPLICATION_OCTET_STREAM_VALUE)
+                .size(blob.size())
+                .contentHash(blob.hash())
+                .createdAt(LocalDateTime.now())
+                .build());
+    }
+
+    public Attachment getAttachment(int channelId, int attachmentId) {
+        return attachmentRepository.findByIdAndChannelId(attachmentId, channelId)
+                .orElseThrow(() -> new AttachmentNotFoundException(attachmentId));
+    }
+
+    /**
+     * @return messages with their attachments, read by one query
+     */
+    public List<MessageResponseDTO> withAttachments(List<MessageResponseDTO> messages) {
+        if (messages.isEmpty()) {
+            return messages;
+        }
+        final var ids = messages.stream().map(MessageResponseDTO::getId).toList();
+        final var attachments = attachmentRepository.findByMessageIdInOrderById(ids).stream()
+                .collect(Collectors.groupingBy(
+                        Attachment::getMessageId,
+                        Collectors.mapping(AttachmentResponseDTO::of, Collectors.toList())
+                ));
+
+        return messages.stream()
+                .map(message -> attachments.containsKey(message.getId()) ?
+                        message.withAttachments(attachments.get(message.getId())) :
+                        message)
+                .toList();
+    }
+
+    /**
+     * Writes whole content or the requested range of it. Content of blob never changes,
+     * so its hash is strong entity tag.
+     */
+    public void send(
+            Attachment attachment,
+            String range,
+            String ifNoneMatch,
+            HttpServletRequest request,
+            HttpServletResponse response
+    ) throws IOException {
+        final var file = attachmentStore.path(attachment.getContentHash());
+        if (!Files.isReadable(file)) {
+            throw new AttachmentNotFoundException(attachment.getId());
+        }
+        final var size = attachment.getSize();
+        final var entityTag = "\"" + attachment.getContentHash() + "\"";
+
+        response.setHeader(HttpHeaders.ETAG, entityTag);
+        response.setHeader(HttpHeaders.CACHE_CONTROL, "private, max-age=31536000, immutable");
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+        if (entityTag.equals(ifNoneMatch)) {
+            response.setStatus(HttpStatus.NOT_MODIFIED.value());
+            return;
+        }
+        // Content types come from uploaders, browser must not render them in page of the app
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment()
+                .filename(attachment.getFileName(), StandardCharsets.UTF_8)
+                .build()
+                .toString());
+        response.setHeader("X-Content-Type-Options", "nosniff");
+        response.setContentType(attachment.getContentType());
+
+        long start = 0;
+        long end = size;
+        final var ranges = parseRanges(range);
+        // Several ranges would need multipart response, whole content is sent instead
+        if (ranges.size() == 1) {
+            start = ranges.get(0).getRangeStart(size);
+            end = ranges.get(0).getRangeEnd(size) + 1;
+            if (start >= end) {
+                response.setStatus(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE.value());
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + size);
+                return;
+            }
+            response.setStatus(HttpStatus.PARTIAL_CONTENT.value());
+            response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + (end - 1) + "/" + size);
+        }
+        response.setContentLengthLong(end - start);
+        if ("HEAD".equals(request.getMethod()) || size == 0) {
+            return;
+        }
+
+        if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+            request.setAttribute(SENDFILE_FILENAME, file.toAbsolutePath().toString());
+            request.setAttribute(SENDFILE_START, start);
+            request.setAttribute(SENDFILE_END, end);
+            return;
+        }
+        try (var channel = FileChannel.open(file); var out = Channels.newChannel(response.getOutputStream())) {
+            long position = start;
+            while (position < end) {
+                position += channel.transferTo(position, end - position, out);
+            }
+        }
+    }
+
+    private static List<HttpRange> parseRanges(String range) {
+        if (range == null) {
+            return List.of();
+        }
+        try {
+            return HttpRange.parseRanges(range);
+        } catch (IllegalArgumentException e) {
+            // Invalid range is ignored like missing one
+            return List.of();
+        }
+    }
+
+    private static String normalizeFileName(String fileName) {
+        final var name = StringUtils.getFilename(StringUtils.cleanPath(fileName));
+        return StringUtils.hasText(name) ? truncate(name) : "attachment";
+    }
+
+    private static String truncate(String value) {
+        return value.length() > MAX_NAME_LENGTH ? value.substring(0, MAX_NAME_LENGTH) : value;
+    }
+
+}
@@ -0,0 +1,118 @@
+package com.zse.chat.message.attachment;
+
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * Content-addressed blobs on local disk, every blob is file named by SHA-256 of its content.
+ * <p>
+ * Upload is written to temporary file through fixed buffer while it is hashed, then moved to its name.
+ * Content stored already is not written again, the temporary file is just dropped. Blobs are never changed
+ * once moved, so they can be sent straight from disk.
+ */
+@Component
+public class AttachmentStore {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Path directory;
+    private final Path uploads;
+    private final long maxSize;
+
+    public AttachmentStore(Environment env) {
+        this.directory = Path.of(env.getProperty("attachments.directory", "attachments"));
+        this.uploads = directory.resolve("uploads");
+        this.maxSize = env.getProperty("attachments.max-size", DataSize.class, DataSize.ofMegabytes(25)).toBytes();
+        try {
+            Files.createDirectories(uploads);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Reads content to its end without keeping it in memory.
+     *
+     * @throws AttachmentTooLargeException when content is larger than {@code attachments.max-size}
+     */
+    public StoredBlob store(InputStream content) {
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+
+        Path upload = null;
+        try {
+            upload = Files.createTempFile(uploads, "upload-", ".tmp");
+            long size = 0;
+            try (var out = FileChannel.open(upload, StandardOpenOption.WRITE)) {
+                final var buffer = new byte[BUFFER_SIZE];
+                int read;
+                while ((read = content.read(buffer)) != -1) {
+                    size += read;
+                    if (size > maxSize) {
+                        throw new AttachmentTooLargeException(maxSize);
+                    }
+                    digest.update(buffer, 0, read);
+                    final var bytes = ByteBuffer.wrap(buffer, 0, read);
+                    while (bytes.hasRemaining()) {
+                        out.write(bytes);
+                    }
+                }
+            }
+
+            final var hash = HexFormat.of().formatHex(digest.digest());
+            final var blob = path(hash);
+            if (!Files.exists(blob)) {
+                Files.createDirectories(blob.getParent());
+                try {
+                    Files.move(upload, blob, StandardCopyOption.ATOMIC_MOVE);
+                } catch (FileAlreadyExistsException e) {
+                    // The same content was uploaded concurrently
+                }
+            }
+            return new StoredBlob(hash, size);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            deleteQuietly(upload);
+        }
+    }
+
+    public Path path(String hash) {
+        // Blobs are spread over subdirectories, one directory would hold all of them otherwise
+        return directory.resolve(hash.substring(0, 2)).resolve(hash);
+    }
+
+    private static void deleteQuietly(Path upload) {
+        if (upload == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(upload);
+        } catch (IOException ignored) {
+            // Left in uploads directory, blobs are never read from there
+        }
+    }
+
+    public record StoredBlob(String hash, long size) {
+    }
+
+}
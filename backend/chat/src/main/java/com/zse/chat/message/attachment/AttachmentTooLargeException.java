@@ -0,0 +1,9 @@
+package com.zse.chat.message.attachment;
+
+public class AttachmentTooLargeException extends RuntimeException {
+
+    public AttachmentTooLargeException(long maxSize) {
+        super("Attachment can not be larger than " + maxSize + " bytes");
+    }
+
+}
@@ -0,0 +1,8 @@
+package com.zse.chat.message.channel;
+
+public class BulkLimitExceededException extends RuntimeException {
+
+    public BulkLimitExceededException(int limit) {
+        super("Too many messages in one request. Limit: " + limit);
+    }
+}
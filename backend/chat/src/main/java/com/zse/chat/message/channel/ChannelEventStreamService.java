@@ -0,0 +1,318 @@
+package com.zse.chat.message.channel;
+
+import com.zse.chat.fanout.FanOutEngine;
+import com.zse.chat.fanout.FanOutSink;
+import com.zse.chat.fanout.FanOutSubscriber;
+import com.zse.chat.message.MessageController.MessageResponseDTO;
+import com.zse.chat.message.MessageEvent;
+import com.zse.chat.message.MessageOutbox;
+import com.zse.chat.message.MessagePage;
+import com.zse.chat.message.MessageRepository;
+import com.zse.chat.message.MessagesIngestedEvent;
+import com.zse.chat.outbox.ChangeType;
+import com.zse.chat.outbox.ClusterChangeEvent;
+import com.zse.chat.outbox.ClusterResyncEvent;
+import lombok.Builder;
+import lombok.extern.jackson.Jacksonized;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.env.Environment;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps open SSE streams per channel. Emitters are completed asynchronously,
+ * so idle streams do not hold servlet threads.
+ * Events are sent by {@link FanOutEngine}, listeners only queue them for every stream of channel.
+ * Only created messages carry event id, so Last-Event-ID always points to the newest seen message.
+ * Live events which come while stream is replayed are held back until replay is done, so they never
+ * interleave with replayed messages. Typing events are not replayed. Messages written by other instances come by {@link ClusterChangeEvent},
+ * all streams are told to reload on {@link ClusterResyncEvent}, when some of them may have been missed.
+ */
+@Service
+@Slf4j
+public class ChannelEventStreamService {
+
+    static final int REPLAY_LIMIT = 1000;
+
+    private static final StreamEvent HEARTBEAT = new StreamEvent(null, null, null);
+    private static final StreamEvent RELOAD = new StreamEvent("reload", null, null);
+
+    private final MessageRepository messageRepository;
+    private final FanOutEngine fanOutEngine;
+    private final MessageOutbox messageOutbox;
+    private final long timeout;
+
+    private final Map<Integer, Map<SseEmitter, FanOutSubscriber>> emitters = new ConcurrentHashMap<>();
+
+    public ChannelEventStreamService(
+            MessageRepository messageRepository,
+            FanOutEngine fanOutEngine,
+            MessageOutbox messageOutbox,
+            Environment env
+    ) {
+        this.messageRepository = messageRepository;
+        this.fanOutEngine = fanOutEngine;
+        this.messageOutbox = messageOutbox;
+        this.timeout = env.getProperty("sse.timeout", Duration.class, Duration.ofMinutes(30)).toMillis();
+    }
+
+    public SseEmitter subscribe(int channelId, Long lastEventId) {
+        final var emitter = new SseEmitter(timeout);
+        final var sink = new EmitterSink(channelId, emitter, lastEventId != null);
+        final var subscriber = fanOutEngine.subscribe(sink);
+        emitters.computeIfAbsent(channelId, id -> new ConcurrentHashMap<>()).put(emitter, subscriber);
+
+        emitter.onCompletion(() -> remove(channelId, emitter));
+        emitter.onTimeout(() -> remove(channelId, emitter));
+        emitter.onError(e -> remove(channelId, emitter));
+
+        if (lastEventId != null) {
+            try {
+                replay(channelId, lastEventId, emitter, sink);
+            } catch (IOException | IllegalStateException e) {
+                log.debug("Removing SSE stream of channel {} due to: {}", channelId, e.getMessage());
+                remove(channelId, emitter);
+            }
+        }
+        return emitter;
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onMessageEvent(MessageEvent event) {
+        final var channelId = event.channelId();
+        if (channelId == null) {
+            return;
+        }
+        final Map<SseEmitter, FanOutSubscriber> channelEmitters = emitters.get(channelId);
+        if (channelEmitters == null || channelEmitters.isEmpty()) {
+            return;
+        }
+
+        final var dto = MessageResponseDTO.of(event.message());
+        final var streamEvent = createStreamEvent(event.type(), dto);
+        channelEmitters.values().forEach(subscriber -> subscriber.offer(streamEvent));
+    }
+
+    @EventListener
+    public void onClusterChange(ClusterChangeEvent event) {
+        final var change = event.change();
+        if (change.channelId() == null) {
+            return;
+        }
+        final Map<SseEmitter, FanOutSubscriber> channelEmitters = emitters.get(change.channelId());
+        if (channelEmitters == null || channelEmitters.isEmpty()) {
+            return;
+        }
+
+        if (change.type() == ChangeType.MESSAGES_INGESTED) {
+            channelEmitters.values().forEach(subscriber -> subscriber.offer(RELOAD));
+            return;
+        }
+        final var type = MessageOutbox.eventTypeOf(change.type());
+        if (type != null) {
+            final var streamEvent = createStreamEvent(type, messageOutbox.readMessage(change));
+            channelEmitters.values().forEach(subscriber -> subscriber.offer(streamEvent));
+        }
+    }
+
+    /**
+     * Bulk of messages would not fit into queues of streams, clients should reload history instead.
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onMessagesIngested(MessagesIngestedEvent event) {
+        final Map<SseEmitter, FanOutSubscriber> channelEmitters = emitters.get(event.channelId());
+        if (channelEmitters != null) {
+            channelEmitters.values().forEach(subscriber -> subscriber.offer(RELOAD));
+        }
+    }
+
+    /**
+     * Changes of other instances may have been missed, clients should reload history.
+     */
+    @EventListener
+    public void onClusterResync(ClusterResyncEvent event) {
+        emitters.values().forEach(channelEmitters -> channelEmitters.values()
+                .forEach(subscriber -> subscriber.offer(RELOAD)));
+    }
+
+    @EventListener
+    public void onTypingEvent(ChannelTypingEvent event) {
+        final Map<SseEmitter, FanOutSubscriber> channelEmitters = emitters.get(event.channelId());
+        if (channelEmitters == null || channelEmitters.isEmpty()) {
+            return;
+        }
+
+        final var dto = TypingEventDTO.builder()
+                .nickname(event.nickname())
+                .typing(event.typing())
+                .build();
+        final var streamEvent = new StreamEvent("typing", null, dto);
+        channelEmitters.values().forEach(subscriber -> subscriber.offer(streamEvent));
+    }
+
+    @Scheduled(fixedDelayString = "${sse.heartbeat:PT15S}")
+    public void sendHeartbeat() {
+        emitters.values().forEach(channelEmitters -> channelEmitters.values().forEach(subscriber -> {
+            // Streams with queued events do not need heartbeat
+            if (subscriber.size() == 0) {
+                subscriber.offer(HEARTBEAT);
+            }
+        }));
+    }
+
+    int countSubscribers(int channelId) {
+        return emitters.getOrDefault(channelId, Map.of()).size();
+    }
+
+    private void replay(int channelId, long lastEventId, SseEmitter emitter, EmitterSink sink) throws IOException {
+        long cursor = lastEventId;
+        int remaining = REPLAY_LIMIT;
+        boolean more;
+        do {
+            // One row more than is sent tells whether anything is left after the page
+            final int limit = Math.min(MessagePage.MAX_LIMIT, remaining);
+            final var page = messageRepository.findChannelPageAfter(channelId, cursor, PageRequest.of(0, limit + 1));
+            more = page.size() > limit;
+            for (MessageResponseDTO message : page.subList(0, Math.min(page.size(), limit))) {
+                emitter.send(createEvent(createStreamEvent(MessageEvent.Type.CREATED, message)));
+                cursor = message.getId();
+            }
+            remaining -= limit;
+        } while (more && remaining > 0);
+
+        if (more) {
+            // Client was away too long, it should reload history by paged endpoint
+            emitter.send(createEvent(RELOAD));
+        }
+        sink.replayed(cursor);
+    }
+
+    private static StreamEvent createStreamEvent(MessageEvent.Type type, MessageResponseDTO message) {
+        final var id = type == MessageEvent.Type.CREATED ? String.valueOf(message.getId()) : null;
+        return new StreamEvent(type.name().toLowerCase(), id, message);
+    }
+
+    private void remove(int channelId, SseEmitter emitter) {
+        emitters.computeIfPresent(channelId, (id, channelEmitters) -> {
+            final var subscriber = channelEmitters.remove(emitter);
+            if (subscriber != null) {
+                subscriber.close();
+            }
+            return channelEmitters.isEmpty() ? null : channelEmitters;
+        });
+    }
+
+    private static SseEmitter.SseEventBuilder createEvent(StreamEvent streamEvent) {
+        final var event = SseEmitter.event().name(streamEvent.name());
+        if (streamEvent.id() != null) {
+            event.id(streamEvent.id());
+        }
+        return streamEvent.data() == null ? event.data("") : event.data(streamEvent.data());
+    }
+
+    /**
+     * Event queued for all streams of channel, built into {@link SseEmitter.SseEventBuilder} per stream,
+     * as builder cannot be sent twice.
+     */
+    private record StreamEvent(String name, String id, Object data) {
+    }
+
+    private class EmitterSink implements FanOutSink {
+
+        private final int channelId;
+        private final SseEmitter emitter;
+
+        /**
+         * Live events held back while stream is replayed, {@code null} once replay is done.
+         */
+        private List<Object> held;
+        private boolean heldOverflow;
+        private long replayedUpTo;
+
+        private EmitterSink(int channelId, SseEmitter emitter, boolean replaying) {
+            this.channelId = channelId;
+            this.emitter = emitter;
+            this.held = replaying ? new ArrayList<>() : null;
+        }
+
+        @Override
+        public synchronized void send(Object item) throws IOException {
+            if (held == null) {
+                write(item);
+            } else if (item != HEARTBEAT && !heldOverflow) {
+                hold(item);
+            }
+        }
+
+        @Override
+        public synchronized void resync() throws IOException {
+            // Client missed events, it should reload history by paged endpoint
+            send(RELOAD);
+        }
+
+        @Override
+        public void disconnect() {
+            remove(channelId, emitter);
+            emitter.complete();
+        }
+
+        /**
+         * Sends events held back during replay. Messages up to the last replayed one were already sent,
+         * they are skipped also when queued event reaches stream only later.
+         */
+        private synchronized void replayed(long lastReplayedId) throws IOException {
+            final var replayedHeld = held;
+            replayedUpTo = lastReplayedId;
+            held = null;
+            if (heldOverflow) {
+                write(RELOAD);
+                return;
+            }
+            for (Object item : replayedHeld) {
+                write(item);
+            }
+        }
+
+        private void hold(Object item) {
+            if (held.size() == REPLAY_LIMIT) {
+                // Stream would be told to reload anyway, events before that are of no use
+                held.clear();
+                heldOverflow = true;
+            } else {
+                held.add(item);
+            }
+        }
+
+        private void write(Object item) throws IOException {
+            if (item == HEARTBEAT) {
+                emitter.send(SseEmitter.event().comment("heartbeat"));
+            } else if (item instanceof StreamEvent streamEvent && !isReplayed(streamEvent)) {
+                emitter.send(createEvent(streamEvent));
+            }
+        }
+
+        private boolean isReplayed(StreamEvent streamEvent) {
+            return streamEvent.id() != null && Long.parseLong(streamEvent.id()) <= replayedUpTo;
+        }
+
+    }
+
+    //region DTOs
+    @Builder
+    @Jacksonized
+    record TypingEventDTO(String nickname, boolean typing) {
+    }
+    //endregion
+
+}
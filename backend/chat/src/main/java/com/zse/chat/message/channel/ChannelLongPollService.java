@@ -0,0 +1,164 @@
+package com.zse.chat.message.channel;
+
+import com.zse.chat.message.MessageController.MessagePageResponseDTO;
+import com.zse.chat.message.MessageController.MessageResponseDTO;
+import com.zse.chat.message.MessageEvent;
+import com.zse.chat.message.MessageOutbox;
+import com.zse.chat.message.MessagePage;
+import com.zse.chat.message.MessageRepository;
+import com.zse.chat.message.MessagesIngestedEvent;
+import com.zse.chat.outbox.ChangeType;
+import com.zse.chat.outbox.ClusterChangeEvent;
+import com.zse.chat.outbox.ClusterResyncEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.env.Environment;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Parks poll requests in {@link DeferredResult} until new message in channel is created.
+ * Waiting request keeps neither servlet thread nor database connection. Once {@link MessageEvent}
+ * or {@link MessagesIngestedEvent} tells about message newer than its cursor, page is queried again
+ * from the cursor, so messages committed concurrently are not skipped by the next poll.
+ * Messages of other instances wake waiters by {@link ClusterChangeEvent}, all waiters query again
+ * on {@link ClusterResyncEvent}, when some of them may have been missed.
+ */
+@Service
+public class ChannelLongPollService {
+
+    private final MessageRepository messageRepository;
+    private final MessageOutbox messageOutbox;
+    private final long timeout;
+
+    private final Map<Integer, Set<Waiter>> waiters = new ConcurrentHashMap<>();
+
+    public ChannelLongPollService(MessageRepository messageRepository, MessageOutbox messageOutbox, Environment env) {
+        this.messageRepository = messageRepository;
+        this.messageOutbox = messageOutbox;
+        this.timeout = env.getProperty("long-poll.timeout", Duration.class, Duration.ofSeconds(30)).toMillis();
+    }
+
+    public DeferredResult<MessagePageResponseDTO> poll(int channelId, long after, int limit) {
+        final var result = new DeferredResult<MessagePageResponseDTO>(
+                timeout,
+                createMessagePageResponseDTO(MessagePage.fromNewer(List.of(), limit, after))
+        );
+        final var waiter = new Waiter(after, limit, result);
+
+        // Register before querying, so message committed in between is not lost
+        waiters.computeIfAbsent(channelId, id -> ConcurrentHashMap.newKeySet()).add(waiter);
+        result.onCompletion(() -> remove(channelId, waiter));
+
+        final List<MessageResponseDTO> rows = messageRepository.findChannelPageAfter(
+                channelId,
+                after,
+                PageRequest.of(0, limit + 1)
+        );
+        if (!rows.isEmpty()) {
+            result.setResult(createMessagePageResponseDTO(MessagePage.fromNewer(rows, limit, after)));
+            remove(channelId, waiter);
+        }
+
+        return result;
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onMessageEvent(MessageEvent event) {
+        final var channelId = event.channelId();
+        if (event.type() != MessageEvent.Type.CREATED || channelId == null) {
+            return;
+        }
+        wake(channelId, event.message().getId());
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onMessagesIngested(MessagesIngestedEvent event) {
+        wake(event.channelId(), Collections.max(event.ids()));
+    }
+
+    @EventListener
+    public void onClusterChange(ClusterChangeEvent event) {
+        final var change = event.change();
+        if (change.channelId() == null) {
+            return;
+        }
+        if (change.type() == ChangeType.MESSAGE_CREATED) {
+            wake(change.channelId(), messageOutbox.readMessage(change).getId());
+        } else if (change.type() == ChangeType.MESSAGES_INGESTED) {
+            wake(change.channelId(), messageOutbox.readIngested(change).lastId());
+        }
+    }
+
+    @EventListener
+    public void onClusterResync(ClusterResyncEvent event) {
+        waiters.keySet().forEach(channelId -> wake(channelId, Long.MAX_VALUE));
+    }
+
+    int countWaiters(int channelId) {
+        return waiters.getOrDefault(channelId, Set.of()).size();
+    }
+
+    /**
+     * Completes waiters whose cursor is older than the newest message with page queried again from the cursor,
+     * messages committed meanwhile by other writers are returned too. Waiters at the same cursor share the query.
+     */
+    private void wake(int channelId, long newestId) {
+        final Set<Waiter> channelWaiters = waiters.get(channelId);
+        if (channelWaiters == null || channelWaiters.isEmpty()) {
+            return;
+        }
+
+        final Map<Cursor, List<MessageResponseDTO>> pages = new HashMap<>();
+        for (Waiter waiter : channelWaiters) {
+            if (newestId <= waiter.after()) {
+                continue;
+            }
+            final var rows = pages.computeIfAbsent(
+                    new Cursor(waiter.after(), waiter.limit()),
+                    cursor -> messageRepository.findChannelPageAfter(
+                            channelId,
+                            cursor.after(),
+                            PageRequest.of(0, cursor.limit() + 1)
+                    )
+            );
+            if (!rows.isEmpty()) {
+                waiter.result().setResult(createMessagePageResponseDTO(
+                        MessagePage.fromNewer(rows, waiter.limit(), waiter.after())
+                ));
+                remove(channelId, waiter);
+            }
+        }
+    }
+
+    private void remove(int channelId, Waiter waiter) {
+        waiters.computeIfPresent(channelId, (id, channelWaiters) -> {
+            channelWaiters.remove(waiter);
+            return channelWaiters.isEmpty() ? null : channelWaiters;
+        });
+    }
+
+    private MessagePageResponseDTO createMessagePageResponseDTO(MessagePage page) {
+        return MessagePageResponseDTO.builder()
+                .messages(page.getMessages())
+                .previousCursor(page.getPreviousCursor())
+                .nextCursor(page.getNextCursor())
+                .build();
+    }
+
+    private record Waiter(long after, int limit, DeferredResult<MessagePageResponseDTO> result) {
+    }
+
+    private record Cursor(long after, int limit) {
+    }
+
+}
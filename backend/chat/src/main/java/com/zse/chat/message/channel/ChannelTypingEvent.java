@@ -0,0 +1,7 @@
+package com.zse.chat.message.channel;
+
+/**
+ * Published by {@link ChannelTypingService} when user starts or stops typing in channel.
+ */
+public record ChannelTypingEvent(int channelId, String nickname, boolean typing) {
+}
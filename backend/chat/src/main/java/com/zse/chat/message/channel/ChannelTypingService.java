@@ -0,0 +1,145 @@
+package com.zse.chat.message.channel;
+
+import com.zse.chat.message.MessageEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.core.env.Environment;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Users typing in channels, kept only in memory. Every report keeps user typing for {@code typing.expiry}.
+ * <p>
+ * Expiry is driven by timing wheel advanced every {@code typing.tick}, user is put into the slot
+ * of the tick their report expires in. Repeated reports only move the expiry and put user into later slot,
+ * the earlier one finds them still typing and skips them. {@link ChannelTypingEvent} is published only
+ * when user starts and stops typing, not for every report.
+ */
+@Service
+public class ChannelTypingService {
+
+    private final ApplicationEventPublisher eventPublisher;
+    private final long ticksToExpire;
+    private final long accessRecheck;
+
+    private final Map<TypingKey, Typist> typists = new ConcurrentHashMap<>();
+    /**
+     * One slot more than expiry takes, so slot being filled is never the one being expired.
+     */
+    private final Set<TypingKey>[] wheel;
+    private volatile long currentTick;
+
+    @SuppressWarnings("unchecked")
+    public ChannelTypingService(ApplicationEventPublisher eventPublisher, Environment env) {
+        this.eventPublisher = eventPublisher;
+        final var tick = env.getProperty("typing.tick", Duration.class, Duration.ofMillis(500));
+        final var expiry = env.getProperty("typing.expiry", Duration.class, Duration.ofSeconds(5));
+        this.ticksToExpire = Math.max(1, (expiry.toMillis() + tick.toMillis() - 1) / tick.toMillis());
+        this.accessRecheck = env.getProperty("typing.access-recheck", Duration.class, Duration.ofSeconds(30)).toMillis();
+
+        this.wheel = new Set[(int) ticksToExpire + 1];
+        for (int i = 0; i < wheel.length; i++) {
+            wheel[i] = ConcurrentHashMap.newKeySet();
+        }
+    }
+
+    /**
+     * Keeps user typing if their access to channel was checked recently.
+     *
+     * @return {@code false} when user has to be checked and {@link #start(int, String)} called instead
+     */
+    public boolean refresh(int channelId, String nickname) {
+        final var key = new TypingKey(channelId, nickname);
+        final long expiresAt = currentTick + ticksToExpire;
+        final long checkedSince = System.currentTimeMillis() - accessRecheck;
+
+        final var typist = typists.computeIfPresent(key, (k, current) -> current.checkedAt() < checkedSince ?
+                current :
+                new Typist(Math.max(current.expiresAt(), expiresAt), current.checkedAt()));
+        if (typist == null || typist.checkedAt() < checkedSince) {
+            return false;
+        }
+        wheel[slot(typist.expiresAt())].add(key);
+        return true;
+    }
+
+    /**
+     * Marks user typing, their access to channel has to be checked before.
+     */
+    public void start(int channelId, String nickname) {
+        final var key = new TypingKey(channelId, nickname);
+        final long expiresAt = currentTick + ticksToExpire;
+
+        final var previous = typists.put(key, new Typist(expiresAt, System.currentTimeMillis()));
+        wheel[slot(expiresAt)].add(key);
+        if (previous == null) {
+            eventPublisher.publishEvent(new ChannelTypingEvent(channelId, nickname, true));
+        }
+    }
+
+    /**
+     * @return nicknames of users typing in channel
+     */
+    public List<String> getTyping(int channelId) {
+        return typists.keySet().stream()
+                .filter(key -> key.channelId() == channelId)
+                .map(TypingKey::nickname)
+                .sorted(Comparator.naturalOrder())
+                .toList();
+    }
+
+    /**
+     * User who sent message stopped typing it.
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onMessageEvent(MessageEvent event) {
+        final var channelId = event.channelId();
+        if (event.type() != MessageEvent.Type.CREATED || channelId == null) {
+            return;
+        }
+        stop(new TypingKey(channelId, event.message().getAuthor().getNickname()));
+    }
+
+    @Scheduled(fixedRateString = "${typing.tick:PT0.5S}")
+    public void advance() {
+        final long tick = currentTick + 1;
+        currentTick = tick;
+
+        final Set<TypingKey> slot = wheel[slot(tick)];
+        for (TypingKey key : slot) {
+            slot.remove(key);
+            final var typist = typists.get(key);
+            // Missing ones stopped already, the later ones were refreshed into later slot
+            if (typist != null && typist.expiresAt() <= tick && typists.remove(key, typist)) {
+                eventPublisher.publishEvent(new ChannelTypingEvent(key.channelId(), key.nickname(), false));
+            }
+        }
+    }
+
+    private void stop(TypingKey key) {
+        if (typists.remove(key) != null) {
+            eventPublisher.publishEvent(new ChannelTypingEvent(key.channelId(), key.nickname(), false));
+        }
+    }
+
+    private int slot(long tick) {
+        return (int) (tick % wheel.length);
+    }
+
+    private record TypingKey(int channelId, String nickname) {
+    }
+
+    /**
+     * @param checkedAt time access of user to channel was checked at
+     */
+    private record Typist(long expiresAt, long checkedAt) {
+    }
+
+}
@@ -0,0 +1,149 @@
+package com.zse.chat.message.channel;
+
+import com.zse.chat.message.MessageIdGenerator;
+import com.zse.chat.message.MessageOutbox;
+import com.zse.chat.message.MessagesIngestedEvent;
+import com.zse.chat.message.SnowflakeIdAllocator;
+import com.zse.chat.user.User;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceUtils;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.sql.DataSource;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Inserts many messages into one channel in single transaction, bypassing persistence context.
+ * Small batches are sent as JDBC batch, which driver rewrites to multi-row inserts,
+ * large ones are streamed with {@code COPY}. Ids are taken from {@code message_sequence} one value per message,
+ * the same way {@link MessageIdGenerator} takes them for messages written one by one.
+ * The whole bulk is written to {@link MessageOutbox} as one change.
+ */
+@Service
+public class MessageBulkIngestService {
+
+    private static final String INSERT_MESSAGE =
+            "insert into message (id, content, created_at, deleted, nickname, channel_id) values (?, ?, ?, false, ?, ?)";
+    private static final String COPY_MESSAGES =
+            "copy message (id, content, created_at, deleted, nickname, channel_id) from stdin (format csv)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final DataSource dataSource;
+    private final MessageOutbox messageOutbox;
+    private final ApplicationEventPublisher eventPublisher;
+    private final ObjectProvider<SnowflakeIdAllocator> messageIdAllocator;
+    private final int maxSize;
+    private final int copyThreshold;
+
+    public MessageBulkIngestService(
+            JdbcTemplate jdbcTemplate,
+            DataSource dataSource,
+            MessageOutbox messageOutbox,
+            ApplicationEventPublisher eventPublisher,
+            ObjectProvider<SnowflakeIdAllocator> messageIdAllocator,
+            Environment env
+    ) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.dataSource = dataSource;
+        this.messageOutbox = messageOutbox;
+        this.eventPublisher = eventPublisher;
+        this.messageIdAllocator = messageIdAllocator;
+        this.maxSize = env.getProperty("message-bulk.max-size", Integer.class, 100_000);
+        this.copyThreshold = env.getProperty("message-bulk.copy-threshold", Integer.class, 1000);
+    }
+
+    @Transactional
+    public int ingest(int channelId, User author, List<String> contents) {
+        if (contents.size() > maxSize) {
+            throw new BulkLimitExceededException(maxSize);
+        }
+        if (contents.isEmpty()) {
+            return 0;
+        }
+        final List<Long> ids = allocateIds(contents.size());
+        final var now = LocalDateTime.now();
+        final var createdAt = Timestamp.valueOf(now);
+
+        if (contents.size() >= copyThreshold) {
+            copy(channelId, author.getId(), contents, ids, createdAt);
+        } else {
+            insert(channelId, author.getId(), contents, ids, createdAt);
+        }
+
+        final var event = new MessagesIngestedEvent(channelId, author.getId(), author.getNickname(), now, ids, contents);
+        messageOutbox.append(event);
+        eventPublisher.publishEvent(event);
+        return contents.size();
+    }
+
+    private List<Long> allocateIds(int amount) {
+        final var allocator = messageIdAllocator.getIfAvailable();
+        if (allocator != null) {
+            final List<Long> ids = new ArrayList<>(amount);
+            for (int i = 0; i < amount; i++) {
+                ids.add(allocator.nextId());
+            }
+            return ids;
+        }
+
+        return jdbcTemplate.queryForList(
+                "select nextval('message_sequence') from generate_series(1, ?)",
+                Long.class,
+                amount
+        );
+    }
+
+    private void insert(int channelId, int authorId, List<String> contents, List<Long> ids, Timestamp createdAt) {
+        final List<Object[]> rows = new ArrayList<>(contents.size());
+        for (int i = 0; i < contents.size(); i++) {
+            rows.add(new Object[]{ids.get(i), contents.get(i), createdAt, authorId, channelId});
+        }
+        jdbcTemplate.batchUpdate(INSERT_MESSAGE, rows);
+    }
+
+    private void copy(int channelId, int authorId, List<String> contents, List<Long> ids, Timestamp createdAt) {
+        final var connection = DataSourceUtils.getConnection(dataSource);
+        try {
+            final CopyIn copyIn = connection.unwrap(PGConnection.class).getCopyAPI().copyIn(COPY_MESSAGES);
+            try {
+                final var suffix = "," + createdAt + ",false," + authorId + "," + channelId + "\n";
+                for (int i = 0; i < contents.size(); i++) {
+                    final byte[] row = (ids.get(i) + "," + toCsv(contents.get(i)) + suffix)
+                            .getBytes(StandardCharsets.UTF_8);
+                    copyIn.writeToCopy(row, 0, row.length);
+                }
+                copyIn.endCopy();
+            } finally {
+                if (copyIn.isActive()) {
+                    copyIn.cancelCopy();
+                }
+            }
+        } catch (SQLException e) {
+            throw jdbcTemplate.getExceptionTranslator().translate("COPY message", COPY_MESSAGES, e);
+        } finally {
+            DataSourceUtils.releaseConnection(connection, dataSource);
+        }
+    }
+
+    /**
+     * Unquoted empty field is read by COPY as NULL, quoted one as empty string.
+     */
+    private static String toCsv(String value) {
+        if (value == null) {
+            return "";
+        }
+        return "\"" + value.replace("\"", "\"\"") + "\"";
+    }
+
+}
@@ -1,11 +1,23 @@
 package com.zse.chat.message.channel;
 
 import com.zse.chat.channel.Channel;
+import com.zse.chat.channel.ChannelReadStateService;
 import com.zse.chat.channel.ChannelService;
 import com.zse.chat.login.VerifyJWT;
-import com.zse.chat.message.Message;
+import com.zse.chat.message.MessageExportService;
+import com.zse.chat.message.MessageController.AttachmentResponseDTO;
+import com.zse.chat.message.MessageController.MessageBulkRequestDTO;
+import com.zse.chat.message.MessageController.MessageBulkResponseDTO;
+import com.zse.chat.message.MessageController.MessagePageResponseDTO;
+import com.zse.chat.message.MessageController.MessageReactionRequestDTO;
+import com.zse.chat.message.MessageController.MessageReadRequestDTO;
+import com.zse.chat.message.MessageController.MessageReadersResponseDTO;
 import com.zse.chat.message.MessageController.MessageRequestDTO;
 import com.zse.chat.message.MessageController.MessageResponseDTO;
+import com.zse.chat.message.MessageController.MessageSearchPageResponseDTO;
+import com.zse.chat.message.MessagePage;
+import com.zse.chat.message.MessageReactionService;
+import com.zse.chat.message.attachment.AttachmentService;
 import com.zse.chat.user.UserService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
@@ -13,9 +25,19 @@ import io.swagger.v3.oas.annotations.security.SecurityRequirement;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
 import java.util.List;
+import java.util.Optional;
 
 @Tag(name = "Messages in channels", description = "Endpoints to messages in specified channels")
 @RequestMapping("/messages/channels/{channelId}")
@@ -26,26 +48,180 @@ import java.util.List;
 public class MessageChannelController {
 
     private final MessageChannelService messageChannelService;
+    private final MessageExportService messageExportService;
+    private final ChannelEventStreamService channelEventStreamService;
+    private final ChannelLongPollService channelLongPollService;
+    private final MessageBulkIngestService messageBulkIngestService;
+    private final ChannelTypingService channelTypingService;
     private final UserService userService;
     private final ChannelService channelService;
+    private final ChannelReadStateService channelReadStateService;
+    private final MessageReactionService messageReactionService;
+    private final AttachmentService attachmentService;
 
     @Operation(
-            summary = "Get all messages in channel",
-            parameters = @Parameter(name = "channelId", description = "Channel Id")
+            summary = "Get page of messages in channel",
+            description = "Without cursor returns the latest messages. " +
+                    "Pass previousCursor as \"before\" to get older messages " +
+                    "or nextCursor as \"after\" to get newer messages.",
+            parameters = {
+                    @Parameter(name = "channelId", description = "Channel Id"),
+                    @Parameter(name = "before", description = "Return messages with Id lower than this one"),
+                    @Parameter(name = "after", description = "Return messages with Id greater than this one"),
+                    @Parameter(name = "limit", description = "Max amount of messages, up to " + MessagePage.MAX_LIMIT)
+            }
     )
     @GetMapping
     @VerifyJWT
-    public List<MessageResponseDTO> getMessagesInChannel(
+    public MessagePageResponseDTO getMessagesInChannel(
+            MessageRequestDTO messageRequestDTO,
+            @PathVariable int channelId,
+            @RequestParam(required = false) Long before,
+            @RequestParam(required = false) Long after,
+            @RequestParam(required = false) Integer limit
+    ) {
+        final var channel = channelService.getChannelById(channelId);
+        checkAccess(channel, messageRequestDTO.getNickname());
+
+        final var page = messageChannelService.getMessages(
+                channel,
+                before,
+                after,
+                MessagePage.normalizeLimit(limit)
+        );
+
+        return MessagePageResponseDTO.builder()
+                .messages(withReactionsAndAttachments(page.getMessages()))
+                .previousCursor(page.getPreviousCursor())
+                .nextCursor(page.getNextCursor())
+                .build();
+    }
+
+    @Operation(
+            summary = "Search messages in channel",
+            description = "Returns messages matching the query, best matching first. " +
+                    "Pass nextCursor as \"cursor\" to get the next page.",
+            parameters = {
+                    @Parameter(name = "channelId", description = "Channel Id"),
+                    @Parameter(name = "q", description = "Words to search, supports quoted phrases, \"or\" and \"-\""),
+                    @Parameter(name = "cursor", description = "Return matches ranked below this one"),
+                    @Parameter(name = "limit", description = "Max amount of messages, up to " + MessagePage.MAX_LIMIT)
+            }
+    )
+    @GetMapping("/search")
+    @VerifyJWT
+    public MessageSearchPageResponseDTO searchMessagesInChannel(
+            MessageRequestDTO messageRequestDTO,
+            @PathVariable int channelId,
+            @RequestParam String q,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer limit
+    ) {
+        final var channel = channelService.getChannelById(channelId);
+        checkAccess(channel, messageRequestDTO.getNickname());
+
+        final var page = messageChannelService.search(channel, q, cursor, MessagePage.normalizeLimit(limit));
+
+        return MessageSearchPageResponseDTO.builder()
+                .messages(withReactionsAndAttachments(page.getMessages()))
+                .nextCursor(page.getNextCursor())
+                .build();
+    }
+
+    @Operation(
+            summary = "Export all messages in channel as NDJSON",
+            parameters = @Parameter(name = "channelId", description = "Channel Id")
+    )
+    @GetMapping(value = "/export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    @VerifyJWT
+    public ResponseEntity<StreamingResponseBody> exportMessagesInChannel(
             MessageRequestDTO messageRequestDTO,
             @PathVariable int channelId
     ) {
         final var channel = channelService.getChannelById(channelId);
         checkAccess(channel, messageRequestDTO.getNickname());
 
-        final List<Message> messages = channel.getMessages();
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(outputStream -> messageExportService.exportChannel(channelId, outputStream));
+    }
+
+    @Operation(
+            summary = "Stream message events in channel as Server-Sent Events",
+            description = "Sends \"created\", \"updated\" and \"deleted\" events. " +
+                    "Reconnecting client with Last-Event-ID header gets missed messages first, " +
+                    "\"reload\" event means that too many were missed and history should be fetched again.",
+            parameters = @Parameter(name = "channelId", description = "Channel Id")
+    )
+    @GetMapping(value = "/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @VerifyJWT
+    public SseEmitter streamMessageEventsInChannel(
+            MessageRequestDTO messageRequestDTO,
+            @PathVariable int channelId,
+            @RequestHeader(value = "Last-Event-ID", required = false) Long lastEventId
+    ) {
+        checkAccess(channelId, messageRequestDTO.getNickname());
+
+        return channelEventStreamService.subscribe(channelId, lastEventId);
+    }
 
-        return messages.stream()
-                .map(this::createMessageResponseDTO).toList();
+    @Operation(
+            summary = "Wait for new messages in channel",
+            description = "Returns messages newer than \"after\" immediately if there are any, " +
+                    "otherwise waits until new message is created or timeout expires. " +
+                    "Pass returned nextCursor as \"after\" in next poll.",
+            parameters = {
+                    @Parameter(name = "channelId", description = "Channel Id"),
+                    @Parameter(name = "after", description = "Return messages with Id greater than this one"),
+                    @Parameter(name = "limit", description = "Max amount of messages, up to " + MessagePage.MAX_LIMIT)
+            }
+    )
+    @GetMapping("/poll")
+    @VerifyJWT
+    public DeferredResult<MessagePageResponseDTO> pollMessagesInChannel(
+            MessageRequestDTO messageRequestDTO,
+            @PathVariable int channelId,
+            @RequestParam long after,
+            @RequestParam(required = false) Integer limit
+    ) {
+        checkAccess(channelId, messageRequestDTO.getNickname());
+
+        return channelLongPollService.poll(channelId, after, MessagePage.normalizeLimit(limit));
+    }
+
+    @Operation(
+            summary = "Report typing in channel",
+            description = "User is shown as typing for a few seconds after the last report. " +
+                    "Subscribers get \"typing\" event when user starts and stops typing.",
+            parameters = @Parameter(name = "channelId", description = "Channel Id")
+    )
+    @PostMapping("/typing")
+    @VerifyJWT
+    public void reportTyping(
+            MessageRequestDTO messageRequestDTO,
+            @PathVariable int channelId
+    ) {
+        final var nickname = messageRequestDTO.getNickname();
+        // Access checked moments ago is not checked again for every keystroke
+        if (!channelTypingService.refresh(channelId, nickname)) {
+            checkAccess(channelId, nickname);
+            channelTypingService.start(channelId, nickname);
+        }
+    }
+
+    @Operation(
+            summary = "Get users typing in channel",
+            parameters = @Parameter(name = "channelId", description = "Channel Id")
+    )
+    @GetMapping("/typing")
+    @VerifyJWT
+    public List<String> getTypingUsers(
+            MessageRequestDTO messageRequestDTO,
+            @PathVariable int channelId
+    ) {
+        checkAccess(channelId, messageRequestDTO.getNickname());
+
+        return channelTypingService.getTyping(channelId);
     }
 
     @Operation(
@@ -65,7 +241,170 @@ public class MessageChannelController {
 
         final var savedMessage = messageChannelService.saveMessage(messageRequestDTO, user, channel);
 
-        return createMessageResponseDTO(savedMessage);
+        return MessageResponseDTO.of(savedMessage);
+    }
+
+    @Operation(
+            summary = "Create many messages in channel at once",
+            description = "Access is checked once for all messages, which are inserted in single transaction. " +
+                    "Created messages are not pushed to subscribers one by one.",
+            parameters = @Parameter(name = "channelId", description = "Channel Id")
+    )
+    @PostMapping("/bulk")
+    @VerifyJWT
+    public MessageBulkResponseDTO createMessages(
+            @RequestBody MessageBulkRequestDTO messageBulkRequestDTO,
+            @PathVariable int channelId
+    ) {
+        checkAccess(channelId, messageBulkRequestDTO.getNickname());
+
+        final var user = userService.getUserByNick(messageBulkRequestDTO.getNickname());
+        final var created = messageBulkIngestService.ingest(
+                channelId,
+                user,
+                Optional.ofNullable(messageBulkRequestDTO.getContents()).orElse(List.of())
+        );
+
+        log.info("{} messages have been created in channel with id: {}", created, channelId);
+        return MessageBulkResponseDTO.builder()
+                .created(created)
+                .build();
+    }
+
+    @Operation(
+            summary = "Mark messages in channel as read",
+            description = "Marks message and all older ones as read, position never moves back. " +
+                    "Positions are written in batches, the highest one reported in meantime wins.",
+            parameters = @Parameter(name = "channelId", description = "Channel Id")
+    )
+    @PutMapping("/read")
+    @VerifyJWT
+    public void markMessagesAsRead(
+            @RequestBody MessageReadRequestDTO messageReadRequestDTO,
+            @PathVariable int channelId
+    ) {
+        checkAccess(channelId, messageReadRequestDTO.getNickname());
+
+        final var user = userService.getUserByNick(messageReadRequestDTO.getNickname());
+        channelReadStateService.markRead(channelId, user, messageReadRequestDTO.getMessageId());
+    }
+
+    @Operation(
+            summary = "Get users who have read message in channel",
+            description = "Positions marked on other instances may show up with delay.",
+            parameters = {
+                    @Parameter(name = "channelId", description = "Channel Id"),
+                    @Parameter(name = "messageId", description = "Message Id")
+            }
+    )
+    @GetMapping("/{messageId}/readers")
+    @VerifyJWT
+    public MessageReadersResponseDTO getMessageReaders(
+            MessageRequestDTO messageRequestDTO,
+            @PathVariable int channelId,
+            @PathVariable long messageId
+    ) {
+        checkAccess(channelId, messageRequestDTO.getNickname());
+
+        return MessageReadersResponseDTO.builder()
+                .messageId(messageId)
+                .readers(channelReadStateService.getReaders(channelId, messageId))
+                .build();
+    }
+
+    @Operation(
+            summary = "Add reaction to message in channel",
+            description = "User reacts with every emoji once. Reactions are written in batches, " +
+                    "amounts of reactions returned with messages include ones not written yet.",
+            parameters = {
+                    @Parameter(name = "channelId", description = "Channel Id"),
+                    @Parameter(name = "messageId", description = "Message Id")
+            }
+    )
+    @PostMapping("/{messageId}/reactions")
+    @VerifyJWT
+    public void addReaction(
+            @RequestBody MessageReactionRequestDTO messageReactionRequestDTO,
+            @PathVariable int channelId,
+            @PathVariable long messageId
+    ) {
+        react(messageReactionRequestDTO, channelId, messageId, true);
+    }
+
+    @Operation(
+            summary = "Remove reaction from message in channel",
+            parameters = {
+                    @Parameter(name = "channelId", description = "Channel Id"),
+                    @Parameter(name = "messageId", description = "Message Id")
+            }
+    )
+    @DeleteMapping("/{messageId}/reactions")
+    @VerifyJWT
+    public void removeReaction(
+            @RequestBody MessageReactionRequestDTO messageReactionRequestDTO,
+            @PathVariable int channelId,
+            @PathVariable long messageId
+    ) {
+        react(messageReactionRequestDTO, channelId, messageId, false);
+    }
+
+    @Operation(
+            summary = "Attach file to message in channel",
+            description = "Request body is content of the file, its Content-Type is kept with it. " +
+                    "Only author of message can attach files. The same content is stored once.",
+            parameters = {
+                    @Parameter(name = "channelId", description = "Channel Id"),
+                    @Parameter(name = "messageId", description = "Message Id"),
+                    @Parameter(name = "fileName", description = "Name of the file")
+            }
+    )
+    @PostMapping("/{messageId}/attachments")
+    @VerifyJWT
+    public AttachmentResponseDTO uploadAttachment(
+            MessageRequestDTO messageRequestDTO,
+            @PathVariable int channelId,
+            @PathVariable long messageId,
+            @RequestParam String fileName,
+            HttpServletRequest request
+    ) throws IOException {
+        checkAccess(channelId, messageRequestDTO.getNickname());
+
+        final var attachment = attachmentService.upload(
+                channelId,
+                messageId,
+                messageRequestDTO.getNickname(),
+                fileName,
+                request.getContentType(),
+                request.getInputStream()
+        );
+
+        log.info("Attachment with id: {} has been added to message with id: {}", attachment.getId(), messageId);
+        return AttachmentResponseDTO.of(attachment);
+    }
+
+    @Operation(
+            summary = "Download attachment of message in channel",
+            description = "Supports single byte range in Range header.",
+            parameters = {
+                    @Parameter(name = "channelId", description = "Channel Id"),
+                    @Parameter(name = "attachmentId", description = "Attachment Id")
+            }
+    )
+    @GetMapping("/attachments/{attachmentId}")
+    @VerifyJWT
+    public void downloadAttachment(
+            MessageRequestDTO messageRequestDTO,
+            @PathVariable int channelId,
+            @PathVariable int attachmentId,
+            @RequestHeader(value = HttpHeaders.RANGE, required = false) String range,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+            HttpServletRequest request,
+            HttpServletResponse response
+    ) throws IOException {
+        checkAccess(channelId, messageRequestDTO.getNickname());
+
+        final var attachment = attachmentService.getAttachment(channelId, attachmentId);
+        attachmentService.send(attachment, range, ifNoneMatch, request, response);
     }
 
     @Operation(
@@ -80,13 +419,13 @@ public class MessageChannelController {
     public MessageResponseDTO updateMessage(
             @RequestBody MessageRequestDTO messageRequestDTO,
             @PathVariable int channelId,
-            @PathVariable int messageId
+            @PathVariable long messageId
     ) {
         final var channel = channelService.getChannelById(channelId);
         checkAccess(channel, messageRequestDTO.getNickname());
 
         final var updatedMessage = messageChannelService.updateMessage(messageId, messageRequestDTO, channel);
-        return createMessageResponseDTO(updatedMessage);
+        return MessageResponseDTO.of(updatedMessage);
     }
 
     @Operation(
@@ -101,7 +440,7 @@ public class MessageChannelController {
     public void deleteMessage(
             @RequestBody MessageRequestDTO messageRequestDTO,
             @PathVariable int channelId,
-            @PathVariable int messageId
+            @PathVariable long messageId
     ) {
         final var channel = channelService.getChannelById(channelId);
         checkAccess(channel, messageRequestDTO.getNickname());
@@ -110,13 +449,15 @@ public class MessageChannelController {
         log.info("Message with id: {} has been deleted", messageId);
     }
 
-    private MessageResponseDTO createMessageResponseDTO(Message message) {
-        return MessageResponseDTO.builder()
-                .id(message.getId())
-                .authorNick(message.getAuthor().getNickname())
-                .content(message.getContent())
-                .createdAt(message.getCreatedAt())
-                .build();
+    private List<MessageResponseDTO> withReactionsAndAttachments(List<MessageResponseDTO> messages) {
+        return attachmentService.withAttachments(messageReactionService.withReactions(messages));
+    }
+
+    private void react(MessageReactionRequestDTO request, int channelId, long messageId, boolean add) {
+        checkAccess(channelId, request.getNickname());
+
+        final var user = userService.getUserByNick(request.getNickname());
+        messageReactionService.react(channelId, messageId, user, request.getEmoji(), add);
     }
 
     private void checkAccess(Channel channel, String nickname) {
@@ -125,4 +466,14 @@ public class MessageChannelController {
             throw new ChannelAccessFailedException();
         }
     }
+
+    /**
+     * Used by async endpoints, which run without open session in view so parked requests do not keep connection.
+     */
+    private void checkAccess(int channelId, String nickname) {
+        final var hasPermission = channelService.userHasPermissionToSeeChannel(channelId, nickname);
+        if (!hasPermission) {
+            throw new ChannelAccessFailedException();
+        }
+    }
 }
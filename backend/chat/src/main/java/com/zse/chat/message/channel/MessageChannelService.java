@@ -1,14 +1,18 @@
 package com.zse.chat.message.channel;
 
 import com.zse.chat.channel.Channel;
+import com.zse.chat.channel.ChannelReadStateService;
 import com.zse.chat.login.MessageUpdateFailedException;
-import com.zse.chat.message.Message;
-import com.zse.chat.message.MessageController;
-import com.zse.chat.message.MessageNotFoundException;
-import com.zse.chat.message.MessageRepository;
+import com.zse.chat.message.*;
+import com.zse.chat.message.MessageController.MessageResponseDTO;
+import com.zse.chat.message.search.MessageSearchIndex;
 import com.zse.chat.user.User;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
 import java.util.List;
@@ -19,12 +23,57 @@ import java.util.Optional;
 public class MessageChannelService {
 
     private final MessageRepository messageRepository;
+    private final ApplicationEventPublisher eventPublisher;
+    private final MessageOutbox messageOutbox;
+    private final MessageTailCache messageTailCache;
+    private final MessageWriteBatcher messageWriteBatcher;
+    private final MessageArchive messageArchive;
+    private final ChannelReadStateService channelReadStateService;
+    private final ObjectProvider<MessageSearchIndex> messageSearchIndex;
+
+    public MessagePage getMessages(Channel channel, Long before, Long after, int limit) {
+        if (before != null && after != null) {
+            throw new InvalidCursorException();
+        }
+        if (before == null && after == null) {
+            return messageTailCache.getLatestPage(channel.getId(), limit);
+        }
+        final var pageable = PageRequest.of(0, limit + 1);
+
+        if (after != null) {
+            final List<MessageResponseDTO> newer = messageRepository
+                    .findChannelPageAfter(channel.getId(), after, pageable);
+            return MessagePage.fromNewer(
+                    messageArchive.withNewer(channel.getId(), after, newer, limit + 1),
+                    limit,
+                    after
+            );
+        }
+
+        final List<MessageResponseDTO> older = messageRepository
+                .findChannelPageBefore(channel.getId(), before, pageable);
+        return MessagePage.fromOlder(messageArchive.withOlder(channel.getId(), before, older, limit + 1), limit);
+    }
+
+    public MessageSearchPage search(Channel channel, String query, String cursor, int limit) {
+        if (query == null || query.isBlank()) {
+            return MessageSearchPage.empty();
+        }
+        final var index = messageSearchIndex.getIfAvailable();
+        if (index != null) {
+            return index.search(channel.getId(), query, cursor, limit);
+        }
+        if (cursor == null) {
+            return MessageSearchPage.fromHits(messageRepository.searchChannel(channel.getId(), query, limit + 1), limit);
+        }
 
-    public List<Message> getMessages(Channel channel) {
-        return messageRepository.findAllByDeletedFalseAndChannelIsOrderByIdAsc(channel);
+        final var below = MessageSearchPage.parseCursor(cursor);
+        final var hits = messageRepository
+                .searchChannelBelow(channel.getId(), query, below.rank(), below.id(), limit + 1);
+        return MessageSearchPage.fromHits(hits, limit);
     }
 
-    public Message getMessageById(int id, int channelId) {
+    public Message getMessageById(long id, int channelId) {
         final var message = messageRepository.findById(id).orElseThrow(() -> new MessageNotFoundException(id));
 
         final var channel = Optional.ofNullable(message.getChannel())
@@ -46,40 +95,50 @@ public class MessageChannelService {
                 .author(user)
                 .createdAt(LocalDateTime.now())
                 .channel(channel).build();
+        final var savedMessage = messageWriteBatcher.save(newMessage);
+        channelReadStateService.messagesCreated(channel.getId(), user, 1);
 
-        return messageRepository.save(newMessage);
+        eventPublisher.publishEvent(new MessageEvent(MessageEvent.Type.CREATED, savedMessage));
+        return savedMessage;
     }
 
+    @Transactional
     public Message updateMessage(
-            int messageId,
+            long messageId,
             MessageController.MessageRequestDTO messageRequestDTO,
             Channel channel
     ) {
         return updateMessage(messageId, messageRequestDTO, channel, false);
     }
 
+    @Transactional
     public Message updateMessage(
-            int messageId,
+            long messageId,
             MessageController.MessageRequestDTO messageRequestDTO,
             Channel channel,
             boolean delete
     ) {
-        final var previousMessage = getMessageById(messageId, channel.getId());
-
-        if(previousMessage.isDeleted()){
-            throw new MessageNotFoundException(previousMessage.getId());
-        }
-
-        if (!messageRequestDTO.getNickname().equals(previousMessage.getAuthor().getNickname())){
-            throw new MessageUpdateFailedException();
-        }
-
-        final var updatedMessage = previousMessage.toBuilder()
-                .content(messageRequestDTO.getContent())
-                .deleted(delete)
-                .build();
-
-        return messageRepository.save(updatedMessage);
+        final var updated = delete ?
+                messageRepository.deleteChannelMessage(messageId, channel.getId(), messageRequestDTO.getNickname()) :
+                messageRepository.editChannelMessage(
+                        messageId,
+                        channel.getId(),
+                        messageRequestDTO.getNickname(),
+                        messageRequestDTO.getContent()
+                );
+
+        final var savedMessage = updated
+                .map(message -> message.toMessage(channel))
+                .orElseThrow(() -> messageRepository.existsByIdAndDeletedFalseAndChannelId(messageId, channel.getId()) ?
+                        new MessageUpdateFailedException() :
+                        messageRepository.existsInArchiveOfChannel(messageId, channel.getId()) ?
+                                new MessageArchivedException(messageId) :
+                                new MessageNotFoundException(messageId));
+
+        final var event = new MessageEvent(delete ? MessageEvent.Type.DELETED : MessageEvent.Type.UPDATED, savedMessage);
+        messageOutbox.append(event);
+        eventPublisher.publishEvent(event);
+        return savedMessage;
     }
 
 }
@@ -0,0 +1,91 @@
+package com.zse.chat.message.search;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Postings of messages indexed since last flush. Not thread safe, guarded by lock of the index.
+ */
+class IndexBuffer implements IndexSource {
+
+    private final Map<TermKey, SortedMap<Integer, int[]>> postings = new HashMap<>();
+    private final Map<Integer, Set<TermKey>> docTerms = new HashMap<>();
+    private final Set<Integer> deletes = new HashSet<>();
+
+    void add(int docId, int channelId, String content) {
+        final Map<String, List<Integer>> positions = new LinkedHashMap<>();
+        final var tokens = SearchQuery.tokenize(content);
+        for (int position = 0; position < tokens.size(); position++) {
+            positions.computeIfAbsent(tokens.get(position), term -> new ArrayList<>()).add(position);
+        }
+
+        final Set<TermKey> keys = new HashSet<>();
+        positions.forEach((term, termPositions) -> {
+            final var key = new TermKey(channelId, term);
+            keys.add(key);
+            postings.computeIfAbsent(key, k -> new TreeMap<>())
+                    .put(docId, termPositions.stream().mapToInt(Integer::intValue).toArray());
+        });
+        docTerms.put(docId, keys);
+    }
+
+    /**
+     * Removes document from the buffer and remembers it, so flushed segment hides it in older segments.
+     */
+    void delete(int docId) {
+        final var keys = docTerms.remove(docId);
+        if (keys != null) {
+            for (TermKey key : keys) {
+                final var docs = postings.get(key);
+                docs.remove(docId);
+                if (docs.isEmpty()) {
+                    postings.remove(key);
+                }
+            }
+        }
+        deletes.add(docId);
+    }
+
+    int size() {
+        return docTerms.size();
+    }
+
+    boolean isEmpty() {
+        return docTerms.isEmpty() && deletes.isEmpty();
+    }
+
+    Set<Integer> deletes() {
+        return deletes;
+    }
+
+    Map<TermKey, byte[]> encode() {
+        final Map<TermKey, byte[]> encoded = new HashMap<>(postings.size());
+        postings.forEach((key, docs) -> encoded.put(key, PostingsCodec.encode(docs)));
+        return encoded;
+    }
+
+    @Override
+    public PostingList postings(TermKey key) {
+        final var docs = postings.get(key);
+        if (docs == null) {
+            return null;
+        }
+        return new PostingList(
+                docs.keySet().stream().mapToInt(Integer::intValue).toArray(),
+                docs.values().toArray(new int[0][])
+        );
+    }
+
+    @Override
+    public boolean isDeleted(int docId) {
+        return false;
+    }
+
+}
@@ -0,0 +1,198 @@
+package com.zse.chat.message.search;
+
+import lombok.Getter;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Immutable segment file, mapped into memory. Only term dictionary is read onto heap,
+ * postings are decoded from the mapping when searched.
+ * <p>
+ * Layout: header, postings, ids deleted by this segment in older ones, term dictionary.
+ * Segment covers generations {@code minGeneration..maxGeneration}, flushed one has single
+ * generation, merged one all generations of its sources. Offsets are read as int,
+ * single segment has to stay below 2 GB like single mapping does.
+ */
+class IndexSegment implements IndexSource {
+
+    private static final int MAGIC = 0x43484958;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 8 + 4 + 8 + 4 + 8 + 4;
+
+    @Getter
+    private final Path path;
+    @Getter
+    private final long minGeneration;
+    @Getter
+    private final long maxGeneration;
+    @Getter
+    private final int maxDocId;
+    @Getter
+    private final int[] deletes;
+    private final MappedByteBuffer buffer;
+    private final Map<TermKey, Long> dictionary;
+    /**
+     * Documents deleted or edited after this segment was written, filled from newer segments and buffer.
+     */
+    private final Set<Integer> deletedDocs = ConcurrentHashMap.newKeySet();
+
+    private IndexSegment(Path path, MappedByteBuffer buffer) {
+        this.path = path;
+        this.buffer = buffer;
+
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IllegalStateException("Not a message index segment: " + path);
+        }
+        this.minGeneration = buffer.getLong(8);
+        this.maxGeneration = buffer.getLong(16);
+        this.maxDocId = buffer.getInt(24);
+        final var deletesOffset = buffer.getLong(28);
+        this.deletes = new int[buffer.getInt(36)];
+        final var dictionaryOffset = buffer.getLong(40);
+        final var termCount = buffer.getInt(48);
+
+        for (int i = 0; i < deletes.length; i++) {
+            deletes[i] = buffer.getInt((int) deletesOffset + i * 4);
+        }
+
+        this.dictionary = new HashMap<>(termCount * 2);
+        int position = (int) dictionaryOffset;
+        for (int i = 0; i < termCount; i++) {
+            final var channelId = buffer.getInt(position);
+            final var termLength = buffer.getInt(position + 4);
+            final byte[] term = new byte[termLength];
+            buffer.get(position + 8, term);
+            position += 8 + termLength;
+            dictionary.put(new TermKey(channelId, new String(term, StandardCharsets.UTF_8)), buffer.getLong(position));
+            position += 8;
+        }
+    }
+
+    static IndexSegment open(Path path) {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return new IndexSegment(path, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open message index segment " + path, e);
+        }
+    }
+
+    /**
+     * Writes segment next to its final path and moves it there, so readers never see partial file.
+     */
+    static IndexSegment write(
+            Path path,
+            long minGeneration,
+            long maxGeneration,
+            int maxDocId,
+            Collection<Integer> deletes,
+            Map<TermKey, byte[]> postings
+    ) {
+        final var temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(
+                temporary,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE
+        )) {
+            final var out = new DataOutputStream(new BufferedOutputStream(
+                    Channels.newOutputStream(channel.position(HEADER_SIZE))
+            ));
+            long position = HEADER_SIZE;
+
+            final Map<TermKey, Long> offsets = new HashMap<>(postings.size() * 2);
+            for (Map.Entry<TermKey, byte[]> entry : postings.entrySet()) {
+                offsets.put(entry.getKey(), position);
+                out.write(entry.getValue());
+                position += entry.getValue().length;
+            }
+
+            final var deletesOffset = position;
+            for (Integer docId : deletes) {
+                out.writeInt(docId);
+            }
+            position += deletes.size() * 4L;
+
+            final var dictionaryOffset = position;
+            for (Map.Entry<TermKey, Long> entry : offsets.entrySet()) {
+                final byte[] term = entry.getKey().term().getBytes(StandardCharsets.UTF_8);
+                out.writeInt(entry.getKey().channelId());
+                out.writeInt(term.length);
+                out.write(term);
+                out.writeLong(entry.getValue());
+            }
+            out.flush();
+
+            final var header = ByteBuffer.allocate(HEADER_SIZE)
+                    .putInt(MAGIC)
+                    .putInt(VERSION)
+                    .putLong(minGeneration)
+                    .putLong(maxGeneration)
+                    .putInt(maxDocId)
+                    .putLong(deletesOffset)
+                    .putInt(deletes.size())
+                    .putLong(dictionaryOffset)
+                    .putInt(offsets.size())
+                    .flip();
+            channel.write(header, 0);
+            channel.force(true);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write message index segment " + path, e);
+        }
+
+        try {
+            Files.move(temporary, path, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write message index segment " + path, e);
+        }
+        return open(path);
+    }
+
+    Set<TermKey> terms() {
+        return dictionary.keySet();
+    }
+
+    void delete(int docId) {
+        deletedDocs.add(docId);
+    }
+
+    void deleteAll(Collection<Integer> docIds) {
+        deletedDocs.addAll(docIds);
+    }
+
+    Set<Integer> deletedDocs() {
+        return deletedDocs;
+    }
+
+    boolean covers(IndexSegment other) {
+        return minGeneration <= other.minGeneration && other.maxGeneration <= maxGeneration;
+    }
+
+    @Override
+    public PostingList postings(TermKey key) {
+        final var offset = dictionary.get(key);
+        return offset == null ? null : PostingsCodec.decode(buffer, offset.intValue());
+    }
+
+    @Override
+    public boolean isDeleted(int docId) {
+        return deletedDocs.contains(docId);
+    }
+
+}
@@ -0,0 +1,15 @@
+package com.zse.chat.message.search;
+
+/**
+ * Part of index that search reads, memory buffer or segment file.
+ */
+interface IndexSource {
+
+    /**
+     * @return postings of term in channel or null if term does not occur there
+     */
+    PostingList postings(TermKey key);
+
+    boolean isDeleted(int docId);
+
+}
@@ -0,0 +1,15 @@
+package com.zse.chat.message.search;
+
+import com.zse.chat.message.MessageRepository.SearchHit;
+import lombok.Value;
+
+import java.time.LocalDateTime;
+
+@Value
+class IndexedHit implements SearchHit {
+    long id;
+    String authorNick;
+    String content;
+    LocalDateTime createdAt;
+    float rank;
+}
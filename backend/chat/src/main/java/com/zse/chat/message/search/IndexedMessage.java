@@ -0,0 +1,7 @@
+package com.zse.chat.message.search;
+
+/**
+ * Message as read from database when index catches up after restart or indexes bulk ingested by other instance.
+ */
+public record IndexedMessage(long id, Integer channelId, String content) {
+}
@@ -0,0 +1,521 @@
+package com.zse.chat.message.search;
+
+import com.zse.chat.message.MessageController.MessageResponseDTO;
+import com.zse.chat.message.MessageEvent;
+import com.zse.chat.message.MessageOutbox;
+import com.zse.chat.message.MessageRepository;
+import com.zse.chat.message.MessageRepository.SearchHit;
+import com.zse.chat.message.MessageSearchPage;
+import com.zse.chat.message.MessagesIngestedEvent;
+import com.zse.chat.outbox.ChangeType;
+import com.zse.chat.outbox.ClusterChangeEvent;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.env.Environment;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * In-process inverted index of message content, searched instead of Postgres full-text search
+ * when {@code message-search.embedded.enabled} is set.
+ * <p>
+ * Messages are indexed from events of message services and from {@link ClusterChangeEvent} of other instances,
+ * whose bulks are read from database, into memory buffer, which is flushed
+ * as immutable segment file after {@code flush-size} messages or {@code flush-interval}.
+ * Edited and deleted messages are hidden in older segments and dropped from them when segments
+ * are merged in background. Search reads postings only and loads found messages by id.
+ * <p>
+ * Changes not flushed before crash are lost, on start messages newer than the index
+ * are indexed again, edits and deletes from that time are not. Documents are numbered by message ids,
+ * so the index cannot be used with {@code snowflake} message ids.
+ */
+@Component
+@ConditionalOnProperty(name = "message-search.embedded.enabled", havingValue = "true")
+@Slf4j
+public class MessageSearchIndex {
+
+    static final int GLOBAL_CHANNEL = 0;
+
+    private static final Pattern SEGMENT_FILE = Pattern.compile("segment-(\\d+)\\.idx");
+
+    private final MessageRepository messageRepository;
+    private final MessageOutbox messageOutbox;
+    private final TransactionTemplate transactionTemplate;
+    private final Path directory;
+    private final int flushSize;
+    private final int maxSegments;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    /**
+     * Ordered from the oldest, merged segment replaces prefix of the list.
+     */
+    private List<IndexSegment> segments = new ArrayList<>();
+    private IndexBuffer buffer = new IndexBuffer();
+    private long nextGeneration;
+    private final AtomicInteger nextFileNumber = new AtomicInteger();
+    private int maxDocId;
+
+    public MessageSearchIndex(
+            MessageRepository messageRepository,
+            MessageOutbox messageOutbox,
+            PlatformTransactionManager transactionManager,
+            Environment env
+    ) {
+        if ("snowflake".equals(env.getProperty("message-ids.generator"))) {
+            throw new IllegalStateException("Message search index needs message ids from sequence");
+        }
+        this.messageRepository = messageRepository;
+        this.messageOutbox = messageOutbox;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setReadOnly(true);
+        this.directory = Path.of(env.getProperty("message-search.embedded.directory", "message-index"));
+        this.flushSize = env.getProperty("message-search.embedded.flush-size", Integer.class, 10_000);
+        this.maxSegments = env.getProperty("message-search.embedded.max-segments", Integer.class, 8);
+        load();
+    }
+
+    public MessageSearchPage search(Integer channelId, String query, String cursor, int limit) {
+        final var parsed = SearchQuery.parse(query);
+        if (parsed.isEmpty()) {
+            return MessageSearchPage.empty();
+        }
+        final var below = cursor == null ? null : MessageSearchPage.parseCursor(cursor);
+        final var channel = channelId == null ? GLOBAL_CHANNEL : channelId;
+
+        final List<ScoredDoc> matches = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            for (IndexSegment segment : segments) {
+                collectMatches(segment, channel, parsed, matches);
+            }
+            collectMatches(buffer, channel, parsed, matches);
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        final List<ScoredDoc> page = matches.stream()
+                .filter(match -> below == null || match.isBelow(below))
+                .sorted(Comparator.comparingDouble(ScoredDoc::score).reversed()
+                        .thenComparing(Comparator.comparingInt(ScoredDoc::docId).reversed()))
+                .limit(limit + 1L)
+                .toList();
+        return MessageSearchPage.fromHits(loadHits(page), limit);
+    }
+
+    private List<SearchHit> loadHits(List<ScoredDoc> page) {
+        if (page.isEmpty()) {
+            return List.of();
+        }
+        final Map<Long, MessageResponseDTO> messages = messageRepository
+                .findResponsesByIds(page.stream().map(match -> (long) match.docId()).toList())
+                .stream()
+                .collect(Collectors.toMap(MessageResponseDTO::getId, Function.identity()));
+
+        final List<SearchHit> hits = new ArrayList<>(page.size());
+        for (ScoredDoc match : page) {
+            final var message = messages.get((long) match.docId());
+            if (message != null) {
+                hits.add(new IndexedHit(
+                        message.getId(),
+                        message.getAuthorNick(),
+                        message.getContent(),
+                        message.getCreatedAt(),
+                        match.score()
+                ));
+            }
+        }
+        return hits;
+    }
+
+    /**
+     * Every document lives in one source only, so matches of sources do not overlap.
+     */
+    private static void collectMatches(IndexSource source, int channel, SearchQuery query, List<ScoredDoc> matches) {
+        final Map<String, PostingList> postings = new HashMap<>();
+        for (String term : query.terms()) {
+            final var termPostings = source.postings(new TermKey(channel, term));
+            if (termPostings == null) {
+                return;
+            }
+            postings.put(term, termPostings);
+        }
+
+        final var rarest = postings.values().stream()
+                .min(Comparator.comparingInt(PostingList::size))
+                .orElseThrow();
+        candidates:
+        for (int docId : rarest.docs()) {
+            if (source.isDeleted(docId)) {
+                continue;
+            }
+            final Map<String, int[]> positions = new HashMap<>();
+            int score = 0;
+            for (Map.Entry<String, PostingList> entry : postings.entrySet()) {
+                final var termPositions = entry.getValue().positionsOf(docId);
+                if (termPositions == null) {
+                    continue candidates;
+                }
+                positions.put(entry.getKey(), termPositions);
+                score += termPositions.length;
+            }
+            for (List<String> phrase : query.phrases()) {
+                if (!containsPhrase(phrase, positions)) {
+                    continue candidates;
+                }
+            }
+            matches.add(new ScoredDoc(docId, score));
+        }
+    }
+
+    private static boolean containsPhrase(List<String> phrase, Map<String, int[]> positions) {
+        starts:
+        for (int start : positions.get(phrase.get(0))) {
+            for (int i = 1; i < phrase.size(); i++) {
+                if (Arrays.binarySearch(positions.get(phrase.get(i)), start + i) < 0) {
+                    continue starts;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    //region indexing
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onMessageEvent(MessageEvent event) {
+        final var message = event.message();
+        index(event.type(), message.getId(), event.channelId(), message.getContent());
+    }
+
+    @EventListener
+    public void onClusterChange(ClusterChangeEvent event) {
+        final var change = event.change();
+        if (change.type() == ChangeType.MESSAGES_INGESTED && change.channelId() != null) {
+            indexIngested(change.channelId(), messageOutbox.readIngested(change));
+            return;
+        }
+        final var type = MessageOutbox.eventTypeOf(change.type());
+        if (type != null) {
+            final var message = messageOutbox.readMessage(change);
+            // Changes are delivered at least once, created message replaces the one indexed already
+            final var replacing = type == MessageEvent.Type.CREATED ? MessageEvent.Type.UPDATED : type;
+            index(replacing, message.getId(), change.channelId(), message.getContent());
+        }
+    }
+
+    private void index(MessageEvent.Type type, long id, Integer channelId, String content) {
+        final var channel = channelId == null ? GLOBAL_CHANNEL : channelId;
+
+        lock.writeLock().lock();
+        try {
+            if (type != MessageEvent.Type.CREATED) {
+                delete(id);
+            }
+            if (type != MessageEvent.Type.DELETED) {
+                add(id, channel, content);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Change of bulk tells only range of its ids, messages written meanwhile by others are in the range too.
+     * Messages replace the ones indexed already, the same as created messages of other instances.
+     */
+    private void indexIngested(int channelId, MessageOutbox.MessagesIngestedDTO ingested) {
+        transactionTemplate.executeWithoutResult(status -> {
+            try (Stream<IndexedMessage> messages = messageRepository.streamIngestedForIndex(
+                    channelId,
+                    ingested.authorNick(),
+                    ingested.firstId(),
+                    ingested.lastId()
+            )) {
+                messages.forEach(message -> {
+                    lock.writeLock().lock();
+                    try {
+                        delete(message.id());
+                        add(message.id(), channelId, message.content());
+                    } finally {
+                        lock.writeLock().unlock();
+                    }
+                });
+            }
+        });
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onMessagesIngested(MessagesIngestedEvent event) {
+        lock.writeLock().lock();
+        try {
+            for (int i = 0; i < event.ids().size(); i++) {
+                add(event.ids().get(i), event.channelId(), event.contents().get(i));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Indexes messages created after the last flushed segment, all of them when index is empty.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void catchUp() {
+        final int after;
+        lock.readLock().lock();
+        try {
+            after = maxDocId;
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        final Integer indexed = transactionTemplate.execute(status -> {
+            try (Stream<IndexedMessage> messages = messageRepository.streamForIndexAfter(after)) {
+                final var count = new AtomicInteger();
+                messages.forEach(message -> {
+                    lock.writeLock().lock();
+                    try {
+                        add(message.id(), message.channelId() == null ? GLOBAL_CHANNEL : message.channelId(),
+                                message.content());
+                    } finally {
+                        lock.writeLock().unlock();
+                    }
+                    count.incrementAndGet();
+                });
+                return count.get();
+            }
+        });
+        log.info("Message search index caught up with {} messages after id {}", indexed, after);
+    }
+
+    /**
+     * Documents are numbered by message ids, which fit into int as long as they come from sequence.
+     */
+    private void add(long id, int channel, String content) {
+        final int docId = Math.toIntExact(id);
+        buffer.add(docId, channel, content);
+        maxDocId = Math.max(maxDocId, docId);
+        if (buffer.size() >= flushSize) {
+            flush();
+        }
+    }
+
+    private void delete(long id) {
+        final int docId = Math.toIntExact(id);
+        buffer.delete(docId);
+        for (IndexSegment segment : segments) {
+            segment.delete(docId);
+        }
+    }
+    //endregion
+
+    //region segments
+    @Scheduled(fixedDelayString = "${message-search.embedded.flush-interval:PT10S}")
+    public void flushAndMerge() {
+        lock.writeLock().lock();
+        try {
+            flush();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        merge();
+    }
+
+    @PreDestroy
+    public void close() {
+        lock.writeLock().lock();
+        try {
+            flush();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Called with write lock held.
+     */
+    private void flush() {
+        if (buffer.isEmpty()) {
+            return;
+        }
+        final var generation = nextGeneration++;
+        segments.add(IndexSegment.write(
+                nextSegmentPath(),
+                generation,
+                generation,
+                maxDocId,
+                buffer.deletes(),
+                buffer.encode()
+        ));
+        buffer = new IndexBuffer();
+    }
+
+    /**
+     * Rewrites all segments into one without deleted documents. Sources stay searchable meanwhile,
+     * documents deleted during merge are hidden in the merged segment when it replaces them.
+     * Deletes known before merge are not carried over, they hide older versions of documents
+     * whose newer version is merged.
+     */
+    void merge() {
+        final List<IndexSegment> sources;
+        final List<Set<Integer>> deletedBefore = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            if (segments.size() <= maxSegments) {
+                return;
+            }
+            sources = List.copyOf(segments);
+            sources.forEach(source -> deletedBefore.add(Set.copyOf(source.deletedDocs())));
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        final Set<TermKey> terms = new HashSet<>();
+        sources.forEach(source -> terms.addAll(source.terms()));
+        final Map<TermKey, byte[]> postings = new HashMap<>(terms.size() * 2);
+        for (TermKey term : terms) {
+            final SortedMap<Integer, int[]> docs = new TreeMap<>();
+            for (int s = 0; s < sources.size(); s++) {
+                final var sourcePostings = sources.get(s).postings(term);
+                if (sourcePostings == null) {
+                    continue;
+                }
+                for (int i = 0; i < sourcePostings.size(); i++) {
+                    if (!deletedBefore.get(s).contains(sourcePostings.docs()[i])) {
+                        docs.put(sourcePostings.docs()[i], sourcePostings.positions()[i]);
+                    }
+                }
+            }
+            if (!docs.isEmpty()) {
+                postings.put(term, PostingsCodec.encode(docs));
+            }
+        }
+
+        final var merged = IndexSegment.write(
+                nextSegmentPath(),
+                sources.get(0).getMinGeneration(),
+                sources.get(sources.size() - 1).getMaxGeneration(),
+                sources.stream().mapToInt(IndexSegment::getMaxDocId).max().orElse(0),
+                List.of(),
+                postings
+        );
+
+        lock.writeLock().lock();
+        try {
+            for (int i = 0; i < sources.size(); i++) {
+                final var deletedDuringMerge = new HashSet<>(sources.get(i).deletedDocs());
+                deletedDuringMerge.removeAll(deletedBefore.get(i));
+                merged.deleteAll(deletedDuringMerge);
+            }
+            final List<IndexSegment> replaced = new ArrayList<>();
+            replaced.add(merged);
+            replaced.addAll(segments.subList(sources.size(), segments.size()));
+            segments = replaced;
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        for (IndexSegment source : sources) {
+            deleteFile(source.getPath());
+        }
+        log.info("Merged {} message index segments into {}", sources.size(), merged.getPath().getFileName());
+    }
+
+    private void load() {
+        try {
+            Files.createDirectories(directory);
+            final List<Path> files;
+            try (Stream<Path> listed = Files.list(directory)) {
+                files = listed.toList();
+            }
+
+            final List<IndexSegment> opened = new ArrayList<>();
+            for (Path file : files) {
+                final var matcher = SEGMENT_FILE.matcher(file.getFileName().toString());
+                if (matcher.matches()) {
+                    nextFileNumber.accumulateAndGet(Integer.parseInt(matcher.group(1)) + 1, Math::max);
+                    opened.add(IndexSegment.open(file));
+                } else if (file.getFileName().toString().endsWith(".tmp")) {
+                    deleteFile(file);
+                }
+            }
+
+            // Sources of merge interrupted before they were removed are covered by the merged segment
+            opened.sort(Comparator.comparingLong(IndexSegment::getMinGeneration)
+                    .thenComparing(Comparator.comparingLong(IndexSegment::getMaxGeneration).reversed()));
+            for (IndexSegment segment : opened) {
+                if (!segments.isEmpty() && segments.get(segments.size() - 1).covers(segment)) {
+                    deleteFile(segment.getPath());
+                    continue;
+                }
+                for (IndexSegment older : segments) {
+                    older.deleteAll(Arrays.stream(segment.getDeletes()).boxed().toList());
+                }
+                segments.add(segment);
+                nextGeneration = Math.max(nextGeneration, segment.getMaxGeneration() + 1);
+                maxDocId = Math.max(maxDocId, segment.getMaxDocId());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to load message index from " + directory, e);
+        }
+        log.info("Loaded {} message index segments from {}", segments.size(), directory.toAbsolutePath());
+    }
+
+    private Path nextSegmentPath() {
+        return directory.resolve("segment-" + nextFileNumber.getAndIncrement() + ".idx");
+    }
+
+    private static void deleteFile(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            log.warn("Failed to delete message index file {}", path, e);
+        }
+    }
+
+    int countSegments() {
+        lock.readLock().lock();
+        try {
+            return segments.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    //endregion
+
+    private record ScoredDoc(int docId, float score) {
+
+        boolean isBelow(MessageSearchPage.Cursor cursor) {
+            return score < cursor.rank() || (score == cursor.rank() && docId < cursor.id());
+        }
+
+    }
+
+}
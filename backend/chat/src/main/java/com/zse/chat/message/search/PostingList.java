@@ -0,0 +1,22 @@
+package com.zse.chat.message.search;
+
+import java.util.Arrays;
+
+/**
+ * Documents containing a term in ascending order, with ascending positions of the term in each of them.
+ */
+record PostingList(int[] docs, int[][] positions) {
+
+    int size() {
+        return docs.length;
+    }
+
+    /**
+     * @return positions of the term in document or null if document does not contain it
+     */
+    int[] positionsOf(int docId) {
+        final var index = Arrays.binarySearch(docs, docId);
+        return index < 0 ? null : positions[index];
+    }
+
+}
@@ -0,0 +1,82 @@
+package com.zse.chat.message.search;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.SortedMap;
+
+/**
+ * Encodes posting list as variable length integers: amount of documents, then for every document
+ * gap from previous document id, amount of positions and gaps between positions.
+ * Ids and positions grow, so gaps are small and most of them take single byte.
+ */
+final class PostingsCodec {
+
+    private PostingsCodec() {
+    }
+
+    static byte[] encode(SortedMap<Integer, int[]> postings) {
+        final var out = new ByteArrayOutputStream(postings.size() * 3);
+        writeVarInt(out, postings.size());
+        int previousDoc = 0;
+        for (Map.Entry<Integer, int[]> entry : postings.entrySet()) {
+            writeVarInt(out, entry.getKey() - previousDoc);
+            previousDoc = entry.getKey();
+
+            final int[] positions = entry.getValue();
+            writeVarInt(out, positions.length);
+            int previousPosition = 0;
+            for (int position : positions) {
+                writeVarInt(out, position - previousPosition);
+                previousPosition = position;
+            }
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Reads with absolute gets only, so many searches can share one buffer.
+     */
+    static PostingList decode(ByteBuffer buffer, int offset) {
+        final int[] cursor = {offset};
+        final int size = readVarInt(buffer, cursor);
+        final int[] docs = new int[size];
+        final int[][] positions = new int[size][];
+
+        int doc = 0;
+        for (int i = 0; i < size; i++) {
+            doc += readVarInt(buffer, cursor);
+            docs[i] = doc;
+
+            final int[] docPositions = new int[readVarInt(buffer, cursor)];
+            int position = 0;
+            for (int j = 0; j < docPositions.length; j++) {
+                position += readVarInt(buffer, cursor);
+                docPositions[j] = position;
+            }
+            positions[i] = docPositions;
+        }
+        return new PostingList(docs, positions);
+    }
+
+    private static void writeVarInt(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static int readVarInt(ByteBuffer buffer, int[] cursor) {
+        int value = 0;
+        int shift = 0;
+        byte next;
+        do {
+            next = buffer.get(cursor[0]++);
+            value |= (next & 0x7F) << shift;
+            shift += 7;
+        } while (next < 0);
+        return value;
+    }
+
+}
@@ -0,0 +1,48 @@
+package com.zse.chat.message.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * All words of query have to be present in message, words in quotes have to follow each other.
+ * Words are split the same way as message content is, so "e-mail" is phrase of two words.
+ */
+record SearchQuery(Set<String> terms, List<List<String>> phrases) {
+
+    private static final Pattern SEPARATOR = Pattern.compile("[^\\p{L}\\p{N}]+");
+    private static final Pattern PART = Pattern.compile("\"([^\"]*)\"?|(\\S+)");
+
+    static List<String> tokenize(String text) {
+        if (text == null) {
+            return List.of();
+        }
+        return Arrays.stream(SEPARATOR.split(text.toLowerCase(Locale.ROOT)))
+                .filter(token -> !token.isEmpty())
+                .toList();
+    }
+
+    static SearchQuery parse(String query) {
+        final Set<String> terms = new LinkedHashSet<>();
+        final List<List<String>> phrases = new ArrayList<>();
+
+        final var matcher = PART.matcher(query == null ? "" : query);
+        while (matcher.find()) {
+            final var tokens = tokenize(matcher.group(1) != null ? matcher.group(1) : matcher.group(2));
+            terms.addAll(tokens);
+            if (tokens.size() > 1) {
+                phrases.add(tokens);
+            }
+        }
+        return new SearchQuery(terms, phrases);
+    }
+
+    boolean isEmpty() {
+        return terms.isEmpty();
+    }
+
+}
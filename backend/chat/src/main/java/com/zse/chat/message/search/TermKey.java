@@ -0,0 +1,7 @@
+package com.zse.chat.message.search;
+
+/**
+ * Postings are kept per term and per channel, so search in one channel never reads postings of others.
+ */
+record TermKey(int channelId, String term) {
+}
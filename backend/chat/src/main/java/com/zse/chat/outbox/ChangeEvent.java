@@ -0,0 +1,11 @@
+package com.zse.chat.outbox;
+
+/**
+ * Change relayed from {@link Outbox} to subscribers of {@link ChangeEventBus}.
+ *
+ * @param id        id of outbox row, changes are relayed in its order
+ * @param channelId channel of change, {@code null} for global channel
+ * @param payload   JSON the change was appended with
+ */
+public record ChangeEvent(long id, ChangeType type, Integer channelId, String payload) {
+}
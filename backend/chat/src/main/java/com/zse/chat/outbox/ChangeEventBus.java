@@ -0,0 +1,124 @@
+package com.zse.chat.outbox;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * In-process bus of changes relayed from {@link Outbox}. Every subscriber has bounded queue
+ * of {@code outbox.queue-capacity} changes and thread of its own, so it handles changes one by one
+ * in order they were published, without holding back the others or the writer of the change.
+ * <p>
+ * {@link OutboxRelay} publishes only when every queue has room for the whole batch, otherwise it leaves
+ * the batch in {@code outbox_event}. Slow subscriber holds back the relay then and changes wait in the table
+ * instead of memory, without relay waiting on locks of claimed rows.
+ */
+@Component
+@Slf4j
+public class ChangeEventBus {
+
+    private final MeterRegistry meterRegistry;
+    private final int queueCapacity;
+
+    private final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+
+    public ChangeEventBus(MeterRegistry meterRegistry, Environment env) {
+        this.meterRegistry = meterRegistry;
+        this.queueCapacity = env.getProperty("outbox.queue-capacity", Integer.class, 10_000);
+    }
+
+    /**
+     * @param name    name of subscriber, used by its thread and metrics
+     * @param handler called from thread of subscriber, its exceptions are logged and skipped
+     */
+    public void subscribe(String name, Consumer<ChangeEvent> handler) {
+        final var subscriber = new Subscriber(name, handler, new ArrayBlockingQueue<>(queueCapacity));
+        Gauge.builder("outbox.bus.queue.size", subscriber.queue, Collection::size)
+                .tag("subscriber", name)
+                .register(meterRegistry);
+        subscribers.add(subscriber);
+        subscriber.thread.start();
+    }
+
+    /**
+     * Publishes changes only when queue of every subscriber has room for all of them, so nothing is published
+     * when caller leaves them for later. Only one thread publishes, room cannot be taken meanwhile.
+     *
+     * @return whether changes were published
+     */
+    public boolean tryPublish(List<ChangeEvent> events) {
+        for (Subscriber subscriber : subscribers) {
+            if (subscriber.queue.remainingCapacity() < events.size()) {
+                return false;
+            }
+        }
+        publish(events);
+        return true;
+    }
+
+    /**
+     * Publishes changes, waiting while queue of any subscriber is full.
+     */
+    public void publish(List<ChangeEvent> events) {
+        for (Subscriber subscriber : subscribers) {
+            for (ChangeEvent event : events) {
+                try {
+                    subscriber.queue.put(event);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while publishing change " + event.id(), e);
+                }
+            }
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        subscribers.forEach(subscriber -> subscriber.thread.interrupt());
+    }
+
+    private static final class Subscriber implements Runnable {
+
+        private final String name;
+        private final Consumer<ChangeEvent> handler;
+        private final BlockingQueue<ChangeEvent> queue;
+        private final Thread thread;
+
+        private Subscriber(String name, Consumer<ChangeEvent> handler, BlockingQueue<ChangeEvent> queue) {
+            this.name = name;
+            this.handler = handler;
+            this.queue = queue;
+            this.thread = new Thread(this, "change-bus-" + name);
+            this.thread.setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            while (!Thread.currentThread().isInterrupted()) {
+                final ChangeEvent event;
+                try {
+                    event = queue.take();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                try {
+                    handler.accept(event);
+                } catch (RuntimeException e) {
+                    log.warn("Subscriber {} failed to handle change {}", name, event.id(), e);
+                }
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,5 @@
+package com.zse.chat.outbox;
+
+public enum ChangeType {
+    MESSAGE_CREATED, MESSAGE_UPDATED, MESSAGE_DELETED, MESSAGES_INGESTED, CHANNEL_UPDATED
+}
@@ -0,0 +1,232 @@
+package com.zse.chat.outbox;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Delivers changes relayed from outbox to every instance sharing the database, by Postgres {@code NOTIFY}
+ * on channel {@code cluster-bridge.channel}.
+ * <p>
+ * {@link OutboxRelay} sends notifications in transaction claiming the changes, Postgres delivers them once
+ * it commits. Every instance, the sending one included, listens on connection of its own, opened outside
+ * of the pool, and publishes what it gets to its {@link ChangeEventBus}. Changes from other instances
+ * are published also as {@link ClusterChangeEvent} for state kept in memory of every instance.
+ * <p>
+ * Notifications sent while listening connection was broken are not delivered again. Whenever listening
+ * starts, {@link ClusterResyncEvent} is published, so state kept in memory is loaded again and streaming
+ * clients reload history.
+ */
+@Component
+@ConditionalOnProperty(name = "cluster-bridge.enabled", havingValue = "true")
+@Slf4j
+public class ClusterChangeBridge {
+
+    /**
+     * Postgres refuses larger payloads of {@code NOTIFY}.
+     */
+    static final int MAX_NOTIFICATION_BYTES = 7999;
+    /**
+     * How long listener waits for notifications before it checks whether it should stop.
+     */
+    private static final int POLL_TIMEOUT_MILLIS = 1000;
+
+    private static final String NOTIFY = "select pg_notify(?, n) from unnest(?::text[]) n";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ChangeEventBus changeEventBus;
+    private final ApplicationEventPublisher eventPublisher;
+    private final ObjectMapper objectMapper;
+    private final String channel;
+    private final String url;
+    private final String username;
+    private final String password;
+    private final long reconnectDelay;
+    private final Counter received;
+
+    /**
+     * Tells changes of this instance from changes of the others.
+     */
+    private final String origin = UUID.randomUUID().toString();
+    private final Thread listener = new Thread(this::listen, "cluster-bridge");
+    private volatile boolean running = true;
+
+    public ClusterChangeBridge(
+            JdbcTemplate jdbcTemplate,
+            ChangeEventBus changeEventBus,
+            ApplicationEventPublisher eventPublisher,
+            ObjectMapper objectMapper,
+            MeterRegistry meterRegistry,
+            Environment env
+    ) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.changeEventBus = changeEventBus;
+        this.eventPublisher = eventPublisher;
+        this.objectMapper = objectMapper;
+        this.channel = env.getProperty("cluster-bridge.channel", "chat_changes");
+        this.url = env.getRequiredProperty("spring.datasource.url");
+        this.username = env.getProperty("spring.datasource.username");
+        this.password = env.getProperty("spring.datasource.password");
+        this.reconnectDelay = env.getProperty("cluster-bridge.reconnect-delay", Duration.class, Duration.ofSeconds(5))
+                .toMillis();
+        this.received = meterRegistry.counter("cluster.bridge.received");
+        this.listener.setDaemon(true);
+    }
+
+    @PostConstruct
+    public void start() {
+        listener.start();
+    }
+
+    /**
+     * Sends changes to all instances once the current transaction commits.
+     */
+    public void broadcast(List<ChangeEvent> events) {
+        final List<String> notifications = new ArrayList<>(events.size());
+        for (ChangeEvent event : events) {
+            final var notification = write(event);
+            if (notification.getBytes(StandardCharsets.UTF_8).length > MAX_NOTIFICATION_BYTES) {
+                log.warn("Change {} of type {} is too large to notify other instances", event.id(), event.type());
+                continue;
+            }
+            notifications.add(notification);
+        }
+        if (notifications.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.query(
+                NOTIFY,
+                ps -> {
+                    ps.setString(1, channel);
+                    ps.setArray(2, ps.getConnection().createArrayOf("text", notifications.toArray()));
+                },
+                rs -> {
+                }
+        );
+    }
+
+    @PreDestroy
+    public void close() {
+        running = false;
+        listener.interrupt();
+    }
+
+    private void listen() {
+        while (running) {
+            try (Connection connection = DriverManager.getConnection(url, username, password)) {
+                try (var statement = connection.createStatement()) {
+                    statement.execute("listen " + channel);
+                }
+                final var pgConnection = connection.unwrap(PGConnection.class);
+                log.info("Listening for changes of other instances on {}", channel);
+                resync();
+                while (running) {
+                    final PGNotification[] notifications = pgConnection.getNotifications(POLL_TIMEOUT_MILLIS);
+                    if (notifications != null && notifications.length > 0) {
+                        dispatch(notifications);
+                    }
+                }
+            } catch (SQLException e) {
+                if (!running) {
+                    return;
+                }
+                log.warn("Listening for changes of other instances failed, reconnecting in {} ms", reconnectDelay, e);
+                try {
+                    Thread.sleep(reconnectDelay);
+                } catch (InterruptedException interrupted) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private void resync() {
+        try {
+            eventPublisher.publishEvent(new ClusterResyncEvent());
+        } catch (RuntimeException e) {
+            log.warn("Resync after listening for changes of other instances failed", e);
+        }
+    }
+
+    void dispatch(PGNotification[] notifications) {
+        final List<ChangeEvent> events = new ArrayList<>(notifications.length);
+        final List<ChangeEvent> remoteEvents = new ArrayList<>();
+        for (PGNotification notification : notifications) {
+            final Notification parsed;
+            try {
+                parsed = read(notification.getParameter());
+            } catch (JsonProcessingException | IllegalArgumentException e) {
+                log.warn("Skipping notification which is not a change: {}", e.getMessage());
+                continue;
+            }
+            events.add(parsed.event());
+            if (!origin.equals(parsed.origin())) {
+                remoteEvents.add(parsed.event());
+            }
+        }
+        received.increment(events.size());
+
+        for (ChangeEvent event : remoteEvents) {
+            try {
+                eventPublisher.publishEvent(new ClusterChangeEvent(event));
+            } catch (RuntimeException e) {
+                log.warn("Handling change {} of other instance failed", event.id(), e);
+            }
+        }
+        changeEventBus.publish(events);
+    }
+
+    private String write(ChangeEvent event) {
+        final var node = objectMapper.createObjectNode()
+                .put("origin", origin)
+                .put("id", event.id())
+                .put("type", event.type().name());
+        if (event.channelId() != null) {
+            node.put("channelId", event.channelId());
+        }
+        try {
+            node.set("payload", objectMapper.readTree(event.payload()));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Payload of change " + event.id() + " is not JSON", e);
+        }
+        return node.toString();
+    }
+
+    private Notification read(String notification) throws JsonProcessingException {
+        final var node = objectMapper.readTree(notification);
+        final var channelId = node.get("channelId");
+        return new Notification(
+                node.path("origin").asText(),
+                new ChangeEvent(
+                        node.path("id").asLong(),
+                        ChangeType.valueOf(node.path("type").asText()),
+                        channelId == null || channelId.isNull() ? null : channelId.asInt(),
+                        node.path("payload").toString()
+                )
+        );
+    }
+
+    private record Notification(String origin, ChangeEvent event) {
+    }
+
+}
@@ -0,0 +1,8 @@
+package com.zse.chat.outbox;
+
+/**
+ * Change made by other instance, published by {@link ClusterChangeBridge} for state kept in memory.
+ * Changes of this instance are published as {@link com.zse.chat.message.MessageEvent} right after commit.
+ */
+public record ClusterChangeEvent(ChangeEvent change) {
+}
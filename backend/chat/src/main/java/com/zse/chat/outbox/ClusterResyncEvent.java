@@ -0,0 +1,8 @@
+package com.zse.chat.outbox;
+
+/**
+ * Published by {@link ClusterChangeBridge} whenever it starts listening, changes of other instances
+ * made while it was not listening are unknown. State kept in memory should be loaded again.
+ */
+public record ClusterResyncEvent() {
+}
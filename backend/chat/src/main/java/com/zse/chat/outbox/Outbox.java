@@ -0,0 +1,84 @@
+package com.zse.chat.outbox;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.IllegalTransactionStateException;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Changes written to {@code outbox_event} in the same transaction as data they describe,
+ * so they are kept exactly when the change is. {@link OutboxRelay} hands them to {@link ChangeEventBus}.
+ * <p>
+ * Changes of transaction are collected in memory and inserted by one batch right before it commits.
+ * Relay is woken up once the transaction committed, it does not wait for its next poll.
+ */
+@Component
+public class Outbox {
+
+    private static final String INSERT_EVENT =
+            "insert into outbox_event (type, channel_id, payload, created_at) values (?, ?, ?::jsonb, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper;
+    private final OutboxRelay outboxRelay;
+
+    public Outbox(JdbcTemplate jdbcTemplate, ObjectMapper objectMapper, OutboxRelay outboxRelay) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.objectMapper = objectMapper;
+        this.outboxRelay = outboxRelay;
+    }
+
+    /**
+     * @param channelId channel of change, {@code null} for global channel
+     * @param payload   serialized to JSON right away, later changes of it are not written
+     * @throws IllegalTransactionStateException when there is no transaction to write the change with
+     */
+    public void append(ChangeType type, Integer channelId, Object payload) {
+        if (!TransactionSynchronizationManager.isActualTransactionActive() ||
+                !TransactionSynchronizationManager.isSynchronizationActive()) {
+            throw new IllegalTransactionStateException("Outbox has to be written in transaction of the change");
+        }
+        final String json;
+        try {
+            json = objectMapper.writeValueAsString(payload);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Payload of " + type + " cannot be written as JSON", e);
+        }
+        pendingEvents().add(new Object[]{type.name(), channelId, json, Timestamp.valueOf(LocalDateTime.now())});
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Object[]> pendingEvents() {
+        final var bound = (List<Object[]>) TransactionSynchronizationManager.getResource(this);
+        if (bound != null) {
+            return bound;
+        }
+
+        final List<Object[]> events = new ArrayList<>();
+        TransactionSynchronizationManager.bindResource(this, events);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void beforeCommit(boolean readOnly) {
+                jdbcTemplate.batchUpdate(INSERT_EVENT, events);
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                TransactionSynchronizationManager.unbindResourceIfPossible(Outbox.this);
+                if (status == STATUS_COMMITTED) {
+                    outboxRelay.wakeUp();
+                }
+            }
+        });
+        return events;
+    }
+
+}
@@ -0,0 +1,165 @@
+package com.zse.chat.outbox;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.core.env.Environment;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PreDestroy;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Moves changes from {@code outbox_event} to {@link ChangeEventBus} in batches of {@code outbox.batch-size}.
+ * <p>
+ * Relay runs on one thread of its own, woken up by {@link Outbox} after every commit and polling
+ * every {@code outbox.poll-interval} for changes committed while it was not running. Rows are claimed
+ * by locking them with {@code skip locked}, so instances relaying the same table never take the same
+ * change, and deleted in the same transaction once they were published. Without {@link ClusterChangeBridge}
+ * change is published to subscribers of the instance that claimed it, with the bridge it is notified
+ * to all instances, delivered when the transaction commits.
+ * <p>
+ * Relay never waits for subscribers while it holds the locks. When some queue of {@link ChangeEventBus}
+ * has no room for the batch, transaction is rolled back and the batch is relayed by a later run.
+ * Batch is never larger than {@code outbox.queue-capacity}, so it fits into queues once they are drained.
+ * <p>
+ * Changes are delivered at least once. When relay crashes or its transaction fails after publishing,
+ * rows stay in outbox and are published again, subscribers have to tolerate duplicates.
+ */
+@Component
+@Slf4j
+public class OutboxRelay {
+
+    private static final String CLAIM_EVENTS = "select id, type, channel_id, payload from outbox_event " +
+            "order by id limit ? for update skip locked";
+    private static final String DELETE_EVENTS = "delete from outbox_event where id = any(?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ChangeEventBus changeEventBus;
+    private final ObjectProvider<ClusterChangeBridge> clusterChangeBridge;
+    private final int batchSize;
+    private final Counter relayed;
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        final var thread = new Thread(runnable, "outbox-relay");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicBoolean wokenUp = new AtomicBoolean();
+
+    public OutboxRelay(
+            JdbcTemplate jdbcTemplate,
+            PlatformTransactionManager transactionManager,
+            ChangeEventBus changeEventBus,
+            ObjectProvider<ClusterChangeBridge> clusterChangeBridge,
+            MeterRegistry meterRegistry,
+            Environment env
+    ) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.changeEventBus = changeEventBus;
+        this.clusterChangeBridge = clusterChangeBridge;
+        this.batchSize = Math.min(
+                env.getProperty("outbox.batch-size", Integer.class, 500),
+                env.getProperty("outbox.queue-capacity", Integer.class, 10_000)
+        );
+        this.relayed = meterRegistry.counter("outbox.relayed");
+    }
+
+    /**
+     * Schedules relay unless it is scheduled already.
+     */
+    public void wakeUp() {
+        if (!wokenUp.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            executor.execute(this::relay);
+        } catch (RejectedExecutionException e) {
+            // Shutting down, changes are relayed after start
+            wokenUp.set(false);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${outbox.poll-interval:PT1S}")
+    public void poll() {
+        wakeUp();
+    }
+
+    /**
+     * Relays changes until outbox is empty.
+     *
+     * @return amount of changes relayed
+     */
+    public int relay() {
+        // Changes committed from now on wake up the next run
+        wokenUp.set(false);
+
+        final var bridge = clusterChangeBridge.getIfAvailable();
+        int count = 0;
+        List<ChangeEvent> batch;
+        do {
+            try {
+                batch = transactionTemplate.execute(status -> {
+                    final var events = claimEvents();
+                    if (events.isEmpty()) {
+                        return events;
+                    }
+                    if (bridge != null) {
+                        bridge.broadcast(events);
+                    } else if (!changeEventBus.tryPublish(events)) {
+                        status.setRollbackOnly();
+                        return null;
+                    }
+                    deleteEvents(events);
+                    return events;
+                });
+            } catch (DataAccessException e) {
+                log.warn("Relaying outbox changes failed", e);
+                return count;
+            }
+            if (batch == null) {
+                log.debug("Change bus is full, {} changes relayed before leaving the rest in outbox", count);
+                return count;
+            }
+            relayed.increment(batch.size());
+            count += batch.size();
+        } while (batch.size() == batchSize);
+        return count;
+    }
+
+    private List<ChangeEvent> claimEvents() {
+        return jdbcTemplate.query(
+                CLAIM_EVENTS,
+                (rs, rowNum) -> new ChangeEvent(
+                        rs.getLong(1),
+                        ChangeType.valueOf(rs.getString(2)),
+                        rs.getObject(3, Integer.class),
+                        rs.getString(4)
+                ),
+                batchSize
+        );
+    }
+
+    private void deleteEvents(List<ChangeEvent> events) {
+        final Long[] ids = events.stream().map(ChangeEvent::id).toArray(Long[]::new);
+        jdbcTemplate.update(DELETE_EVENTS, ps -> ps.setArray(1, ps.getConnection().createArrayOf("bigint", ids)));
+    }
+
+    @PreDestroy
+    public void close() {
+        executor.shutdown();
+    }
+
+}
@@ -7,6 +7,7 @@ import org.hibernate.annotations.GenericGenerator;
 import org.hibernate.annotations.Parameter;
 
 import javax.persistence.*;
+import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.TimeZone;
@@ -40,9 +41,18 @@ public class User {
     String phonePrefix;
     String country;
     String city;
+    /**
+     * Written only when user is created, online users are tracked by {@link UserPresenceService}.
+     */
+    @Column(updatable = false)
     UserStatus userStatus;
     Language userLanguage;
     TimeZone timeZone;
+    /**
+     * Written only by {@link UserPresenceService}, saving user does not overwrite it.
+     */
+    @Column(insertable = false, updatable = false)
+    LocalDateTime lastSeenAt;
 
     @ManyToMany(mappedBy = "owners")
     List<Channel> channelsOwner;
@@ -69,6 +79,7 @@ public class User {
         this.userStatus = UserStatus.OFFLINE;
         this.userLanguage = Language.POLISH;
         this.timeZone = TimeZone.getTimeZone("Europe/Warsaw");
+        this.lastSeenAt = null;
         this.channelsOwner = new ArrayList<>();
         this.channelsMember = new ArrayList<>();
 
@@ -18,8 +18,10 @@ import javax.validation.Valid;
 import javax.validation.constraints.Email;
 import javax.validation.constraints.Pattern;
 import javax.validation.constraints.Size;
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 @Tag(name = "Users")
 @RequestMapping("/users")
@@ -29,6 +31,7 @@ import java.util.Optional;
 public class UserController {
 
     private final UserService userService;
+    private final UserPresenceService userPresenceService;
 
     @Operation(summary = "Get all users")
     @GetMapping
@@ -40,6 +43,26 @@ public class UserController {
                 .toList();
     }
 
+    @Operation(summary = "Get nicknames of online users")
+    @GetMapping("/online")
+    @VerifyJWT(withoutArgs = true)
+    @SecurityRequirement(name = "JWT")
+    public List<String> getOnlineUsers(){
+        return userPresenceService.getOnline();
+    }
+
+    @Operation(
+            summary = "Report user is online",
+            description = "User is shown online for a minute after the last heartbeat " +
+                    "and while they have open WebSocket session."
+    )
+    @PostMapping("/heartbeat")
+    @VerifyJWT
+    @SecurityRequirement(name = "JWT")
+    public void heartbeat(UserDetailRequestDTO userDetailRequestDTO){
+        userPresenceService.heartbeat(userDetailRequestDTO.getNickname());
+    }
+
     @Operation(
             summary = "Get user by nick",
             parameters = {@Parameter(name = "nick", description = "User nick")}
@@ -76,7 +99,19 @@ public class UserController {
     @VerifyJWT
     @SecurityRequirement(name = "JWT")
     public UserResponseDTO updateUser(@RequestBody UpdateUserDTO updateUserDTO){
-        final var updatedUser = userService.updateUser(updateUserDTO);
+        // Status is kept in memory, changing only status does not save the user
+        final var updatedUser = updateUserDTO.updatesOnlyStatus() ?
+                userService.getUserByNick(updateUserDTO.getNickname()) :
+                userService.updateUser(updateUserDTO);
+        if (updateUserDTO.getUserStatus() != null) {
+            updateUserDTO.getUserStatus().ifPresent(userStatus -> {
+                if (userStatus == User.UserStatus.ONLINE) {
+                    userPresenceService.heartbeat(updatedUser.getNickname());
+                } else {
+                    userPresenceService.offline(updatedUser.getNickname());
+                }
+            });
+        }
 
         return createUserResponseDTO(updatedUser);
     }
@@ -145,6 +180,13 @@ public class UserController {
         Optional<Boolean> showAddress;
 
         Optional<Boolean> deleted;
+
+        boolean updatesOnlyStatus() {
+            return userStatus != null && userStatus.isPresent() && Stream.of(
+                    firstName, lastName, phoneNumber, phonePrefix, country, city, language, timeZone,
+                    showFirstNameAndLastName, showEmail, showPhoneNumber, showAddress, deleted
+            ).allMatch(field -> field == null || field.isEmpty());
+        }
     }
 
     @Value
@@ -168,6 +210,7 @@ public class UserController {
             String country,
             String city,
             String userStatus,
+            LocalDateTime lastSeenAt,
             String userLanguage,
             String timeZone,
             Boolean showFirstNameAndLastName,
@@ -201,7 +244,10 @@ public class UserController {
                 .phonePrefix(user.getPhonePrefix())
                 .country(user.getCountry())
                 .city(user.getCity())
-                .userStatus(String.valueOf(user.getUserStatus()))
+                .userStatus(String.valueOf(userPresenceService.isOnline(user.getNickname()) ?
+                        User.UserStatus.ONLINE :
+                        User.UserStatus.OFFLINE))
+                .lastSeenAt(user.getLastSeenAt())
                 .userLanguage(String.valueOf(user.getUserLanguage()))
                 .timeZone(String.valueOf(user.getTimeZone().getID()))
                 .showFirstNameAndLastName(user.getShowFirstNameAndLastName())
@@ -0,0 +1,196 @@
+package com.zse.chat.user;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.env.Environment;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Online users, kept only in memory instead of {@link User#getUserStatus()}. User is online while they have
+ * open WebSocket session or for {@code presence.expiry} after their last heartbeat.
+ * <p>
+ * Expiry is driven by timing wheel advanced every {@code presence.tick}, the same way as typing in channels.
+ * Users still connected when their slot comes up are put into later slot. Only time user was last seen
+ * is written to database, coalesced in memory and flushed every {@code presence.flush-interval},
+ * so going online and offline does not update row of the user.
+ */
+@Service
+@Slf4j
+public class UserPresenceService {
+
+    private static final String UPDATE_LAST_SEEN = "update chat_user set last_seen_at = ? " +
+            "where nickname = ? and (last_seen_at is null or last_seen_at < ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final long ticksToExpire;
+
+    private final Map<String, Presence> online = new ConcurrentHashMap<>();
+    /**
+     * The latest time user was seen at not flushed yet.
+     */
+    private final Map<String, Long> pendingLastSeen = new ConcurrentHashMap<>();
+    /**
+     * One slot more than expiry takes, so slot being filled is never the one being expired.
+     */
+    private final Set<String>[] wheel;
+    private volatile long currentTick;
+
+    @SuppressWarnings("unchecked")
+    public UserPresenceService(JdbcTemplate jdbcTemplate, Environment env) {
+        this.jdbcTemplate = jdbcTemplate;
+        final var tick = env.getProperty("presence.tick", Duration.class, Duration.ofSeconds(1));
+        final var expiry = env.getProperty("presence.expiry", Duration.class, Duration.ofSeconds(60));
+        this.ticksToExpire = Math.max(1, (expiry.toMillis() + tick.toMillis() - 1) / tick.toMillis());
+
+        this.wheel = new Set[(int) ticksToExpire + 1];
+        for (int i = 0; i < wheel.length; i++) {
+            wheel[i] = ConcurrentHashMap.newKeySet();
+        }
+    }
+
+    /**
+     * Keeps user online for {@code presence.expiry}.
+     */
+    public void heartbeat(String nickname) {
+        final long expiresAt = currentTick + ticksToExpire;
+        online.merge(
+                nickname,
+                new Presence(expiresAt, Set.of()),
+                (current, refreshed) -> new Presence(Math.max(current.expiresAt(), expiresAt), current.sessions())
+        );
+        wheel[slot(expiresAt)].add(nickname);
+        seen(nickname);
+    }
+
+    /**
+     * Keeps user online until the session is closed.
+     */
+    public void connected(String nickname, String sessionId) {
+        final long expiresAt = currentTick + ticksToExpire;
+        online.compute(nickname, (key, current) -> {
+            final Set<String> sessions = new HashSet<>(current == null ? Set.of() : current.sessions());
+            sessions.add(sessionId);
+            return new Presence(current == null ? expiresAt : Math.max(current.expiresAt(), expiresAt), sessions);
+        });
+        wheel[slot(expiresAt)].add(nickname);
+        seen(nickname);
+    }
+
+    /**
+     * User stays online for the rest of expiry, so reconnecting does not make them flip.
+     * Closing the same session again is ignored.
+     */
+    public void disconnected(String nickname, String sessionId) {
+        online.computeIfPresent(nickname, (key, current) -> {
+            final Set<String> sessions = new HashSet<>(current.sessions());
+            sessions.remove(sessionId);
+            return new Presence(current.expiresAt(), sessions);
+        });
+        seen(nickname);
+    }
+
+    /**
+     * Makes user offline right away, regardless of their sessions.
+     */
+    public void offline(String nickname) {
+        if (online.remove(nickname) != null) {
+            seen(nickname);
+        }
+    }
+
+    public boolean isOnline(String nickname) {
+        return online.containsKey(nickname);
+    }
+
+    /**
+     * @return nicknames of online users
+     */
+    public List<String> getOnline() {
+        return online.keySet().stream()
+                .sorted(Comparator.naturalOrder())
+                .toList();
+    }
+
+    @Scheduled(fixedRateString = "${presence.tick:PT1S}")
+    public void advance() {
+        final long tick = currentTick + 1;
+        currentTick = tick;
+
+        final Set<String> slot = wheel[slot(tick)];
+        for (String nickname : slot) {
+            slot.remove(nickname);
+            final var presence = online.get(nickname);
+            // Missing ones went offline already, the later ones were refreshed into later slot
+            if (presence == null || presence.expiresAt() > tick) {
+                continue;
+            }
+            if (presence.sessions().isEmpty()) {
+                if (online.remove(nickname, presence)) {
+                    seen(nickname);
+                }
+            } else {
+                final long expiresAt = tick + ticksToExpire;
+                if (online.replace(nickname, presence, new Presence(expiresAt, presence.sessions()))) {
+                    wheel[slot(expiresAt)].add(nickname);
+                    seen(nickname);
+                }
+            }
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${presence.flush-interval:PT1M}")
+    @PreDestroy
+    public void flush() {
+        final List<Object[]> lastSeen = new ArrayList<>();
+        for (String nickname : pendingLastSeen.keySet()) {
+            final Long seenAt = pendingLastSeen.remove(nickname);
+            if (seenAt != null) {
+                final var timestamp = new Timestamp(seenAt);
+                lastSeen.add(new Object[]{timestamp, nickname, timestamp});
+            }
+        }
+        if (lastSeen.isEmpty()) {
+            return;
+        }
+
+        try {
+            jdbcTemplate.batchUpdate(UPDATE_LAST_SEEN, lastSeen);
+        } catch (DataAccessException e) {
+            // Written with the next flush
+            lastSeen.forEach(row -> pendingLastSeen.merge(
+                    (String) row[1],
+                    ((Timestamp) row[0]).getTime(),
+                    Math::max
+            ));
+            log.warn("Flush of {} last seen times failed", lastSeen.size(), e);
+        }
+    }
+
+    private void seen(String nickname) {
+        pendingLastSeen.merge(nickname, System.currentTimeMillis(), Math::max);
+    }
+
+    private int slot(long tick) {
+        return (int) (tick % wheel.length);
+    }
+
+    /**
+     * @param sessions ids of open WebSocket sessions of user
+     */
+    private record Presence(long expiresAt, Set<String> sessions) {
+    }
+
+}
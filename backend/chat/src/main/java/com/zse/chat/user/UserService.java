@@ -80,14 +80,12 @@ public class UserService {
                 .id(savedUser.getId())
                 .email(savedUser.getEmail())
                 .nickname(savedUser.getNickname())
-                .userStatus(savedUser.getUserStatus())
                 .firstName(updateUserDTO.getFirstName().orElse(savedUser.getFirstName()))
                 .lastName(updateUserDTO.getLastName().orElse(savedUser.getLastName()))
                 .phoneNumber(updateUserDTO.getPhoneNumber().orElse(savedUser.getPhoneNumber()))
                 .phonePrefix(updateUserDTO.getPhonePrefix().orElse(savedUser.getPhonePrefix()))
                 .country(updateUserDTO.getCountry().orElse(savedUser.getCountry()))
                 .city(updateUserDTO.getCity().orElse(savedUser.getCity()))
-                .userStatus(updateUserDTO.getUserStatus().orElse(savedUser.getUserStatus()))
                 .userLanguage(updateUserDTO.getLanguage().orElse(savedUser.getUserLanguage()))
                 .timeZone(
                         updateUserDTO.getTimeZone().isPresent() ?
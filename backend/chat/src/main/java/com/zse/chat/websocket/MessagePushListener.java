@@ -0,0 +1,99 @@
+package com.zse.chat.websocket;
+
+import com.zse.chat.message.MessageController.MessageResponseDTO;
+import com.zse.chat.message.MessageEvent;
+import com.zse.chat.message.MessageOutbox;
+import com.zse.chat.message.MessageOutbox.MessagesIngestedDTO;
+import com.zse.chat.message.channel.ChannelTypingEvent;
+import com.zse.chat.outbox.ChangeEvent;
+import com.zse.chat.outbox.ChangeEventBus;
+import com.zse.chat.outbox.ChangeType;
+import lombok.Builder;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.jackson.Jacksonized;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+
+/**
+ * Pushes changes of messages relayed from outbox by {@link ChangeEventBus}, so sending them to clients
+ * never holds back the writer of the message. Messages ingested in bulk are pushed as one event
+ * with range of their ids, clients load them by paged endpoint.
+ */
+@Component
+@RequiredArgsConstructor
+public class MessagePushListener {
+
+    private final SimpMessagingTemplate messagingTemplate;
+    private final ChangeEventBus changeEventBus;
+    private final MessageOutbox messageOutbox;
+
+    @PostConstruct
+    public void subscribe() {
+        changeEventBus.subscribe("push", this::onChange);
+    }
+
+    public void onChange(ChangeEvent change) {
+        final var channelId = change.channelId();
+        final var destination = channelId == null ?
+                WebSocketConfig.GLOBAL_CHANNEL_TOPIC :
+                WebSocketConfig.CHANNEL_TOPIC_PREFIX + channelId;
+
+        if (change.type() == ChangeType.MESSAGES_INGESTED) {
+            messagingTemplate.convertAndSend(destination, createMessagesIngestedEventDTO(change));
+            return;
+        }
+        final var type = MessageOutbox.eventTypeOf(change.type());
+        if (type != null) {
+            messagingTemplate.convertAndSend(destination, createMessageEventDTO(type, change));
+        }
+    }
+
+    @EventListener
+    public void onTypingEvent(ChannelTypingEvent event) {
+        messagingTemplate.convertAndSend(
+                WebSocketConfig.CHANNEL_TOPIC_PREFIX + event.channelId() + WebSocketConfig.TYPING_TOPIC_SUFFIX,
+                TypingEventDTO.builder()
+                        .channelId(event.channelId())
+                        .nickname(event.nickname())
+                        .typing(event.typing())
+                        .build()
+        );
+    }
+
+    //region DTOs
+    @Builder
+    @Jacksonized
+    record MessageEventDTO(MessageEvent.Type type, Integer channelId, MessageResponseDTO message) {
+    }
+
+    @Builder
+    @Jacksonized
+    record MessagesIngestedEventDTO(String type, Integer channelId, MessagesIngestedDTO messages) {
+    }
+
+    @Builder
+    @Jacksonized
+    record TypingEventDTO(int channelId, String nickname, boolean typing) {
+    }
+    //endregion
+
+    private MessageEventDTO createMessageEventDTO(MessageEvent.Type type, ChangeEvent change) {
+        return MessageEventDTO.builder()
+                .type(type)
+                .channelId(change.channelId())
+                .message(messageOutbox.readMessage(change))
+                .build();
+    }
+
+    private MessagesIngestedEventDTO createMessagesIngestedEventDTO(ChangeEvent change) {
+        return MessagesIngestedEventDTO.builder()
+                .type("INGESTED")
+                .channelId(change.channelId())
+                .messages(messageOutbox.readIngested(change))
+                .build();
+    }
+
+}
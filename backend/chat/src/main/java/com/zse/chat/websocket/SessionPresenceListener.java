@@ -0,0 +1,36 @@
+package com.zse.chat.websocket;
+
+import com.zse.chat.user.UserPresenceService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.messaging.SessionConnectedEvent;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+
+/**
+ * Keeps users with open STOMP session online.
+ */
+@Component
+@RequiredArgsConstructor
+public class SessionPresenceListener {
+
+    private final UserPresenceService userPresenceService;
+
+    @EventListener
+    public void onConnected(SessionConnectedEvent event) {
+        final var user = event.getUser();
+        if (user != null) {
+            userPresenceService.connected(user.getName(), SimpMessageHeaderAccessor.getSessionId(event.getMessage().getHeaders()));
+        }
+    }
+
+    @EventListener
+    public void onDisconnected(SessionDisconnectEvent event) {
+        final var user = event.getUser();
+        if (user != null) {
+            userPresenceService.disconnected(user.getName(), event.getSessionId());
+        }
+    }
+
+}
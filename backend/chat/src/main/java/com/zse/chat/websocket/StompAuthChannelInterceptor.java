@@ -0,0 +1,107 @@
+package com.zse.chat.websocket;
+
+import com.auth0.jwt.exceptions.JWTVerificationException;
+import com.zse.chat.channel.ChannelService;
+import com.zse.chat.login.InvalidJWTException;
+import com.zse.chat.login.MissingJWTException;
+import com.zse.chat.login.VerifyUser;
+import com.zse.chat.message.channel.ChannelAccessFailedException;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageHeaderAccessor;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.security.Principal;
+
+/**
+ * Authenticates STOMP session with the same JWT as REST endpoints
+ * and allows subscribing only to global channel and channels visible for the user, including their typing topics.
+ * Clients only receive, frames other than connecting, subscribing and disconnecting are rejected,
+ * so nobody can send events to topics through the broker.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class StompAuthChannelInterceptor implements ChannelInterceptor {
+
+    private final VerifyUser verifyUser;
+    private final ChannelService channelService;
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        final var accessor = MessageHeaderAccessor.getAccessor(message, StompHeaderAccessor.class);
+        if (accessor == null || accessor.getCommand() == null) {
+            return message;
+        }
+
+        switch (accessor.getCommand()) {
+            case CONNECT, STOMP -> {
+                final String nickname = authenticate(accessor.getFirstNativeHeader("Authorization"));
+                accessor.setUser(new StompPrincipal(nickname));
+            }
+            case SUBSCRIBE -> checkSubscription(accessor.getUser(), accessor.getDestination());
+            case UNSUBSCRIBE, DISCONNECT -> {
+            }
+            default -> {
+                log.warn("Rejected STOMP {} to {}", accessor.getCommand(), accessor.getDestination());
+                throw new ChannelAccessFailedException();
+            }
+        }
+        return message;
+    }
+
+    private String authenticate(String header) {
+        if (!StringUtils.hasText(header)) {
+            log.warn("Missing JWT token. STOMP CONNECT");
+            throw new MissingJWTException();
+        }
+        try {
+            return verifyUser.getNickname(header.replace("Bearer ", ""));
+        } catch (JWTVerificationException e) {
+            log.error("Parsing Jwt token for STOMP CONNECT failed due to: {}", e.getMessage());
+            throw new InvalidJWTException();
+        }
+    }
+
+    private void checkSubscription(Principal user, String destination) {
+        if (user == null) {
+            throw new MissingJWTException();
+        }
+        if (WebSocketConfig.GLOBAL_CHANNEL_TOPIC.equals(destination)) {
+            return;
+        }
+        if (destination == null || !destination.startsWith(WebSocketConfig.CHANNEL_TOPIC_PREFIX)) {
+            throw new ChannelAccessFailedException();
+        }
+
+        var channelPart = destination.substring(WebSocketConfig.CHANNEL_TOPIC_PREFIX.length());
+        if (channelPart.endsWith(WebSocketConfig.TYPING_TOPIC_SUFFIX)) {
+            channelPart = channelPart.substring(0, channelPart.length() - WebSocketConfig.TYPING_TOPIC_SUFFIX.length());
+        }
+
+        final int channelId;
+        try {
+            channelId = Integer.parseInt(channelPart);
+        } catch (NumberFormatException e) {
+            throw new ChannelAccessFailedException();
+        }
+
+        if (!channelService.userHasPermissionToSeeChannel(channelId, user.getName())) {
+            log.warn("User {} tried to subscribe channel {} without access", user.getName(), channelId);
+            throw new ChannelAccessFailedException();
+        }
+    }
+
+    record StompPrincipal(String nickname) implements Principal {
+        @Override
+        public String getName() {
+            return nickname;
+        }
+    }
+
+}
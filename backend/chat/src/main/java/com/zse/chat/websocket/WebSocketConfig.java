@@ -0,0 +1,55 @@
+package com.zse.chat.websocket;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.messaging.simp.config.ChannelRegistration;
+import org.springframework.messaging.simp.config.MessageBrokerRegistry;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
+import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
+import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketTransportRegistration;
+
+import java.time.Duration;
+
+@Configuration
+@EnableWebSocketMessageBroker
+@RequiredArgsConstructor
+public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
+
+    public static final String GLOBAL_CHANNEL_TOPIC = "/topic/messages";
+    public static final String CHANNEL_TOPIC_PREFIX = "/topic/channels/";
+    public static final String TYPING_TOPIC_SUFFIX = "/typing";
+
+    private final StompAuthChannelInterceptor stompAuthChannelInterceptor;
+    private final Environment env;
+
+    @Override
+    public void registerStompEndpoints(StompEndpointRegistry registry) {
+        registry.addEndpoint("/ws")
+                .setAllowedOriginPatterns("*");
+    }
+
+    @Override
+    public void configureMessageBroker(MessageBrokerRegistry registry) {
+        registry.enableSimpleBroker("/topic");
+    }
+
+    /**
+     * Session which cannot take messages for {@code fanout.stall-timeout} or buffers more than
+     * {@code websocket.send-buffer-size} is closed, so it does not hold outbound threads of other sessions.
+     */
+    @Override
+    public void configureWebSocketTransport(WebSocketTransportRegistration registration) {
+        registration
+                .setSendTimeLimit((int) env.getProperty("fanout.stall-timeout", Duration.class, Duration.ofSeconds(10)).toMillis())
+                .setSendBufferSizeLimit((int) env.getProperty("websocket.send-buffer-size", DataSize.class, DataSize.ofKilobytes(512)).toBytes());
+    }
+
+    @Override
+    public void configureClientInboundChannel(ChannelRegistration registration) {
+        registration.interceptors(stompAuthChannelInterceptor);
+    }
+
+}
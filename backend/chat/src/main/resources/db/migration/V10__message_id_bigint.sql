@@ -0,0 +1,27 @@
+-- Message ids become 64-bit, so they can be made by snowflake generator (message-ids.generator).
+-- Changing type of partitioned table changes all its partitions, tables are rewritten.
+alter table message alter column id type int8;
+alter table message_archive alter column id type int8;
+
+alter table channel_read_state alter column last_read_id type int8;
+alter table message_reaction_user alter column message_id type int8;
+alter table message_reaction alter column message_id type int8;
+alter table attachment alter column message_id type int8;
+
+-- Indexes of partitions are built again under generated names, they get back names given
+-- by MessagePartitionMaintenance
+do $$
+declare
+    partition regclass;
+begin
+    for partition in
+        select inhrelid::regclass from pg_inherits
+        where inhparent in ('message'::regclass, 'message_archive'::regclass)
+    loop
+        execute format('alter index if exists %I rename to %I',
+                partition || '_channel_id_id_idx', partition || '_channel_history_idx');
+        execute format('alter index if exists %I rename to %I',
+                partition || '_id_idx', partition || '_global_history_idx');
+    end loop;
+end
+$$;
@@ -0,0 +1,10 @@
+-- Changes of messages and channels written in transaction of the change and relayed by OutboxRelay.
+-- Relayed rows are deleted, table holds only changes waiting for relay.
+create table outbox_event (
+    id int8 generated always as identity,
+    type varchar(32) not null,
+    channel_id int4,
+    payload jsonb not null,
+    created_at timestamp not null,
+    primary key (id)
+);
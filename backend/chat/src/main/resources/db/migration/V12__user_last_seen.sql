@@ -0,0 +1,3 @@
+-- Time user was last seen online, written in batches by UserPresenceService.
+-- Online state itself is kept only in memory, user_status is no longer updated.
+alter table chat_user add column last_seen_at timestamp;
@@ -0,0 +1,9 @@
+-- Every row takes its own sequence value again, blocks reserved per instance let message written later
+-- get lower id than messages already delivered by other instance.
+-- Pooled-lo may have handed out up to 49 values past the last one, these are skipped.
+alter sequence channel_sequence increment by 1;
+alter sequence message_sequence increment by 1;
+alter sequence user_sequence increment by 1;
+select setval('channel_sequence', last_value + 49) from channel_sequence;
+select setval('message_sequence', last_value + 49) from message_sequence;
+select setval('user_sequence', last_value + 49) from user_sequence;
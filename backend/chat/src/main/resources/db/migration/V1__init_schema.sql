@@ -0,0 +1,61 @@
+-- Schema previously created by hibernate ddl-auto.
+-- Existing databases are baselined on this version and skip it.
+create sequence channel_sequence start 1 increment 1;
+create sequence message_sequence start 1 increment 1;
+create sequence user_sequence start 1 increment 1;
+
+create table channel (
+    id int4 not null,
+    primary key (id)
+);
+
+create table chat_user (
+    id int4 not null,
+    city varchar(255),
+    country varchar(255),
+    deleted boolean,
+    email varchar(255) not null,
+    first_name varchar(255),
+    last_name varchar(255),
+    nickname varchar(255) not null,
+    phone_number varchar(255),
+    phone_prefix varchar(255),
+    show_address boolean,
+    show_email boolean,
+    show_first_name_and_last_name boolean,
+    show_phone_number boolean,
+    time_zone varchar(255),
+    user_language int4,
+    user_status int4,
+    primary key (id)
+);
+
+create table message (
+    id int4 not null,
+    content varchar(255),
+    created_at timestamp,
+    deleted boolean not null,
+    nickname int4 not null,
+    channel_id int4,
+    primary key (id)
+);
+
+create table user_member_channel (
+    channel_id int4 not null,
+    user_id int4 not null
+);
+
+create table user_owner_channel (
+    channel_id int4 not null,
+    user_id int4 not null
+);
+
+alter table chat_user add constraint UK_qfhbtfp0f7jg5c2e7ac0d3qbf unique (email);
+alter table chat_user add constraint UK_q6eele9apilayyirymq6napxj unique (nickname);
+
+alter table message add constraint FK53ixdt42fb7bq8heovpx3ew0n foreign key (nickname) references chat_user;
+alter table message add constraint FKiimr93ytmcuira5le0sldvvma foreign key (channel_id) references channel;
+alter table user_member_channel add constraint FK6b9p6wsxjmeppkv31qujf456p foreign key (user_id) references chat_user;
+alter table user_member_channel add constraint FKiyryjn08xq2e0fv4c0b13ikpc foreign key (channel_id) references channel;
+alter table user_owner_channel add constraint FK5e7wdgyk88wv7tw7tgl0ykdbr foreign key (user_id) references chat_user;
+alter table user_owner_channel add constraint FKpthi95hwdul7lx63dbkjmf6qv foreign key (channel_id) references channel;
@@ -0,0 +1,9 @@
+-- Indexes for paged history queries in MessageRepository.
+-- Built concurrently, so flyway runs this migration outside of transaction.
+create index concurrently if not exists message_channel_history_idx
+    on message (channel_id, id)
+    where deleted = false;
+
+create index concurrently if not exists message_global_history_idx
+    on message (id)
+    where deleted = false and channel_id is null;
@@ -0,0 +1,4 @@
+-- Ids are allocated in blocks of 50 by pooled-lo optimizer, see increment_size of entities
+alter sequence channel_sequence increment by 50;
+alter sequence message_sequence increment by 50;
+alter sequence user_sequence increment by 50;
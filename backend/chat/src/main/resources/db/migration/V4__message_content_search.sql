@@ -0,0 +1,5 @@
+-- Search vector kept by database, so every insert path (JPA, JDBC batch, COPY) fills it.
+-- Simple configuration does not stem, content is written in many languages.
+alter table message
+    add column content_tsv tsvector
+    generated always as (to_tsvector('simple', coalesce(content, ''))) stored;
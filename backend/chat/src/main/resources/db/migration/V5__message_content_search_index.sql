@@ -0,0 +1,5 @@
+-- Index for full-text search in MessageRepository.
+-- Built concurrently, so flyway runs this migration outside of transaction.
+create index concurrently if not exists message_content_search_idx
+    on message using gin (content_tsv)
+    where deleted = false;
@@ -0,0 +1,64 @@
+-- Message becomes partitioned by month of created_at, partitions older than hot window
+-- are moved by MessagePartitionMaintenance to message_archive, partitioned the same way.
+-- Existing table is attached as the first partition without copying rows.
+update message set created_at = 'epoch' where created_at is null;
+
+alter table message rename to message_legacy;
+alter table message_legacy drop constraint message_pkey;
+alter table message_legacy alter column created_at set not null;
+alter index message_channel_history_idx rename to message_legacy_channel_history_idx;
+alter index message_global_history_idx rename to message_legacy_global_history_idx;
+alter index message_content_search_idx rename to message_legacy_content_search_idx;
+
+create table message (
+    id int4 not null,
+    content varchar(255),
+    created_at timestamp not null,
+    deleted boolean not null,
+    nickname int4 not null,
+    channel_id int4,
+    content_tsv tsvector generated always as (to_tsvector('simple', coalesce(content, ''))) stored,
+    -- Partition key has to be part of primary key, ids stay unique by sequence
+    primary key (id, created_at)
+) partition by range (created_at);
+
+create index message_channel_history_idx on message (channel_id, id) where deleted = false;
+create index message_global_history_idx on message (id) where deleted = false and channel_id is null;
+create index message_content_search_idx on message using gin (content_tsv) where deleted = false;
+
+alter table message add constraint FK53ixdt42fb7bq8heovpx3ew0n foreign key (nickname) references chat_user;
+alter table message add constraint FKiimr93ytmcuira5le0sldvvma foreign key (channel_id) references channel;
+
+create table message_archive (
+    id int4 not null,
+    content varchar(255),
+    created_at timestamp not null,
+    deleted boolean not null,
+    nickname int4 not null,
+    channel_id int4,
+    content_tsv tsvector generated always as (to_tsvector('simple', coalesce(content, ''))) stored,
+    primary key (id, created_at)
+) partition by range (created_at);
+
+create index message_archive_channel_history_idx on message_archive (channel_id, id) where deleted = false;
+create index message_archive_global_history_idx on message_archive (id) where deleted = false and channel_id is null;
+create index message_archive_content_search_idx on message_archive using gin (content_tsv) where deleted = false;
+
+alter table message_archive add constraint message_archive_author_fk foreign key (nickname) references chat_user;
+alter table message_archive add constraint message_archive_channel_fk foreign key (channel_id) references channel;
+
+-- Legacy partition ends with the current month, next ones are created ahead by maintenance job.
+-- Its existing indexes match the ones above and are attached instead of being built again.
+do $$
+declare
+    upper_bound timestamp := date_trunc(
+            'month',
+            greatest(localtimestamp, (select max(created_at) from message_legacy))
+    ) + interval '1 month';
+begin
+    execute format(
+            'alter table message attach partition message_legacy for values from (minvalue) to (%L)',
+            upper_bound
+    );
+end
+$$;
@@ -0,0 +1,19 @@
+-- Read position and unread messages of every user of channel, maintained by ChannelReadStateService.
+-- Row exists while user is owner or member, unread_count may be briefly negative when user read
+-- messages whose increments were not flushed yet.
+create table channel_read_state (
+    user_id int4 not null references chat_user,
+    channel_id int4 not null references channel,
+    last_read_id int4 not null default 0,
+    unread_count int4 not null default 0,
+    primary key (user_id, channel_id)
+);
+
+-- Users already in channels start with everything read
+insert into channel_read_state (user_id, channel_id, last_read_id)
+select u.user_id, u.channel_id, coalesce((select max(m.id) from message m where m.channel_id = u.channel_id), 0)
+from (
+    select user_id, channel_id from user_owner_channel
+    union
+    select user_id, channel_id from user_member_channel
+) u;
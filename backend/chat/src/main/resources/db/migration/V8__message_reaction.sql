@@ -0,0 +1,18 @@
+-- Emoji reactions on messages, maintained by MessageReactionService. Message is partitioned and its key
+-- includes created_at, so neither table references it.
+
+-- Users who reacted, keeps every user counted once per emoji
+create table message_reaction_user (
+    message_id int4 not null,
+    emoji varchar(32) not null,
+    user_id int4 not null references chat_user,
+    primary key (message_id, emoji, user_id)
+);
+
+-- Amount of reactions, changed once per flush by all reactions written with it
+create table message_reaction (
+    message_id int4 not null,
+    emoji varchar(32) not null,
+    count int8 not null,
+    primary key (message_id, emoji)
+);
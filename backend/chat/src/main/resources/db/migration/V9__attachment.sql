@@ -0,0 +1,17 @@
+-- Files attached to messages in channels. Content is kept once per content_hash in blob store on disk,
+-- rows only point to it. Message is partitioned, so message_id does not reference it.
+create sequence attachment_sequence start 1 increment 50;
+
+create table attachment (
+    id int4 not null,
+    message_id int4 not null,
+    channel_id int4 not null references channel,
+    file_name varchar(255) not null,
+    content_type varchar(255) not null,
+    size int8 not null,
+    content_hash varchar(64) not null,
+    created_at timestamp not null,
+    primary key (id)
+);
+
+create index attachment_message_id_idx on attachment (message_id);
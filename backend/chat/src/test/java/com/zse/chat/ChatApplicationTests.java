@@ -3,7 +3,8 @@ package com.zse.chat;
 import org.junit.jupiter.api.Test;
 import org.springframework.boot.test.context.SpringBootTest;
 
-@SpringBootTest
+// Context stays cached, its relay would claim changes of outbox tests
+@SpringBootTest(properties = "outbox.poll-interval=PT1H")
 class ChatApplicationTests {
 
 	@Test
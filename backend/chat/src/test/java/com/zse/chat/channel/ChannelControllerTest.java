@@ -58,12 +58,16 @@ class ChannelControllerTest {
     @MockBean
     private UserService userService;
 
+    @MockBean
+    private ChannelReadStateService channelReadStateService;
+
     //region fixture
     private static String tokenJWT;
 
     public static Stream<MockHttpServletRequestBuilder> paths() {
         return Stream.of(
                 get("/channels"),
+                get("/channels/unread"),
                 post("/channels"),
                 put("/channels/users")
         );
@@ -139,6 +143,33 @@ class ChannelControllerTest {
     }
     //endregion
 
+    //region GET("/channels/unread")
+    @Test
+    public void shouldReturnUnreadMessagesInChannels() throws Exception {
+        final var user = UserFixture.createDefaultUser(1).build();
+
+        when(userService.getUserByNick("testNickname1")).thenReturn(user);
+        when(channelReadStateService.getReadStates(user)).thenReturn(List.of(
+                new ChannelReadState(1, 10, 0),
+                new ChannelReadState(2, 15, 3)
+        ));
+
+        mockMvc.perform(get("/channels/unread").headers(authorize()))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(jsonPath("$[1].channelId", equalTo(2)))
+                .andExpect(jsonPath("$[1].lastReadId", equalTo(15)))
+                .andExpect(jsonPath("$[1].unread", equalTo(3)));
+
+        verify(userService, times(1)).getUserByNick("testNickname1");
+        verify(channelReadStateService, times(1)).getReadStates(user);
+
+        verifyNoMoreInteractions(channelReadStateService);
+        verifyNoInteractions(channelService);
+    }
+    //endregion
+
     //region POST("/channels")
     @Test
     public void shouldCreateChannel() throws Exception {
@@ -0,0 +1,285 @@
+package com.zse.chat.channel;
+
+import com.zse.chat.message.Message;
+import com.zse.chat.message.MessageEvent;
+import com.zse.chat.message.MessagesIngestedEvent;
+import com.zse.chat.user.User;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.equalTo;
+
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+class ChannelReadStateServiceTest {
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private ChannelReadStateService channelReadStateService;
+
+    //region fixture
+    private User author;
+    private User reader;
+    private int channelId;
+
+    @BeforeEach
+    void setUp() {
+        channelReadStateService = new ChannelReadStateService(jdbcTemplate, transactionManager, new MockEnvironment());
+
+        author = insertUser();
+        reader = insertUser();
+        channelId = jdbcTemplate.queryForObject("select nextval('channel_sequence')", Integer.class);
+        jdbcTemplate.update("insert into channel (id) values (?)", channelId);
+    }
+
+    private User insertUser() {
+        final int id = jdbcTemplate.queryForObject("select nextval('user_sequence')", Integer.class);
+        jdbcTemplate.update(
+                "insert into chat_user (id, email, nickname) values (?, ?, ?)",
+                id, "read" + id + "@test.pl", "read" + id
+        );
+        return User.builder().id(id).nickname("read" + id).build();
+    }
+
+    private int createMessage(User user) {
+        final int id = (int) insertMessage(user);
+        channelReadStateService.messagesCreated(channelId, user, 1);
+        return id;
+    }
+
+    private long insertMessage(User user) {
+        final long id = jdbcTemplate.queryForObject("select nextval('message_sequence')", Long.class);
+        jdbcTemplate.update(
+                "insert into message (id, content, created_at, deleted, nickname, channel_id) " +
+                        "values (?, 'content', now(), false, ?, ?)",
+                id, user.getId(), channelId
+        );
+        return id;
+    }
+
+    private ChannelReadState readState(User user) {
+        return channelReadStateService.getReadStates(user).get(0);
+    }
+
+    private int storedLastReadId(User user) {
+        return jdbcTemplate.queryForObject(
+                "select last_read_id from channel_read_state where user_id = ? and channel_id = ?",
+                Integer.class,
+                user.getId(),
+                channelId
+        );
+    }
+    //endregion
+
+    //region join()
+    @Test
+    public void shouldTreatMessagesSentBeforeJoiningAsRead() {
+        channelReadStateService.join(channelId, author);
+        createMessage(author);
+        final var last = createMessage(author);
+        channelReadStateService.flush();
+
+        channelReadStateService.join(channelId, reader);
+
+        assertThat(readState(reader), equalTo(new ChannelReadState(channelId, last, 0)));
+    }
+
+    @Test
+    public void shouldForgetReadStateOfUserWhoLeft() {
+        channelReadStateService.join(channelId, reader);
+
+        channelReadStateService.leave(channelId, reader);
+
+        assertThat(channelReadStateService.getReadStates(reader), empty());
+    }
+    //endregion
+
+    //region messagesCreated() and flush()
+    @Test
+    public void shouldCountMessagesOfOtherUsersBeforeAndAfterFlush() {
+        channelReadStateService.join(channelId, author);
+        channelReadStateService.join(channelId, reader);
+        createMessage(author);
+        createMessage(author);
+
+        assertThat(readState(reader).unread(), equalTo(2));
+        assertThat(readState(author).unread(), equalTo(0));
+
+        channelReadStateService.flush();
+
+        assertThat(readState(reader).unread(), equalTo(2));
+        assertThat(readState(author).unread(), equalTo(0));
+        assertThat(jdbcTemplate.queryForObject(
+                "select unread_count from channel_read_state where user_id = ? and channel_id = ?",
+                Integer.class,
+                reader.getId(),
+                channelId
+        ), equalTo(2));
+    }
+    //endregion
+
+    //region markRead()
+    @Test
+    public void shouldSubtractMessagesReadAfterFlush() {
+        channelReadStateService.join(channelId, author);
+        channelReadStateService.join(channelId, reader);
+        createMessage(author);
+        final var second = createMessage(author);
+        createMessage(reader);
+        createMessage(author);
+        channelReadStateService.flush();
+
+        channelReadStateService.markRead(channelId, reader, second);
+
+        assertThat(readState(reader), equalTo(new ChannelReadState(channelId, second, 1)));
+    }
+
+    @Test
+    public void shouldCountMessagesReadBeforeFlushOnce() {
+        channelReadStateService.join(channelId, author);
+        channelReadStateService.join(channelId, reader);
+        createMessage(author);
+        final var last = createMessage(author);
+
+        channelReadStateService.markRead(channelId, reader, last);
+
+        assertThat(readState(reader).unread(), equalTo(0));
+        channelReadStateService.flush();
+        assertThat(readState(reader).unread(), equalTo(0));
+    }
+
+    @Test
+    public void shouldNotMoveReadPositionBackOrPastTheNewestMessage() {
+        channelReadStateService.join(channelId, author);
+        channelReadStateService.join(channelId, reader);
+        final var first = createMessage(author);
+        final var last = createMessage(author);
+        channelReadStateService.flush();
+
+        channelReadStateService.markRead(channelId, reader, last + 1000);
+        channelReadStateService.markRead(channelId, reader, first);
+
+        assertThat(readState(reader), equalTo(new ChannelReadState(channelId, last, 0)));
+    }
+
+    @Test
+    public void shouldWriteOnlyTheHighestReadPositionWithFlush() {
+        channelReadStateService.join(channelId, author);
+        channelReadStateService.join(channelId, reader);
+        final var first = createMessage(author);
+        final var second = createMessage(author);
+        createMessage(author);
+
+        channelReadStateService.markRead(channelId, reader, second);
+        channelReadStateService.markRead(channelId, reader, first);
+
+        assertThat(storedLastReadId(reader), equalTo(0));
+        channelReadStateService.flush();
+        assertThat(storedLastReadId(reader), equalTo(second));
+        assertThat(readState(reader).unread(), equalTo(1));
+    }
+
+    @Test
+    public void shouldCountIngestedMessagesSoReadingThemDoesNotHideNewOnes() {
+        channelReadStateService.join(channelId, author);
+        channelReadStateService.join(channelId, reader);
+        final List<Long> ids = List.of(insertMessage(author), insertMessage(author), insertMessage(author));
+        channelReadStateService.onMessagesIngested(new MessagesIngestedEvent(
+                channelId,
+                author.getId(),
+                author.getNickname(),
+                LocalDateTime.now(),
+                ids,
+                List.of("one", "two", "three")
+        ));
+        channelReadStateService.flush();
+
+        channelReadStateService.markRead(channelId, reader, ids.get(2));
+        channelReadStateService.flush();
+        createMessage(author);
+        channelReadStateService.flush();
+
+        assertThat(readState(reader).unread(), equalTo(1));
+    }
+    //endregion
+
+    //region getReaders()
+    @Test
+    public void shouldReturnUsersWhoReadMessage() {
+        channelReadStateService.join(channelId, author);
+        channelReadStateService.join(channelId, reader);
+        final var first = createMessage(author);
+        final var second = createMessage(author);
+        final var third = createMessage(author);
+        channelReadStateService.markRead(channelId, reader, second);
+        channelReadStateService.flush();
+
+        assertThat(channelReadStateService.getReaders(channelId, first), contains(reader.getNickname()));
+        assertThat(channelReadStateService.getReaders(channelId, second), contains(reader.getNickname()));
+        assertThat(channelReadStateService.getReaders(channelId, third), empty());
+    }
+
+    @Test
+    public void shouldUpdateLoadedReadersWithoutReadingThemAgain() {
+        channelReadStateService.join(channelId, author);
+        channelReadStateService.join(channelId, reader);
+        final var message = createMessage(author);
+        channelReadStateService.getReaders(channelId, message);
+        // Loaded readers are not read again, their positions are moved in memory
+        jdbcTemplate.update("update chat_user set nickname = nickname || '_renamed' where id = ?", reader.getId());
+
+        channelReadStateService.markRead(channelId, reader, message);
+
+        assertThat(channelReadStateService.getReaders(channelId, message), contains(reader.getNickname()));
+    }
+
+    @Test
+    public void shouldIncludeReadPositionsNotFlushedWhenLoadingReaders() {
+        channelReadStateService.join(channelId, author);
+        channelReadStateService.join(channelId, reader);
+        final var message = createMessage(author);
+
+        channelReadStateService.markRead(channelId, reader, message);
+
+        assertThat(channelReadStateService.getReaders(channelId, message), contains(reader.getNickname()));
+    }
+    //endregion
+
+    //region onMessageEvent()
+    @Test
+    public void shouldNotCountDeletedUnreadMessage() {
+        channelReadStateService.join(channelId, author);
+        channelReadStateService.join(channelId, reader);
+        final var read = createMessage(author);
+        final var unread = createMessage(author);
+        channelReadStateService.markRead(channelId, reader, read);
+        channelReadStateService.flush();
+
+        for (int id : new int[]{read, unread}) {
+            jdbcTemplate.update("update message set deleted = true where id = ?", id);
+            channelReadStateService.onMessageEvent(new MessageEvent(
+                    MessageEvent.Type.DELETED,
+                    Message.builder().id(id).author(author).channel(Channel.builder().id(channelId).build()).build()
+            ));
+        }
+
+        assertThat(channelReadStateService.getReadStates(reader), contains(new ChannelReadState(channelId, read, 0)));
+    }
+    //endregion
+
+}
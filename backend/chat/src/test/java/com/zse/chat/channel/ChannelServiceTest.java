@@ -1,6 +1,8 @@
 package com.zse.chat.channel;
 
 import com.zse.chat.message.MessageFixture;
+import com.zse.chat.outbox.ChangeType;
+import com.zse.chat.outbox.Outbox;
 import com.zse.chat.user.User;
 import com.zse.chat.user.UserFixture;
 import org.assertj.core.util.Sets;
@@ -30,11 +32,15 @@ class ChannelServiceTest {
     
     @MockBean
     private ChannelRepository channelRepository;
+    @MockBean
+    private ChannelReadStateService channelReadStateService;
+    @MockBean
+    private Outbox outbox;
 
     //region fixture
     @BeforeEach
     void setUp() {
-        channelService = new ChannelService(channelRepository);
+        channelService = new ChannelService(channelRepository, channelReadStateService, outbox);
     }
     //endregion
 
@@ -147,6 +153,8 @@ class ChannelServiceTest {
 
         verify(channelRepository, times(1)).save(ArgumentMatchers.any(Channel.class));
         verifyNoMoreInteractions(channelRepository);
+        verify(channelReadStateService, times(1)).join(channel.getId(), user);
+        verifyNoMoreInteractions(channelReadStateService);
     }
     //endregion
 
@@ -217,6 +225,11 @@ class ChannelServiceTest {
 
         verify(channelRepository, times(1)).save(ArgumentMatchers.any(Channel.class));
         verifyNoMoreInteractions(channelRepository);
+        verify(outbox, times(1)).append(
+                ChangeType.CHANNEL_UPDATED,
+                1,
+                new ChannelChange(ChannelUpdateAction.ADD_OWNER, "testNickname2")
+        );
     }
 
     @Test
@@ -278,6 +291,8 @@ class ChannelServiceTest {
 
         verify(channelRepository, times(1)).save(ArgumentMatchers.any(Channel.class));
         verifyNoMoreInteractions(channelRepository);
+        verify(channelReadStateService, times(1)).join(1, userToManipulate);
+        verifyNoMoreInteractions(channelReadStateService);
     }
 
     @Test
@@ -344,6 +359,8 @@ class ChannelServiceTest {
 
         verify(channelRepository, times(1)).save(ArgumentMatchers.any(Channel.class));
         verifyNoMoreInteractions(channelRepository);
+        verify(channelReadStateService, times(1)).leave(1, userToManipulate);
+        verifyNoMoreInteractions(channelReadStateService);
     }
     //endregion
 
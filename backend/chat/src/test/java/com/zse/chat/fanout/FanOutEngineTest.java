@@ -0,0 +1,223 @@
+package com.zse.chat.fanout;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.convert.ApplicationConversionService;
+import org.springframework.mock.env.MockEnvironment;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+class FanOutEngineTest {
+
+    //region fixture
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final CountDownLatch release = new CountDownLatch(1);
+    private FanOutEngine fanOutEngine;
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        fanOutEngine.close();
+    }
+
+    private FanOutEngine createEngine(SlowConsumerPolicy policy) {
+        return createEngine(policy, 2);
+    }
+
+    private FanOutEngine createEngine(SlowConsumerPolicy policy, int deliveryThreads) {
+        final var env = new MockEnvironment()
+                .withProperty("fanout.queue-capacity", "2")
+                .withProperty("fanout.delivery-threads", String.valueOf(deliveryThreads))
+                .withProperty("fanout.policy", policy.name())
+                .withProperty("fanout.stall-timeout", "200ms");
+        env.setConversionService(new ApplicationConversionService());
+
+        fanOutEngine = new FanOutEngine(meterRegistry, env);
+        return fanOutEngine;
+    }
+
+    /**
+     * Sink which blocks on the first item until {@link #release} and records what it got.
+     * Sending and disconnecting lock the sink, like {@code SseEmitter} does.
+     */
+    private class RecordingSink implements FanOutSink {
+
+        private final boolean slow;
+        private final BlockingQueue<Object> items = new LinkedBlockingQueue<>();
+        private final CountDownLatch blocked = new CountDownLatch(1);
+        private final CountDownLatch disconnected = new CountDownLatch(1);
+
+        private RecordingSink(boolean slow) {
+            this.slow = slow;
+        }
+
+        @Override
+        public synchronized void send(Object item) {
+            if (slow && blocked.getCount() > 0) {
+                blocked.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            items.add(item);
+        }
+
+        @Override
+        public void resync() {
+            items.add("resync");
+        }
+
+        @Override
+        public synchronized void disconnect() {
+            disconnected.countDown();
+        }
+
+        private List<Object> take(int amount) throws InterruptedException {
+            final List<Object> taken = new ArrayList<>();
+            for (int i = 0; i < amount; i++) {
+                taken.add(items.poll(5, TimeUnit.SECONDS));
+            }
+            return taken;
+        }
+
+    }
+    //endregion
+
+    //region offer()
+    @Test
+    public void shouldDeliverToFastSubscriberWhileOtherIsStuck() throws InterruptedException {
+        createEngine(SlowConsumerPolicy.DROP_OLDEST);
+        final var slowSink = new RecordingSink(true);
+        final var fastSink = new RecordingSink(false);
+        final var slow = fanOutEngine.subscribe(slowSink);
+        final var fast = fanOutEngine.subscribe(fastSink);
+
+        slow.offer(0);
+        slowSink.blocked.await(5, TimeUnit.SECONDS);
+        for (int i = 1; i <= 3; i++) {
+            slow.offer(i);
+            fast.offer(i);
+            assertThat(fastSink.take(1), contains(i));
+        }
+
+        assertThat(slow.size(), equalTo(2));
+    }
+
+    @Test
+    public void shouldDropOldestItemsOfFullQueue() throws InterruptedException {
+        createEngine(SlowConsumerPolicy.DROP_OLDEST);
+        final var sink = new RecordingSink(true);
+        final var subscriber = fanOutEngine.subscribe(sink);
+
+        subscriber.offer(0);
+        sink.blocked.await(5, TimeUnit.SECONDS);
+        for (int i = 1; i <= 4; i++) {
+            subscriber.offer(i);
+        }
+        release.countDown();
+
+        assertThat(sink.take(3), contains(0, 3, 4));
+        assertThat(meterRegistry.get("fanout.dropped").counter().count(), equalTo(2.0));
+    }
+
+    @Test
+    public void shouldCoalesceFullQueueIntoResync() throws InterruptedException {
+        createEngine(SlowConsumerPolicy.COALESCE);
+        final var sink = new RecordingSink(true);
+        final var subscriber = fanOutEngine.subscribe(sink);
+
+        subscriber.offer(0);
+        sink.blocked.await(5, TimeUnit.SECONDS);
+        for (int i = 1; i <= 4; i++) {
+            subscriber.offer(i);
+        }
+        release.countDown();
+
+        assertThat(sink.take(3), contains(0, "resync", 4));
+        assertThat(meterRegistry.get("fanout.dropped").counter().count(), equalTo(3.0));
+    }
+
+    @Test
+    public void shouldDisconnectSubscriberWithFullQueue() throws InterruptedException {
+        createEngine(SlowConsumerPolicy.DISCONNECT);
+        final var sink = new RecordingSink(true);
+        final var subscriber = fanOutEngine.subscribe(sink);
+
+        subscriber.offer(0);
+        sink.blocked.await(5, TimeUnit.SECONDS);
+        subscriber.offer(1);
+        subscriber.offer(2);
+
+        assertThat(subscriber.offer(3), equalTo(false));
+        release.countDown();
+        assertThat(sink.disconnected.await(5, TimeUnit.SECONDS), equalTo(true));
+        assertThat(subscriber.offer(4), equalTo(false));
+        assertThat(meterRegistry.get("fanout.subscribers").gauge().value(), equalTo(0.0));
+    }
+    //endregion
+
+    //region disconnectStalled()
+    @Test
+    public void shouldDisconnectStalledSubscriber() throws InterruptedException {
+        createEngine(SlowConsumerPolicy.DROP_OLDEST);
+        final var sink = new RecordingSink(true);
+        final var subscriber = fanOutEngine.subscribe(sink);
+
+        subscriber.offer(0);
+        sink.blocked.await(5, TimeUnit.SECONDS);
+        fanOutEngine.disconnectStalled();
+        assertThat(meterRegistry.get("fanout.disconnected").counter().count(), equalTo(0.0));
+
+        Thread.sleep(300);
+        fanOutEngine.disconnectStalled();
+        fanOutEngine.disconnectStalled();
+        release.countDown();
+
+        assertThat(sink.disconnected.await(5, TimeUnit.SECONDS), equalTo(true));
+        assertThat(meterRegistry.get("fanout.disconnected").counter().count(), equalTo(1.0));
+        assertThat(subscriber.offer(1), equalTo(false));
+    }
+
+    @Test
+    public void shouldKeepDeliveringWhileStalledSubscriberHoldsItsThread() throws InterruptedException {
+        createEngine(SlowConsumerPolicy.DROP_OLDEST, 1);
+        final var stalledSink = new RecordingSink(true);
+        final var fastSink = new RecordingSink(false);
+        final var stalled = fanOutEngine.subscribe(stalledSink);
+        final var fast = fanOutEngine.subscribe(fastSink);
+
+        stalled.offer(0);
+        stalledSink.blocked.await(5, TimeUnit.SECONDS);
+        Thread.sleep(300);
+        assertTimeoutPreemptively(Duration.ofSeconds(1), fanOutEngine::disconnectStalled);
+        fast.offer(1);
+
+        assertThat(fastSink.take(1), contains(1));
+        assertThat(fanOutEngine.deliveryThreads(), equalTo(2));
+        assertThat(stalledSink.disconnected.getCount(), equalTo(1L));
+
+        release.countDown();
+
+        assertThat(stalledSink.disconnected.await(5, TimeUnit.SECONDS), equalTo(true));
+        for (int attempt = 0; attempt < 50 && fanOutEngine.deliveryThreads() != 1; attempt++) {
+            Thread.sleep(100);
+        }
+        assertThat(fanOutEngine.deliveryThreads(), equalTo(1));
+    }
+    //endregion
+
+}
@@ -0,0 +1,189 @@
+package com.zse.chat.message;
+
+import com.zse.chat.message.MessageController.MessageResponseDTO;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasItem;
+import static org.hamcrest.Matchers.not;
+
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+class MessageArchiveTest {
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    @Autowired
+    private MessageRepository messageRepository;
+
+    private MessageArchive messageArchive;
+    private MessagePartitionMaintenance messagePartitionMaintenance;
+
+    //region fixture
+    private final LocalDateTime now = LocalDateTime.now();
+    private int authorId;
+    private int channelId;
+
+    @BeforeEach
+    void setUp() {
+        messageArchive = new MessageArchive(messageRepository, jdbcTemplate);
+        messagePartitionMaintenance = new MessagePartitionMaintenance(
+                jdbcTemplate,
+                transactionManager,
+                messageArchive,
+                // Partitions are archived after default 6 months
+                new MockEnvironment().withProperty("message-partitions.months-ahead", "2")
+        );
+
+        authorId = jdbcTemplate.queryForObject("select nextval('user_sequence')", Integer.class);
+        jdbcTemplate.update(
+                "insert into chat_user (id, email, nickname) values (?, ?, ?)",
+                authorId, "archive" + authorId + "@test.pl", "archive" + authorId
+        );
+        channelId = jdbcTemplate.queryForObject("select nextval('channel_sequence')", Integer.class);
+        jdbcTemplate.update("insert into channel (id) values (?)", channelId);
+    }
+
+    private long insertMessage(LocalDateTime createdAt) {
+        final long id = jdbcTemplate.queryForObject("select nextval('message_sequence')", Long.class);
+        jdbcTemplate.update(
+                "insert into message (id, content, created_at, deleted, nickname, channel_id) " +
+                        "values (?, 'content', ?, false, ?, ?)",
+                id, createdAt, authorId, channelId
+        );
+        return id;
+    }
+
+    private List<String> listPartitions(String table) {
+        return MessagePartition.list(jdbcTemplate, table).stream().map(MessagePartition::name).toList();
+    }
+
+    private static String partitionName(YearMonth month) {
+        return String.format("message_%d_%02d", month.getYear(), month.getMonthValue());
+    }
+
+    private static List<Long> ids(List<MessageResponseDTO> messages) {
+        return messages.stream().map(MessageResponseDTO::getId).toList();
+    }
+    //endregion
+
+    //region maintain()
+    @Test
+    public void shouldCreatePartitionsAhead() {
+        messagePartitionMaintenance.maintain(now);
+        final var last = YearMonth.from(now).plusMonths(2);
+
+        assertThat(listPartitions(MessagePartition.HOT_TABLE), hasItem(partitionName(last)));
+        insertMessage(last.atEndOfMonth().atStartOfDay());
+    }
+
+    @Test
+    public void shouldMoveOldPartitionsToArchive() {
+        messagePartitionMaintenance.maintain(now);
+        final var older = insertMessage(now);
+        final var newer = insertMessage(now.plusMonths(1));
+
+        messagePartitionMaintenance.maintain(now.plusMonths(8));
+
+        assertThat(listPartitions(MessagePartition.ARCHIVE_TABLE), contains(
+                "message_legacy",
+                partitionName(YearMonth.from(now).plusMonths(1))
+        ));
+        assertThat(messageRepository.findChannelPage(channelId, PageRequest.of(0, 10)), empty());
+        try (var history = messageRepository.streamChannelHistory(channelId)) {
+            assertThat(history.map(MessageRepository.HistoryRow::getId).toList(), contains(older, newer));
+        }
+    }
+
+    @Test
+    public void archivedMessageShouldNotBeEditedButToldApartFromMissingOne() {
+        messagePartitionMaintenance.maintain(now);
+        final var archived = insertMessage(now);
+        messagePartitionMaintenance.maintain(now.plusMonths(8));
+
+        assertThat(messageRepository.editChannelMessage(archived, channelId, "archive" + authorId, "edited").isEmpty(),
+                equalTo(true));
+        assertThat(messageRepository.existsByIdAndDeletedFalseAndChannelId(archived, channelId), equalTo(false));
+        assertThat(messageRepository.existsInArchiveOfChannel(archived, channelId), equalTo(true));
+        assertThat(messageRepository.existsInArchiveOfChannel(archived, channelId + 1), equalTo(false));
+        assertThat(messageRepository.existsInArchiveOfGlobalChannel(archived), equalTo(false));
+    }
+    //endregion
+
+    //region withOlder() and withNewer()
+    @Test
+    public void shouldCompleteHotPagesWithArchivedMessages() {
+        messagePartitionMaintenance.maintain(now);
+        final var archivedOlder = insertMessage(now);
+        final var archivedNewer = insertMessage(now.plusMonths(1));
+        messagePartitionMaintenance.maintain(now.plusMonths(8));
+        final var hot = insertMessage(now.plusMonths(8));
+
+        final var latest = messageRepository.findChannelPage(channelId, PageRequest.of(0, 2));
+        final var after = messageRepository.findChannelPageAfter(channelId, archivedOlder, PageRequest.of(0, 2));
+
+        assertThat(ids(messageArchive.withOlder(channelId, null, latest, 2)), contains(hot, archivedNewer));
+        assertThat(ids(messageArchive.withOlder(channelId, archivedNewer, List.of(), 2)), contains(archivedOlder));
+        assertThat(ids(messageArchive.withNewer(channelId, archivedOlder, after, 2)), contains(archivedNewer, hot));
+        assertThat(ids(messageArchive.withNewer(channelId, archivedNewer, after, 2)), contains(hot));
+    }
+
+    @Test
+    public void shouldNotReadArchiveWhenHotPageIsFull() {
+        messagePartitionMaintenance.maintain(now);
+        insertMessage(now);
+        messagePartitionMaintenance.maintain(now.plusMonths(8));
+        final var first = insertMessage(now.plusMonths(8));
+        final var second = insertMessage(now.plusMonths(8));
+        // Archive never changes after refresh, row added behind its back would show only if it was queried
+        jdbcTemplate.update(
+                "insert into message_archive (id, content, created_at, deleted, nickname, channel_id) " +
+                        "values (?, 'content', ?, false, ?, ?)",
+                second + 1, now, authorId, channelId
+        );
+
+        final var latest = messageRepository.findChannelPage(channelId, PageRequest.of(0, 2));
+
+        assertThat(ids(messageArchive.withOlder(channelId, null, latest, 2)), contains(second, first));
+    }
+
+    @Test
+    public void archivedPageShouldSkipPartitionsWithoutRequestedIds() {
+        messagePartitionMaintenance.maintain(now);
+        insertMessage(now);
+        messagePartitionMaintenance.maintain(now.plusMonths(8));
+        final var legacyEnd = MessagePartition.list(jdbcTemplate, MessagePartition.ARCHIVE_TABLE).get(0).to();
+
+        jdbcTemplate.execute("prepare archived_before(int, int, timestamp, int) as " +
+                "select m.id from message_archive m where m.deleted = false and m.channel_id = $1 " +
+                "and m.id < $2 and m.created_at < $3 order by m.id desc limit $4");
+        final var plan = String.join("\n", jdbcTemplate.queryForList(
+                "explain execute archived_before(" + channelId + ", 1000, '" + legacyEnd + "', 10)",
+                String.class
+        ));
+        jdbcTemplate.execute("deallocate archived_before");
+
+        assertThat(plan, containsString("message_legacy"));
+        assertThat(plan, not(containsString(partitionName(YearMonth.from(now).plusMonths(1)))));
+    }
+    //endregion
+
+}
@@ -1,27 +1,33 @@
 package com.zse.chat.message;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.zse.chat.message.MessageController.MessageResponseDTO;
 import com.zse.chat.user.User;
 import com.zse.chat.user.UserFixture;
 import com.zse.chat.user.UserNotFoundException;
 import com.zse.chat.user.UserService;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentMatchers;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 import static org.hamcrest.Matchers.*;
-import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.*;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.print;
-import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
-import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
 @WebMvcTest(MessageController.class)
 class MessageControllerTest {
@@ -35,39 +41,162 @@ class MessageControllerTest {
     @MockBean
     private MessageService messageService;
 
+    @MockBean
+    private MessageExportService messageExportService;
+
+    @MockBean
+    private MessageReactionService messageReactionService;
+
     @MockBean
     private UserService userService;
 
+    //region fixture
+    @BeforeEach
+    void setUp() {
+        when(messageReactionService.withReactions(ArgumentMatchers.any())).thenAnswer(invocation -> invocation.getArgument(0));
+    }
+    //endregion
+
     //region GET("/messages")
     @Test
-    public void shouldReturnAllMessages() throws Exception {
-        List<Message> messages = new ArrayList<>();
-        List<User> users = new ArrayList<>();
-        users.add(UserFixture.createDefaultUser(1).build());
-        users.add(UserFixture.createDefaultUser(2).build());
-        messages.add(new Message(1, users.get(0), "content1", LocalDateTime.now(), null, false));
-        messages.add(new Message(2, users.get(1), "content2", LocalDateTime.now(), null, false));
-        messages.add(new Message(3, users.get(0), "content3", LocalDateTime.now(), null, false));
-        messages.add(new Message(4, users.get(0), "content4", LocalDateTime.now(), null, false));
+    public void shouldReturnLatestPageOfMessages() throws Exception {
+        List<MessageResponseDTO> messages = MessageFixture.createListOfMessageResponses(1, 4);
+        MessagePage page = MessagePage.builder()
+                .messages(messages)
+                .previousCursor(1L)
+                .nextCursor(4L)
+                .build();
+
+        when(messageService.getMessagesInGlobalChannel(null, null, MessagePage.DEFAULT_LIMIT)).thenReturn(page);
+
+        mockMvc.perform(get("/messages"))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.messages", hasSize(4)))
+                .andExpect(jsonPath("$.previousCursor", equalTo(1)))
+                .andExpect(jsonPath("$.nextCursor", equalTo(4)));
+    }
+
+    @Test
+    public void shouldReturnEmptyPageOfMessages() throws Exception {
+        MessagePage page = MessagePage.builder()
+                .messages(new ArrayList<>())
+                .build();
 
-        when(messageService.getAllMessagesInGlobalChannel()).thenReturn(messages);
+        when(messageService.getMessagesInGlobalChannel(null, null, MessagePage.DEFAULT_LIMIT)).thenReturn(page);
 
         mockMvc.perform(get("/messages"))
                 .andDo(print())
                 .andExpect(status().isOk())
-                .andExpect(jsonPath("$", hasSize(4)));
+                .andExpect(jsonPath("$.messages", hasSize(0)))
+                .andExpect(jsonPath("$.previousCursor").doesNotExist())
+                .andExpect(jsonPath("$.nextCursor").doesNotExist());
+    }
+
+    @Test
+    public void shouldPassCursorAndCappedLimitToService() throws Exception {
+        MessagePage page = MessagePage.builder()
+                .messages(new ArrayList<>())
+                .build();
+
+        when(messageService.getMessagesInGlobalChannel(10L, null, MessagePage.MAX_LIMIT)).thenReturn(page);
+
+        mockMvc.perform(get("/messages")
+                        .param("before", "10")
+                        .param("limit", "100000"))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.messages", hasSize(0)));
+
+        verify(messageService, times(1)).getMessagesInGlobalChannel(10L, null, MessagePage.MAX_LIMIT);
     }
 
     @Test
-    public void shouldReturnEmptyArrayOfMessages() throws Exception {
-        List<Message> messages = new ArrayList<>();
+    public void shouldThrowInvalidCursorWhenBeforeAndAfterAreUsedTogether() throws Exception {
+        when(messageService.getMessagesInGlobalChannel(10L, 5L, MessagePage.DEFAULT_LIMIT))
+                .thenThrow(new InvalidCursorException());
 
-        when(messageService.getAllMessagesInGlobalChannel()).thenReturn(messages);
+        mockMvc.perform(get("/messages")
+                        .param("before", "10")
+                        .param("after", "5"))
+                .andDo(print())
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.responseCode", equalTo(400)));
+    }
+
+    @Test
+    public void shouldReturnPageOfMessagesWithReactions() throws Exception {
+        List<MessageResponseDTO> messages = MessageFixture.createListOfMessageResponses(1, 2);
+        MessagePage page = MessagePage.builder()
+                .messages(messages)
+                .build();
+
+        when(messageService.getMessagesInGlobalChannel(null, null, MessagePage.DEFAULT_LIMIT)).thenReturn(page);
+        when(messageReactionService.withReactions(messages))
+                .thenReturn(List.of(messages.get(0).withReactions(Map.of("👍", 3L)), messages.get(1)));
 
         mockMvc.perform(get("/messages"))
                 .andDo(print())
                 .andExpect(status().isOk())
-                .andExpect(jsonPath("$", hasSize(0)));
+                .andExpect(jsonPath("$.messages[0].reactions.👍", equalTo(3)))
+                .andExpect(jsonPath("$.messages[1].reactions", anEmptyMap()));
+    }
+    //endregion
+
+    //region GET("/messages/search")
+    @Test
+    public void shouldReturnPageOfFoundMessages() throws Exception {
+        MessageSearchPage page = MessageSearchPage.builder()
+                .messages(MessageFixture.createListOfMessageResponses(1, 2))
+                .nextCursor("0.5_2")
+                .build();
+
+        when(messageService.searchGlobalChannel("testContent", "0.7_1", 2)).thenReturn(page);
+
+        mockMvc.perform(get("/messages/search")
+                        .param("q", "testContent")
+                        .param("cursor", "0.7_1")
+                        .param("limit", "2"))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.messages", hasSize(2)))
+                .andExpect(jsonPath("$.nextCursor", equalTo("0.5_2")));
+    }
+
+    @Test
+    public void shouldThrowInvalidCursorForMalformedSearchCursor() throws Exception {
+        when(messageService.searchGlobalChannel("testContent", "abc", MessagePage.DEFAULT_LIMIT))
+                .thenThrow(new InvalidCursorException("abc"));
+
+        mockMvc.perform(get("/messages/search")
+                        .param("q", "testContent")
+                        .param("cursor", "abc"))
+                .andDo(print())
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.exceptionMessage", containsString("abc")));
+    }
+    //endregion
+
+    //region GET("/messages/export")
+    @Test
+    public void shouldStreamGlobalChannelExport() throws Exception {
+        doAnswer(invocation -> {
+            OutputStream outputStream = invocation.getArgument(0);
+            outputStream.write("{\"id\":1}\n{\"id\":2}\n".getBytes(StandardCharsets.UTF_8));
+            return null;
+        }).when(messageExportService).exportGlobalChannel(ArgumentMatchers.any(OutputStream.class));
+
+        MvcResult result = mockMvc.perform(get("/messages/export"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_NDJSON))
+                .andExpect(content().string("{\"id\":1}\n{\"id\":2}\n"));
+
+        verify(messageExportService, times(1)).exportGlobalChannel(ArgumentMatchers.any(OutputStream.class));
     }
     //endregion
 
@@ -197,6 +326,89 @@ class MessageControllerTest {
                 .andExpect(jsonPath("$.responseCode", equalTo(404)))
                 .andExpect(jsonPath("$.exceptionMessage", containsString(String.valueOf(id))));
     }
+
+    @Test
+    public void shouldReturnConflictWhenTryingUpdateArchivedMessage() throws Exception {
+        int id = 1;
+        var messageRequestDTO = MessageController.MessageRequestDTO.builder()
+                .nickname("testNickname1")
+                .content("content1Updated")
+                .build();
+
+        String body = mapper.writeValueAsString(messageRequestDTO);
+
+        when(messageService.updateMessageById(id, messageRequestDTO))
+                .thenThrow(new MessageArchivedException(id));
+
+        mockMvc.perform(put("/messages/1")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(body))
+                .andDo(print())
+                .andExpect(status().isConflict())
+                .andExpect(jsonPath("$.responseCode", equalTo(409)))
+                .andExpect(jsonPath("$.exceptionMessage", containsString("archived")));
+    }
+    //endregion
+
+    //region POST("/messages/{id}/reactions")
+    @Test
+    public void shouldAddReactionToMessage() throws Exception {
+        User user = UserFixture.createDefaultUser(1).build();
+        var request = MessageController.MessageReactionRequestDTO.builder()
+                .nickname("testNickname1")
+                .emoji("👍")
+                .build();
+
+        when(userService.getUserByNick("testNickname1")).thenReturn(user);
+
+        mockMvc.perform(post("/messages/1/reactions")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(mapper.writeValueAsString(request)))
+                .andDo(print())
+                .andExpect(status().isOk());
+
+        verify(messageReactionService, times(1)).react(null, 1, user, "👍", true);
+    }
+
+    @Test
+    public void shouldReturnBadRequestForInvalidReaction() throws Exception {
+        User user = UserFixture.createDefaultUser(1).build();
+        var request = MessageController.MessageReactionRequestDTO.builder()
+                .nickname("testNickname1")
+                .emoji(" ")
+                .build();
+
+        when(userService.getUserByNick("testNickname1")).thenReturn(user);
+        doThrow(new InvalidReactionException(" ")).when(messageReactionService).react(null, 1, user, " ", true);
+
+        mockMvc.perform(post("/messages/1/reactions")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(mapper.writeValueAsString(request)))
+                .andDo(print())
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.responseCode", equalTo(400)));
+    }
+    //endregion
+
+    //region DELETE("/messages/{id}/reactions")
+    @Test
+    public void shouldRemoveReactionFromMessage() throws Exception {
+        User user = UserFixture.createDefaultUser(1).build();
+        var request = MessageController.MessageReactionRequestDTO.builder()
+                .nickname("testNickname1")
+                .emoji("👍")
+                .build();
+
+        when(userService.getUserByNick("testNickname1")).thenReturn(user);
+
+        mockMvc.perform(delete("/messages/1/reactions")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(mapper.writeValueAsString(request)))
+                .andDo(print())
+                .andExpect(status().isOk());
+
+        verify(messageReactionService, times(1)).react(null, 1, user, "👍", false);
+    }
     //endregion
 
 }
@@ -0,0 +1,95 @@
+package com.zse.chat.message;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.hamcrest.Matchers;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(SpringExtension.class)
+class MessageExportServiceTest {
+
+    private MessageExportService messageExportService;
+
+    @MockBean
+    private MessageRepository messageRepository;
+
+    private final ObjectMapper mapper = new ObjectMapper().registerModule(new JavaTimeModule());
+
+    //region fixture
+    @BeforeEach
+    void setUp() {
+        messageExportService = new MessageExportService(messageRepository, mapper);
+    }
+    //endregion
+
+    //region exportGlobalChannel()
+    @Test
+    public void shouldWriteOneJsonObjectPerLine() throws Exception {
+        final List<MessageRepository.HistoryRow> messages = MessageFixture.createListOfHistoryRows(1, 3);
+        final var outputStream = new ByteArrayOutputStream();
+
+        when(messageRepository.streamGlobalChannelHistory()).thenReturn(messages.stream());
+
+        messageExportService.exportGlobalChannel(outputStream);
+
+        final String[] lines = outputStream.toString(StandardCharsets.UTF_8).split("\n");
+        assertThat(lines.length, equalTo(3));
+        for (int i = 0; i < lines.length; i++) {
+            final var dto = mapper.readValue(lines[i], MessageController.MessageResponseDTO.class);
+            assertThat(dto.getId(), equalTo(i + 1L));
+            assertThat(dto.getAuthorNick(), equalTo("testNickname" + (i + 1)));
+            assertThat(dto.getContent(), equalTo("testContent" + (i + 1)));
+        }
+        assertThat(outputStream.toString(StandardCharsets.UTF_8), Matchers.endsWith("\n"));
+
+        verify(messageRepository, times(1)).streamGlobalChannelHistory();
+        verifyNoMoreInteractions(messageRepository);
+    }
+
+    @Test
+    public void shouldWriteNothingForEmptyHistory() throws Exception {
+        final var outputStream = new ByteArrayOutputStream();
+
+        when(messageRepository.streamGlobalChannelHistory()).thenReturn(Stream.empty());
+
+        messageExportService.exportGlobalChannel(outputStream);
+
+        assertThat(outputStream.size(), equalTo(0));
+    }
+    //endregion
+
+    //region exportChannel()
+    @Test
+    public void shouldCloseStreamOfChannelHistory() throws Exception {
+        final var closed = new boolean[]{false};
+        final Stream<MessageRepository.HistoryRow> messages = MessageFixture.createListOfHistoryRows(1, 1)
+                .stream()
+                .onClose(() -> closed[0] = true);
+        final var outputStream = new ByteArrayOutputStream();
+
+        when(messageRepository.streamChannelHistory(5)).thenReturn(messages);
+
+        messageExportService.exportChannel(5, outputStream);
+
+        assertThat(outputStream.toString(StandardCharsets.UTF_8), containsString("testContent1"));
+        assertThat(closed[0], equalTo(true));
+
+        verify(messageRepository, times(1)).streamChannelHistory(5);
+        verifyNoMoreInteractions(messageRepository);
+    }
+    //endregion
+
+}
@@ -34,4 +34,120 @@ public class MessageFixture {
         return messages;
     }
 
+    public static List<MessageController.MessageResponseDTO> createListOfMessageResponses(long min, int amount) {
+        List<MessageController.MessageResponseDTO> messages = new ArrayList<>();
+
+        for (int i = 0; i < amount; i++) {
+            messages.add(MessageController.MessageResponseDTO.builder()
+                    .id(i + min)
+                    .authorNick("testNickname" + (i + min))
+                    .content("testContent" + (i + min))
+                    .createdAt(LocalDateTime.now())
+                    .build());
+        }
+
+        return messages;
+    }
+
+    public static MessageRepository.UpdatedMessage createUpdatedMessage(Message message) {
+        return new MessageRepository.UpdatedMessage() {
+            @Override
+            public long getId() {
+                return message.getId();
+            }
+
+            @Override
+            public int getAuthorId() {
+                return message.getAuthor().getId();
+            }
+
+            @Override
+            public String getNickname() {
+                return message.getAuthor().getNickname();
+            }
+
+            @Override
+            public String getContent() {
+                return message.getContent();
+            }
+
+            @Override
+            public LocalDateTime getCreatedAt() {
+                return message.getCreatedAt();
+            }
+
+            @Override
+            public boolean isDeleted() {
+                return message.isDeleted();
+            }
+        };
+    }
+
+    public static List<MessageRepository.SearchHit> createListOfSearchHits(int min, int amount) {
+        List<MessageRepository.SearchHit> hits = new ArrayList<>();
+
+        for (int i = 0; i < amount; i++) {
+            final var id = i + min;
+            hits.add(new MessageRepository.SearchHit() {
+                @Override
+                public long getId() {
+                    return id;
+                }
+
+                @Override
+                public String getAuthorNick() {
+                    return "testNickname" + id;
+                }
+
+                @Override
+                public String getContent() {
+                    return "testContent" + id;
+                }
+
+                @Override
+                public LocalDateTime getCreatedAt() {
+                    return LocalDateTime.now();
+                }
+
+                @Override
+                public float getRank() {
+                    return 1.0f / id;
+                }
+            });
+        }
+
+        return hits;
+    }
+
+    public static List<MessageRepository.HistoryRow> createListOfHistoryRows(int min, int amount) {
+        List<MessageRepository.HistoryRow> rows = new ArrayList<>();
+
+        for (int i = 0; i < amount; i++) {
+            final var id = i + min;
+            rows.add(new MessageRepository.HistoryRow() {
+                @Override
+                public long getId() {
+                    return id;
+                }
+
+                @Override
+                public String getAuthorNick() {
+                    return "testNickname" + id;
+                }
+
+                @Override
+                public String getContent() {
+                    return "testContent" + id;
+                }
+
+                @Override
+                public LocalDateTime getCreatedAt() {
+                    return LocalDateTime.now();
+                }
+            });
+        }
+
+        return rows;
+    }
+
 }
@@ -0,0 +1,155 @@
+package com.zse.chat.message;
+
+import com.zse.chat.message.MessageController.MessageResponseDTO;
+import com.zse.chat.user.User;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+class MessageReactionServiceTest {
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private MessageRepository messageRepository;
+
+    private MessageReactionService messageReactionService;
+
+    //region fixture
+    private User first;
+    private User second;
+    private int messageId;
+
+    @BeforeEach
+    void setUp() {
+        messageReactionService = new MessageReactionService(jdbcTemplate, messageRepository);
+
+        first = insertUser();
+        second = insertUser();
+        messageId = jdbcTemplate.queryForObject("select nextval('message_sequence')", Integer.class);
+        jdbcTemplate.update(
+                "insert into message (id, content, created_at, deleted, nickname) values (?, 'content', now(), false, ?)",
+                messageId, first.getId()
+        );
+    }
+
+    private User insertUser() {
+        final int id = jdbcTemplate.queryForObject("select nextval('user_sequence')", Integer.class);
+        jdbcTemplate.update(
+                "insert into chat_user (id, email, nickname) values (?, ?, ?)",
+                id, "reaction" + id + "@test.pl", "reaction" + id
+        );
+        return User.builder().id(id).nickname("reaction" + id).build();
+    }
+
+    private Map<String, Long> reactions() {
+        final var message = new MessageResponseDTO(messageId, "author", "content", null);
+        return messageReactionService.withReactions(List.of(message)).get(0).getReactions();
+    }
+
+    private long storedCount(String emoji) {
+        return jdbcTemplate.queryForObject(
+                "select coalesce(sum(count), 0) from message_reaction where message_id = ? and emoji = ?",
+                Long.class,
+                messageId,
+                emoji
+        );
+    }
+    //endregion
+
+    //region react() and flush()
+    @Test
+    public void shouldCountReactionsBeforeAndAfterFlush() {
+        messageReactionService.react(null, messageId, first, "👍", true);
+        messageReactionService.react(null, messageId, second, "👍", true);
+        messageReactionService.react(null, messageId, second, "❤", true);
+
+        assertThat(reactions(), equalTo(Map.of("👍", 2L, "❤", 1L)));
+        assertThat(storedCount("👍"), equalTo(0L));
+
+        messageReactionService.flush();
+
+        assertThat(reactions(), equalTo(Map.of("👍", 2L, "❤", 1L)));
+        assertThat(storedCount("👍"), equalTo(2L));
+        assertThat(storedCount("❤"), equalTo(1L));
+    }
+
+    @Test
+    public void shouldCountRepeatedReactionOfUserOnce() {
+        messageReactionService.react(null, messageId, first, "👍", true);
+        messageReactionService.react(null, messageId, first, "👍", true);
+
+        assertThat(reactions(), equalTo(Map.of("👍", 1L)));
+
+        messageReactionService.flush();
+        messageReactionService.react(null, messageId, first, "👍", true);
+        messageReactionService.flush();
+
+        assertThat(reactions(), equalTo(Map.of("👍", 1L)));
+        assertThat(storedCount("👍"), equalTo(1L));
+    }
+
+    @Test
+    public void shouldNotCountReactionRemovedBeforeFlush() {
+        messageReactionService.react(null, messageId, first, "👍", true);
+        messageReactionService.react(null, messageId, first, "👍", false);
+
+        assertThat(reactions(), equalTo(Map.of()));
+
+        messageReactionService.flush();
+
+        assertThat(reactions(), equalTo(Map.of()));
+        assertThat(storedCount("👍"), equalTo(0L));
+    }
+
+    @Test
+    public void shouldRemoveFlushedReaction() {
+        messageReactionService.react(null, messageId, first, "👍", true);
+        messageReactionService.react(null, messageId, second, "👍", true);
+        messageReactionService.flush();
+
+        messageReactionService.react(null, messageId, first, "👍", false);
+        // Removal of reaction which was never added changes nothing
+        messageReactionService.react(null, messageId, first, "❤", false);
+
+        assertThat(reactions(), equalTo(Map.of("👍", 1L)));
+
+        messageReactionService.flush();
+
+        assertThat(reactions(), equalTo(Map.of("👍", 1L)));
+        assertThat(storedCount("👍"), equalTo(1L));
+        assertThat(storedCount("❤"), equalTo(0L));
+    }
+
+    @Test
+    public void shouldNotReactToMessageInOtherChannelOrWithInvalidEmoji() {
+        assertThrows(
+                MessageNotFoundException.class,
+                () -> messageReactionService.react(1, messageId, first, "👍", true)
+        );
+        assertThrows(
+                InvalidReactionException.class,
+                () -> messageReactionService.react(null, messageId, first, " ", true)
+        );
+        assertThrows(
+                InvalidReactionException.class,
+                () -> messageReactionService.react(null, messageId, first, "👍".repeat(33), true)
+        );
+
+        assertThat(reactions(), equalTo(Map.of()));
+    }
+    //endregion
+
+}
@@ -0,0 +1,288 @@
+package com.zse.chat.message;
+
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.not;
+
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+class MessageRepositoryTest {
+
+    /**
+     * Merge append of partitions prints its sort key, only separate sort node means rows are sorted.
+     */
+    private static final String SORT_NODE = "Sort  (";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private MessageRepository messageRepository;
+
+    //region fixture
+    @TestConfiguration
+    static class StatementCaptureConfig {
+        @Bean
+        HibernatePropertiesCustomizer captureStatements() {
+            return properties -> properties.put(AvailableSettings.STATEMENT_INSPECTOR, new CapturedStatements());
+        }
+    }
+
+    /**
+     * Keeps SQL of queries hibernate prepares, so the plan checked is the one of generated statement.
+     */
+    static class CapturedStatements implements StatementInspector {
+        static final List<String> STATEMENTS = new CopyOnWriteArrayList<>();
+
+        @Override
+        public String inspect(String sql) {
+            STATEMENTS.add(sql);
+            return sql;
+        }
+    }
+
+    @BeforeEach
+    void setUp() {
+        // Plan is checked with parameters as hibernate sends them, seq scan is only used as last resort
+        jdbcTemplate.execute("set local enable_seqscan = off");
+        jdbcTemplate.execute("set local plan_cache_mode = force_generic_plan");
+    }
+
+    /**
+     * Plans statement which hibernate sent for the repository call, prepared the same way with
+     * {@code ?} placeholders numbered as in {@code PREPARE}. Message is partitioned, indexes in plan
+     * are the ones of partitions named {@code <partition>_<index>}.
+     */
+    private String explain(Runnable repositoryCall, String arguments) {
+        CapturedStatements.STATEMENTS.clear();
+        repositoryCall.run();
+        assertThat(CapturedStatements.STATEMENTS, hasSize(1));
+
+        final var parameter = new AtomicInteger();
+        final var query = Pattern.compile("\\?").matcher(CapturedStatements.STATEMENTS.get(0))
+                .replaceAll(match -> "\\$" + parameter.incrementAndGet());
+        jdbcTemplate.execute("prepare explained as " + query);
+        final List<String> plan = jdbcTemplate.queryForList("explain execute explained(" + arguments + ")", String.class);
+        jdbcTemplate.execute("deallocate explained");
+        return String.join("\n", plan);
+    }
+
+    private int insertUser() {
+        final int id = jdbcTemplate.queryForObject("select nextval('user_sequence')", Integer.class);
+        jdbcTemplate.update(
+                "insert into chat_user (id, email, nickname) values (?, ?, ?)",
+                id, "update" + id + "@test.pl", "update" + id
+        );
+        return id;
+    }
+
+    private long insertMessage(int authorId, Integer channelId) {
+        return insertMessage(authorId, channelId, "content", false);
+    }
+
+    private long insertMessage(int authorId, Integer channelId, String content, boolean deleted) {
+        final long id = jdbcTemplate.queryForObject("select nextval('message_sequence')", Long.class);
+        jdbcTemplate.update(
+                "insert into message (id, content, created_at, deleted, nickname, channel_id) " +
+                        "values (?, ?, now(), ?, ?, ?)",
+                id, content, deleted, authorId, channelId
+        );
+        return id;
+    }
+
+    private int insertChannel() {
+        final int id = jdbcTemplate.queryForObject("select nextval('channel_sequence')", Integer.class);
+        jdbcTemplate.update("insert into channel (id) values (?)", id);
+        return id;
+    }
+    //endregion
+
+    //region global channel
+    @Test
+    public void latestGlobalMessagesShouldUseGlobalHistoryIndex() {
+        final var plan = explain(() -> messageRepository.findGlobalChannelPage(PageRequest.of(0, 51)), "51");
+
+        assertThat(plan, containsString("_global_history_idx"));
+        assertThat(plan, not(containsString("Seq Scan")));
+        assertThat(plan, not(containsString(SORT_NODE)));
+    }
+
+    @Test
+    public void olderGlobalMessagesShouldUseGlobalHistoryIndex() {
+        final var plan = explain(() -> messageRepository.findGlobalChannelPageBefore(1000, PageRequest.of(0, 51)), "1000, 51");
+
+        assertThat(plan, containsString("_global_history_idx"));
+        assertThat(plan, not(containsString("Seq Scan")));
+        assertThat(plan, not(containsString(SORT_NODE)));
+    }
+
+    @Test
+    public void newerGlobalMessagesShouldUseGlobalHistoryIndex() {
+        final var plan = explain(() -> messageRepository.findGlobalChannelPageAfter(1000, PageRequest.of(0, 51)), "1000, 51");
+
+        assertThat(plan, containsString("_global_history_idx"));
+        assertThat(plan, not(containsString("Seq Scan")));
+        assertThat(plan, not(containsString(SORT_NODE)));
+    }
+    //endregion
+
+    //region channel
+    @Test
+    public void latestChannelMessagesShouldUseChannelHistoryIndex() {
+        final var plan = explain(() -> messageRepository.findChannelPage(1, PageRequest.of(0, 51)), "1, 51");
+
+        assertThat(plan, containsString("_channel_history_idx"));
+        assertThat(plan, not(containsString("Seq Scan")));
+        assertThat(plan, not(containsString(SORT_NODE)));
+    }
+
+    @Test
+    public void olderChannelMessagesShouldUseChannelHistoryIndex() {
+        final var plan = explain(() -> messageRepository.findChannelPageBefore(1, 1000, PageRequest.of(0, 51)), "1, 1000, 51");
+
+        assertThat(plan, containsString("_channel_history_idx"));
+        assertThat(plan, not(containsString("Seq Scan")));
+        assertThat(plan, not(containsString(SORT_NODE)));
+    }
+
+    @Test
+    public void newerChannelMessagesShouldUseChannelHistoryIndex() {
+        final var plan = explain(() -> messageRepository.findChannelPageAfter(1, 1000, PageRequest.of(0, 51)), "1, 1000, 51");
+
+        assertThat(plan, containsString("_channel_history_idx"));
+        assertThat(plan, not(containsString("Seq Scan")));
+        assertThat(plan, not(containsString(SORT_NODE)));
+    }
+    //endregion
+
+
+    //region edit and delete
+    @Test
+    public void shouldEditOwnMessageReturningUpdatedRow() {
+        final var authorId = insertUser();
+        final var messageId = insertMessage(authorId, null);
+
+        final var updated = messageRepository
+                .editGlobalChannelMessage(messageId, "update" + authorId, "edited")
+                .orElseThrow();
+
+        assertThat(updated.getId(), equalTo(messageId));
+        assertThat(updated.getAuthorId(), equalTo(authorId));
+        assertThat(updated.getNickname(), equalTo("update" + authorId));
+        assertThat(updated.getContent(), equalTo("edited"));
+        assertThat(updated.getCreatedAt() != null, equalTo(true));
+        assertThat(updated.isDeleted(), equalTo(false));
+    }
+
+    @Test
+    public void shouldNotEditMessageOfOtherUser() {
+        final var authorId = insertUser();
+        final var otherId = insertUser();
+        final var messageId = insertMessage(authorId, null);
+
+        assertThat(messageRepository.editGlobalChannelMessage(messageId, "update" + otherId, "edited").isEmpty(),
+                equalTo(true));
+        assertThat(messageRepository.existsByIdAndDeletedFalseAndChannelIsNull(messageId), equalTo(true));
+    }
+
+    @Test
+    public void shouldDeleteChannelMessageOnlyOnceAndOnlyInItsChannel() {
+        final var authorId = insertUser();
+        final var channelId = insertChannel();
+        final var messageId = insertMessage(authorId, channelId);
+
+        assertThat(messageRepository.deleteGlobalChannelMessage(messageId, "update" + authorId).isEmpty(),
+                equalTo(true));
+        assertThat(messageRepository.deleteChannelMessage(messageId, channelId, "update" + authorId)
+                .orElseThrow()
+                .isDeleted(), equalTo(true));
+        assertThat(messageRepository.deleteChannelMessage(messageId, channelId, "update" + authorId).isEmpty(),
+                equalTo(true));
+        assertThat(messageRepository.existsByIdAndDeletedFalseAndChannelId(messageId, channelId), equalTo(false));
+    }
+    //endregion
+
+
+    //region search
+    @Test
+    public void searchShouldUseContentSearchIndex() {
+        // On empty table history index is cheaper, planner has to see that the searched word is rare
+        final var authorId = insertUser();
+        jdbcTemplate.update(
+                "insert into message (id, content, created_at, deleted, nickname) " +
+                        "select nextval('message_sequence'), 'filler message ' || i, now(), false, ? " +
+                        "from generate_series(1, 5000) i",
+                authorId
+        );
+        insertMessage(authorId, null, "needle", false);
+        jdbcTemplate.execute("analyze message");
+
+        // Query text is bound twice, once for match and once for rank
+        final var plan = explain(
+                () -> messageRepository.searchGlobalChannel("needle", 51),
+                "'needle', 'needle', 51"
+        );
+
+        assertThat(plan, containsString("_content_search_idx"));
+        assertThat(plan, not(containsString("Seq Scan")));
+    }
+
+    @Test
+    public void shouldSearchGlobalChannelByRankAndContinueBelowCursor() {
+        final var authorId = insertUser();
+        final var channelId = insertChannel();
+        final var once = insertMessage(authorId, null, "Zebra crossing", false);
+        final var twice = insertMessage(authorId, null, "zebra zebra", false);
+        final var other = insertMessage(authorId, null, "zebra and more words around it", false);
+        insertMessage(authorId, null, "zebra deleted", true);
+        insertMessage(authorId, channelId, "zebra in channel", false);
+        insertMessage(authorId, null, "horse", false);
+
+        final var first = messageRepository.searchGlobalChannel("zebra", 2);
+        final var last = first.get(1);
+        final var rest = messageRepository
+                .searchGlobalChannelBelow("zebra", last.getRank(), last.getId(), 2);
+
+        // Equally ranked matches are ordered from the newest
+        assertThat(first.stream().map(MessageRepository.SearchHit::getId).toList(), contains(twice, other));
+        assertThat(first.get(0).getAuthorNick(), equalTo("update" + authorId));
+        assertThat(rest.stream().map(MessageRepository.SearchHit::getId).toList(), contains(once));
+    }
+
+    @Test
+    public void shouldSearchOnlyInGivenChannel() {
+        final var authorId = insertUser();
+        final var channelId = insertChannel();
+        final var otherChannelId = insertChannel();
+        final var inChannel = insertMessage(authorId, channelId, "walrus", false);
+        insertMessage(authorId, otherChannelId, "walrus", false);
+        insertMessage(authorId, null, "walrus", false);
+
+        assertThat(messageRepository.searchChannel(channelId, "walrus", 10).stream()
+                .map(MessageRepository.SearchHit::getId).toList(), contains(inChannel));
+        assertThat(messageRepository.searchChannel(channelId, "-walrus", 10), empty());
+    }
+    //endregion
+
+}
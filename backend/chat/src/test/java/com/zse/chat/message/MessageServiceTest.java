@@ -1,17 +1,23 @@
 package com.zse.chat.message;
 
 
+import com.zse.chat.login.MessageUpdateFailedException;
 import com.zse.chat.user.User;
+import com.zse.chat.message.search.MessageSearchIndex;
 import com.zse.chat.user.UserFixture;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.AdditionalAnswers;
 import org.mockito.ArgumentMatchers;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
 
@@ -29,10 +35,40 @@ class MessageServiceTest {
     @MockBean
     private MessageRepository messageRepository;
 
+    @MockBean
+    private ApplicationEventPublisher eventPublisher;
+
+    @MockBean
+    private MessageOutbox messageOutbox;
+
+    @MockBean
+    private MessageTailCache messageTailCache;
+
+    @MockBean
+    private MessageWriteBatcher messageWriteBatcher;
+
+    @MockBean
+    private MessageArchive messageArchive;
+
+    @SuppressWarnings("unchecked")
+    private final ObjectProvider<MessageSearchIndex> messageSearchIndexProvider = mock(ObjectProvider.class);
+
     //region fixture
     @BeforeEach
     void setUp() {
-        messageService = new MessageService(messageRepository);
+        messageService = new MessageService(
+                messageRepository,
+                eventPublisher,
+                messageOutbox,
+                messageTailCache,
+                messageWriteBatcher,
+                messageArchive,
+                messageSearchIndexProvider
+        );
+        when(messageArchive.withOlder(any(), any(), ArgumentMatchers.anyList(), anyInt()))
+                .then(AdditionalAnswers.returnsArgAt(2));
+        when(messageArchive.withNewer(any(), anyLong(), ArgumentMatchers.anyList(), anyInt()))
+                .then(AdditionalAnswers.returnsArgAt(2));
     }
 
     private MessageController.MessageRequestDTO.MessageRequestDTOBuilder createMessageRequest(
@@ -43,43 +79,152 @@ class MessageServiceTest {
     }
     //endregion
 
-    //region getAllMessages()
+    //region getMessagesInGlobalChannel()
     @Test
-    public void shouldReturnListOfMessages(){
-        List<User> users = new ArrayList<>();
-        users.add(UserFixture.createDefaultUser(1).build());
-        users.add(UserFixture.createDefaultUser(2).build());
-        users.add(UserFixture.createDefaultUser(3).build());
+    public void shouldReturnLatestPageFromTailCache(){
+        final var page = MessagePage.fromOlder(MessageFixture.createListOfMessageResponses(1, 5), 5);
 
-        List<Message> messages = new ArrayList<>();
-        messages.add(MessageFixture.createDefaultMessage(1, users.get(0)).build());
-        messages.add(MessageFixture.createDefaultMessage(2, users.get(1)).build());
-        messages.add(MessageFixture.createDefaultMessage(3, users.get(2)).build());
-        messages.add(MessageFixture.createDefaultMessage(4, users.get(0)).build());
-        messages.add(MessageFixture.createDefaultMessage(5, users.get(2)).build());
-        messages.add(MessageFixture.createDefaultMessage(6, users.get(2)).build());
+        when(messageTailCache.getLatestPage(null, 5)).thenReturn(page);
 
-        when(messageRepository.findAllByDeletedFalseAndChannelIsNullOrderByIdAsc()).thenReturn(messages);
+        MessagePage returned = messageService.getMessagesInGlobalChannel(null, null, 5);
 
-        List<Message> returned = messageService.getAllMessagesInGlobalChannel();
+        assertThat(returned, equalTo(page));
+        verify(messageTailCache, times(1)).getLatestPage(null, 5);
+        verifyNoInteractions(messageRepository);
+    }
 
-        assertThat(returned, hasSize(6));
-        verify(messageRepository, times(1)).findAllByDeletedFalseAndChannelIsNullOrderByIdAsc();
+    @Test
+    public void shouldReturnOlderPageWithoutPreviousCursorWhenHistoryEnds(){
+        List<MessageController.MessageResponseDTO> messages = new ArrayList<>(MessageFixture.createListOfMessageResponses(1, 3));
+        Collections.reverse(messages);
+
+        when(messageRepository.findGlobalChannelPageBefore(4, PageRequest.of(0, 6)))
+                .thenReturn(messages);
+
+        MessagePage returned = messageService.getMessagesInGlobalChannel(4L, null, 5);
+
+        assertThat(returned.getMessages(), hasSize(3));
+        assertThat(returned.getMessages().get(0).getId(), equalTo(1L));
+        assertThat(returned.getPreviousCursor(), nullValue());
+        assertThat(returned.getNextCursor(), equalTo(3L));
+        verify(messageRepository, times(1))
+                .findGlobalChannelPageBefore(4, PageRequest.of(0, 6));
         verifyNoMoreInteractions(messageRepository);
     }
 
     @Test
-    public void shouldReturnEmptyListOfMessages(){
-        List<Message> messages = new ArrayList<>();
+    public void shouldCompleteOlderPageFromArchive(){
+        List<MessageController.MessageResponseDTO> archived = new ArrayList<>(MessageFixture.createListOfMessageResponses(1, 3));
+        Collections.reverse(archived);
+
+        when(messageRepository.findGlobalChannelPageBefore(4, PageRequest.of(0, 6)))
+                .thenReturn(new ArrayList<>());
+        when(messageArchive.withOlder(null, 4L, List.of(), 6)).thenReturn(archived);
+
+        MessagePage returned = messageService.getMessagesInGlobalChannel(4L, null, 5);
+
+        assertThat(returned.getMessages(), hasSize(3));
+        assertThat(returned.getNextCursor(), equalTo(3L));
+        verify(messageArchive, times(1)).withOlder(null, 4L, List.of(), 6);
+    }
+
+    @Test
+    public void shouldReturnNewerPage(){
+        List<MessageController.MessageResponseDTO> messages = MessageFixture.createListOfMessageResponses(11, 3);
 
-        when(messageRepository.findAllByDeletedFalseAndChannelIsNullOrderByIdAsc()).thenReturn(messages);
+        when(messageRepository.findGlobalChannelPageAfter(10, PageRequest.of(0, 6)))
+                .thenReturn(messages);
 
-        List<Message> returned = messageService.getAllMessagesInGlobalChannel();
+        MessagePage returned = messageService.getMessagesInGlobalChannel(null, 10L, 5);
 
-        assertThat(returned, hasSize(0));
-        verify(messageRepository, times(1)).findAllByDeletedFalseAndChannelIsNullOrderByIdAsc();
+        assertThat(returned.getMessages(), hasSize(3));
+        assertThat(returned.getPreviousCursor(), equalTo(11L));
+        assertThat(returned.getNextCursor(), equalTo(13L));
+        verify(messageRepository, times(1))
+                .findGlobalChannelPageAfter(10, PageRequest.of(0, 6));
         verifyNoMoreInteractions(messageRepository);
     }
+
+    @Test
+    public void shouldKeepCursorWhenThereAreNoNewerMessages(){
+        when(messageRepository.findGlobalChannelPageAfter(10, PageRequest.of(0, 6)))
+                .thenReturn(new ArrayList<>());
+
+        MessagePage returned = messageService.getMessagesInGlobalChannel(null, 10L, 5);
+
+        assertThat(returned.getMessages(), hasSize(0));
+        assertThat(returned.getPreviousCursor(), nullValue());
+        assertThat(returned.getNextCursor(), equalTo(10L));
+    }
+
+    @Test
+    public void shouldThrowInvalidCursorWhenBeforeAndAfterAreUsedTogether(){
+        assertThrows(InvalidCursorException.class,
+                () -> messageService.getMessagesInGlobalChannel(10L, 5L, 5));
+
+        verifyNoInteractions(messageRepository);
+    }
+    //endregion
+
+    //region searchGlobalChannel()
+    @Test
+    public void shouldReturnFirstSearchPageWithCursorOfLastHit(){
+        when(messageRepository.searchGlobalChannel("testContent", 3))
+                .thenReturn(MessageFixture.createListOfSearchHits(1, 3));
+
+        MessageSearchPage returned = messageService.searchGlobalChannel("testContent", null, 2);
+
+        assertThat(returned.getMessages(), hasSize(2));
+        assertThat(returned.getMessages().get(0).getId(), equalTo(1L));
+        assertThat(returned.getNextCursor(), equalTo("0.5_2"));
+        verify(messageRepository, times(1)).searchGlobalChannel("testContent", 3);
+        verifyNoMoreInteractions(messageRepository);
+    }
+
+    @Test
+    public void shouldContinueSearchBelowCursor(){
+        when(messageRepository.searchGlobalChannelBelow("testContent", 0.5f, 2, 3))
+                .thenReturn(MessageFixture.createListOfSearchHits(3, 1));
+
+        MessageSearchPage returned = messageService.searchGlobalChannel("testContent", "0.5_2", 2);
+
+        assertThat(returned.getMessages(), hasSize(1));
+        assertThat(returned.getNextCursor(), nullValue());
+        verify(messageRepository, times(1)).searchGlobalChannelBelow("testContent", 0.5f, 2, 3);
+        verifyNoMoreInteractions(messageRepository);
+    }
+
+    @Test
+    public void shouldReturnEmptySearchPageForBlankQuery(){
+        MessageSearchPage returned = messageService.searchGlobalChannel("  ", null, 2);
+
+        assertThat(returned.getMessages(), hasSize(0));
+        assertThat(returned.getNextCursor(), nullValue());
+        verifyNoInteractions(messageRepository);
+    }
+
+    @Test
+    public void shouldSearchInEmbeddedIndexWhenEnabled(){
+        final var index = mock(MessageSearchIndex.class);
+        final var page = MessageSearchPage.empty();
+
+        when(messageSearchIndexProvider.getIfAvailable()).thenReturn(index);
+        when(index.search(null, "testContent", "0.5_2", 2)).thenReturn(page);
+
+        MessageSearchPage returned = messageService.searchGlobalChannel("testContent", "0.5_2", 2);
+
+        assertThat(returned, equalTo(page));
+        verify(index, times(1)).search(null, "testContent", "0.5_2", 2);
+        verifyNoInteractions(messageRepository);
+    }
+
+    @Test
+    public void shouldThrowInvalidCursorForMalformedSearchCursor(){
+        assertThrows(InvalidCursorException.class,
+                () -> messageService.searchGlobalChannel("testContent", "abc", 2));
+
+        verifyNoInteractions(messageRepository);
+    }
     //endregion
 
     //region getMessageById()
@@ -88,28 +233,28 @@ class MessageServiceTest {
         User user = UserFixture.createDefaultUser(1).build();
         Message message = MessageFixture.createDefaultMessage(1, user).build();
 
-        when(messageRepository.findById(1)).thenReturn(Optional.of(message));
+        when(messageRepository.findById(1L)).thenReturn(Optional.of(message));
 
         Message returned = messageService.getMessageById(1);
 
         assertThat(returned, notNullValue());
-        assertThat(returned.getId(), equalTo(1));
+        assertThat(returned.getId(), equalTo(1L));
         assertThat(returned.getAuthor(), equalTo(user));
         assertThat(returned.getContent(), equalTo("testContent1"));
 
-        verify(messageRepository, times(1)).findById(anyInt());
+        verify(messageRepository, times(1)).findById(anyLong());
         verifyNoMoreInteractions(messageRepository);
     }
 
     @Test
     public void shouldThrowMessageNotFoundWhenTryingToFindByNotExistingId() {
-        when(messageRepository.findById(1))
+        when(messageRepository.findById(1L))
                 .thenThrow(new MessageNotFoundException(1));
 
         assertThrows(MessageNotFoundException.class,
                 () -> messageService.getMessageById(1));
 
-        verify(messageRepository, times(1)).findById(anyInt());
+        verify(messageRepository, times(1)).findById(anyLong());
         verifyNoMoreInteractions(messageRepository);
     }
     //endregion
@@ -120,7 +265,7 @@ class MessageServiceTest {
         User user = UserFixture.createDefaultUser(1).build();
         var messageRequestDTO = createMessageRequest(1, user).build();
 
-        when(messageRepository.save(ArgumentMatchers.any(Message.class)))
+        when(messageWriteBatcher.save(ArgumentMatchers.any(Message.class)))
                 .then(AdditionalAnswers.returnsFirstArg());
 
         Message message = messageService.saveMessage(messageRequestDTO, user);
@@ -131,9 +276,11 @@ class MessageServiceTest {
         assertThat(message.getContent(), equalTo("testContent1"));
         assertThat(message.getCreatedAt(), notNullValue());
 
-        verify(messageRepository, times(1))
+        verify(messageWriteBatcher, times(1))
                 .save(ArgumentMatchers.any(Message.class));
-        verifyNoMoreInteractions(messageRepository);
+        verify(eventPublisher, times(1))
+                .publishEvent(new MessageEvent(MessageEvent.Type.CREATED, message));
+        verifyNoInteractions(messageRepository);
     }
     //endregion
 
@@ -141,26 +288,93 @@ class MessageServiceTest {
     @Test
     public void shouldUpdateMessage() {
         User user = UserFixture.createDefaultUser(1).build();
-        Message message = MessageFixture.createDefaultMessage(1, user).build();
         var messageRequestDTO = createMessageRequest(1, user).build();
+        Message message = MessageFixture.createDefaultMessage(1, user).build();
 
-        when(messageRepository.findById(1)).thenReturn(Optional.of(message));
-        when(messageRepository.save(ArgumentMatchers.any(Message.class)))
-                .then(AdditionalAnswers.returnsFirstArg());
+        when(messageRepository.editGlobalChannelMessage(1, user.getNickname(), "testContent1"))
+                .thenReturn(Optional.of(MessageFixture.createUpdatedMessage(message)));
 
         Message updatedMessage = messageService.updateMessageById(1, messageRequestDTO);
 
         assertThat(updatedMessage, notNullValue());
-        assertThat(updatedMessage.getId(), notNullValue());
-        assertThat(updatedMessage.getAuthor(), equalToObject(user));
+        assertThat(updatedMessage.getId(), equalTo(1L));
+        assertThat(updatedMessage.getAuthor().getNickname(), equalTo(user.getNickname()));
         assertThat(updatedMessage.getContent(), equalTo("testContent1"));
         assertThat(updatedMessage.getCreatedAt(), notNullValue());
+        assertThat(updatedMessage.getChannel(), nullValue());
 
-        verify(messageRepository, times(1)).findById(any());
         verify(messageRepository, times(1))
-                .save(ArgumentMatchers.any(Message.class));
+                .editGlobalChannelMessage(1, user.getNickname(), "testContent1");
+        verify(eventPublisher, times(1))
+                .publishEvent(new MessageEvent(MessageEvent.Type.UPDATED, updatedMessage));
         verifyNoMoreInteractions(messageRepository);
     }
+
+    @Test
+    public void shouldPublishDeletedEventWhenDeletingMessage() {
+        User user = UserFixture.createDefaultUser(1).build();
+        var messageRequestDTO = createMessageRequest(1, user).build();
+        Message message = MessageFixture.createDefaultMessage(1, user).deleted(true).build();
+
+        when(messageRepository.deleteGlobalChannelMessage(1, user.getNickname()))
+                .thenReturn(Optional.of(MessageFixture.createUpdatedMessage(message)));
+
+        Message deletedMessage = messageService.updateMessageById(1, messageRequestDTO, true);
+
+        assertThat(deletedMessage.isDeleted(), equalTo(true));
+        verify(messageRepository, times(1)).deleteGlobalChannelMessage(1, user.getNickname());
+        verify(messageOutbox, times(1))
+                .append(new MessageEvent(MessageEvent.Type.DELETED, deletedMessage));
+        verify(eventPublisher, times(1))
+                .publishEvent(new MessageEvent(MessageEvent.Type.DELETED, deletedMessage));
+        verifyNoMoreInteractions(messageRepository, eventPublisher);
+    }
+
+    @Test
+    public void shouldThrowMessageUpdateFailedWhenMessageBelongsToOtherUser() {
+        User user = UserFixture.createDefaultUser(1).build();
+        var messageRequestDTO = createMessageRequest(1, user).build();
+
+        when(messageRepository.editGlobalChannelMessage(1, user.getNickname(), "testContent1"))
+                .thenReturn(Optional.empty());
+        when(messageRepository.existsByIdAndDeletedFalseAndChannelIsNull(1)).thenReturn(true);
+
+        assertThrows(MessageUpdateFailedException.class,
+                () -> messageService.updateMessageById(1, messageRequestDTO));
+
+        verifyNoInteractions(eventPublisher);
+    }
+
+    @Test
+    public void shouldThrowMessageArchivedWhenEditingArchivedMessage() {
+        User user = UserFixture.createDefaultUser(1).build();
+        var messageRequestDTO = createMessageRequest(1, user).build();
+
+        when(messageRepository.editGlobalChannelMessage(1, user.getNickname(), "testContent1"))
+                .thenReturn(Optional.empty());
+        when(messageRepository.existsByIdAndDeletedFalseAndChannelIsNull(1)).thenReturn(false);
+        when(messageRepository.existsInArchiveOfGlobalChannel(1)).thenReturn(true);
+
+        assertThrows(MessageArchivedException.class,
+                () -> messageService.updateMessageById(1, messageRequestDTO));
+
+        verifyNoInteractions(eventPublisher, messageOutbox);
+    }
+
+    @Test
+    public void shouldThrowMessageNotFoundWhenUpdatingMissingOrDeletedMessage() {
+        User user = UserFixture.createDefaultUser(1).build();
+        var messageRequestDTO = createMessageRequest(1, user).build();
+
+        when(messageRepository.deleteGlobalChannelMessage(1, user.getNickname())).thenReturn(Optional.empty());
+        when(messageRepository.existsByIdAndDeletedFalseAndChannelIsNull(1)).thenReturn(false);
+
+        final var result = assertThrows(MessageNotFoundException.class,
+                () -> messageService.updateMessageById(1, messageRequestDTO, true));
+
+        assertThat(result.getMessage(), containsString("1"));
+        verifyNoInteractions(eventPublisher);
+    }
     //endregion
 
 }
@@ -0,0 +1,264 @@
+package com.zse.chat.message;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.zse.chat.channel.ChannelFixture;
+import com.zse.chat.outbox.ChangeEvent;
+import com.zse.chat.outbox.ChangeType;
+import com.zse.chat.outbox.ClusterChangeEvent;
+import com.zse.chat.outbox.ClusterResyncEvent;
+import com.zse.chat.outbox.Outbox;
+import com.zse.chat.user.UserFixture;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.collection.IsCollectionWithSize.hasSize;
+import static org.mockito.AdditionalAnswers.returnsArgAt;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(SpringExtension.class)
+class MessageTailCacheTest {
+
+    private MessageTailCache messageTailCache;
+    private SimpleMeterRegistry meterRegistry;
+
+    @MockBean
+    private MessageRepository messageRepository;
+    @MockBean
+    private MessageArchive messageArchive;
+
+    //region fixture
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        messageTailCache = new MessageTailCache(
+                messageRepository,
+                messageArchive,
+                new MessageOutbox(mock(Outbox.class), objectMapper),
+                meterRegistry,
+                new MockEnvironment().withProperty("message-cache.max-channels", "2")
+        );
+        when(messageArchive.withOlder(any(), any(), anyList(), anyInt())).then(returnsArgAt(2));
+    }
+
+    private static List<MessageController.MessageResponseDTO> createRowsDescending(int min, int amount) {
+        final List<MessageController.MessageResponseDTO> rows =
+                new ArrayList<>(MessageFixture.createListOfMessageResponses(min, amount));
+        Collections.reverse(rows);
+        return rows;
+    }
+
+    private static MessageEvent createEvent(MessageEvent.Type type, int messageId, Integer channelId) {
+        final var user = UserFixture.createDefaultUser(messageId).build();
+        final var message = MessageFixture.createDefaultMessage(messageId, user);
+        if (channelId != null) {
+            message.channel(ChannelFixture.createDefaultChannel(
+                    channelId,
+                    List.of(user),
+                    List.of(),
+                    List.of()
+            ).build());
+        }
+        return new MessageEvent(type, message.build());
+    }
+
+    private ClusterChangeEvent createClusterChange(ChangeType type, int messageId, Integer channelId)
+            throws JsonProcessingException {
+        final var message = MessageFixture.createListOfMessageResponses(messageId, 1).get(0);
+        return new ClusterChangeEvent(
+                new ChangeEvent(messageId, type, channelId, objectMapper.writeValueAsString(message))
+        );
+    }
+
+    private double countRequests(String result) {
+        return meterRegistry.counter("message.cache.requests", "result", result).count();
+    }
+    //endregion
+
+    //region getLatestPage()
+    @Test
+    public void shouldLoadTailOnFirstReadAndServeNextReadsFromMemory() {
+        when(messageRepository.findChannelPage(1, PageRequest.of(0, MessageTailCache.CAPACITY)))
+                .thenReturn(createRowsDescending(1, 10));
+
+        final var first = messageTailCache.getLatestPage(1, 5);
+        final var second = messageTailCache.getLatestPage(1, 5);
+
+        assertThat(first, equalTo(second));
+        assertThat(second.getMessages(), hasSize(5));
+        assertThat(second.getMessages().get(0).getId(), equalTo(6L));
+        assertThat(second.getPreviousCursor(), equalTo(6L));
+        assertThat(second.getNextCursor(), equalTo(10L));
+        assertThat(countRequests("miss"), equalTo(1.0));
+        assertThat(countRequests("hit"), equalTo(1.0));
+
+        verify(messageRepository, times(1)).findChannelPage(1, PageRequest.of(0, MessageTailCache.CAPACITY));
+        verifyNoMoreInteractions(messageRepository);
+    }
+
+    @Test
+    public void shouldServeWholeShortHistoryWithoutPreviousCursor() {
+        when(messageRepository.findGlobalChannelPage(PageRequest.of(0, MessageTailCache.CAPACITY)))
+                .thenReturn(createRowsDescending(1, 3));
+
+        messageTailCache.getLatestPage(null, 50);
+        final var page = messageTailCache.getLatestPage(null, 50);
+
+        assertThat(page.getMessages(), hasSize(3));
+        assertThat(page.getPreviousCursor(), nullValue());
+        assertThat(countRequests("hit"), equalTo(1.0));
+
+        verify(messageRepository, times(1)).findGlobalChannelPage(PageRequest.of(0, MessageTailCache.CAPACITY));
+        verifyNoMoreInteractions(messageRepository);
+    }
+
+    @Test
+    public void shouldLoadLatestMessagesOfQuietChannelFromArchive() {
+        when(messageRepository.findChannelPage(1, PageRequest.of(0, MessageTailCache.CAPACITY)))
+                .thenReturn(List.of());
+        when(messageArchive.withOlder(1, null, List.of(), MessageTailCache.CAPACITY))
+                .thenReturn(createRowsDescending(1, 3));
+
+        messageTailCache.getLatestPage(1, 50);
+        final var page = messageTailCache.getLatestPage(1, 50);
+
+        assertThat(page.getMessages(), hasSize(3));
+        assertThat(page.getNextCursor(), equalTo(3L));
+        assertThat(countRequests("hit"), equalTo(1.0));
+        verify(messageArchive, times(1)).withOlder(1, null, List.of(), MessageTailCache.CAPACITY);
+    }
+
+    @Test
+    public void shouldReloadWhenDeletesLeftTooFewMessages() {
+        when(messageRepository.findChannelPage(1, PageRequest.of(0, MessageTailCache.CAPACITY)))
+                .thenReturn(createRowsDescending(1, MessageTailCache.CAPACITY));
+
+        messageTailCache.getLatestPage(1, MessagePage.MAX_LIMIT);
+        messageTailCache.onMessageEvent(createEvent(MessageEvent.Type.DELETED, 50, 1));
+        messageTailCache.getLatestPage(1, MessagePage.MAX_LIMIT);
+
+        assertThat(countRequests("miss"), equalTo(2.0));
+        verify(messageRepository, times(2)).findChannelPage(1, PageRequest.of(0, MessageTailCache.CAPACITY));
+    }
+
+    @Test
+    public void shouldEvictLeastRecentlyReadChannelOverLimit() {
+        when(messageRepository.findChannelPage(anyInt(), eq(PageRequest.of(0, MessageTailCache.CAPACITY))))
+                .thenReturn(createRowsDescending(1, 3));
+
+        messageTailCache.getLatestPage(1, 5);
+        messageTailCache.getLatestPage(2, 5);
+        messageTailCache.getLatestPage(3, 5);
+
+        assertThat(messageTailCache.countCachedChannels(), equalTo(2));
+    }
+    //endregion
+
+    //region onMessageEvent()
+    @Test
+    public void shouldApplyEventsToLoadedTail() {
+        when(messageRepository.findChannelPage(1, PageRequest.of(0, MessageTailCache.CAPACITY)))
+                .thenReturn(createRowsDescending(1, 3));
+
+        messageTailCache.getLatestPage(1, 10);
+        messageTailCache.onMessageEvent(createEvent(MessageEvent.Type.CREATED, 5, 1));
+        messageTailCache.onMessageEvent(createEvent(MessageEvent.Type.CREATED, 4, 1));
+        messageTailCache.onMessageEvent(createEvent(MessageEvent.Type.DELETED, 2, 1));
+        final var updated = createEvent(MessageEvent.Type.UPDATED, 3, 1);
+        messageTailCache.onMessageEvent(updated);
+        messageTailCache.onMessageEvent(createEvent(MessageEvent.Type.CREATED, 6, 2));
+        messageTailCache.onMessageEvent(createEvent(MessageEvent.Type.CREATED, 7, null));
+
+        final var page = messageTailCache.getLatestPage(1, 10);
+
+        assertThat(page.getMessages().stream().map(MessageController.MessageResponseDTO::getId).toList(),
+                equalTo(List.of(1L, 3L, 4L, 5L)));
+        assertThat(page.getMessages().get(1).getAuthorNick(), equalTo(updated.message().getAuthor().getNickname()));
+        assertThat(countRequests("hit"), equalTo(1.0));
+
+        verify(messageRepository, times(1)).findChannelPage(1, PageRequest.of(0, MessageTailCache.CAPACITY));
+        verifyNoMoreInteractions(messageRepository);
+    }
+
+    @Test
+    public void shouldDropOldestMessageWhenTailIsFull() {
+        when(messageRepository.findChannelPage(1, PageRequest.of(0, MessageTailCache.CAPACITY)))
+                .thenReturn(createRowsDescending(1, MessageTailCache.CAPACITY));
+
+        messageTailCache.getLatestPage(1, MessagePage.MAX_LIMIT);
+        messageTailCache.onMessageEvent(createEvent(MessageEvent.Type.CREATED, MessageTailCache.CAPACITY + 1, 1));
+        final var page = messageTailCache.getLatestPage(1, MessagePage.MAX_LIMIT);
+
+        assertThat(page.getMessages(), hasSize(MessagePage.MAX_LIMIT));
+        assertThat(page.getPreviousCursor(), equalTo(3L));
+        assertThat(page.getNextCursor(), equalTo(MessageTailCache.CAPACITY + 1L));
+        assertThat(countRequests("hit"), equalTo(1.0));
+    }
+    //endregion
+
+    //region onClusterChange()
+    @Test
+    public void shouldApplyChangesOfOtherInstancesToLoadedTail() throws JsonProcessingException {
+        when(messageRepository.findChannelPage(1, PageRequest.of(0, MessageTailCache.CAPACITY)))
+                .thenReturn(createRowsDescending(1, 3));
+
+        messageTailCache.getLatestPage(1, 10);
+        messageTailCache.onClusterChange(createClusterChange(ChangeType.MESSAGE_CREATED, 4, 1));
+        messageTailCache.onClusterChange(createClusterChange(ChangeType.MESSAGE_DELETED, 2, 1));
+        messageTailCache.onClusterChange(createClusterChange(ChangeType.MESSAGE_CREATED, 5, 2));
+        messageTailCache.onClusterChange(new ClusterChangeEvent(
+                new ChangeEvent(6, ChangeType.CHANNEL_UPDATED, 1, "{}")
+        ));
+
+        final var page = messageTailCache.getLatestPage(1, 10);
+
+        assertThat(page.getMessages().stream().map(MessageController.MessageResponseDTO::getId).toList(),
+                equalTo(List.of(1L, 3L, 4L)));
+        assertThat(countRequests("hit"), equalTo(1.0));
+    }
+
+    @Test
+    public void shouldLoadTailsAgainAfterResync() {
+        when(messageRepository.findChannelPage(1, PageRequest.of(0, MessageTailCache.CAPACITY)))
+                .thenReturn(createRowsDescending(1, 3));
+
+        messageTailCache.getLatestPage(1, 10);
+        messageTailCache.onClusterResync(new ClusterResyncEvent());
+        messageTailCache.getLatestPage(1, 10);
+
+        assertThat(countRequests("miss"), equalTo(2.0));
+        verify(messageRepository, times(2)).findChannelPage(1, PageRequest.of(0, MessageTailCache.CAPACITY));
+    }
+
+    @Test
+    public void shouldLoadTailAgainAfterBulkOfOtherInstance() {
+        when(messageRepository.findChannelPage(1, PageRequest.of(0, MessageTailCache.CAPACITY)))
+                .thenReturn(createRowsDescending(1, 3));
+
+        messageTailCache.getLatestPage(1, 10);
+        messageTailCache.onClusterChange(new ClusterChangeEvent(
+                new ChangeEvent(1, ChangeType.MESSAGES_INGESTED, 1, "{\"authorNick\":\"testNickname1\",\"count\":3,\"firstId\":6,\"lastId\":8}")
+        ));
+        messageTailCache.getLatestPage(1, 10);
+
+        assertThat(countRequests("miss"), equalTo(2.0));
+        verify(messageRepository, times(2)).findChannelPage(1, PageRequest.of(0, MessageTailCache.CAPACITY));
+    }
+    //endregion
+
+}
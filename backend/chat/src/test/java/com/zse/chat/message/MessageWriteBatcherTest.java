@@ -0,0 +1,101 @@
+package com.zse.chat.message;
+
+import com.zse.chat.user.UserFixture;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.AdditionalAnswers;
+import org.mockito.ArgumentMatchers;
+import org.springframework.boot.convert.ApplicationConversionService;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(SpringExtension.class)
+class MessageWriteBatcherTest {
+
+    private MessageWriteBatcher messageWriteBatcher;
+
+    @MockBean
+    private MessageRepository messageRepository;
+    @MockBean
+    private MessageOutbox messageOutbox;
+    @MockBean
+    private PlatformTransactionManager transactionManager;
+
+    //region fixture
+    @BeforeEach
+    void setUp() {
+        final var env = new MockEnvironment()
+                .withProperty("message-batch.window", "200ms")
+                .withProperty("message-batch.max-size", "10");
+        env.setConversionService(new ApplicationConversionService());
+
+        messageWriteBatcher = new MessageWriteBatcher(messageRepository, messageOutbox, transactionManager, env);
+    }
+    //endregion
+
+    //region save()
+    @Test
+    public void shouldInsertConcurrentMessagesInBatches() {
+        when(messageRepository.saveAll(ArgumentMatchers.anyList()))
+                .then(AdditionalAnswers.returnsFirstArg());
+
+        final List<Message> messages = MessageFixture.createListOfMessages(20);
+        final var executor = Executors.newFixedThreadPool(messages.size());
+        final List<CompletableFuture<Message>> saved = new ArrayList<>();
+        for (Message message : messages) {
+            saved.add(CompletableFuture.supplyAsync(() -> messageWriteBatcher.save(message), executor));
+        }
+
+        for (int i = 0; i < messages.size(); i++) {
+            assertThat(saved.get(i).join(), sameInstance(messages.get(i)));
+        }
+        verify(messageRepository, atLeast(2)).saveAll(ArgumentMatchers.anyList());
+        assertThat(mockingDetails(messageRepository).getInvocations().size(), lessThan(messages.size()));
+        verify(transactionManager, atLeast(2)).commit(ArgumentMatchers.any());
+        verify(messageOutbox, times(messages.size())).append(ArgumentMatchers.any(MessageEvent.class));
+        executor.shutdown();
+    }
+
+    @Test
+    public void shouldWriteMessagesOneByOneWhenBatchFails() {
+        final var message = MessageFixture.createDefaultMessage(1, UserFixture.createDefaultUser(1).build()).build();
+
+        when(messageRepository.saveAll(ArgumentMatchers.anyList()))
+                .thenThrow(new IllegalStateException("batch failed"));
+        when(messageRepository.save(message)).thenReturn(message);
+
+        assertThat(messageWriteBatcher.save(message), sameInstance(message));
+        verify(messageRepository, times(1)).saveAll(List.of(message));
+        verify(messageRepository, times(1)).save(message);
+    }
+
+    @Test
+    public void shouldRethrowFailureOfMessageWrite() {
+        final var message = MessageFixture.createDefaultMessage(1, UserFixture.createDefaultUser(1).build()).build();
+
+        when(messageRepository.saveAll(ArgumentMatchers.anyList()))
+                .thenThrow(new IllegalStateException("batch failed"));
+        when(messageRepository.save(message))
+                .thenThrow(new IllegalStateException("insert failed"));
+
+        final var exception = assertThrows(IllegalStateException.class, () -> messageWriteBatcher.save(message));
+        assertThat(exception.getMessage(), equalTo("insert failed"));
+    }
+    //endregion
+
+}
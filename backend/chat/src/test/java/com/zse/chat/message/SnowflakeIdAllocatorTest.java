@@ -0,0 +1,98 @@
+package com.zse.chat.message;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class SnowflakeIdAllocatorTest {
+
+    //region fixture
+    private final AtomicLong clock = new AtomicLong(SnowflakeIdAllocator.EPOCH + 1000);
+
+    private static long millisOf(long id) {
+        return id >>> (SnowflakeIdAllocator.NODE_BITS + SnowflakeIdAllocator.COUNTER_BITS);
+    }
+
+    private static long nodeOf(long id) {
+        return (id >>> SnowflakeIdAllocator.COUNTER_BITS) & SnowflakeIdAllocator.MAX_NODE_ID;
+    }
+    //endregion
+
+    //region nextId()
+    @Test
+    public void shouldMakeIdsOfTimeAndNode() {
+        final var allocator = new SnowflakeIdAllocator(5, clock::get);
+
+        final var first = allocator.nextId();
+        final var second = allocator.nextId();
+
+        assertThat(millisOf(first), equalTo(1000L));
+        assertThat(nodeOf(first), equalTo(5L));
+        assertThat(second, equalTo(first + 1));
+    }
+
+    @Test
+    public void shouldBorrowNextMillisecondWhenCounterRunsOut() {
+        final var allocator = new SnowflakeIdAllocator(0, clock::get);
+
+        long last = 0;
+        for (int i = 0; i < (1 << SnowflakeIdAllocator.COUNTER_BITS) + 1; i++) {
+            final var id = allocator.nextId();
+            assertThat(id, greaterThan(last));
+            last = id;
+        }
+
+        assertThat(millisOf(last), equalTo(1001L));
+    }
+
+    @Test
+    public void shouldNotMoveBackWithClock() {
+        final var allocator = new SnowflakeIdAllocator(0, clock::get);
+        final var before = allocator.nextId();
+
+        clock.addAndGet(-500);
+
+        assertThat(allocator.nextId(), greaterThan(before));
+    }
+
+    @Test
+    public void shouldNotRepeatIdsOfConcurrentCallers() {
+        final var allocator = new SnowflakeIdAllocator(0);
+        final Set<Long> ids = ConcurrentHashMap.newKeySet();
+
+        IntStream.range(0, 100_000).parallel().forEach(i -> ids.add(allocator.nextId()));
+
+        assertThat(ids.size(), equalTo(100_000));
+    }
+
+    @Test
+    public void shouldNotRepeatIdsOfOtherNodes() {
+        final var first = new SnowflakeIdAllocator(1, clock::get);
+        final var second = new SnowflakeIdAllocator(2, clock::get);
+        final Set<Long> ids = new HashSet<>();
+
+        for (int i = 0; i < 1000; i++) {
+            ids.add(first.nextId());
+            ids.add(second.nextId());
+        }
+
+        assertThat(ids.size(), equalTo(2000));
+    }
+
+    @Test
+    public void shouldRejectNodeIdOutOfRange() {
+        assertThrows(IllegalArgumentException.class, () -> new SnowflakeIdAllocator(-1));
+        assertThrows(IllegalArgumentException.class, () -> new SnowflakeIdAllocator(SnowflakeIdAllocator.MAX_NODE_ID + 1));
+    }
+    //endregion
+
+}
@@ -0,0 +1,199 @@
+package com.zse.chat.message.attachment;
+
+import com.zse.chat.channel.ChannelFixture;
+import com.zse.chat.login.MessageUpdateFailedException;
+import com.zse.chat.message.MessageController.MessageResponseDTO;
+import com.zse.chat.message.MessageFixture;
+import com.zse.chat.message.MessageNotFoundException;
+import com.zse.chat.message.MessageRepository;
+import com.zse.chat.user.UserFixture;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.hamcrest.Matchers;
+import org.mockito.AdditionalAnswers;
+import org.mockito.ArgumentMatchers;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(SpringExtension.class)
+class AttachmentServiceTest {
+
+    @TempDir
+    Path directory;
+
+    private AttachmentService attachmentService;
+
+    @MockBean
+    private AttachmentRepository attachmentRepository;
+
+    @MockBean
+    private MessageRepository messageRepository;
+
+    //region fixture
+    private final MockHttpServletRequest request = new MockHttpServletRequest("GET", "/");
+    private final MockHttpServletResponse response = new MockHttpServletResponse();
+
+    @BeforeEach
+    void setUp() {
+        final var attachmentStore = new AttachmentStore(new MockEnvironment()
+                .withProperty("attachments.directory", directory.toString()));
+        attachmentService = new AttachmentService(attachmentRepository, attachmentStore, messageRepository);
+
+        final var user = UserFixture.createDefaultUser(1).build();
+        final var channel = ChannelFixture.createDefaultChannel(1, List.of(user), List.of(), List.of()).build();
+        when(messageRepository.findById(1L))
+                .thenReturn(Optional.of(MessageFixture.createDefaultMessage(1, user).channel(channel).build()));
+        when(attachmentRepository.save(ArgumentMatchers.any(Attachment.class)))
+                .then(AdditionalAnswers.returnsFirstArg());
+    }
+
+    private Attachment upload(String content) {
+        return attachmentService.upload(
+                1,
+                1,
+                "testNickname1",
+                "dir/image.png",
+                "image/png",
+                new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8))
+        );
+    }
+    //endregion
+
+    //region upload()
+    @Test
+    public void shouldSaveAttachmentOfAuthor() {
+        final var attachment = upload("0123456789");
+
+        assertThat(attachment.getFileName(), equalTo("image.png"));
+        assertThat(attachment.getContentType(), equalTo("image/png"));
+        assertThat(attachment.getSize(), equalTo(10L));
+        assertThat(attachment.getContentHash(), hasLength(64));
+        verify(attachmentRepository, times(1)).save(attachment);
+    }
+
+    @Test
+    public void shouldNotUploadToMessageOfOtherUserOrInOtherChannel() {
+        final var content = new ByteArrayInputStream(new byte[0]);
+
+        assertThrows(
+                MessageUpdateFailedException.class,
+                () -> attachmentService.upload(1, 1, "testNickname2", "file", null, content)
+        );
+        assertThrows(
+                MessageNotFoundException.class,
+                () -> attachmentService.upload(2, 1, "testNickname1", "file", null, content)
+        );
+        verifyNoInteractions(attachmentRepository);
+    }
+    //endregion
+
+    //region withAttachments()
+    @Test
+    public void shouldAddAttachmentsToTheirMessages() {
+        final var attachment = upload("content");
+        final var messages = List.of(
+                new MessageResponseDTO(1, "testNickname1", "content", LocalDateTime.now()),
+                new MessageResponseDTO(2, "testNickname1", "content", LocalDateTime.now())
+        );
+        when(attachmentRepository.findByMessageIdInOrderById(List.of(1L, 2L))).thenReturn(List.of(attachment));
+
+        final var result = attachmentService.withAttachments(messages);
+
+        assertThat(result.get(0).getAttachments(), hasSize(1));
+        assertThat(result.get(0).getAttachments().get(0).fileName(), equalTo("image.png"));
+        assertThat(result.get(1).getAttachments(), empty());
+    }
+    //endregion
+
+    //region send()
+    @Test
+    public void shouldSendWholeContent() throws IOException {
+        final var attachment = upload("0123456789");
+
+        attachmentService.send(attachment, null, null, request, response);
+
+        assertThat(response.getStatus(), equalTo(200));
+        assertThat(response.getContentAsString(), equalTo("0123456789"));
+        assertThat(response.getContentLengthLong(), equalTo(10L));
+        assertThat(response.getContentType(), equalTo("image/png"));
+        assertThat(response.getHeader("Accept-Ranges"), equalTo("bytes"));
+        assertThat(response.getHeader("Content-Disposition"), containsString("attachment"));
+    }
+
+    @Test
+    public void shouldSendRequestedRange() throws IOException {
+        final var attachment = upload("0123456789");
+
+        attachmentService.send(attachment, "bytes=2-5", null, request, response);
+
+        assertThat(response.getStatus(), equalTo(206));
+        assertThat(response.getContentAsString(), equalTo("2345"));
+        assertThat(response.getHeader("Content-Range"), equalTo("bytes 2-5/10"));
+    }
+
+    @Test
+    public void shouldSendSuffixRange() throws IOException {
+        final var attachment = upload("0123456789");
+
+        attachmentService.send(attachment, "bytes=-3", null, request, response);
+
+        assertThat(response.getStatus(), equalTo(206));
+        assertThat(response.getContentAsString(), equalTo("789"));
+        assertThat(response.getHeader("Content-Range"), equalTo("bytes 7-9/10"));
+    }
+
+    @Test
+    public void shouldRejectRangeAfterContent() throws IOException {
+        final var attachment = upload("0123456789");
+
+        attachmentService.send(attachment, "bytes=10-", null, request, response);
+
+        assertThat(response.getStatus(), equalTo(416));
+        assertThat(response.getHeader("Content-Range"), equalTo("bytes */10"));
+        assertThat(response.getContentAsString(), emptyString());
+    }
+
+    @Test
+    public void shouldNotSendContentClientHas() throws IOException {
+        final var attachment = upload("0123456789");
+
+        attachmentService.send(attachment, null, "\"" + attachment.getContentHash() + "\"", request, response);
+
+        assertThat(response.getStatus(), equalTo(304));
+        assertThat(response.getContentAsString(), emptyString());
+    }
+
+    @Test
+    public void shouldLeaveSendingToContainerSupportingSendfile() throws IOException {
+        final var attachment = upload("0123456789");
+        request.setAttribute(AttachmentService.SENDFILE_SUPPORT, true);
+
+        attachmentService.send(attachment, "bytes=2-5", null, request, response);
+
+        assertThat(response.getContentAsString(), emptyString());
+        assertThat(response.getContentLengthLong(), equalTo(4L));
+        assertThat((String) request.getAttribute(AttachmentService.SENDFILE_FILENAME), Matchers.endsWith(attachment.getContentHash()));
+        assertThat(request.getAttribute(AttachmentService.SENDFILE_START), equalTo(2L));
+        assertThat(request.getAttribute(AttachmentService.SENDFILE_END), equalTo(6L));
+    }
+    //endregion
+
+}
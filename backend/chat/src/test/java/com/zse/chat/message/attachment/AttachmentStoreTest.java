@@ -0,0 +1,79 @@
+package com.zse.chat.message.attachment;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.convert.ApplicationConversionService;
+import org.springframework.mock.env.MockEnvironment;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class AttachmentStoreTest {
+
+    @TempDir
+    Path directory;
+
+    private AttachmentStore attachmentStore;
+
+    //region fixture
+    @BeforeEach
+    void setUp() {
+        final var env = new MockEnvironment()
+                .withProperty("attachments.directory", directory.toString())
+                .withProperty("attachments.max-size", "16B");
+        env.setConversionService(new ApplicationConversionService());
+
+        attachmentStore = new AttachmentStore(env);
+    }
+
+    private static ByteArrayInputStream content(String value) {
+        return new ByteArrayInputStream(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private long countFiles() throws IOException {
+        try (var files = Files.walk(directory)) {
+            return files.filter(Files::isRegularFile).count();
+        }
+    }
+    //endregion
+
+    //region store()
+    @Test
+    public void shouldStoreContentUnderItsHash() throws IOException {
+        final var blob = attachmentStore.store(content("content"));
+
+        assertThat(blob.hash(), equalTo("ed7002b439e9ac845f22357d822bac1444730fbdb6016d3ec9432297b9ec9f73"));
+        assertThat(blob.size(), equalTo(7L));
+        assertThat(Files.readString(attachmentStore.path(blob.hash())), equalTo("content"));
+    }
+
+    @Test
+    public void shouldStoreTheSameContentOnce() throws IOException {
+        final var first = attachmentStore.store(content("content"));
+        final var second = attachmentStore.store(content("content"));
+
+        assertThat(second, equalTo(first));
+        assertThat(countFiles(), equalTo(1L));
+    }
+
+    @Test
+    public void shouldNotKeepContentLargerThanMaxSize() throws IOException {
+        assertThrows(AttachmentTooLargeException.class, () -> attachmentStore.store(content("content larger than max")));
+
+        assertThat(countFiles(), equalTo(0L));
+        try (var uploads = Files.list(directory.resolve("uploads"))) {
+            assertThat(uploads.toList(), empty());
+        }
+    }
+    //endregion
+
+}
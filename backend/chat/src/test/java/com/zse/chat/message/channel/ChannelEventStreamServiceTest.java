@@ -0,0 +1,235 @@
+package com.zse.chat.message.channel;
+
+import com.zse.chat.channel.ChannelFixture;
+import com.zse.chat.fanout.FanOutEngine;
+import com.zse.chat.message.MessageEvent;
+import com.zse.chat.message.MessageFixture;
+import com.zse.chat.message.MessageOutbox;
+import com.zse.chat.message.MessagePage;
+import com.zse.chat.message.MessageRepository;
+import com.zse.chat.user.UserFixture;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentMatchers;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.startsWith;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(SpringExtension.class)
+class ChannelEventStreamServiceTest {
+
+    private ChannelEventStreamService channelEventStreamService;
+
+    @MockBean
+    private MessageRepository messageRepository;
+    @MockBean
+    private MessageOutbox messageOutbox;
+
+    private final FanOutEngine fanOutEngine = new FanOutEngine(new SimpleMeterRegistry(), new MockEnvironment());
+
+    //region fixture
+    @BeforeEach
+    void setUp() {
+        channelEventStreamService = new ChannelEventStreamService(
+                messageRepository,
+                fanOutEngine,
+                messageOutbox,
+                new MockEnvironment()
+        );
+    }
+
+    @AfterEach
+    void tearDown() {
+        fanOutEngine.close();
+    }
+
+    private void whenChannelHasMessagesUpTo(long newestId) {
+        when(messageRepository.findChannelPageAfter(
+                ArgumentMatchers.eq(1),
+                ArgumentMatchers.anyLong(),
+                ArgumentMatchers.any(Pageable.class)
+        )).thenAnswer(invocation -> {
+            final long after = invocation.getArgument(1);
+            final int size = invocation.getArgument(2, Pageable.class).getPageSize();
+            return MessageFixture.createListOfMessageResponses(after + 1, (int) Math.min(size, newestId - after));
+        });
+    }
+
+    /**
+     * Emitter which was not handed to response yet keeps what was sent, each event starts with its name.
+     */
+    @SuppressWarnings("unchecked")
+    private static List<String> sentEvents(SseEmitter emitter) {
+        // Emitter sends under its own lock, delivery threads may still be sending
+        synchronized (emitter) {
+            final var sent = (Set<ResponseBodyEmitter.DataWithMediaType>) ReflectionTestUtils
+                    .getField(emitter, "earlySendAttempts");
+            return sent.stream()
+                    .map(ResponseBodyEmitter.DataWithMediaType::getData)
+                    .filter(data -> data instanceof String text && text.startsWith("event:"))
+                    .map(String.class::cast)
+                    .toList();
+        }
+    }
+
+    private static String idOf(String event) {
+        final var matcher = Pattern.compile("id:(\\d+)").matcher(event);
+        return matcher.find() ? matcher.group(1) : null;
+    }
+    //endregion
+
+    //region subscribe()
+    @Test
+    public void shouldRegisterEmitterWithoutReplayWhenLastEventIdIsMissing() {
+        final var emitter = channelEventStreamService.subscribe(1, null);
+
+        assertThat(emitter, notNullValue());
+        assertThat(channelEventStreamService.countSubscribers(1), equalTo(1));
+        assertThat(channelEventStreamService.countSubscribers(2), equalTo(0));
+
+        verifyNoInteractions(messageRepository);
+    }
+
+    @Test
+    public void shouldReplayMessagesAfterLastEventId() {
+        when(messageRepository.findChannelPageAfter(
+                ArgumentMatchers.eq(1),
+                ArgumentMatchers.eq(5),
+                ArgumentMatchers.any(Pageable.class)
+        )).thenReturn(MessageFixture.createListOfMessageResponses(6, 3));
+
+        channelEventStreamService.subscribe(1, 5L);
+
+        verify(messageRepository, times(1))
+                .findChannelPageAfter(1, 5, PageRequest.of(0, MessagePage.MAX_LIMIT + 1));
+        verifyNoMoreInteractions(messageRepository);
+    }
+
+    @Test
+    public void shouldStopReplayAfterLimit() {
+        whenChannelHasMessagesUpTo(Long.MAX_VALUE);
+
+        final var emitter = channelEventStreamService.subscribe(1, 0L);
+
+        verify(messageRepository, times(ChannelEventStreamService.REPLAY_LIMIT / MessagePage.MAX_LIMIT))
+                .findChannelPageAfter(
+                        ArgumentMatchers.eq(1),
+                        ArgumentMatchers.anyLong(),
+                        ArgumentMatchers.any(Pageable.class)
+                );
+        verify(messageRepository, times(1)).findChannelPageAfter(
+                1,
+                ChannelEventStreamService.REPLAY_LIMIT - MessagePage.MAX_LIMIT,
+                PageRequest.of(0, MessagePage.MAX_LIMIT + 1)
+        );
+        final var events = sentEvents(emitter);
+        assertThat(events.size(), equalTo(ChannelEventStreamService.REPLAY_LIMIT + 1));
+        assertThat(events.get(events.size() - 1), startsWith("event:reload"));
+        assertThat(channelEventStreamService.countSubscribers(1), equalTo(1));
+    }
+
+    @Test
+    public void shouldNotReloadWhenReplayEndsExactlyAtLimit() {
+        whenChannelHasMessagesUpTo(ChannelEventStreamService.REPLAY_LIMIT);
+
+        final var emitter = channelEventStreamService.subscribe(1, 0L);
+
+        final var events = sentEvents(emitter);
+        assertThat(events.size(), equalTo(ChannelEventStreamService.REPLAY_LIMIT));
+        assertThat(events.stream().noneMatch(event -> event.startsWith("event:reload")), equalTo(true));
+    }
+
+    @Test
+    public void shouldSendLiveEventsOnlyAfterReplayedMessagesAndSkipReplayedOnes() throws InterruptedException {
+        final var user = UserFixture.createDefaultUser(1).build();
+        final var channel = ChannelFixture.createDefaultChannel(1, List.of(user), List.of(), List.of()).build();
+        when(messageRepository.findChannelPageAfter(
+                ArgumentMatchers.eq(1),
+                ArgumentMatchers.eq(5L),
+                ArgumentMatchers.any(Pageable.class)
+        )).thenAnswer(invocation -> {
+            // Messages 8 and 9 are created while replay reads history, 8 is already in it
+            for (int id : new int[]{8, 9}) {
+                channelEventStreamService.onMessageEvent(new MessageEvent(
+                        MessageEvent.Type.CREATED,
+                        MessageFixture.createDefaultMessage(id, user).channel(channel).build()
+                ));
+            }
+            Thread.sleep(100);
+            return MessageFixture.createListOfMessageResponses(6, 3);
+        });
+
+        final var emitter = channelEventStreamService.subscribe(1, 5L);
+
+        final var deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (sentEvents(emitter).size() < 4 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(sentEvents(emitter).stream().map(ChannelEventStreamServiceTest::idOf).toList(),
+                equalTo(List.of("6", "7", "8", "9")));
+    }
+    //endregion
+
+    //region onMessageEvent()
+    @Test
+    public void shouldIgnoreEventsOfGlobalChannel() {
+        final var user = UserFixture.createDefaultUser(1).build();
+        final var message = MessageFixture.createDefaultMessage(1, user).build();
+
+        channelEventStreamService.subscribe(1, null);
+        channelEventStreamService.onMessageEvent(new MessageEvent(MessageEvent.Type.CREATED, message));
+
+        assertThat(channelEventStreamService.countSubscribers(1), equalTo(1));
+    }
+
+    @Test
+    public void shouldKeepSubscribersOfOtherChannelsUntouched() {
+        final var user = UserFixture.createDefaultUser(1).build();
+        final var channel = ChannelFixture.createDefaultChannel(
+                2,
+                List.of(user),
+                List.of(),
+                List.of()
+        ).build();
+        final var message = MessageFixture.createDefaultMessage(1, user).channel(channel).build();
+
+        channelEventStreamService.subscribe(1, null);
+        channelEventStreamService.onMessageEvent(new MessageEvent(MessageEvent.Type.CREATED, message));
+
+        assertThat(channelEventStreamService.countSubscribers(1), equalTo(1));
+        assertThat(channelEventStreamService.countSubscribers(2), equalTo(0));
+    }
+    //endregion
+
+    //region onTypingEvent()
+    @Test
+    public void shouldKeepSubscribersOfChannelWhenSendingTyping() {
+        channelEventStreamService.subscribe(1, null);
+
+        channelEventStreamService.onTypingEvent(new ChannelTypingEvent(1, "testNickname1", true));
+        channelEventStreamService.onTypingEvent(new ChannelTypingEvent(2, "testNickname1", true));
+
+        assertThat(channelEventStreamService.countSubscribers(1), equalTo(1));
+    }
+    //endregion
+
+}
@@ -0,0 +1,225 @@
+package com.zse.chat.message.channel;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.zse.chat.channel.ChannelFixture;
+import com.zse.chat.message.MessageController.MessagePageResponseDTO;
+import com.zse.chat.message.MessageEvent;
+import com.zse.chat.message.MessageFixture;
+import com.zse.chat.message.MessageOutbox;
+import com.zse.chat.message.MessageRepository;
+import com.zse.chat.message.MessagesIngestedEvent;
+import com.zse.chat.outbox.ChangeEvent;
+import com.zse.chat.outbox.ChangeType;
+import com.zse.chat.outbox.ClusterChangeEvent;
+import com.zse.chat.outbox.ClusterResyncEvent;
+import com.zse.chat.outbox.Outbox;
+import com.zse.chat.user.UserFixture;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentMatchers;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.collection.IsCollectionWithSize.hasSize;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(SpringExtension.class)
+class ChannelLongPollServiceTest {
+
+    private ChannelLongPollService channelLongPollService;
+
+    @MockBean
+    private MessageRepository messageRepository;
+
+    //region fixture
+    @BeforeEach
+    void setUp() {
+        channelLongPollService = new ChannelLongPollService(
+                messageRepository,
+                new MessageOutbox(mock(Outbox.class), new ObjectMapper().findAndRegisterModules()),
+                new MockEnvironment()
+        );
+    }
+
+    private MessageEvent createEvent(MessageEvent.Type type, int messageId, int channelId) {
+        final var user = UserFixture.createDefaultUser(1).build();
+        final var channel = ChannelFixture.createDefaultChannel(
+                channelId,
+                List.of(user),
+                List.of(),
+                List.of()
+        ).build();
+
+        return new MessageEvent(type, MessageFixture.createDefaultMessage(messageId, user).channel(channel).build());
+    }
+    //endregion
+
+    //region poll()
+    @Test
+    public void shouldReturnNewerMessagesImmediately() {
+        when(messageRepository.findChannelPageAfter(
+                ArgumentMatchers.eq(1),
+                ArgumentMatchers.eq(5L),
+                ArgumentMatchers.any(Pageable.class)
+        )).thenReturn(MessageFixture.createListOfMessageResponses(6, 3));
+
+        final var result = channelLongPollService.poll(1, 5, 2);
+
+        assertThat(result.hasResult(), equalTo(true));
+        final var page = (MessagePageResponseDTO) result.getResult();
+        assertThat(page.getMessages(), hasSize(2));
+        assertThat(page.getNextCursor(), equalTo(7L));
+        assertThat(channelLongPollService.countWaiters(1), equalTo(0));
+
+        verify(messageRepository, times(1)).findChannelPageAfter(1, 5, PageRequest.of(0, 3));
+        verifyNoMoreInteractions(messageRepository);
+    }
+
+    @Test
+    public void shouldParkRequestWhenThereAreNoNewerMessages() {
+        when(messageRepository.findChannelPageAfter(
+                ArgumentMatchers.eq(1),
+                ArgumentMatchers.eq(5L),
+                ArgumentMatchers.any(Pageable.class)
+        )).thenReturn(List.of());
+
+        final var result = channelLongPollService.poll(1, 5, 10);
+
+        assertThat(result.hasResult(), equalTo(false));
+        assertThat(channelLongPollService.countWaiters(1), equalTo(1));
+    }
+    //endregion
+
+    //region onMessageEvent()
+    @Test
+    public void shouldCompleteParkedRequestWithMessagesQueriedAgainFromCursor() {
+        when(messageRepository.findChannelPageAfter(
+                ArgumentMatchers.anyInt(),
+                ArgumentMatchers.anyLong(),
+                ArgumentMatchers.any(Pageable.class)
+        )).thenReturn(List.of())
+                .thenReturn(List.of())
+                .thenReturn(MessageFixture.createListOfMessageResponses(6, 2));
+
+        final var result = channelLongPollService.poll(1, 5, 10);
+        final var sameCursor = channelLongPollService.poll(1, 5, 10);
+        // Message 6 committed concurrently, its event has not come yet
+        channelLongPollService.onMessageEvent(createEvent(MessageEvent.Type.CREATED, 7, 1));
+
+        assertThat(result.hasResult(), equalTo(true));
+        final var page = (MessagePageResponseDTO) result.getResult();
+        assertThat(page.getMessages(), hasSize(2));
+        assertThat(page.getMessages().get(0).getId(), equalTo(6L));
+        assertThat(page.getNextCursor(), equalTo(7L));
+        assertThat(sameCursor.getResult(), equalTo(page));
+        assertThat(channelLongPollService.countWaiters(1), equalTo(0));
+
+        verify(messageRepository, times(3)).findChannelPageAfter(1, 5, PageRequest.of(0, 11));
+        verifyNoMoreInteractions(messageRepository);
+    }
+
+    @Test
+    public void shouldKeepWaitingOnOtherEvents() {
+        when(messageRepository.findChannelPageAfter(
+                ArgumentMatchers.anyInt(),
+                ArgumentMatchers.anyLong(),
+                ArgumentMatchers.any(Pageable.class)
+        )).thenReturn(List.of());
+
+        final var result = channelLongPollService.poll(1, 5, 10);
+        channelLongPollService.onMessageEvent(createEvent(MessageEvent.Type.UPDATED, 6, 1));
+        channelLongPollService.onMessageEvent(createEvent(MessageEvent.Type.CREATED, 7, 2));
+        channelLongPollService.onMessageEvent(createEvent(MessageEvent.Type.CREATED, 4, 1));
+
+        assertThat(result.hasResult(), equalTo(false));
+        assertThat(channelLongPollService.countWaiters(1), equalTo(1));
+    }
+    //endregion
+
+    //region onMessagesIngested()
+    @Test
+    public void shouldCompleteParkedRequestWithMessagesAfterCursorUpToLimitOnIngest() {
+        when(messageRepository.findChannelPageAfter(
+                ArgumentMatchers.anyInt(),
+                ArgumentMatchers.anyLong(),
+                ArgumentMatchers.any(Pageable.class)
+        )).thenReturn(List.of())
+                .thenReturn(List.of())
+                .thenReturn(MessageFixture.createListOfMessageResponses(6, 3));
+
+        final var result = channelLongPollService.poll(1, 5, 2);
+        final var other = channelLongPollService.poll(2, 5, 2);
+        channelLongPollService.onMessagesIngested(new MessagesIngestedEvent(
+                1,
+                1,
+                "testNickname1",
+                LocalDateTime.now(),
+                List.of(6L, 7L, 8L),
+                List.of("one", "two", "three")
+        ));
+
+        assertThat(result.hasResult(), equalTo(true));
+        final var page = (MessagePageResponseDTO) result.getResult();
+        assertThat(page.getMessages(), hasSize(2));
+        assertThat(page.getMessages().get(1).getId(), equalTo(7L));
+        assertThat(page.getNextCursor(), equalTo(7L));
+        assertThat(channelLongPollService.countWaiters(1), equalTo(0));
+        assertThat(other.hasResult(), equalTo(false));
+    }
+    //endregion
+
+    //region onClusterChange() and onClusterResync()
+    @Test
+    public void shouldCompleteParkedRequestWithMessagesOfOtherInstances() {
+        when(messageRepository.findChannelPageAfter(
+                ArgumentMatchers.anyInt(),
+                ArgumentMatchers.anyLong(),
+                ArgumentMatchers.any(Pageable.class)
+        )).thenReturn(List.of())
+                .thenReturn(List.of())
+                .thenReturn(MessageFixture.createListOfMessageResponses(6, 1))
+                .thenReturn(MessageFixture.createListOfMessageResponses(6, 3));
+
+        final var created = channelLongPollService.poll(1, 5, 10);
+        final var ingested = channelLongPollService.poll(2, 5, 10);
+        channelLongPollService.onClusterChange(new ClusterChangeEvent(new ChangeEvent(1, ChangeType.MESSAGE_CREATED, 1,
+                "{\"id\":6,\"authorNick\":\"testNickname1\",\"content\":\"testContent1\"}")));
+        channelLongPollService.onClusterChange(new ClusterChangeEvent(new ChangeEvent(2, ChangeType.MESSAGES_INGESTED, 2,
+                "{\"authorNick\":\"testNickname1\",\"count\":3,\"firstId\":6,\"lastId\":8}")));
+
+        assertThat(((MessagePageResponseDTO) created.getResult()).getMessages(), hasSize(1));
+        assertThat(((MessagePageResponseDTO) ingested.getResult()).getMessages(), hasSize(3));
+        verify(messageRepository, times(2)).findChannelPageAfter(1, 5, PageRequest.of(0, 11));
+        verify(messageRepository, times(2)).findChannelPageAfter(2, 5, PageRequest.of(0, 11));
+    }
+
+    @Test
+    public void shouldQueryAllParkedRequestsAgainAfterResync() {
+        when(messageRepository.findChannelPageAfter(
+                ArgumentMatchers.anyInt(),
+                ArgumentMatchers.anyLong(),
+                ArgumentMatchers.any(Pageable.class)
+        )).thenReturn(List.of())
+                .thenReturn(List.of())
+                .thenReturn(MessageFixture.createListOfMessageResponses(6, 1));
+
+        final var result = channelLongPollService.poll(1, 5, 10);
+        channelLongPollService.onClusterResync(new ClusterResyncEvent());
+        channelLongPollService.onClusterResync(new ClusterResyncEvent());
+
+        assertThat(((MessagePageResponseDTO) result.getResult()).getMessages(), hasSize(1));
+        assertThat(channelLongPollService.countWaiters(1), equalTo(0));
+        verify(messageRepository, times(3)).findChannelPageAfter(1, 5, PageRequest.of(0, 11));
+    }
+    //endregion
+
+}
@@ -0,0 +1,121 @@
+package com.zse.chat.message.channel;
+
+import com.zse.chat.channel.ChannelFixture;
+import com.zse.chat.message.MessageEvent;
+import com.zse.chat.message.MessageFixture;
+import com.zse.chat.user.UserFixture;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.boot.convert.ApplicationConversionService;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(SpringExtension.class)
+class ChannelTypingServiceTest {
+
+    private ChannelTypingService channelTypingService;
+
+    @MockBean
+    private ApplicationEventPublisher eventPublisher;
+
+    //region fixture
+    @BeforeEach
+    void setUp() {
+        final var env = new MockEnvironment()
+                .withProperty("typing.tick", "1s")
+                .withProperty("typing.expiry", "3s");
+        env.setConversionService(new ApplicationConversionService());
+
+        channelTypingService = new ChannelTypingService(eventPublisher, env);
+    }
+
+    private void advance(int ticks) {
+        for (int i = 0; i < ticks; i++) {
+            channelTypingService.advance();
+        }
+    }
+    //endregion
+
+    //region start() and advance()
+    @Test
+    public void shouldPublishStartAndStopOfTypingOnce() {
+        channelTypingService.start(1, "testNickname1");
+        channelTypingService.start(1, "testNickname1");
+        advance(2);
+
+        assertThat(channelTypingService.getTyping(1), contains("testNickname1"));
+        verify(eventPublisher, times(1)).publishEvent(new ChannelTypingEvent(1, "testNickname1", true));
+
+        advance(1);
+
+        assertThat(channelTypingService.getTyping(1), empty());
+        verify(eventPublisher, times(1)).publishEvent(new ChannelTypingEvent(1, "testNickname1", false));
+        verifyNoMoreInteractions(eventPublisher);
+    }
+
+    @Test
+    public void shouldReturnUsersTypingOnlyInGivenChannel() {
+        channelTypingService.start(1, "testNickname2");
+        channelTypingService.start(1, "testNickname1");
+        channelTypingService.start(2, "testNickname3");
+
+        assertThat(channelTypingService.getTyping(1), contains("testNickname1", "testNickname2"));
+        assertThat(channelTypingService.getTyping(3), empty());
+    }
+    //endregion
+
+    //region refresh()
+    @Test
+    public void shouldMoveExpiryOfTypingUser() {
+        channelTypingService.start(1, "testNickname1");
+        advance(2);
+
+        assertThat(channelTypingService.refresh(1, "testNickname1"), is(true));
+        advance(2);
+
+        assertThat(channelTypingService.getTyping(1), contains("testNickname1"));
+
+        advance(1);
+
+        assertThat(channelTypingService.getTyping(1), empty());
+        verify(eventPublisher, times(1)).publishEvent(new ChannelTypingEvent(1, "testNickname1", false));
+    }
+
+    @Test
+    public void shouldNotRefreshUserWhoIsNotTyping() {
+        channelTypingService.start(1, "testNickname1");
+        advance(3);
+
+        assertThat(channelTypingService.refresh(1, "testNickname1"), is(false));
+        assertThat(channelTypingService.refresh(2, "testNickname1"), is(false));
+        assertThat(channelTypingService.getTyping(1), empty());
+    }
+    //endregion
+
+    //region onMessageEvent()
+    @Test
+    public void shouldStopTypingOfAuthorOfCreatedMessage() {
+        final var user = UserFixture.createDefaultUser(1).build();
+        final var channel = ChannelFixture.createDefaultChannel(1, List.of(user), List.of(), List.of()).build();
+        final var message = MessageFixture.createDefaultMessage(1, user).channel(channel).build();
+        channelTypingService.start(1, "testNickname1");
+
+        channelTypingService.onMessageEvent(new MessageEvent(MessageEvent.Type.CREATED, message));
+
+        assertThat(channelTypingService.getTyping(1), empty());
+        verify(eventPublisher, times(1)).publishEvent(new ChannelTypingEvent(1, "testNickname1", false));
+    }
+    //endregion
+
+}
@@ -0,0 +1,207 @@
+package com.zse.chat.message.channel;
+
+import com.zse.chat.channel.Channel;
+import com.zse.chat.message.Message;
+import com.zse.chat.message.MessageOutbox;
+import com.zse.chat.message.MessagesIngestedEvent;
+import com.zse.chat.message.SnowflakeIdAllocator;
+import com.zse.chat.user.User;
+import com.zse.chat.user.UserFixture;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.mock.env.MockEnvironment;
+
+import javax.persistence.EntityManager;
+import javax.sql.DataSource;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.*;
+
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+class MessageBulkIngestServiceTest {
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private DataSource dataSource;
+    @Autowired
+    private EntityManager entityManager;
+    private final MessageOutbox messageOutbox = mock(MessageOutbox.class);
+    private final ApplicationEventPublisher eventPublisher = mock(ApplicationEventPublisher.class);
+    private final ObjectProvider<SnowflakeIdAllocator> messageIdAllocatorProvider = mock(ObjectProvider.class);
+
+    private MessageBulkIngestService messageBulkIngestService;
+    private final ArgumentCaptor<MessagesIngestedEvent> captor = ArgumentCaptor.forClass(MessagesIngestedEvent.class);
+
+    //region fixture
+    private int channelId;
+    private int userId;
+
+    @BeforeEach
+    void setUp() {
+        messageBulkIngestService = new MessageBulkIngestService(
+                jdbcTemplate,
+                dataSource,
+                messageOutbox,
+                eventPublisher,
+                messageIdAllocatorProvider,
+                new MockEnvironment()
+                        .withProperty("message-bulk.max-size", "200")
+                        .withProperty("message-bulk.copy-threshold", "100")
+        );
+
+        userId = jdbcTemplate.queryForObject("select nextval('user_sequence')", Integer.class);
+        jdbcTemplate.update(
+                "insert into chat_user (id, email, nickname) values (?, ?, ?)",
+                userId, "bulk" + userId + "@test.pl", "bulk" + userId
+        );
+        channelId = jdbcTemplate.queryForObject("select nextval('channel_sequence')", Integer.class);
+        jdbcTemplate.update("insert into channel (id) values (?)", channelId);
+    }
+
+    private List<String> createContents(int amount) {
+        final List<String> contents = new ArrayList<>(amount);
+        for (int i = 0; i < amount; i++) {
+            contents.add("content " + i);
+        }
+        return contents;
+    }
+
+    private List<Long> findIds() {
+        return jdbcTemplate.queryForList(
+                "select id from message where channel_id = ? order by id",
+                Long.class,
+                channelId
+        );
+    }
+
+    private long persistMessage() {
+        final var message = Message.builder()
+                .author(entityManager.getReference(User.class, userId))
+                .channel(entityManager.getReference(Channel.class, channelId))
+                .content("single")
+                .createdAt(LocalDateTime.now())
+                .build();
+        entityManager.persist(message);
+        entityManager.flush();
+        return message.getId();
+    }
+
+    private List<String> findContents() {
+        return jdbcTemplate.queryForList(
+                "select content from message where channel_id = ? and nickname = ? and deleted = false order by id",
+                String.class,
+                channelId,
+                userId
+        );
+    }
+    //endregion
+
+    //region ingest()
+    @Test
+    public void shouldInsertSmallBatchInOrder() {
+        final var contents = createContents(60);
+
+        final var created = messageBulkIngestService.ingest(
+                channelId,
+                UserFixture.createDefaultUser(userId).build(),
+                contents
+        );
+
+        assertThat(created, equalTo(60));
+        assertThat(findContents(), equalTo(contents));
+        verify(eventPublisher, times(1)).publishEvent(captor.capture());
+        assertThat(captor.getValue().channelId(), equalTo(channelId));
+        assertThat(captor.getValue().contents(), equalTo(contents));
+        verify(messageOutbox, times(1)).append(captor.getValue());
+        assertThat(captor.getValue().ids(), equalTo(findIds()));
+    }
+
+    @Test
+    public void shouldCopyLargeBatchEscapingCsv() {
+        final List<String> contents = new ArrayList<>(createContents(150));
+        contents.set(0, "quoted \"text\", with comma");
+        contents.set(1, "multi\nline");
+        contents.set(2, "");
+
+        final var created = messageBulkIngestService.ingest(
+                channelId,
+                UserFixture.createDefaultUser(userId).build(),
+                contents
+        );
+
+        assertThat(created, equalTo(150));
+        assertThat(findContents(), equalTo(contents));
+        verify(eventPublisher, times(1)).publishEvent(captor.capture());
+        assertThat(captor.getValue().count(), equalTo(150));
+    }
+
+    @Test
+    public void shouldNotCollideWithIdsAllocatedBySequence() {
+        messageBulkIngestService.ingest(channelId, UserFixture.createDefaultUser(userId).build(), createContents(120));
+        messageBulkIngestService.ingest(channelId, UserFixture.createDefaultUser(userId).build(), createContents(10));
+
+        final var distinctIds = jdbcTemplate.queryForObject(
+                "select count(distinct id) from message where channel_id = ?",
+                Integer.class,
+                channelId
+        );
+        assertThat(distinctIds, equalTo(130));
+    }
+
+    @Test
+    public void shouldOrderIdsOfBulkBetweenIdsOfMessagesWrittenBeforeAndAfter() {
+        final var before = persistMessage();
+
+        messageBulkIngestService.ingest(channelId, UserFixture.createDefaultUser(userId).build(), createContents(60));
+        final var after = persistMessage();
+
+        verify(eventPublisher, times(1)).publishEvent(captor.capture());
+        final var bulkIds = captor.getValue().ids();
+        assertThat(bulkIds.get(0), equalTo(before + 1));
+        assertThat(bulkIds, equalTo(bulkIds.stream().sorted().distinct().toList()));
+        assertThat(after, greaterThan(bulkIds.get(bulkIds.size() - 1)));
+    }
+
+    @Test
+    public void shouldOrderSnowflakeIdsAfterIdsFromSequence() {
+        messageBulkIngestService.ingest(channelId, UserFixture.createDefaultUser(userId).build(), createContents(10));
+        when(messageIdAllocatorProvider.getIfAvailable()).thenReturn(new SnowflakeIdAllocator(1));
+        final var contents = createContents(150);
+
+        messageBulkIngestService.ingest(channelId, UserFixture.createDefaultUser(userId).build(), contents);
+
+        verify(eventPublisher, times(2)).publishEvent(captor.capture());
+        final var ids = findIds();
+        assertThat(ids.subList(10, 160), equalTo(captor.getValue().ids()));
+        assertThat(findContents().subList(10, 160), equalTo(contents));
+    }
+
+    @Test
+    public void shouldThrowBulkLimitExceeded() {
+        final var user = UserFixture.createDefaultUser(userId).build();
+        final var contents = Arrays.asList(new String[201]);
+
+        assertThrows(BulkLimitExceededException.class,
+                () -> messageBulkIngestService.ingest(channelId, user, contents));
+
+        verifyNoInteractions(eventPublisher);
+    }
+    //endregion
+
+}
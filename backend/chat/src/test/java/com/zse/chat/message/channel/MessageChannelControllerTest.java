@@ -5,10 +5,18 @@ import com.auth0.jwt.algorithms.Algorithm;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.zse.chat.channel.Channel;
 import com.zse.chat.channel.ChannelFixture;
+import com.zse.chat.channel.ChannelReadStateService;
 import com.zse.chat.channel.ChannelService;
 import com.zse.chat.login.VerifyUser;
 import com.zse.chat.message.MessageController;
+import com.zse.chat.message.MessageExportService;
 import com.zse.chat.message.MessageFixture;
+import com.zse.chat.message.MessagePage;
+import com.zse.chat.message.MessageReactionService;
+import com.zse.chat.message.MessageSearchPage;
+import com.zse.chat.message.attachment.Attachment;
+import com.zse.chat.message.attachment.AttachmentNotFoundException;
+import com.zse.chat.message.attachment.AttachmentService;
 import com.zse.chat.user.User;
 import com.zse.chat.user.UserFixture;
 import com.zse.chat.user.UserService;
@@ -26,7 +34,12 @@ import org.springframework.core.env.Environment;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.sql.Date;
 import java.time.LocalDate;
 import java.util.ArrayList;
@@ -37,8 +50,7 @@ import static org.hamcrest.Matchers.*;
 import static org.mockito.Mockito.*;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.print;
-import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
-import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
 @WebMvcTest(MessageChannelController.class)
 @Import({AopAutoConfiguration.class, VerifyUser.class})
@@ -53,9 +65,25 @@ class MessageChannelControllerTest {
     @MockBean
     private MessageChannelService messageChannelService;
     @MockBean
+    private MessageExportService messageExportService;
+    @MockBean
+    private ChannelEventStreamService channelEventStreamService;
+    @MockBean
+    private ChannelLongPollService channelLongPollService;
+    @MockBean
+    private MessageBulkIngestService messageBulkIngestService;
+    @MockBean
+    private ChannelTypingService channelTypingService;
+    @MockBean
     private UserService userService;
     @MockBean
     private ChannelService channelService;
+    @MockBean
+    private ChannelReadStateService channelReadStateService;
+    @MockBean
+    private MessageReactionService messageReactionService;
+    @MockBean
+    private AttachmentService attachmentService;
 
     //region fixture
     private static String tokenJWT;
@@ -67,6 +95,10 @@ class MessageChannelControllerTest {
                 .withClaim("nickname", "testNickname1")
                 .withExpiresAt(Date.valueOf(LocalDate.now().plusDays(7)))
                 .sign(Algorithm.HMAC256(secret));
+        when(messageReactionService.withReactions(ArgumentMatchers.any()))
+                .thenAnswer(invocation -> invocation.getArgument(0));
+        when(attachmentService.withAttachments(ArgumentMatchers.any()))
+                .thenAnswer(invocation -> invocation.getArgument(0));
     }
 
     private HttpHeaders authorize() {
@@ -81,36 +113,46 @@ class MessageChannelControllerTest {
 
     //region GET("/messages/channels/{channelId}")
     @Test
-    public void shouldReturnAllMessagesFromChannel() throws Exception {
+    public void shouldReturnLatestPageOfMessagesFromChannel() throws Exception {
         final var user = UserFixture.createDefaultUser(1).build();
-        final var messages = MessageFixture.createListOfMessages(10);
+        final var messages = MessageFixture.createListOfMessageResponses(1, 10);
         final var channel = ChannelFixture.createDefaultChannel(
                 1,
                 List.of(user),
                 List.of(),
-                messages
+                List.of()
         ).build();
+        final var page = MessagePage.builder()
+                .messages(messages)
+                .previousCursor(1L)
+                .nextCursor(10L)
+                .build();
 
         when(channelService.getChannelById(1)).thenReturn(channel);
         when(channelService.userHasPermissionToSeeChannel(channel, "testNickname1"))
                 .thenReturn(true);
+        when(messageChannelService.getMessages(channel, null, null, MessagePage.DEFAULT_LIMIT))
+                .thenReturn(page);
 
         mockMvc.perform(get("/messages/channels/1")
                         .headers(authorize()))
                 .andDo(print())
                 .andExpect(status().isOk())
-                .andExpect(jsonPath("$", hasSize(10)));
+                .andExpect(jsonPath("$.messages", hasSize(10)))
+                .andExpect(jsonPath("$.previousCursor", equalTo(1)))
+                .andExpect(jsonPath("$.nextCursor", equalTo(10)));
 
         verify(channelService, times(1)).getChannelById(1);
         verify(channelService, times(1)).userHasPermissionToSeeChannel(channel, "testNickname1");
+        verify(messageChannelService, times(1)).getMessages(channel, null, null, MessagePage.DEFAULT_LIMIT);
 
         verifyNoMoreInteractions(channelService);
+        verifyNoMoreInteractions(messageChannelService);
         verifyNoInteractions(userService);
-        verifyNoInteractions(messageChannelService);
     }
 
     @Test
-    public void shouldReturnEmptyArrayOfMessagesFromChannel() throws Exception {
+    public void shouldReturnEmptyPageOfMessagesFromChannel() throws Exception {
         final var user = UserFixture.createDefaultUser(1).build();
         final var channel = ChannelFixture.createDefaultChannel(
                 1,
@@ -118,23 +160,32 @@ class MessageChannelControllerTest {
                 List.of(),
                 List.of()
         ).build();
+        final var page = MessagePage.builder()
+                .messages(List.of())
+                .build();
 
         when(channelService.getChannelById(1)).thenReturn(channel);
         when(channelService.userHasPermissionToSeeChannel(channel, "testNickname1"))
                 .thenReturn(true);
+        when(messageChannelService.getMessages(channel, 20L, null, 5))
+                .thenReturn(page);
 
         mockMvc.perform(get("/messages/channels/1")
+                        .param("before", "20")
+                        .param("limit", "5")
                         .headers(authorize()))
                 .andDo(print())
                 .andExpect(status().isOk())
-                .andExpect(jsonPath("$", hasSize(0)));
+                .andExpect(jsonPath("$.messages", hasSize(0)))
+                .andExpect(jsonPath("$.previousCursor").doesNotExist());
 
         verify(channelService, times(1)).getChannelById(1);
         verify(channelService, times(1)).userHasPermissionToSeeChannel(channel, "testNickname1");
+        verify(messageChannelService, times(1)).getMessages(channel, 20L, null, 5);
 
         verifyNoMoreInteractions(channelService);
+        verifyNoMoreInteractions(messageChannelService);
         verifyNoInteractions(userService);
-        verifyNoInteractions(messageChannelService);
     }
 
     @Test
@@ -168,6 +219,271 @@ class MessageChannelControllerTest {
     }
     //endregion
 
+    //region GET("/messages/channels/{channelId}/search")
+    @Test
+    public void shouldReturnPageOfFoundMessagesInChannel() throws Exception {
+        final var user = UserFixture.createDefaultUser(1).build();
+        final var channel = ChannelFixture.createDefaultChannel(
+                1,
+                List.of(user),
+                List.of(),
+                List.of()
+        ).build();
+        final var page = MessageSearchPage.builder()
+                .messages(MessageFixture.createListOfMessageResponses(1, 2))
+                .build();
+
+        when(channelService.getChannelById(1)).thenReturn(channel);
+        when(channelService.userHasPermissionToSeeChannel(channel, "testNickname1"))
+                .thenReturn(true);
+        when(messageChannelService.search(channel, "testContent", null, MessagePage.DEFAULT_LIMIT))
+                .thenReturn(page);
+
+        mockMvc.perform(get("/messages/channels/1/search")
+                        .headers(authorize())
+                        .param("q", "testContent"))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.messages", hasSize(2)))
+                .andExpect(jsonPath("$.nextCursor").doesNotExist());
+
+        verify(channelService, times(1)).getChannelById(1);
+        verify(channelService, times(1)).userHasPermissionToSeeChannel(channel, "testNickname1");
+        verify(messageChannelService, times(1))
+                .search(channel, "testContent", null, MessagePage.DEFAULT_LIMIT);
+
+        verifyNoMoreInteractions(channelService);
+        verifyNoMoreInteractions(messageChannelService);
+    }
+
+    @Test
+    public void shouldNotSearchForUserWithoutAccessToChannel() throws Exception {
+        final var user2 = UserFixture.createDefaultUser(2).build();
+        final var channel = ChannelFixture.createDefaultChannel(
+                1,
+                List.of(user2),
+                List.of(),
+                List.of()
+        ).build();
+
+        when(channelService.getChannelById(1)).thenReturn(channel);
+        when(channelService.userHasPermissionToSeeChannel(channel, "testNickname1"))
+                .thenReturn(false);
+
+        mockMvc.perform(get("/messages/channels/1/search")
+                        .headers(authorize())
+                        .param("q", "testContent"))
+                .andDo(print())
+                .andExpect(status().isForbidden())
+                .andExpect(jsonPath("$.responseCode", equalTo(403)));
+
+        verifyNoInteractions(messageChannelService);
+    }
+    //endregion
+
+    //region GET("/messages/channels/{channelId}/export")
+    @Test
+    public void shouldStreamChannelExport() throws Exception {
+        final var user = UserFixture.createDefaultUser(1).build();
+        final var channel = ChannelFixture.createDefaultChannel(
+                1,
+                List.of(user),
+                List.of(),
+                List.of()
+        ).build();
+
+        when(channelService.getChannelById(1)).thenReturn(channel);
+        when(channelService.userHasPermissionToSeeChannel(channel, "testNickname1"))
+                .thenReturn(true);
+        doAnswer(invocation -> {
+            OutputStream outputStream = invocation.getArgument(1);
+            outputStream.write("{\"id\":1}\n".getBytes(StandardCharsets.UTF_8));
+            return null;
+        }).when(messageExportService).exportChannel(eq(1), ArgumentMatchers.any(OutputStream.class));
+
+        final MvcResult result = mockMvc.perform(get("/messages/channels/1/export")
+                        .headers(authorize()))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_NDJSON))
+                .andExpect(content().string("{\"id\":1}\n"));
+
+        verify(channelService, times(1)).getChannelById(1);
+        verify(channelService, times(1)).userHasPermissionToSeeChannel(channel, "testNickname1");
+        verify(messageExportService, times(1)).exportChannel(eq(1), ArgumentMatchers.any(OutputStream.class));
+
+        verifyNoMoreInteractions(channelService);
+        verifyNoInteractions(messageChannelService);
+        verifyNoInteractions(userService);
+    }
+
+    @Test
+    public void shouldNotStartExportForUserWithoutAccessToChannel() throws Exception {
+        final var user2 = UserFixture.createDefaultUser(2).build();
+        final var channel = ChannelFixture.createDefaultChannel(
+                1,
+                List.of(user2),
+                List.of(),
+                List.of()
+        ).build();
+
+        when(channelService.getChannelById(1)).thenReturn(channel);
+        when(channelService.userHasPermissionToSeeChannel(channel, "testNickname1"))
+                .thenReturn(false);
+
+        mockMvc.perform(get("/messages/channels/1/export")
+                        .headers(authorize()))
+                .andDo(print())
+                .andExpect(status().isForbidden())
+                .andExpect(jsonPath("$.responseCode", equalTo(403)));
+
+        verifyNoInteractions(messageExportService);
+    }
+    //endregion
+
+    //region GET("/messages/channels/{channelId}/events")
+    @Test
+    public void shouldOpenEventStreamResumingFromLastEventId() throws Exception {
+        when(channelService.userHasPermissionToSeeChannel(1, "testNickname1"))
+                .thenReturn(true);
+        when(channelEventStreamService.subscribe(1, 42L)).thenReturn(new SseEmitter());
+
+        mockMvc.perform(get("/messages/channels/1/events")
+                        .headers(authorize())
+                        .header("Last-Event-ID", "42"))
+                .andDo(print())
+                .andExpect(request().asyncStarted());
+
+        verify(channelService, times(1)).userHasPermissionToSeeChannel(1, "testNickname1");
+        verify(channelEventStreamService, times(1)).subscribe(1, 42L);
+
+        verifyNoMoreInteractions(channelService);
+        verifyNoMoreInteractions(channelEventStreamService);
+    }
+
+    @Test
+    public void shouldNotOpenEventStreamForUserWithoutAccessToChannel() throws Exception {
+        when(channelService.userHasPermissionToSeeChannel(1, "testNickname1"))
+                .thenReturn(false);
+
+        mockMvc.perform(get("/messages/channels/1/events")
+                        .headers(authorize()))
+                .andDo(print())
+                .andExpect(status().isForbidden())
+                .andExpect(jsonPath("$.responseCode", equalTo(403)));
+
+        verifyNoInteractions(channelEventStreamService);
+    }
+    //endregion
+
+    //region GET("/messages/channels/{channelId}/poll")
+    @Test
+    public void shouldReturnPolledMessages() throws Exception {
+        final var result = new DeferredResult<MessageController.MessagePageResponseDTO>();
+        result.setResult(MessageController.MessagePageResponseDTO.builder()
+                .messages(MessageFixture.createListOfMessageResponses(6, 2))
+                .previousCursor(6L)
+                .nextCursor(7L)
+                .build());
+
+        when(channelService.userHasPermissionToSeeChannel(1, "testNickname1"))
+                .thenReturn(true);
+        when(channelLongPollService.poll(1, 5, MessagePage.DEFAULT_LIMIT)).thenReturn(result);
+
+        final MvcResult mvcResult = mockMvc.perform(get("/messages/channels/1/poll")
+                        .headers(authorize())
+                        .param("after", "5"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(mvcResult))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.messages", hasSize(2)))
+                .andExpect(jsonPath("$.messages[0].id", equalTo(6)))
+                .andExpect(jsonPath("$.nextCursor", equalTo(7)));
+
+        verify(channelService, times(1)).userHasPermissionToSeeChannel(1, "testNickname1");
+        verify(channelLongPollService, times(1)).poll(1, 5, MessagePage.DEFAULT_LIMIT);
+
+        verifyNoMoreInteractions(channelService);
+        verifyNoMoreInteractions(channelLongPollService);
+    }
+
+    @Test
+    public void shouldNotPollForUserWithoutAccessToChannel() throws Exception {
+        when(channelService.userHasPermissionToSeeChannel(1, "testNickname1"))
+                .thenReturn(false);
+
+        mockMvc.perform(get("/messages/channels/1/poll")
+                        .headers(authorize())
+                        .param("after", "5"))
+                .andDo(print())
+                .andExpect(status().isForbidden())
+                .andExpect(jsonPath("$.responseCode", equalTo(403)));
+
+        verifyNoInteractions(channelLongPollService);
+    }
+    //endregion
+
+    //region POST("/messages/channels/{channelId}/typing")
+    @Test
+    public void shouldRefreshTypingWithoutCheckingAccessAgain() throws Exception {
+        when(channelTypingService.refresh(1, "testNickname1")).thenReturn(true);
+
+        mockMvc.perform(post("/messages/channels/1/typing").headers(authorize()))
+                .andDo(print())
+                .andExpect(status().isOk());
+
+        verify(channelTypingService, times(1)).refresh(1, "testNickname1");
+        verifyNoMoreInteractions(channelTypingService);
+        verifyNoInteractions(channelService);
+    }
+
+    @Test
+    public void shouldCheckAccessWhenUserStartsTyping() throws Exception {
+        when(channelTypingService.refresh(1, "testNickname1")).thenReturn(false);
+        when(channelService.userHasPermissionToSeeChannel(1, "testNickname1")).thenReturn(true);
+
+        mockMvc.perform(post("/messages/channels/1/typing").headers(authorize()))
+                .andDo(print())
+                .andExpect(status().isOk());
+
+        verify(channelService, times(1)).userHasPermissionToSeeChannel(1, "testNickname1");
+        verify(channelTypingService, times(1)).start(1, "testNickname1");
+    }
+
+    @Test
+    public void shouldNotStartTypingForUserWithoutAccessToChannel() throws Exception {
+        when(channelTypingService.refresh(1, "testNickname1")).thenReturn(false);
+        when(channelService.userHasPermissionToSeeChannel(1, "testNickname1")).thenReturn(false);
+
+        mockMvc.perform(post("/messages/channels/1/typing").headers(authorize()))
+                .andDo(print())
+                .andExpect(status().isForbidden())
+                .andExpect(jsonPath("$.responseCode", equalTo(403)));
+
+        verify(channelTypingService, never()).start(anyInt(), anyString());
+    }
+    //endregion
+
+    //region GET("/messages/channels/{channelId}/typing")
+    @Test
+    public void shouldReturnUsersTypingInChannel() throws Exception {
+        when(channelService.userHasPermissionToSeeChannel(1, "testNickname1")).thenReturn(true);
+        when(channelTypingService.getTyping(1)).thenReturn(List.of("testNickname2"));
+
+        mockMvc.perform(get("/messages/channels/1/typing").headers(authorize()))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", equalTo(List.of("testNickname2"))));
+    }
+    //endregion
+
     //region POST("/messages/channels/{channelId}")
     @Test
     public void shouldReturnCreatedMessage() throws Exception {
@@ -271,6 +587,328 @@ class MessageChannelControllerTest {
     }
     //endregion
 
+    //region POST("/messages/channels/{channelId}/bulk")
+    @Test
+    public void shouldReturnAmountOfCreatedMessages() throws Exception {
+        final var user = UserFixture.createDefaultUser(1).build();
+        final var request = MessageController.MessageBulkRequestDTO.builder()
+                .contents(List.of("testContent1", "testContent2"))
+                .build();
+
+        when(channelService.userHasPermissionToSeeChannel(1, "testNickname1"))
+                .thenReturn(true);
+        when(userService.getUserByNick("testNickname1")).thenReturn(user);
+        when(messageBulkIngestService.ingest(1, user, List.of("testContent1", "testContent2")))
+                .thenReturn(2);
+
+        mockMvc.perform(post("/messages/channels/1/bulk")
+                        .headers(authorize())
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(mapper.writeValueAsString(request)))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.created", equalTo(2)));
+
+        verify(channelService, times(1)).userHasPermissionToSeeChannel(1, "testNickname1");
+        verify(messageBulkIngestService, times(1)).ingest(1, user, List.of("testContent1", "testContent2"));
+
+        verifyNoMoreInteractions(channelService);
+        verifyNoInteractions(messageChannelService);
+    }
+
+    @Test
+    public void shouldNotCreateMessagesForUserWithoutAccessToChannel() throws Exception {
+        final var request = MessageController.MessageBulkRequestDTO.builder()
+                .contents(List.of("testContent1"))
+                .build();
+
+        when(channelService.userHasPermissionToSeeChannel(1, "testNickname1"))
+                .thenReturn(false);
+
+        mockMvc.perform(post("/messages/channels/1/bulk")
+                        .headers(authorize())
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(mapper.writeValueAsString(request)))
+                .andDo(print())
+                .andExpect(status().isForbidden())
+                .andExpect(jsonPath("$.responseCode", equalTo(403)));
+
+        verifyNoInteractions(messageBulkIngestService);
+    }
+
+    @Test
+    public void shouldThrowBulkLimitExceeded() throws Exception {
+        final var user = UserFixture.createDefaultUser(1).build();
+        final var request = MessageController.MessageBulkRequestDTO.builder()
+                .contents(List.of("testContent1"))
+                .build();
+
+        when(channelService.userHasPermissionToSeeChannel(1, "testNickname1"))
+                .thenReturn(true);
+        when(userService.getUserByNick("testNickname1")).thenReturn(user);
+        when(messageBulkIngestService.ingest(ArgumentMatchers.eq(1), ArgumentMatchers.eq(user), ArgumentMatchers.anyList()))
+                .thenThrow(new BulkLimitExceededException(0));
+
+        mockMvc.perform(post("/messages/channels/1/bulk")
+                        .headers(authorize())
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(mapper.writeValueAsString(request)))
+                .andDo(print())
+                .andExpect(status().isPayloadTooLarge())
+                .andExpect(jsonPath("$.responseCode", equalTo(413)));
+    }
+    //endregion
+
+    //region PUT("/messages/channels/{channelId}/read")
+    @Test
+    public void shouldMarkMessagesAsRead() throws Exception {
+        final var user = UserFixture.createDefaultUser(1).build();
+        final var request = MessageController.MessageReadRequestDTO.builder()
+                .messageId(5)
+                .build();
+
+        when(channelService.userHasPermissionToSeeChannel(1, "testNickname1"))
+                .thenReturn(true);
+        when(userService.getUserByNick("testNickname1")).thenReturn(user);
+
+        mockMvc.perform(put("/messages/channels/1/read")
+                        .headers(authorize())
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(mapper.writeValueAsString(request)))
+                .andDo(print())
+                .andExpect(status().isOk());
+
+        verify(channelReadStateService, times(1)).markRead(1, user, 5);
+        verifyNoMoreInteractions(channelReadStateService);
+    }
+
+    @Test
+    public void shouldNotMarkMessagesAsReadForUserWithoutAccessToChannel() throws Exception {
+        final var request = MessageController.MessageReadRequestDTO.builder()
+                .messageId(5)
+                .build();
+
+        when(channelService.userHasPermissionToSeeChannel(1, "testNickname1"))
+                .thenReturn(false);
+
+        mockMvc.perform(put("/messages/channels/1/read")
+                        .headers(authorize())
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(mapper.writeValueAsString(request)))
+                .andDo(print())
+                .andExpect(status().isForbidden())
+                .andExpect(jsonPath("$.responseCode", equalTo(403)));
+
+        verifyNoInteractions(channelReadStateService);
+    }
+    //endregion
+
+    //region GET("/messages/channels/{channelId}/{messageId}/readers")
+    @Test
+    public void shouldReturnReadersOfMessage() throws Exception {
+        when(channelService.userHasPermissionToSeeChannel(1, "testNickname1"))
+                .thenReturn(true);
+        when(channelReadStateService.getReaders(1, 5))
+                .thenReturn(List.of("testNickname2", "testNickname3"));
+
+        mockMvc.perform(get("/messages/channels/1/5/readers").headers(authorize()))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.messageId", equalTo(5)))
+                .andExpect(jsonPath("$.readers", contains("testNickname2", "testNickname3")));
+
+        verify(channelService, times(1)).userHasPermissionToSeeChannel(1, "testNickname1");
+        verify(channelReadStateService, times(1)).getReaders(1, 5);
+        verifyNoMoreInteractions(channelService);
+        verifyNoMoreInteractions(channelReadStateService);
+    }
+
+    @Test
+    public void shouldNotReturnReadersForUserWithoutAccessToChannel() throws Exception {
+        when(channelService.userHasPermissionToSeeChannel(1, "testNickname1"))
+                .thenReturn(false);
+
+        mockMvc.perform(get("/messages/channels/1/5/readers").headers(authorize()))
+                .andDo(print())
+                .andExpect(status().isForbidden())
+                .andExpect(jsonPath("$.responseCode", equalTo(403)));
+
+        verifyNoInteractions(channelReadStateService);
+    }
+    //endregion
+
+    //region POST("/messages/channels/{channelId}/{messageId}/reactions")
+    @Test
+    public void shouldAddReactionToMessageInChannel() throws Exception {
+        final var user = UserFixture.createDefaultUser(1).build();
+        final var request = MessageController.MessageReactionRequestDTO.builder()
+                .emoji("👍")
+                .build();
+
+        when(channelService.userHasPermissionToSeeChannel(1, "testNickname1"))
+                .thenReturn(true);
+        when(userService.getUserByNick("testNickname1")).thenReturn(user);
+
+        mockMvc.perform(post("/messages/channels/1/5/reactions")
+                        .headers(authorize())
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(mapper.writeValueAsString(request)))
+                .andDo(print())
+                .andExpect(status().isOk());
+
+        verify(messageReactionService, times(1)).react(1, 5, user, "👍", true);
+        verifyNoMoreInteractions(messageReactionService);
+    }
+
+    @Test
+    public void shouldNotAddReactionForUserWithoutAccessToChannel() throws Exception {
+        final var request = MessageController.MessageReactionRequestDTO.builder()
+                .emoji("👍")
+                .build();
+
+        when(channelService.userHasPermissionToSeeChannel(1, "testNickname1"))
+                .thenReturn(false);
+
+        mockMvc.perform(post("/messages/channels/1/5/reactions")
+                        .headers(authorize())
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(mapper.writeValueAsString(request)))
+                .andDo(print())
+                .andExpect(status().isForbidden())
+                .andExpect(jsonPath("$.responseCode", equalTo(403)));
+
+        verifyNoInteractions(messageReactionService);
+    }
+    //endregion
+
+    //region DELETE("/messages/channels/{channelId}/{messageId}/reactions")
+    @Test
+    public void shouldRemoveReactionFromMessageInChannel() throws Exception {
+        final var user = UserFixture.createDefaultUser(1).build();
+        final var request = MessageController.MessageReactionRequestDTO.builder()
+                .emoji("👍")
+                .build();
+
+        when(channelService.userHasPermissionToSeeChannel(1, "testNickname1"))
+                .thenReturn(true);
+        when(userService.getUserByNick("testNickname1")).thenReturn(user);
+
+        mockMvc.perform(delete("/messages/channels/1/5/reactions")
+                        .headers(authorize())
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(mapper.writeValueAsString(request)))
+                .andDo(print())
+                .andExpect(status().isOk());
+
+        verify(messageReactionService, times(1)).react(1, 5, user, "👍", false);
+        verifyNoMoreInteractions(messageReactionService);
+    }
+    //endregion
+
+    //region POST("/messages/channels/{channelId}/{messageId}/attachments")
+    @Test
+    public void shouldUploadAttachmentToMessageInChannel() throws Exception {
+        final var attachment = Attachment.builder()
+                .id(3)
+                .messageId(5)
+                .channelId(1)
+                .fileName("image.png")
+                .contentType("image/png")
+                .size(4)
+                .build();
+
+        when(channelService.userHasPermissionToSeeChannel(1, "testNickname1"))
+                .thenReturn(true);
+        when(attachmentService.upload(
+                eq(1),
+                eq(5L),
+                eq("testNickname1"),
+                eq("image.png"),
+                eq("image/png"),
+                ArgumentMatchers.any()
+        )).thenReturn(attachment);
+
+        mockMvc.perform(post("/messages/channels/1/5/attachments")
+                        .headers(authorize())
+                        .param("fileName", "image.png")
+                        .contentType(MediaType.IMAGE_PNG)
+                        .content(new byte[]{1, 2, 3, 4}))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.id", equalTo(3)))
+                .andExpect(jsonPath("$.fileName", equalTo("image.png")))
+                .andExpect(jsonPath("$.contentType", equalTo("image/png")))
+                .andExpect(jsonPath("$.size", equalTo(4)));
+    }
+
+    @Test
+    public void shouldNotUploadAttachmentForUserWithoutAccessToChannel() throws Exception {
+        when(channelService.userHasPermissionToSeeChannel(1, "testNickname1"))
+                .thenReturn(false);
+
+        mockMvc.perform(post("/messages/channels/1/5/attachments")
+                        .headers(authorize())
+                        .param("fileName", "image.png")
+                        .contentType(MediaType.IMAGE_PNG)
+                        .content(new byte[]{1, 2, 3, 4}))
+                .andDo(print())
+                .andExpect(status().isForbidden())
+                .andExpect(jsonPath("$.responseCode", equalTo(403)));
+
+        verifyNoInteractions(attachmentService);
+    }
+    //endregion
+
+    //region GET("/messages/channels/{channelId}/attachments/{attachmentId}")
+    @Test
+    public void shouldSendAttachmentWithRequestedRange() throws Exception {
+        final var attachment = Attachment.builder().id(3).channelId(1).build();
+
+        when(channelService.userHasPermissionToSeeChannel(1, "testNickname1"))
+                .thenReturn(true);
+        when(attachmentService.getAttachment(1, 3)).thenReturn(attachment);
+
+        mockMvc.perform(get("/messages/channels/1/attachments/3")
+                        .headers(authorize())
+                        .header("Range", "bytes=0-9"))
+                .andDo(print())
+                .andExpect(status().isOk());
+
+        verify(attachmentService, times(1)).send(
+                eq(attachment),
+                eq("bytes=0-9"),
+                isNull(),
+                ArgumentMatchers.any(),
+                ArgumentMatchers.any()
+        );
+    }
+
+    @Test
+    public void shouldReturnNotFoundForAttachmentInOtherChannel() throws Exception {
+        when(channelService.userHasPermissionToSeeChannel(1, "testNickname1"))
+                .thenReturn(true);
+        when(attachmentService.getAttachment(1, 3)).thenThrow(new AttachmentNotFoundException(3));
+
+        mockMvc.perform(get("/messages/channels/1/attachments/3").headers(authorize()))
+                .andDo(print())
+                .andExpect(status().isNotFound())
+                .andExpect(jsonPath("$.responseCode", equalTo(404)));
+    }
+
+    @Test
+    public void shouldNotSendAttachmentToUserWithoutAccessToChannel() throws Exception {
+        when(channelService.userHasPermissionToSeeChannel(1, "testNickname1"))
+                .thenReturn(false);
+
+        mockMvc.perform(get("/messages/channels/1/attachments/3").headers(authorize()))
+                .andDo(print())
+                .andExpect(status().isForbidden())
+                .andExpect(jsonPath("$.responseCode", equalTo(403)));
+
+        verifyNoInteractions(attachmentService);
+    }
+    //endregion
+
     //region PUT("/messages/channels/{channelId}/{messageId}")
     @Test
     public void shouldReturnUpdatedMessage() throws Exception {
@@ -290,7 +928,7 @@ class MessageChannelControllerTest {
         when(channelService.getChannelById(1)).thenReturn(channel);
         when(channelService.userHasPermissionToSeeChannel(channel, user.getNickname())).thenReturn(true);
         when(messageChannelService.updateMessage(
-                ArgumentMatchers.anyInt(),
+                ArgumentMatchers.anyLong(),
                 ArgumentMatchers.any(MessageController.MessageRequestDTO.class),
                 ArgumentMatchers.any(Channel.class)
         )).thenReturn(updatedMessage);
@@ -305,7 +943,7 @@ class MessageChannelControllerTest {
         verify(channelService, times(1)).getChannelById(1);
         verify(channelService, times(1)).userHasPermissionToSeeChannel(channel, "testNickname1");
         verify(messageChannelService, times(1)).updateMessage(
-                eq(1),
+                eq(1L),
                 captor.capture(),
                 eq(channel)
         );
@@ -335,7 +973,7 @@ class MessageChannelControllerTest {
         when(channelService.getChannelById(1)).thenReturn(channel);
         when(channelService.userHasPermissionToSeeChannel(channel, user.getNickname())).thenReturn(true);
         when(messageChannelService.updateMessage(
-                ArgumentMatchers.anyInt(),
+                ArgumentMatchers.anyLong(),
                 ArgumentMatchers.any(MessageController.MessageRequestDTO.class),
                 ArgumentMatchers.any(Channel.class)
         )).thenReturn(updatedMessage);
@@ -353,7 +991,7 @@ class MessageChannelControllerTest {
         verify(channelService, times(1)).getChannelById(1);
         verify(channelService, times(1)).userHasPermissionToSeeChannel(channel, "testNickname1");
         verify(messageChannelService, times(1)).updateMessage(
-                eq(1),
+                eq(1L),
                 captor.capture(),
                 eq(channel)
         );
@@ -385,7 +1023,7 @@ class MessageChannelControllerTest {
         when(channelService.getChannelById(1)).thenReturn(channel);
         when(channelService.userHasPermissionToSeeChannel(channel, user.getNickname())).thenReturn(true);
         when(messageChannelService.updateMessage(
-                ArgumentMatchers.anyInt(),
+                ArgumentMatchers.anyLong(),
                 ArgumentMatchers.any(MessageController.MessageRequestDTO.class),
                 ArgumentMatchers.any(Channel.class),
                 ArgumentMatchers.anyBoolean()
@@ -401,7 +1039,7 @@ class MessageChannelControllerTest {
         verify(channelService, times(1)).getChannelById(1);
         verify(channelService, times(1)).userHasPermissionToSeeChannel(channel, "testNickname1");
         verify(messageChannelService, times(1)).updateMessage(
-                eq(1),
+                eq(1L),
                 captor.capture(),
                 eq(channel),
                 eq(true)
@@ -1,9 +1,10 @@
 package com.zse.chat.message.channel;
 
-import com.zse.chat.channel.Channel;
 import com.zse.chat.channel.ChannelFixture;
+import com.zse.chat.channel.ChannelReadStateService;
 import com.zse.chat.login.MessageUpdateFailedException;
 import com.zse.chat.message.*;
+import com.zse.chat.message.search.MessageSearchIndex;
 import com.zse.chat.user.UserFixture;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -12,16 +13,22 @@ import org.mockito.AdditionalAnswers;
 import org.mockito.ArgumentCaptor;
 import org.mockito.ArgumentMatchers;
 import org.mockito.Captor;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
 import static org.hamcrest.collection.IsCollectionWithSize.hasSize;
 import static org.hamcrest.collection.IsEmptyCollection.empty;
 import static org.junit.jupiter.api.Assertions.assertEquals;
@@ -35,6 +42,21 @@ class MessageChannelServiceTest {
 
     @MockBean
     private MessageRepository messageRepository;
+    @MockBean
+    private ApplicationEventPublisher eventPublisher;
+    @MockBean
+    private MessageOutbox messageOutbox;
+    @MockBean
+    private MessageTailCache messageTailCache;
+    @MockBean
+    private MessageWriteBatcher messageWriteBatcher;
+    @MockBean
+    private MessageArchive messageArchive;
+    @MockBean
+    private ChannelReadStateService channelReadStateService;
+
+    @SuppressWarnings("unchecked")
+    private final ObjectProvider<MessageSearchIndex> messageSearchIndexProvider = mock(ObjectProvider.class);
 
     //region fixture
     @Captor
@@ -42,58 +64,157 @@ class MessageChannelServiceTest {
 
     @BeforeEach
     void setUp() {
-        messageChannelService = new MessageChannelService(messageRepository);
+        messageChannelService = new MessageChannelService(
+                messageRepository,
+                eventPublisher,
+                messageOutbox,
+                messageTailCache,
+                messageWriteBatcher,
+                messageArchive,
+                channelReadStateService,
+                messageSearchIndexProvider
+        );
+        when(messageArchive.withOlder(any(), any(), ArgumentMatchers.anyList(), anyInt()))
+                .then(AdditionalAnswers.returnsArgAt(2));
+        when(messageArchive.withNewer(any(), anyLong(), ArgumentMatchers.anyList(), anyInt()))
+                .then(AdditionalAnswers.returnsArgAt(2));
     }
     //endregion
 
     //region getMessages()
     @Test
-    public void shouldReturnListOfMessages () {
-        final List<Message> messages = MessageFixture.createListOfMessages(10);
+    public void shouldReturnLatestPageOfMessagesFromTailCache () {
+        final var page = MessagePage.fromOlder(MessageFixture.createListOfMessageResponses(1, 9), 9);
         final var channel = ChannelFixture.createDefaultChannel(
                 1,
                 List.of(),
                 List.of(),
-                messages
+                List.of()
         ).build();
 
-        when(messageRepository.findAllByDeletedFalseAndChannelIsOrderByIdAsc(
-                ArgumentMatchers.any(Channel.class)
+        when(messageTailCache.getLatestPage(1, 9)).thenReturn(page);
+
+        MessagePage returnedPage = messageChannelService.getMessages(channel, null, null, 9);
+
+        assertThat(returnedPage, equalTo(page));
+
+        verify(messageTailCache, times(1)).getLatestPage(1, 9);
+        verifyNoInteractions(messageRepository);
+    }
+
+    @Test
+    public void shouldReturnOlderPageOfMessages () {
+        final List<MessageController.MessageResponseDTO> messages = new ArrayList<>(MessageFixture.createListOfMessageResponses(1, 3));
+        Collections.reverse(messages);
+        final var channel = ChannelFixture.createDefaultChannel(
+                1,
+                List.of(),
+                List.of(),
+                List.of()
+        ).build();
+
+        when(messageRepository.findChannelPageBefore(
+                ArgumentMatchers.anyInt(),
+                ArgumentMatchers.anyLong(),
+                ArgumentMatchers.any(Pageable.class)
         )).thenReturn(messages);
 
-        List<Message> returnedList = messageChannelService.getMessages(channel);
+        MessagePage returnedPage = messageChannelService.getMessages(channel, 4L, null, 5);
 
-        assertEquals(returnedList, messages);
-        assertThat(returnedList, hasSize(10));
+        assertThat(returnedPage.getMessages(), hasSize(3));
+        assertThat(returnedPage.getPreviousCursor(), nullValue());
+        assertThat(returnedPage.getNextCursor(), equalTo(3L));
 
         verify(messageRepository, times(1))
-                .findAllByDeletedFalseAndChannelIsOrderByIdAsc(channel);
+                .findChannelPageBefore(1, 4, PageRequest.of(0, 6));
 
         verifyNoMoreInteractions(messageRepository);
     }
 
     @Test
-    public void shouldReturnEmptyListOfMessages () {
-        final List<Message> messages = new ArrayList<>();
+    public void shouldReturnEmptyPageOfNewerMessages () {
         final var channel = ChannelFixture.createDefaultChannel(
                 1,
                 List.of(),
                 List.of(),
-                messages
+                List.of()
         ).build();
 
-        when(messageRepository.findAllByDeletedFalseAndChannelIsOrderByIdAsc(
-                ArgumentMatchers.any(Channel.class)
-        )).thenReturn(messages);
+        when(messageRepository.findChannelPageAfter(
+                ArgumentMatchers.anyInt(),
+                ArgumentMatchers.anyLong(),
+                ArgumentMatchers.any(Pageable.class)
+        )).thenReturn(new ArrayList<>());
 
-        List<Message> returnedList = messageChannelService.getMessages(channel);
+        MessagePage returnedPage = messageChannelService.getMessages(channel, null, 7L, 5);
 
-        assertEquals(returnedList, messages);
-        assertThat(returnedList, empty());
+        assertThat(returnedPage.getMessages(), empty());
+        assertThat(returnedPage.getNextCursor(), equalTo(7L));
 
         verify(messageRepository, times(1))
-                .findAllByDeletedFalseAndChannelIsOrderByIdAsc(channel);
+                .findChannelPageAfter(1, 7, PageRequest.of(0, 6));
+        verify(messageArchive, times(1)).withNewer(1, 7, List.of(), 6);
+
+        verifyNoMoreInteractions(messageRepository);
+    }
+
+    @Test
+    public void shouldThrowInvalidCursorTryingToUseBeforeAndAfter () {
+        final var channel = ChannelFixture.createDefaultChannel(
+                1,
+                List.of(),
+                List.of(),
+                List.of()
+        ).build();
+
+        assertThrows(InvalidCursorException.class,
+                () -> messageChannelService.getMessages(channel, 7L, 5L, 5));
+
+        verifyNoInteractions(messageRepository);
+    }
+    //endregion
 
+    //region search()
+    @Test
+    public void shouldSearchInChannelBelowCursor() {
+        final var channel = ChannelFixture.createDefaultChannel(
+                1,
+                List.of(),
+                List.of(),
+                List.of()
+        ).build();
+
+        when(messageRepository.searchChannelBelow(1, "testContent", 0.5f, 2, 3))
+                .thenReturn(MessageFixture.createListOfSearchHits(3, 3));
+
+        MessageSearchPage returnedPage = messageChannelService.search(channel, "testContent", "0.5_2", 2);
+
+        assertThat(returnedPage.getMessages(), hasSize(2));
+        assertThat(returnedPage.getMessages().get(0).getId(), equalTo(3L));
+        assertThat(returnedPage.getNextCursor(), equalTo("0.25_4"));
+
+        verify(messageRepository, times(1)).searchChannelBelow(1, "testContent", 0.5f, 2, 3);
+        verifyNoMoreInteractions(messageRepository);
+    }
+
+    @Test
+    public void shouldReturnLastSearchPageInChannelWithoutCursor() {
+        final var channel = ChannelFixture.createDefaultChannel(
+                1,
+                List.of(),
+                List.of(),
+                List.of()
+        ).build();
+
+        when(messageRepository.searchChannel(1, "testContent", 3))
+                .thenReturn(MessageFixture.createListOfSearchHits(1, 1));
+
+        MessageSearchPage returnedPage = messageChannelService.search(channel, "testContent", null, 2);
+
+        assertThat(returnedPage.getMessages(), hasSize(1));
+        assertThat(returnedPage.getNextCursor(), nullValue());
+
+        verify(messageRepository, times(1)).searchChannel(1, "testContent", 3);
         verifyNoMoreInteractions(messageRepository);
     }
     //endregion
@@ -111,13 +232,13 @@ class MessageChannelServiceTest {
         ).build();
         message = message.toBuilder().channel(channel).build();
 
-        when(messageRepository.findById(1)).thenReturn(Optional.of(message));
+        when(messageRepository.findById(1L)).thenReturn(Optional.of(message));
 
         final var returnedMessage = messageChannelService.getMessageById(1, 1);
 
         assertEquals(returnedMessage, message);
 
-        verify(messageRepository, times(1)).findById(1);
+        verify(messageRepository, times(1)).findById(1L);
 
         verifyNoMoreInteractions(messageRepository);
     }
@@ -133,14 +254,14 @@ class MessageChannelServiceTest {
                 List.of(message)
         ).build();
 
-        when(messageRepository.findById(2)).thenReturn(Optional.empty());
+        when(messageRepository.findById(2L)).thenReturn(Optional.empty());
 
         final var result = assertThrows(MessageNotFoundException.class,
                 () -> messageChannelService.getMessageById(2, 1));
 
         assertThat(result.getMessage(), containsString("2"));
 
-        verify(messageRepository, times(1)).findById(2);
+        verify(messageRepository, times(1)).findById(2L);
 
         verifyNoMoreInteractions(messageRepository);
     }
@@ -150,14 +271,14 @@ class MessageChannelServiceTest {
         final var user = UserFixture.createDefaultUser(1).build();
         final var message = MessageFixture.createDefaultMessage(1, user).build();
 
-        when(messageRepository.findById(1)).thenReturn(Optional.of(message));
+        when(messageRepository.findById(1L)).thenReturn(Optional.of(message));
 
         final var result = assertThrows(MessageNotFoundException.class,
                 () -> messageChannelService.getMessageById(1, 1));
 
         assertThat(result.getMessage(), containsString("1"));
 
-        verify(messageRepository, times(1)).findById(1);
+        verify(messageRepository, times(1)).findById(1L);
 
         verifyNoMoreInteractions(messageRepository);
     }
@@ -174,14 +295,14 @@ class MessageChannelServiceTest {
         ).build();
         message = message.toBuilder().channel(channel).build();
 
-        when(messageRepository.findById(1)).thenReturn(Optional.of(message));
+        when(messageRepository.findById(1L)).thenReturn(Optional.of(message));
 
         final var result = assertThrows(MessageNotFoundException.class,
                 () -> messageChannelService.getMessageById(1, 2));
 
         assertThat(result.getMessage(), containsString("1"));
 
-        verify(messageRepository, times(1)).findById(1);
+        verify(messageRepository, times(1)).findById(1L);
 
         verifyNoMoreInteractions(messageRepository);
     }
@@ -203,7 +324,7 @@ class MessageChannelServiceTest {
                 messages
         ).build();
 
-        when(messageRepository.save(ArgumentMatchers.any(Message.class)))
+        when(messageWriteBatcher.save(ArgumentMatchers.any(Message.class)))
                 .then(AdditionalAnswers.returnsFirstArg());
 
         Message savedMessage = messageChannelService.saveMessage(messageRequestDTO, user, channel);
@@ -211,7 +332,7 @@ class MessageChannelServiceTest {
         assertThat(savedMessage.getAuthor().getNickname(), equalTo("testNickname1"));
         assertThat(savedMessage.getContent(), equalTo("testContent1"));
 
-        verify(messageRepository, times(1)).save(
+        verify(messageWriteBatcher, times(1)).save(
                 captorMessage.capture()
         );
 
@@ -219,7 +340,11 @@ class MessageChannelServiceTest {
         assertThat(captorMessage.getValue().getAuthor(), equalTo(user));
         assertThat(captorMessage.getValue().getChannel(), equalTo(channel));
 
-        verifyNoMoreInteractions(messageRepository);
+        verify(eventPublisher, times(1))
+                .publishEvent(new MessageEvent(MessageEvent.Type.CREATED, savedMessage));
+        verify(channelReadStateService, times(1)).messagesCreated(1, user, 1);
+
+        verifyNoInteractions(messageRepository);
     }
     //endregion
 
@@ -234,19 +359,52 @@ class MessageChannelServiceTest {
                 List.of(),
                 List.of(message)
         ).build();
-        message = message.toBuilder().channel(channel).build();
         final var messageRequestDTO = MessageController.MessageRequestDTO.builder()
                 .nickname("testNickname1")
                 .content("testContent1Updated")
                 .build();
         final var updatedMessage = message.toBuilder()
                 .content("testContent1Updated")
-                .deleted(true)
                 .build();
 
-        when(messageRepository.findById(1)).thenReturn(Optional.of(message));
-        when(messageRepository.save(ArgumentMatchers.any(Message.class)))
-                .then(AdditionalAnswers.returnsFirstArg());
+        when(messageRepository.editChannelMessage(1, 1, "testNickname1", "testContent1Updated"))
+                .thenReturn(Optional.of(MessageFixture.createUpdatedMessage(updatedMessage)));
+
+        final var returnedMessage = messageChannelService.updateMessage(
+                1,
+                messageRequestDTO,
+                channel
+        );
+
+        assertThat(returnedMessage.getChannel(), equalTo(channel));
+        assertThat(returnedMessage.getContent(), equalTo(updatedMessage.getContent()));
+        assertThat(returnedMessage.getAuthor().getNickname(), equalTo("testNickname1"));
+        assertThat(returnedMessage.isDeleted(), equalTo(false));
+
+        verify(messageRepository, times(1))
+                .editChannelMessage(1, 1, "testNickname1", "testContent1Updated");
+        verify(eventPublisher, times(1))
+                .publishEvent(new MessageEvent(MessageEvent.Type.UPDATED, returnedMessage));
+
+        verifyNoMoreInteractions(messageRepository);
+    }
+
+    @Test
+    public void shouldReturnDeletedMessage() {
+        final var user = UserFixture.createDefaultUser(1).build();
+        var message = MessageFixture.createDefaultMessage(1, user).build();
+        final var channel = ChannelFixture.createDefaultChannel(
+                1,
+                List.of(user),
+                List.of(),
+                List.of(message)
+        ).build();
+        final var messageRequestDTO = MessageController.MessageRequestDTO.builder()
+                .nickname("testNickname1")
+                .build();
+
+        when(messageRepository.deleteChannelMessage(1, 1, "testNickname1"))
+                .thenReturn(Optional.of(MessageFixture.createUpdatedMessage(message.toBuilder().deleted(true).build())));
 
         final var returnedMessage = messageChannelService.updateMessage(
                 1,
@@ -256,11 +414,11 @@ class MessageChannelServiceTest {
         );
 
         assertThat(returnedMessage.getChannel(), equalTo(channel));
-        assertThat(returnedMessage.getContent(), equalTo(updatedMessage.getContent()));
         assertThat(returnedMessage.isDeleted(), equalTo(true));
 
-        verify(messageRepository, times(1)).findById(1);
-        verify(messageRepository, times(1)).save(returnedMessage);
+        verify(messageRepository, times(1)).deleteChannelMessage(1, 1, "testNickname1");
+        verify(eventPublisher, times(1))
+                .publishEvent(new MessageEvent(MessageEvent.Type.DELETED, returnedMessage));
 
         verifyNoMoreInteractions(messageRepository);
     }
@@ -268,28 +426,19 @@ class MessageChannelServiceTest {
     @Test
     public void shouldThrowMessageNotFoundTryingToUpdateDeletedMessage() {
         final var user = UserFixture.createDefaultUser(1).build();
-        var message = MessageFixture.createDefaultMessage(1, user)
-                .deleted(true)
-                .build();
         final var channel = ChannelFixture.createDefaultChannel(
                 1,
                 List.of(user),
                 List.of(),
-                List.of(message)
+                List.of()
         ).build();
-        message = message.toBuilder().channel(channel).build();
         final var messageRequestDTO = MessageController.MessageRequestDTO.builder()
                 .nickname("testNickname1")
                 .content("testContent1Updated")
                 .build();
-        final var updatedMessage = message.toBuilder()
-                .content("testContent1Updated")
-                .deleted(true)
-                .build();
 
-        when(messageRepository.findById(1)).thenReturn(Optional.of(message));
-        when(messageRepository.save(ArgumentMatchers.any(Message.class)))
-                .then(AdditionalAnswers.returnsFirstArg());
+        when(messageRepository.deleteChannelMessage(1, 1, "testNickname1")).thenReturn(Optional.empty());
+        when(messageRepository.existsByIdAndDeletedFalseAndChannelId(1, 1)).thenReturn(false);
 
         final var result = assertThrows(
                 MessageNotFoundException.class,
@@ -303,46 +452,81 @@ class MessageChannelServiceTest {
 
         assertThat(result.getMessage(), containsString("1"));
 
-        verify(messageRepository, times(1)).findById(1);
+        verify(messageRepository, times(1)).deleteChannelMessage(1, 1, "testNickname1");
+        verify(messageRepository, times(1)).existsByIdAndDeletedFalseAndChannelId(1, 1);
+        verify(messageRepository, times(1)).existsInArchiveOfChannel(1, 1);
 
         verifyNoMoreInteractions(messageRepository);
+        verifyNoInteractions(eventPublisher);
+    }
+
+    @Test
+    public void shouldThrowMessageArchivedTryingToDeleteArchivedMessage() {
+        final var user = UserFixture.createDefaultUser(1).build();
+        final var channel = ChannelFixture.createDefaultChannel(
+                1,
+                List.of(user),
+                List.of(),
+                List.of()
+        ).build();
+        final var messageRequestDTO = MessageController.MessageRequestDTO.builder()
+                .nickname("testNickname1")
+                .build();
+
+        when(messageRepository.deleteChannelMessage(1, 1, "testNickname1")).thenReturn(Optional.empty());
+        when(messageRepository.existsByIdAndDeletedFalseAndChannelId(1, 1)).thenReturn(false);
+        when(messageRepository.existsInArchiveOfChannel(1, 1)).thenReturn(true);
+
+        final var result = assertThrows(
+                MessageArchivedException.class,
+                () -> messageChannelService.updateMessage(
+                        1,
+                        messageRequestDTO,
+                        channel,
+                        true
+                )
+        );
+
+        assertThat(result.getMessage(), containsString("archived"));
+
+        verifyNoInteractions(eventPublisher, messageOutbox);
     }
 
     @Test
     public void shouldThrowMessageUpdateFailedTryingToUpdateNotOwningMessage() {
         final var user = UserFixture.createDefaultUser(1).build();
-        var message = MessageFixture.createDefaultMessage(1, user).build();
         final var channel = ChannelFixture.createDefaultChannel(
                 1,
                 List.of(user),
                 List.of(),
-                List.of(message)
+                List.of()
         ).build();
-        message = message.toBuilder().channel(channel).build();
         final var messageRequestDTO = MessageController.MessageRequestDTO.builder()
                 .nickname("testNickname2")
                 .content("testContent1Updated")
                 .build();
 
-        when(messageRepository.findById(1)).thenReturn(Optional.of(message));
-        when(messageRepository.save(ArgumentMatchers.any(Message.class)))
-                .then(AdditionalAnswers.returnsFirstArg());
+        when(messageRepository.editChannelMessage(1, 1, "testNickname2", "testContent1Updated"))
+                .thenReturn(Optional.empty());
+        when(messageRepository.existsByIdAndDeletedFalseAndChannelId(1, 1)).thenReturn(true);
 
         final var result = assertThrows(
                 MessageUpdateFailedException.class,
                 () -> messageChannelService.updateMessage(
                         1,
                         messageRequestDTO,
-                        channel,
-                        true
+                        channel
                 )
         );
 
         assertThat(result.getMessage(), containsString("not possible"));
 
-        verify(messageRepository, times(1)).findById(1);
+        verify(messageRepository, times(1))
+                .editChannelMessage(1, 1, "testNickname2", "testContent1Updated");
+        verify(messageRepository, times(1)).existsByIdAndDeletedFalseAndChannelId(1, 1);
 
         verifyNoMoreInteractions(messageRepository);
+        verifyNoInteractions(eventPublisher);
     }
     //endregion
 }
@@ -0,0 +1,291 @@
+package com.zse.chat.message.search;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.zse.chat.channel.ChannelFixture;
+import com.zse.chat.message.MessageController;
+import com.zse.chat.message.MessageEvent;
+import com.zse.chat.message.MessageFixture;
+import com.zse.chat.message.MessageOutbox;
+import com.zse.chat.message.MessageRepository;
+import com.zse.chat.message.MessagesIngestedEvent;
+import com.zse.chat.outbox.ChangeEvent;
+import com.zse.chat.outbox.ChangeType;
+import com.zse.chat.outbox.ClusterChangeEvent;
+import com.zse.chat.outbox.Outbox;
+import com.zse.chat.user.UserFixture;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentMatchers;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(SpringExtension.class)
+class MessageSearchIndexTest {
+
+    @TempDir
+    Path directory;
+
+    @MockBean
+    private MessageRepository messageRepository;
+    @MockBean
+    private PlatformTransactionManager transactionManager;
+
+    private MessageSearchIndex messageSearchIndex;
+
+    //region fixture
+    @BeforeEach
+    void setUp() {
+        when(messageRepository.findResponsesByIds(ArgumentMatchers.anyCollection())).then(invocation -> {
+            final Collection<Long> ids = invocation.getArgument(0);
+            return ids.stream()
+                    .map(id -> new MessageController.MessageResponseDTO(id, "testNickname", "content", LocalDateTime.now()))
+                    .toList();
+        });
+        messageSearchIndex = createIndex();
+    }
+
+    @AfterEach
+    void tearDown() {
+        messageSearchIndex.close();
+    }
+
+    private MessageSearchIndex createIndex() {
+        return new MessageSearchIndex(
+                messageRepository,
+                new MessageOutbox(mock(Outbox.class), new ObjectMapper().findAndRegisterModules()),
+                transactionManager,
+                new MockEnvironment()
+                        .withProperty("message-search.embedded.directory", directory.toString())
+                        .withProperty("message-search.embedded.flush-size", "1000")
+                        .withProperty("message-search.embedded.max-segments", "2")
+        );
+    }
+
+    private void publish(MessageEvent.Type type, int messageId, Integer channelId, String content) {
+        final var user = UserFixture.createDefaultUser(1).build();
+        final var message = MessageFixture.createDefaultMessage(messageId, user).content(content);
+        if (channelId != null) {
+            message.channel(ChannelFixture.createDefaultChannel(channelId, List.of(user), List.of(), List.of()).build());
+        }
+        messageSearchIndex.onMessageEvent(new MessageEvent(type, message.build()));
+    }
+
+    private List<Long> search(Integer channelId, String query) {
+        return messageSearchIndex.search(channelId, query, null, 10).getMessages().stream()
+                .map(MessageController.MessageResponseDTO::getId)
+                .toList();
+    }
+    //endregion
+
+    //region search()
+    @Test
+    public void shouldFindMessagesContainingAllWordsOnlyInGivenChannel() {
+        publish(MessageEvent.Type.CREATED, 1, 1, "Red fox jumps");
+        publish(MessageEvent.Type.CREATED, 2, 1, "red car");
+        publish(MessageEvent.Type.CREATED, 3, 2, "red fox");
+        publish(MessageEvent.Type.CREATED, 4, null, "red fox");
+
+        assertThat(search(1, "fox RED"), contains(1L));
+        assertThat(search(1, "red"), contains(2L, 1L));
+        assertThat(search(null, "fox"), contains(4L));
+        assertThat(search(3, "fox"), empty());
+    }
+
+    @Test
+    public void shouldMatchPhraseOnlyWhenWordsFollowEachOther() {
+        publish(MessageEvent.Type.CREATED, 1, 1, "the quick brown fox");
+        publish(MessageEvent.Type.CREATED, 2, 1, "brown and quick fox");
+
+        assertThat(search(1, "\"quick brown\""), contains(1L));
+        assertThat(search(1, "quick brown"), contains(2L, 1L));
+        assertThat(search(1, "\"brown quick\""), empty());
+    }
+
+    @Test
+    public void shouldRankByOccurrencesAndContinueBelowCursor() {
+        publish(MessageEvent.Type.CREATED, 1, 1, "echo");
+        publish(MessageEvent.Type.CREATED, 2, 1, "echo echo echo");
+        publish(MessageEvent.Type.CREATED, 3, 1, "echo");
+
+        final var first = messageSearchIndex.search(1, "echo", null, 2);
+        final var second = messageSearchIndex.search(1, "echo", first.getNextCursor(), 2);
+
+        assertThat(first.getMessages().stream().map(MessageController.MessageResponseDTO::getId).toList(),
+                contains(2L, 3L));
+        assertThat(second.getMessages().stream().map(MessageController.MessageResponseDTO::getId).toList(),
+                contains(1L));
+        assertThat(second.getNextCursor(), nullValue());
+    }
+    //endregion
+
+    //region segments
+    @Test
+    public void shouldHideEditedAndDeletedMessagesInFlushedSegment() {
+        publish(MessageEvent.Type.CREATED, 1, 1, "old text");
+        publish(MessageEvent.Type.CREATED, 2, 1, "old text");
+        messageSearchIndex.flushAndMerge();
+
+        publish(MessageEvent.Type.UPDATED, 1, 1, "new text");
+        publish(MessageEvent.Type.DELETED, 2, 1, "old text");
+
+        assertThat(search(1, "old"), empty());
+        assertThat(search(1, "new"), contains(1L));
+        assertThat(search(1, "text"), contains(1L));
+    }
+
+    @Test
+    public void shouldLoadSegmentsWithDeletesAfterRestart() {
+        publish(MessageEvent.Type.CREATED, 1, 1, "persisted message");
+        publish(MessageEvent.Type.CREATED, 2, 1, "persisted message");
+        messageSearchIndex.flushAndMerge();
+        publish(MessageEvent.Type.DELETED, 2, 1, "persisted message");
+        messageSearchIndex.close();
+
+        messageSearchIndex = createIndex();
+
+        assertThat(messageSearchIndex.countSegments(), equalTo(2));
+        assertThat(search(1, "persisted"), contains(1L));
+    }
+
+    @Test
+    public void shouldMergeSegmentsDroppingDeletedMessages() {
+        publish(MessageEvent.Type.CREATED, 1, 1, "merged message 1");
+        messageSearchIndex.flushAndMerge();
+        publish(MessageEvent.Type.CREATED, 2, 1, "merged message 2");
+        messageSearchIndex.flushAndMerge();
+        publish(MessageEvent.Type.DELETED, 2, 1, "merged message 2");
+        publish(MessageEvent.Type.CREATED, 3, 1, "merged message 3");
+        messageSearchIndex.flushAndMerge();
+
+        assertThat(messageSearchIndex.countSegments(), equalTo(1));
+        assertThat(search(1, "merged"), contains(3L, 1L));
+
+        messageSearchIndex.close();
+        messageSearchIndex = createIndex();
+
+        assertThat(messageSearchIndex.countSegments(), equalTo(1));
+        assertThat(search(1, "merged"), contains(3L, 1L));
+        assertThat(search(1, "2"), empty());
+    }
+
+    @Test
+    public void shouldKeepEditedMessageWhenSegmentsAreMerged() {
+        publish(MessageEvent.Type.CREATED, 5, 1, "hello there");
+        messageSearchIndex.flushAndMerge();
+        publish(MessageEvent.Type.UPDATED, 5, 1, "hello world");
+        messageSearchIndex.flushAndMerge();
+        assertThat(search(1, "world"), contains(5L));
+
+        publish(MessageEvent.Type.CREATED, 6, 1, "another message");
+        messageSearchIndex.flushAndMerge();
+
+        assertThat(messageSearchIndex.countSegments(), equalTo(1));
+        assertThat(search(1, "world"), contains(5L));
+        assertThat(search(1, "there"), empty());
+
+        messageSearchIndex.close();
+        messageSearchIndex = createIndex();
+
+        assertThat(search(1, "world"), contains(5L));
+        assertThat(search(1, "there"), empty());
+    }
+    //endregion
+
+    //region indexing
+    @Test
+    public void shouldIndexBulkIngestedMessages() {
+        messageSearchIndex.onMessagesIngested(new MessagesIngestedEvent(
+                1,
+                1,
+                "testNickname",
+                LocalDateTime.now(),
+                List.of(10L, 11L),
+                List.of("bulk one", "bulk two")
+        ));
+
+        assertThat(search(1, "bulk"), contains(11L, 10L));
+        assertThat(search(1, "two"), contains(11L));
+    }
+
+    @Test
+    public void shouldIndexChangesOfOtherInstancesOnce() {
+        publish(MessageEvent.Type.CREATED, 1, 1, "local text");
+        messageSearchIndex.flushAndMerge();
+        final var remote = new ClusterChangeEvent(new ChangeEvent(1, ChangeType.MESSAGE_CREATED, 1,
+                "{\"id\":2,\"authorNick\":\"testNickname\",\"content\":\"remote text\"}"));
+        messageSearchIndex.onClusterChange(remote);
+        messageSearchIndex.flushAndMerge();
+        messageSearchIndex.onClusterChange(remote);
+        messageSearchIndex.onClusterChange(new ClusterChangeEvent(new ChangeEvent(2, ChangeType.MESSAGE_UPDATED, 1,
+                "{\"id\":1,\"authorNick\":\"testNickname\",\"content\":\"edited remotely\"}")));
+
+        assertThat(search(1, "text"), contains(2L));
+        assertThat(search(1, "remotely"), contains(1L));
+    }
+
+    @Test
+    public void shouldIndexBulkOfOtherInstanceFromDatabase() {
+        when(messageRepository.streamIngestedForIndex(1, "testNickname", 10, 12)).thenReturn(Stream.of(
+                new IndexedMessage(10, 1, "remote bulk"),
+                new IndexedMessage(12, 1, "remote bulk")
+        ));
+
+        messageSearchIndex.onClusterChange(new ClusterChangeEvent(new ChangeEvent(1, ChangeType.MESSAGES_INGESTED, 1,
+                "{\"authorNick\":\"testNickname\",\"count\":2,\"firstId\":10,\"lastId\":12}")));
+
+        assertThat(search(1, "bulk"), contains(12L, 10L));
+    }
+
+    @Test
+    public void shouldCatchUpWithMessagesNewerThanIndex() {
+        publish(MessageEvent.Type.CREATED, 5, 1, "indexed");
+        messageSearchIndex.flushAndMerge();
+        messageSearchIndex.close();
+
+        when(messageRepository.streamForIndexAfter(5)).thenReturn(Stream.of(
+                new IndexedMessage(6, 1, "missed in channel"),
+                new IndexedMessage(7, null, "missed globally")
+        ));
+        messageSearchIndex = createIndex();
+        messageSearchIndex.catchUp();
+
+        assertThat(search(1, "missed"), contains(6L));
+        assertThat(search(null, "missed"), contains(7L));
+        verify(messageRepository, times(1)).streamForIndexAfter(5);
+    }
+
+    @Test
+    public void shouldNotStartWithSnowflakeMessageIds() {
+        final var env = new MockEnvironment()
+                .withProperty("message-search.embedded.directory", directory.toString())
+                .withProperty("message-ids.generator", "snowflake");
+
+        assertThrows(IllegalStateException.class, () -> new MessageSearchIndex(
+                messageRepository,
+                mock(MessageOutbox.class),
+                transactionManager,
+                env
+        ));
+    }
+    //endregion
+
+}
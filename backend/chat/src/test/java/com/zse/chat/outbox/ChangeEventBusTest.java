@@ -0,0 +1,116 @@
+package com.zse.chat.outbox;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+
+class ChangeEventBusTest {
+
+    //region fixture
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final ChangeEventBus changeEventBus = new ChangeEventBus(
+            meterRegistry,
+            new MockEnvironment().withProperty("outbox.queue-capacity", "1")
+    );
+
+    @AfterEach
+    void tearDown() {
+        changeEventBus.close();
+    }
+
+    private static ChangeEvent createChange(long id) {
+        return new ChangeEvent(id, ChangeType.MESSAGE_CREATED, null, "{}");
+    }
+
+    private static List<Long> take(BlockingQueue<ChangeEvent> handled, int amount) throws InterruptedException {
+        final List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < amount; i++) {
+            ids.add(handled.poll(5, TimeUnit.SECONDS).id());
+        }
+        return ids;
+    }
+    //endregion
+
+    //region publish()
+    @Test
+    public void shouldHandleChangesInOrderByEverySubscriber() throws InterruptedException {
+        final BlockingQueue<ChangeEvent> first = new LinkedBlockingQueue<>();
+        final BlockingQueue<ChangeEvent> second = new LinkedBlockingQueue<>();
+        changeEventBus.subscribe("first", first::add);
+        changeEventBus.subscribe("second", second::add);
+
+        changeEventBus.publish(List.of(createChange(1), createChange(2), createChange(3)));
+
+        assertThat(take(first, 3), contains(1L, 2L, 3L));
+        assertThat(take(second, 3), contains(1L, 2L, 3L));
+    }
+
+    @Test
+    public void shouldWaitWhileQueueOfSubscriberIsFull() throws Exception {
+        final var release = new CountDownLatch(1);
+        final BlockingQueue<ChangeEvent> handled = new LinkedBlockingQueue<>();
+        changeEventBus.subscribe("slow", change -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            handled.add(change);
+        });
+
+        final var publishing = CompletableFuture.runAsync(() ->
+                changeEventBus.publish(List.of(createChange(1), createChange(2), createChange(3))));
+
+        Thread.sleep(200);
+        assertThat(publishing.isDone(), equalTo(false));
+        assertThat(meterRegistry.get("outbox.bus.queue.size").tag("subscriber", "slow").gauge().value(), equalTo(1.0));
+
+        release.countDown();
+        publishing.get(5, TimeUnit.SECONDS);
+        assertThat(take(handled, 3), contains(1L, 2L, 3L));
+    }
+
+    @Test
+    public void shouldKeepHandlingAfterHandlerFails() throws InterruptedException {
+        final BlockingQueue<ChangeEvent> handled = new LinkedBlockingQueue<>();
+        changeEventBus.subscribe("failing", change -> {
+            if (change.id() == 1) {
+                throw new IllegalStateException("handler failed");
+            }
+            handled.add(change);
+        });
+
+        changeEventBus.publish(List.of(createChange(1), createChange(2)));
+
+        assertThat(take(handled, 1), contains(2L));
+    }
+    //endregion
+
+    //region tryPublish()
+    @Test
+    public void shouldPublishNothingWhenQueueOfSubscriberHasNoRoomForAllChanges() throws InterruptedException {
+        final BlockingQueue<ChangeEvent> handled = new LinkedBlockingQueue<>();
+        changeEventBus.subscribe("subscriber", handled::add);
+
+        assertThat(changeEventBus.tryPublish(List.of(createChange(1), createChange(2))), equalTo(false));
+        assertThat(changeEventBus.tryPublish(List.of(createChange(3))), equalTo(true));
+
+        assertThat(take(handled, 1), contains(3L));
+        assertThat(handled.poll(200, TimeUnit.MILLISECONDS), equalTo(null));
+    }
+    //endregion
+
+}
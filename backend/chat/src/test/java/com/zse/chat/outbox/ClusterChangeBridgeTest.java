@@ -0,0 +1,142 @@
+package com.zse.chat.outbox;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.postgresql.PGNotification;
+import org.postgresql.core.Notification;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+
+import static org.mockito.Mockito.*;
+
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class ClusterChangeBridgeTest {
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    @Autowired
+    private Environment env;
+
+    private final ChangeEventBus changeEventBus = mock(ChangeEventBus.class);
+    private final ApplicationEventPublisher eventPublisher = mock(ApplicationEventPublisher.class);
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private ClusterChangeBridge clusterChangeBridge;
+    private TransactionTemplate transactionTemplate;
+
+    //region fixture
+    @BeforeEach
+    void setUp() throws InterruptedException {
+        clusterChangeBridge = new ClusterChangeBridge(
+                jdbcTemplate,
+                changeEventBus,
+                eventPublisher,
+                objectMapper,
+                new SimpleMeterRegistry(),
+                env
+        );
+        clusterChangeBridge.start();
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        awaitListening();
+    }
+
+    @AfterEach
+    void tearDown() {
+        clusterChangeBridge.close();
+    }
+
+    /**
+     * Listener connects asynchronously, change is sent until it comes back.
+     */
+    private void awaitListening() throws InterruptedException {
+        for (int attempt = 0; attempt < 50 && mockingDetails(changeEventBus).getInvocations().isEmpty(); attempt++) {
+            transactionTemplate.executeWithoutResult(status -> clusterChangeBridge.broadcast(List.of(createChange(0))));
+            Thread.sleep(100);
+        }
+        verify(changeEventBus, atLeastOnce()).publish(List.of(createChange(0)));
+        clearInvocations(changeEventBus);
+    }
+
+    private static ChangeEvent createChange(long id) {
+        return new ChangeEvent(id, ChangeType.MESSAGE_CREATED, 2, "{\"id\":" + id + "}");
+    }
+
+    private static PGNotification createNotification(String parameter) {
+        return new Notification("chat_changes", 0, parameter);
+    }
+    //endregion
+
+    //region broadcast()
+    @Test
+    public void shouldDeliverChangesToOwnBusOnceTransactionCommits() {
+        final List<ChangeEvent> changes = List.of(createChange(1), createChange(2));
+
+        transactionTemplate.executeWithoutResult(status -> clusterChangeBridge.broadcast(changes));
+
+        verify(changeEventBus, timeout(5000).times(1)).publish(changes);
+        verify(eventPublisher, never()).publishEvent(any(ClusterChangeEvent.class));
+    }
+
+    @Test
+    public void shouldSkipChangesTooLargeToNotify() {
+        final var large = new ChangeEvent(1, ChangeType.MESSAGE_CREATED, 2, "\"" + "a".repeat(8000) + "\"");
+
+        transactionTemplate.executeWithoutResult(status ->
+                clusterChangeBridge.broadcast(List.of(large, createChange(2))));
+
+        verify(changeEventBus, timeout(5000).times(1)).publish(List.of(createChange(2)));
+    }
+
+    @Test
+    public void shouldNotDeliverChangesOfRolledBackTransaction() {
+        transactionTemplate.executeWithoutResult(status -> {
+            clusterChangeBridge.broadcast(List.of(createChange(1)));
+            status.setRollbackOnly();
+        });
+
+        verify(changeEventBus, after(1000).never()).publish(List.of(createChange(1)));
+    }
+    //endregion
+
+    //region listen()
+    @Test
+    public void shouldPublishResyncWhenListeningStarts() {
+        verify(eventPublisher, times(1)).publishEvent(new ClusterResyncEvent());
+    }
+    //endregion
+
+    //region dispatch()
+    @Test
+    public void shouldPublishChangesOfOtherInstancesAndSkipMalformedNotifications() {
+        final var change = createChange(3);
+
+        clusterChangeBridge.dispatch(new PGNotification[]{
+                createNotification("not a change"),
+                createNotification("{\"origin\":\"other\",\"id\":3,\"type\":\"MESSAGE_CREATED\"," +
+                        "\"channelId\":2,\"payload\":{\"id\":3}}"),
+                createNotification("{\"origin\":\"other\",\"id\":4,\"type\":\"UNKNOWN\",\"payload\":{}}")
+        });
+
+        verify(eventPublisher, times(1)).publishEvent(new ClusterChangeEvent(change));
+        verify(changeEventBus, times(1)).publish(List.of(change));
+    }
+    //endregion
+
+}
@@ -0,0 +1,168 @@
+package com.zse.chat.outbox;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.transaction.IllegalTransactionStateException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.*;
+
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class OutboxTest {
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private final OutboxRelay outboxRelay = mock(OutboxRelay.class);
+    private final ChangeEventBus changeEventBus = mock(ChangeEventBus.class);
+    @SuppressWarnings("unchecked")
+    private final ObjectProvider<ClusterChangeBridge> clusterChangeBridgeProvider = mock(ObjectProvider.class);
+
+    private Outbox outbox;
+    private TransactionTemplate transactionTemplate;
+
+    //region fixture
+    @BeforeEach
+    void setUp() {
+        outbox = new Outbox(jdbcTemplate, new ObjectMapper(), outboxRelay);
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        jdbcTemplate.update("delete from outbox_event");
+        when(changeEventBus.tryPublish(anyList())).thenReturn(true);
+    }
+
+    @AfterEach
+    void tearDown() {
+        jdbcTemplate.update("delete from outbox_event");
+    }
+
+    private OutboxRelay createRelay(int batchSize) {
+        return new OutboxRelay(
+                jdbcTemplate,
+                transactionManager,
+                changeEventBus,
+                clusterChangeBridgeProvider,
+                new SimpleMeterRegistry(),
+                new MockEnvironment().withProperty("outbox.batch-size", String.valueOf(batchSize))
+        );
+    }
+
+    private List<String> findPayloads() {
+        return jdbcTemplate.queryForList("select payload::text from outbox_event order by id", String.class);
+    }
+    //endregion
+
+    //region append()
+    @Test
+    public void shouldWriteChangesWhenTransactionCommits() {
+        transactionTemplate.executeWithoutResult(status -> {
+            outbox.append(ChangeType.MESSAGE_CREATED, null, Map.of("id", 1));
+            outbox.append(ChangeType.MESSAGE_UPDATED, 3, Map.of("id", 2));
+            assertThat(findPayloads(), empty());
+        });
+
+        assertThat(findPayloads(), contains("{\"id\": 1}", "{\"id\": 2}"));
+        assertThat(
+                jdbcTemplate.queryForList("select channel_id from outbox_event order by id", Integer.class),
+                contains(nullValue(), equalTo(3))
+        );
+        verify(outboxRelay, times(1)).wakeUp();
+    }
+
+    @Test
+    public void shouldNotWriteChangesOfRolledBackTransaction() {
+        transactionTemplate.executeWithoutResult(status -> {
+            outbox.append(ChangeType.MESSAGE_CREATED, null, Map.of("id", 1));
+            status.setRollbackOnly();
+        });
+
+        assertThat(findPayloads(), empty());
+        verifyNoInteractions(outboxRelay);
+    }
+
+    @Test
+    public void shouldRejectChangesOutsideOfTransaction() {
+        assertThrows(
+                IllegalTransactionStateException.class,
+                () -> outbox.append(ChangeType.MESSAGE_CREATED, null, Map.of("id", 1))
+        );
+    }
+    //endregion
+
+    //region relay()
+    @Test
+    @SuppressWarnings("unchecked")
+    public void shouldRelayChangesInOrderAndDeleteThem() {
+        transactionTemplate.executeWithoutResult(status -> {
+            for (int i = 1; i <= 3; i++) {
+                outbox.append(ChangeType.MESSAGE_CREATED, 3, Map.of("id", i));
+            }
+        });
+        final ArgumentCaptor<List<ChangeEvent>> captor = ArgumentCaptor.forClass(List.class);
+
+        final var relayed = createRelay(2).relay();
+
+        assertThat(relayed, equalTo(3));
+        verify(changeEventBus, times(2)).tryPublish(captor.capture());
+        final var events = captor.getAllValues().stream().flatMap(List::stream).toList();
+        assertThat(events.stream().map(ChangeEvent::payload).toList(),
+                contains("{\"id\": 1}", "{\"id\": 2}", "{\"id\": 3}"));
+        assertThat(events.get(0).type(), equalTo(ChangeType.MESSAGE_CREATED));
+        assertThat(events.get(0).channelId(), equalTo(3));
+        assertThat(findPayloads(), empty());
+    }
+
+    @Test
+    public void shouldKeepChangesWhenRelayFailsAfterPublishingAndPublishThemAgain() {
+        transactionTemplate.executeWithoutResult(status ->
+                outbox.append(ChangeType.MESSAGE_CREATED, 3, Map.of("id", 1)));
+        final var relay = createRelay(10);
+        doThrow(new IllegalStateException("Interrupted")).doReturn(true).when(changeEventBus).tryPublish(anyList());
+
+        assertThrows(IllegalStateException.class, relay::relay);
+        assertThat(findPayloads(), equalTo(List.of("{\"id\": 1}")));
+
+        assertThat(relay.relay(), equalTo(1));
+        verify(changeEventBus, times(2)).tryPublish(anyList());
+        assertThat(findPayloads(), empty());
+    }
+
+    @Test
+    public void shouldLeaveChangesInOutboxWhileBusHasNoRoomForThem() {
+        transactionTemplate.executeWithoutResult(status ->
+                outbox.append(ChangeType.MESSAGE_CREATED, 3, Map.of("id", 1)));
+        final var relay = createRelay(10);
+        when(changeEventBus.tryPublish(anyList())).thenReturn(false, true);
+
+        assertThat(relay.relay(), equalTo(0));
+        assertThat(findPayloads(), equalTo(List.of("{\"id\": 1}")));
+        // Rows are not locked anymore, so other run can claim them
+        assertThat(relay.relay(), equalTo(1));
+        assertThat(findPayloads(), empty());
+        verify(changeEventBus, never()).publish(anyList());
+    }
+    //endregion
+
+}
@@ -18,6 +18,8 @@ import java.util.Optional;
 import java.util.TimeZone;
 
 import static org.hamcrest.Matchers.*;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.print;
@@ -36,6 +38,9 @@ class UserControllerTest {
     @MockBean
     private UserService userService;
 
+    @MockBean
+    private UserPresenceService userPresenceService;
+
     //region fixture
     private User.UserBuilder createUserForTest(int number){
         return User.builder()
@@ -123,6 +128,18 @@ class UserControllerTest {
     }
     //endregion
 
+    //region GET("/users/online")
+    @Test
+    public void shouldReturnOnlineUsersFromPresence() throws Exception {
+        when(userPresenceService.getOnline()).thenReturn(List.of("testNickname1", "testNickname2"));
+
+        mockMvc.perform(get("/users/online"))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", contains("testNickname1", "testNickname2")));
+    }
+    //endregion
+
     //region GET("/users/{nickname}")
     @Test
     public void shouldReturnUserByNicknameVisibleNickname() throws Exception {
@@ -247,6 +264,45 @@ class UserControllerTest {
                 .andExpect(jsonPath("$.nickname", equalTo("testNickname1")));
     }
 
+    @Test
+    public void shouldKeepUpdatedStatusInPresence() throws Exception {
+        UserController.UpdateUserDTO updateUserDTO = createUserForTestUpdate(1)
+                .userStatus(Optional.of(User.UserStatus.ONLINE))
+                .build();
+        String body = mapper.writeValueAsString(updateUserDTO);
+
+        when(userService.updateUser(ArgumentMatchers.any())).thenReturn(createUserForTest(1).build());
+
+        mockMvc.perform(put("/users")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(body))
+                .andDo(print())
+                .andExpect(status().isOk());
+
+        verify(userPresenceService).heartbeat("testNickname1");
+    }
+
+    @Test
+    public void shouldUpdateOnlyPresenceWhenOnlyStatusIsGiven() throws Exception {
+        UserController.UpdateUserDTO updateUserDTO = UserController.UpdateUserDTO.builder()
+                .nickname("testNickname1")
+                .userStatus(Optional.of(User.UserStatus.OFFLINE))
+                .build();
+        String body = mapper.writeValueAsString(updateUserDTO);
+
+        when(userService.getUserByNick("testNickname1")).thenReturn(createUserForTest(1).build());
+
+        mockMvc.perform(put("/users")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(body))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.nickname", equalTo("testNickname1")));
+
+        verify(userPresenceService).offline("testNickname1");
+        verify(userService, never()).updateUser(ArgumentMatchers.any());
+    }
+
     @ParameterizedTest(name = "name: {0}, email: {1}, phone: {2}, address: {3}")
     @CsvFileSource(resources = "/visibilityUserFields.csv", numLinesToSkip = 1)
     public void shouldUpdateUserDetailsFoundByNicknameVisible(
@@ -0,0 +1,121 @@
+package com.zse.chat.user;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.ArgumentMatchers;
+import org.springframework.boot.convert.ApplicationConversionService;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(SpringExtension.class)
+class UserPresenceServiceTest {
+
+    private UserPresenceService userPresenceService;
+
+    @MockBean
+    private JdbcTemplate jdbcTemplate;
+
+    //region fixture
+    @BeforeEach
+    void setUp() {
+        final var env = new MockEnvironment()
+                .withProperty("presence.tick", "1s")
+                .withProperty("presence.expiry", "3s");
+        env.setConversionService(new ApplicationConversionService());
+
+        userPresenceService = new UserPresenceService(jdbcTemplate, env);
+    }
+
+    private void advance(int ticks) {
+        for (int i = 0; i < ticks; i++) {
+            userPresenceService.advance();
+        }
+    }
+    //endregion
+
+    //region heartbeat() and advance()
+    @Test
+    public void shouldKeepUserOnlineUntilHeartbeatExpires() {
+        userPresenceService.heartbeat("testNickname2");
+        userPresenceService.heartbeat("testNickname1");
+        advance(2);
+
+        assertThat(userPresenceService.getOnline(), contains("testNickname1", "testNickname2"));
+
+        userPresenceService.heartbeat("testNickname1");
+        advance(1);
+
+        assertThat(userPresenceService.getOnline(), contains("testNickname1"));
+        assertThat(userPresenceService.isOnline("testNickname2"), is(false));
+
+        advance(2);
+
+        assertThat(userPresenceService.getOnline(), empty());
+    }
+    //endregion
+
+    //region connected() and disconnected()
+    @Test
+    public void shouldKeepConnectedUserOnlineUntilLastSessionCloses() {
+        userPresenceService.connected("testNickname1", "session1");
+        userPresenceService.connected("testNickname1", "session2");
+        advance(5);
+
+        assertThat(userPresenceService.isOnline("testNickname1"), is(true));
+
+        userPresenceService.disconnected("testNickname1", "session1");
+        userPresenceService.disconnected("testNickname1", "session1");
+        advance(4);
+
+        assertThat(userPresenceService.isOnline("testNickname1"), is(true));
+
+        userPresenceService.disconnected("testNickname1", "session2");
+        advance(4);
+
+        assertThat(userPresenceService.isOnline("testNickname1"), is(false));
+    }
+
+    @Test
+    public void shouldMakeUserOfflineRightAway() {
+        userPresenceService.connected("testNickname1", "session1");
+
+        userPresenceService.offline("testNickname1");
+
+        assertThat(userPresenceService.getOnline(), empty());
+    }
+    //endregion
+
+    //region flush()
+    @Test
+    @SuppressWarnings("unchecked")
+    public void shouldWriteLastSeenOncePerUserAndFlush() {
+        final ArgumentCaptor<List<Object[]>> captor = ArgumentCaptor.forClass(List.class);
+        for (int i = 0; i < 10; i++) {
+            userPresenceService.heartbeat("testNickname1");
+        }
+        userPresenceService.heartbeat("testNickname2");
+
+        userPresenceService.flush();
+        userPresenceService.flush();
+
+        verify(jdbcTemplate, times(1)).batchUpdate(ArgumentMatchers.anyString(), captor.capture());
+        assertThat(
+                captor.getValue().stream().map(row -> (String) row[1]).sorted().toList(),
+                contains("testNickname1", "testNickname2")
+        );
+    }
+    //endregion
+
+}
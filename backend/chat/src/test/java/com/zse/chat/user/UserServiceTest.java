@@ -303,7 +303,6 @@ class UserServiceTest {
         assertThat(updatedUser.getCountry(), equalTo("testCountryUpdated1"));
         assertThat(updatedUser.getCity(), equalTo("testCityUpdated1"));
         assertThat(updatedUser.getUserLanguage(), equalTo(User.Language.POLISH));
-        assertThat(updatedUser.getUserStatus(), equalTo(User.UserStatus.OFFLINE));
         assertThat(updatedUser.getShowFirstNameAndLastName(), equalTo(true));
         assertThat(updatedUser.getShowEmail(), equalTo(true));
         assertThat(updatedUser.getShowPhoneNumber(), equalTo(true));
@@ -0,0 +1,114 @@
+package com.zse.chat.websocket;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.zse.chat.message.MessageController.MessageResponseDTO;
+import com.zse.chat.message.MessageEvent;
+import com.zse.chat.message.MessageOutbox;
+import com.zse.chat.message.channel.ChannelTypingEvent;
+import com.zse.chat.outbox.ChangeEvent;
+import com.zse.chat.outbox.ChangeEventBus;
+import com.zse.chat.outbox.ChangeType;
+import com.zse.chat.outbox.Outbox;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import java.time.LocalDateTime;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(SpringExtension.class)
+class MessagePushListenerTest {
+
+    private MessagePushListener messagePushListener;
+
+    @MockBean
+    private SimpMessagingTemplate messagingTemplate;
+
+    @MockBean
+    private ChangeEventBus changeEventBus;
+
+    @Captor
+    ArgumentCaptor<MessagePushListener.MessageEventDTO> captor;
+
+    //region fixture
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+
+    @BeforeEach
+    void setUp() {
+        messagePushListener = new MessagePushListener(
+                messagingTemplate,
+                changeEventBus,
+                new MessageOutbox(mock(Outbox.class), objectMapper)
+        );
+    }
+
+    private ChangeEvent createChange(ChangeType type, Integer channelId) throws JsonProcessingException {
+        final var message = new MessageResponseDTO(1, "testNickname1", "testContent1", LocalDateTime.now());
+        return new ChangeEvent(1, type, channelId, objectMapper.writeValueAsString(message));
+    }
+    //endregion
+
+    @Test
+    public void shouldPushGlobalMessageToGlobalTopic() throws JsonProcessingException {
+        messagePushListener.onChange(createChange(ChangeType.MESSAGE_CREATED, null));
+
+        verify(messagingTemplate, times(1)).convertAndSend(eq("/topic/messages"), captor.capture());
+        assertThat(captor.getValue().type(), equalTo(MessageEvent.Type.CREATED));
+        assertThat(captor.getValue().channelId(), nullValue());
+        assertThat(captor.getValue().message().getId(), equalTo(1L));
+        assertThat(captor.getValue().message().getAuthorNick(), equalTo("testNickname1"));
+    }
+
+    @Test
+    public void shouldPushChannelMessageToChannelTopic() throws JsonProcessingException {
+        messagePushListener.onChange(createChange(ChangeType.MESSAGE_DELETED, 3));
+
+        verify(messagingTemplate, times(1)).convertAndSend(eq("/topic/channels/3"), captor.capture());
+        assertThat(captor.getValue().type(), equalTo(MessageEvent.Type.DELETED));
+        assertThat(captor.getValue().channelId(), equalTo(3));
+    }
+
+    @Test
+    public void shouldPushIngestedMessagesAsOneEvent() {
+        messagePushListener.onChange(new ChangeEvent(1, ChangeType.MESSAGES_INGESTED, 3,
+                "{\"authorNick\":\"testNickname1\",\"count\":3,\"firstId\":5,\"lastId\":8}"));
+
+        final ArgumentCaptor<MessagePushListener.MessagesIngestedEventDTO> ingestedCaptor =
+                ArgumentCaptor.forClass(MessagePushListener.MessagesIngestedEventDTO.class);
+        verify(messagingTemplate, times(1)).convertAndSend(eq("/topic/channels/3"), ingestedCaptor.capture());
+        assertThat(ingestedCaptor.getValue().type(), equalTo("INGESTED"));
+        assertThat(ingestedCaptor.getValue().channelId(), equalTo(3));
+        assertThat(ingestedCaptor.getValue().messages().count(), equalTo(3));
+        assertThat(ingestedCaptor.getValue().messages().firstId(), equalTo(5L));
+        assertThat(ingestedCaptor.getValue().messages().lastId(), equalTo(8L));
+    }
+
+    @Test
+    public void shouldNotPushChangesOfChannels() {
+        messagePushListener.onChange(new ChangeEvent(1, ChangeType.CHANNEL_UPDATED, 3, "{}"));
+
+        verifyNoInteractions(messagingTemplate);
+    }
+
+    @Test
+    public void shouldPushTypingToTypingTopicOfChannel() {
+        messagePushListener.onTypingEvent(new ChannelTypingEvent(3, "testNickname1", true));
+
+        verify(messagingTemplate, times(1)).convertAndSend(
+                "/topic/channels/3/typing",
+                new MessagePushListener.TypingEventDTO(3, "testNickname1", true)
+        );
+    }
+
+}
@@ -0,0 +1,160 @@
+package com.zse.chat.websocket;
+
+import com.auth0.jwt.exceptions.JWTVerificationException;
+import com.zse.chat.channel.ChannelService;
+import com.zse.chat.login.InvalidJWTException;
+import com.zse.chat.login.MissingJWTException;
+import com.zse.chat.login.VerifyUser;
+import com.zse.chat.message.channel.ChannelAccessFailedException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.messaging.support.MessageHeaderAccessor;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(SpringExtension.class)
+class StompAuthChannelInterceptorTest {
+
+    private StompAuthChannelInterceptor interceptor;
+
+    @MockBean
+    private VerifyUser verifyUser;
+    @MockBean
+    private ChannelService channelService;
+    @MockBean
+    private MessageChannel messageChannel;
+
+    //region fixture
+    @BeforeEach
+    void setUp() {
+        interceptor = new StompAuthChannelInterceptor(verifyUser, channelService);
+    }
+
+    private Message<byte[]> connect(String authorization) {
+        final var accessor = StompHeaderAccessor.create(StompCommand.CONNECT);
+        if (authorization != null) {
+            accessor.addNativeHeader("Authorization", authorization);
+        }
+        accessor.setLeaveMutable(true);
+        return MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+    }
+
+    private Message<byte[]> subscribe(String nickname, String destination) {
+        final var accessor = StompHeaderAccessor.create(StompCommand.SUBSCRIBE);
+        accessor.setDestination(destination);
+        accessor.setUser(new StompAuthChannelInterceptor.StompPrincipal(nickname));
+        accessor.setLeaveMutable(true);
+        return MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+    }
+
+    private Message<byte[]> send(String nickname, String destination) {
+        final var accessor = StompHeaderAccessor.create(StompCommand.SEND);
+        accessor.setDestination(destination);
+        accessor.setUser(new StompAuthChannelInterceptor.StompPrincipal(nickname));
+        accessor.setLeaveMutable(true);
+        return MessageBuilder.createMessage("{\"content\":\"forged\"}".getBytes(), accessor.getMessageHeaders());
+    }
+    //endregion
+
+    //region CONNECT
+    @Test
+    public void shouldSetUserFromValidToken() {
+        when(verifyUser.getNickname("token")).thenReturn("testNickname1");
+
+        final var result = interceptor.preSend(connect("Bearer token"), messageChannel);
+
+        final var accessor = MessageHeaderAccessor.getAccessor(result, StompHeaderAccessor.class);
+        assertThat(accessor, notNullValue());
+        assertThat(accessor.getUser(), notNullValue());
+        assertThat(accessor.getUser().getName(), equalTo("testNickname1"));
+    }
+
+    @Test
+    public void shouldThrowMissingJWTTryingToConnectWithoutToken() {
+        assertThrows(MissingJWTException.class,
+                () -> interceptor.preSend(connect(null), messageChannel));
+
+        verifyNoInteractions(verifyUser);
+    }
+
+    @Test
+    public void shouldThrowInvalidJWTTryingToConnectWithInvalidToken() {
+        when(verifyUser.getNickname("token")).thenThrow(new JWTVerificationException("invalid"));
+
+        assertThrows(InvalidJWTException.class,
+                () -> interceptor.preSend(connect("Bearer token"), messageChannel));
+    }
+    //endregion
+
+    //region SUBSCRIBE
+    @Test
+    public void shouldAllowSubscribingGlobalChannel() {
+        interceptor.preSend(subscribe("testNickname1", "/topic/messages"), messageChannel);
+
+        verifyNoInteractions(channelService);
+    }
+
+    @Test
+    public void shouldAllowSubscribingVisibleChannel() {
+        when(channelService.userHasPermissionToSeeChannel(1, "testNickname1")).thenReturn(true);
+
+        interceptor.preSend(subscribe("testNickname1", "/topic/channels/1"), messageChannel);
+
+        verify(channelService, times(1)).userHasPermissionToSeeChannel(1, "testNickname1");
+    }
+
+    @Test
+    public void shouldAllowSubscribingTypingOfVisibleChannel() {
+        when(channelService.userHasPermissionToSeeChannel(1, "testNickname1")).thenReturn(true);
+
+        interceptor.preSend(subscribe("testNickname1", "/topic/channels/1/typing"), messageChannel);
+
+        verify(channelService, times(1)).userHasPermissionToSeeChannel(1, "testNickname1");
+    }
+
+    @Test
+    public void shouldThrowChannelAccessFailedTryingToSubscribeNotVisibleChannel() {
+        when(channelService.userHasPermissionToSeeChannel(1, "testNickname1")).thenReturn(false);
+
+        assertThrows(ChannelAccessFailedException.class,
+                () -> interceptor.preSend(subscribe("testNickname1", "/topic/channels/1"), messageChannel));
+    }
+
+    @Test
+    public void shouldThrowChannelAccessFailedTryingToSubscribeUnknownDestination() {
+        assertThrows(ChannelAccessFailedException.class,
+                () -> interceptor.preSend(subscribe("testNickname1", "/topic/channels/abc"), messageChannel));
+        assertThrows(ChannelAccessFailedException.class,
+                () -> interceptor.preSend(subscribe("testNickname1", "/topic/other"), messageChannel));
+
+        verifyNoInteractions(channelService);
+    }
+    //endregion
+
+    //region SEND
+    @Test
+    public void shouldThrowChannelAccessFailedTryingToSendToTopic() {
+        when(channelService.userHasPermissionToSeeChannel(1, "testNickname1")).thenReturn(true);
+
+        assertThrows(ChannelAccessFailedException.class,
+                () -> interceptor.preSend(send("testNickname1", "/topic/channels/1"), messageChannel));
+        assertThrows(ChannelAccessFailedException.class,
+                () -> interceptor.preSend(send("testNickname1", "/topic/channels/1/typing"), messageChannel));
+        assertThrows(ChannelAccessFailedException.class,
+                () -> interceptor.preSend(send("testNickname1", "/topic/messages"), messageChannel));
+    }
+    //endregion
+
+}